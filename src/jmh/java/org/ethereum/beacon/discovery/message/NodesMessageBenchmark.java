@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.ethereum.beacon.discovery.schema.LazyNodeRecord;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.schema.NodeRecordBuilder;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handling the records of received NODES messages, where only some of the records are at the
+ * requested distance. Compares checking every record fully, as was done before, with filtering on
+ * the lazily decoded node ID first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NodesMessageBenchmark {
+  private static final int MESSAGE_COUNT = 64;
+  private static final int RECORDS_PER_MESSAGE = 4;
+  private static final int REQUESTED_DISTANCE = 256;
+  private static final Bytes PEER_ID = Bytes.repeat((byte) 0, 32);
+
+  /** Share of the records which are at the requested distance. */
+  @Param({"25", "50", "100"})
+  public int matchingPercent;
+
+  private Bytes[] messages;
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    final Random rnd = new Random(1);
+    messages = new Bytes[MESSAGE_COUNT];
+    int recordCount = 0;
+    int matchingCount = 0;
+    for (int i = 0; i < MESSAGE_COUNT; i++) {
+      final List<NodeRecord> records = new ArrayList<>();
+      while (records.size() < RECORDS_PER_MESSAGE) {
+        final boolean shouldMatch = matchingCount * 100 < (recordCount + 1) * matchingPercent;
+        final NodeRecord record = createRecord(rnd, recordCount);
+        // Half of all random node IDs are at the furthest distance
+        if (isAtRequestedDistance(record.getNodeId()) == shouldMatch) {
+          records.add(record);
+          recordCount++;
+          matchingCount += shouldMatch ? 1 : 0;
+        }
+      }
+      // Without the message code, as passed to NodesMessage.fromBytes
+      messages[i] = new NodesMessage(Bytes.of(i), 1, records).getBytes().slice(1);
+    }
+  }
+
+  private static NodeRecord createRecord(final Random rnd, final int index) {
+    return new NodeRecordBuilder()
+        .secretKey(Functions.randomKeyPair(rnd).secretKey())
+        .seq(index + 1)
+        .address("10.0." + (index / 256) + "." + (index % 256), 9000, 9000)
+        .customField("eth2", Bytes.random(16, rnd))
+        .build();
+  }
+
+  private static boolean isAtRequestedDistance(final Bytes nodeId) {
+    return Functions.logDistance(nodeId, PEER_ID) == REQUESTED_DISTANCE;
+  }
+
+  private NodesMessage nextMessage() {
+    next = (next + 1) % MESSAGE_COUNT;
+    return NodesMessage.fromBytes(messages[next], NodeRecordFactory.DEFAULT);
+  }
+
+  @Benchmark
+  public long decodeAndVerifyAll() {
+    return nextMessage().getNodeRecords().stream()
+        .filter(NodeRecord::isValid)
+        .filter(record -> isAtRequestedDistance(record.getNodeId()))
+        .count();
+  }
+
+  @Benchmark
+  public long filterBeforeDecoding() {
+    return nextMessage().getLazyNodeRecords().stream()
+        .filter(
+            record ->
+                record.getNodeId().filter(NodesMessageBenchmark::isAtRequestedDistance).isPresent())
+        .map(LazyNodeRecord::decode)
+        .filter(NodeRecord::isValid)
+        .count();
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.message;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.rlp.RLP;
+import org.apache.tuweni.rlp.RLPReader;
+import org.apache.tuweni.rlp.RLPWriter;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.RlpUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding PONG and FINDNODE messages, comparing the tuweni RLP writer and reader
+ * with {@link V5MessageCodec}. Run with {@code -prof gc} to compare the allocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class V5MessageCodecBenchmark {
+  private final PongMessage pong =
+      new PongMessage(
+          Bytes.fromHexString("0x0102030405060708"),
+          UInt64.valueOf(12345),
+          Bytes.fromHexString("0x0a000001"),
+          9000);
+  private final FindNodeMessage findNode =
+      new FindNodeMessage(Bytes.fromHexString("0x0102030405060708"), List.of(256, 255, 254));
+  private final Bytes pongBytes = pong.getBytes();
+  private final Bytes findNodeBytes = findNode.getBytes();
+  private final ByteBuffer buffer = ByteBuffer.allocate(1280);
+
+  @Benchmark
+  public Bytes encodePongWithRlpWriter() {
+    return Bytes.concatenate(
+        Bytes.of(MessageCode.PONG.byteCode()),
+        RLP.encodeList(
+            writer -> {
+              writer.writeValue(pong.getRequestId());
+              writer.writeBigInteger(pong.getEnrSeq().toBigInteger());
+              writer.writeValue(pong.getRecipientIp());
+              writer.writeInt(pong.getRecipientPort());
+            }));
+  }
+
+  @Benchmark
+  public ByteBuffer encodePongWithCodec() {
+    buffer.clear();
+    V5MessageCodec.encode(pong, buffer);
+    return buffer;
+  }
+
+  @Benchmark
+  public Bytes encodeFindNodeWithRlpWriter() {
+    return Bytes.concatenate(
+        Bytes.of(MessageCode.FINDNODE.byteCode()),
+        RLP.encodeList(
+            writer -> {
+              writer.writeValue(findNode.getRequestId());
+              writer.writeList(findNode.getDistances(), RLPWriter::writeInt);
+            }));
+  }
+
+  @Benchmark
+  public ByteBuffer encodeFindNodeWithCodec() {
+    buffer.clear();
+    V5MessageCodec.encode(findNode, buffer);
+    return buffer;
+  }
+
+  @Benchmark
+  public FindNodeMessage decodeFindNodeWithRlpReader() {
+    return RlpUtil.readRlpList(
+        findNodeBytes.slice(1),
+        reader ->
+            new FindNodeMessage(reader.readValue(), reader.readListContents(RLPReader::readInt)));
+  }
+
+  @Benchmark
+  public V5Message decodeFindNodeWithCodec() {
+    return V5MessageCodec.decode(
+        ByteBuffer.wrap(findNodeBytes.toArrayUnsafe()), NodeRecordFactory.DEFAULT);
+  }
+
+  @Benchmark
+  public PongMessage decodePongWithRlpReader() {
+    return RlpUtil.readRlpList(
+        pongBytes.slice(1),
+        reader ->
+            new PongMessage(
+                reader.readValue(),
+                UInt64.valueOf(reader.readBigInteger()),
+                reader.readValue(),
+                reader.readInt()));
+  }
+
+  @Benchmark
+  public V5Message decodePongWithCodec() {
+    return V5MessageCodec.decode(
+        ByteBuffer.wrap(pongBytes.toArrayUnsafe()), NodeRecordFactory.DEFAULT);
+  }
+}
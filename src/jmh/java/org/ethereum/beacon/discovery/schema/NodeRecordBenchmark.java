@@ -0,0 +1,124 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.schema;
+
+import java.net.InetSocketAddress;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding, verifying and using signed node records shaped like those on mainnet, with addresses
+ * and an eth2 field.
+ *
+ * <p>The heap retained by decoding each record many times, as when it is received from several
+ * peers, is printed once during setup. Run with {@code -prof gc} to see the allocation rate of each
+ * operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NodeRecordBenchmark {
+  private static final int RECORD_COUNT = 1024;
+  private static final int RETAINED_RECORD_COUNT = 50_000;
+
+  private Bytes[] encoded;
+  private NodeRecord[] records;
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    final Random rnd = new Random(1);
+    encoded = new Bytes[RECORD_COUNT];
+    records = new NodeRecord[RECORD_COUNT];
+    for (int i = 0; i < RECORD_COUNT; i++) {
+      final NodeRecord record =
+          new NodeRecordBuilder()
+              .secretKey(Functions.randomKeyPair(rnd).secretKey())
+              .seq(i + 1)
+              .address("10.0." + (i / 256) + "." + (i % 256), 9000, 9000)
+              .customField("eth2", Bytes.random(16, rnd))
+              .build();
+      encoded[i] = record.serialize();
+      records[i] = NodeRecordFactory.DEFAULT.fromBytes(encoded[i]);
+    }
+
+    final NodeRecord[] retainedRecords = new NodeRecord[RETAINED_RECORD_COUNT];
+    final long heapBefore = usedHeap();
+    for (int i = 0; i < RETAINED_RECORD_COUNT; i++) {
+      // Copy the input so records don't share it
+      final Bytes input = Bytes.wrap(encoded[i % RECORD_COUNT].toArray());
+      retainedRecords[i] = NodeRecordFactory.DEFAULT.fromBytes(input);
+      retainedRecords[i].getNodeId();
+    }
+    final long retained = usedHeap() - heapBefore;
+    System.out.printf(
+        "%n%d decoded records retain %d bytes, %d per record%n",
+        retainedRecords.length, retained, retained / retainedRecords.length);
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private int nextIndex() {
+    next = (next + 1) % RECORD_COUNT;
+    return next;
+  }
+
+  @Benchmark
+  public NodeRecord decode() {
+    return NodeRecordFactory.DEFAULT.fromBytes(encoded[nextIndex()]);
+  }
+
+  @Benchmark
+  public boolean decodeAndVerify() {
+    return NodeRecordFactory.DEFAULT.fromBytes(encoded[nextIndex()]).isValid();
+  }
+
+  @Benchmark
+  public boolean verify() {
+    return records[nextIndex()].isValid();
+  }
+
+  @Benchmark
+  public Bytes serialize() {
+    return records[nextIndex()].serialize();
+  }
+
+  @Benchmark
+  public int hashCodeOfRecord() {
+    return records[nextIndex()].hashCode();
+  }
+
+  @Benchmark
+  public Bytes nodeId() {
+    return records[nextIndex()].getNodeId();
+  }
+
+  @Benchmark
+  public Optional<InetSocketAddress> udpAddress() {
+    return records[nextIndex()].getUdpAddress();
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.schema;
+
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.crypto.SECP256K1.SecretKey;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.ethereum.beacon.discovery.liveness.LivenessChecker;
+import org.ethereum.beacon.discovery.message.PingMessage;
+import org.ethereum.beacon.discovery.pipeline.PipelineImpl;
+import org.ethereum.beacon.discovery.pipeline.handler.NodeSessionManager;
+import org.ethereum.beacon.discovery.pipeline.info.MultiPacketResponseHandler;
+import org.ethereum.beacon.discovery.pipeline.info.Request;
+import org.ethereum.beacon.discovery.pipeline.info.RequestInfo;
+import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
+import org.ethereum.beacon.discovery.storage.KBuckets;
+import org.ethereum.beacon.discovery.storage.LocalNodeRecordStore;
+import org.ethereum.beacon.discovery.storage.NewAddressHandler;
+import org.ethereum.beacon.discovery.storage.NodeRecordListener;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Request bookkeeping of a session which has a backlog of requests waiting for the handshake. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NodeSessionRequestQueueBenchmark {
+  private static final int QUEUED_REQUESTS = 100;
+
+  private ExpirationSchedulerFactory expirationSchedulerFactory;
+  private NodeSession session;
+
+  @Setup
+  public void setUp() {
+    final Clock clock = Clock.systemUTC();
+    final SecretKey secretKey = Functions.randomKeyPair().secretKey();
+    final NodeRecord homeNodeRecord =
+        new NodeRecordBuilder().secretKey(secretKey).address("127.0.0.1", 9000).build();
+    final LocalNodeRecordStore localNodeRecordStore =
+        new LocalNodeRecordStore(
+            homeNodeRecord, secretKey, NodeRecordListener.NOOP, NewAddressHandler.NOOP);
+    final KBuckets kBuckets = new KBuckets(clock, localNodeRecordStore, new LivenessChecker(clock));
+    expirationSchedulerFactory =
+        new ExpirationSchedulerFactory(Executors.newSingleThreadScheduledExecutor());
+    final NodeSessionManager nodeSessionManager =
+        new NodeSessionManager(
+            localNodeRecordStore,
+            secretKey,
+            kBuckets,
+            new PipelineImpl(),
+            expirationSchedulerFactory,
+            NodeSessionManager.DEFAULT_MAX_SESSIONS,
+            NodeSessionManager.DEFAULT_MAX_UNAUTHENTICATED_SESSIONS,
+            NodeSessionManager.DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION);
+    session =
+        new NodeSession(
+            Bytes32.random(),
+            Optional.empty(),
+            new InetSocketAddress("127.0.0.1", 9001),
+            nodeSessionManager,
+            localNodeRecordStore,
+            secretKey,
+            kBuckets,
+            parcel -> {},
+            new Random(1),
+            expirationSchedulerFactory.create(1, TimeUnit.HOURS),
+            NodeSessionManager.DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION);
+    for (int i = 0; i < QUEUED_REQUESTS; i++) {
+      session.createNextRequest(createRequest());
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    expirationSchedulerFactory.stop();
+  }
+
+  @Benchmark
+  public Optional<RequestInfo> firstAwaitRequest() {
+    return session.getFirstAwaitRequestInfo();
+  }
+
+  @Benchmark
+  public Optional<RequestInfo> firstSentRequest() {
+    return session.getFirstSentRequestInfo();
+  }
+
+  @Benchmark
+  public void requestLifecycle() {
+    final RequestInfo requestInfo = session.createNextRequest(createRequest());
+    session.markRequestSent(requestInfo);
+    session.clearRequestInfo(requestInfo.getRequestId(), null);
+  }
+
+  private static Request<Void> createRequest() {
+    return new Request<>(
+        new CompletableFuture<>(),
+        requestId -> new PingMessage(requestId, UInt64.ONE),
+        MultiPacketResponseHandler.SINGLE_PACKET_RESPONSE_HANDLER);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.crypto.SECP256K1.SecretKey;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.ethereum.beacon.discovery.liveness.LivenessChecker;
+import org.ethereum.beacon.discovery.schema.EnrField;
+import org.ethereum.beacon.discovery.schema.IdentitySchema;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.schema.NodeRecordBuilder;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Routing table holding 100k verified nodes, most of them in the compact replacement caches.
+ *
+ * <p>The heap retained by the table is printed once during setup, run with {@code -prof gc} to see
+ * the allocation rate of the queries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class KBucketsBenchmark {
+  private static final int NODE_COUNT = 100_000;
+  // Half of all random nodes fall into the furthest bucket, so allow for all of them
+  private static final int REPLACEMENT_CACHE_SIZE = NODE_COUNT;
+  private static final int TARGET_COUNT = 1024;
+
+  private final Clock clock = Clock.systemUTC();
+  private LocalNodeRecordStore localNodeRecordStore;
+  private NodeRecord[] nodes;
+  private Bytes[] targets;
+  private KBuckets buckets;
+  private int nextNode = 0;
+  private int nextTarget = 0;
+
+  @Setup
+  public void setUp() {
+    final Random rnd = new Random(1);
+    final SecretKey secretKey = Functions.randomKeyPair(rnd).secretKey();
+    final NodeRecord homeNodeRecord =
+        new NodeRecordBuilder().secretKey(secretKey).address("127.0.0.1", 9000).build();
+    localNodeRecordStore =
+        new LocalNodeRecordStore(
+            homeNodeRecord, secretKey, NodeRecordListener.NOOP, NewAddressHandler.NOOP);
+    nodes = new NodeRecord[NODE_COUNT];
+    for (int i = 0; i < NODE_COUNT; i++) {
+      // Records are not signed as the routing table never verifies them
+      nodes[i] =
+          NodeRecordFactory.DEFAULT.createFromValues(
+              UInt64.ONE,
+              new EnrField(EnrField.ID, IdentitySchema.V4),
+              new EnrField(
+                  EnrField.PKEY_SECP256K1,
+                  Functions.deriveCompressedPublicKeyFromPrivate(
+                      Functions.randomKeyPair(rnd).secretKey())));
+    }
+    targets = new Bytes[TARGET_COUNT];
+    for (int i = 0; i < TARGET_COUNT; i++) {
+      targets[i] = Bytes32.random(rnd);
+    }
+
+    final long heapBefore = usedHeap();
+    buckets = fill();
+    final long retained = usedHeap() - heapBefore;
+    System.out.printf(
+        "%nRouting table with %d nodes (%d in buckets) retains %d bytes, %d per node%n",
+        NODE_COUNT,
+        buckets.getStats().getTotalNodeCount(),
+        retained,
+        retained / NODE_COUNT);
+  }
+
+  private KBuckets fill() {
+    final KBuckets table =
+        new KBuckets(
+            clock,
+            localNodeRecordStore,
+            new LivenessChecker(clock),
+            KBuckets.DEFAULT_BUCKET_SIZE,
+            REPLACEMENT_CACHE_SIZE);
+    for (NodeRecord node : nodes) {
+      table.onNodeContacted(node);
+    }
+    return table;
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private NodeRecord nextNode() {
+    nextNode = (nextNode + 1) % NODE_COUNT;
+    return nodes[nextNode];
+  }
+
+  private Bytes nextTarget() {
+    nextTarget = (nextTarget + 1) % TARGET_COUNT;
+    return targets[nextTarget];
+  }
+
+  @Benchmark
+  public List<NodeRecord> closest16() {
+    return buckets.closest(nextTarget(), KBuckets.DEFAULT_BUCKET_SIZE);
+  }
+
+  @Benchmark
+  public List<NodeRecord> findNodeAtFurthestDistance() {
+    // As served to FINDNODE, limited to the recommended 16 nodes
+    return buckets
+        .getLiveNodeRecords(KBuckets.MAXIMUM_BUCKET)
+        .limit(KBuckets.DEFAULT_BUCKET_SIZE)
+        .toList();
+  }
+
+  @Benchmark
+  public boolean containsNode() {
+    return buckets.containsNode(nextNode().getNodeId());
+  }
+
+  @Benchmark
+  public void confirmNode() {
+    // Most nodes are in replacement caches so this mostly updates a replacement entry
+    buckets.onNodeContacted(nextNode());
+  }
+
+  @Benchmark
+  public void performMaintenance() {
+    // Only visits buckets which are due, regardless of how many nodes the table holds
+    buckets.performMaintenance();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 3)
+  @Measurement(iterations = 5)
+  public KBuckets fill100k() {
+    return fill();
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.type;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Sorting nodes by distance to a target and computing log distances, Bytes vs NodeId. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NodeIdDistanceBenchmark {
+  private static final int NODE_COUNT = 10_000;
+
+  private Bytes target;
+  private Bytes[] nodeIds;
+  private NodeId targetId;
+  private NodeId[] ids;
+
+  @Setup
+  public void setUp() {
+    final Random rnd = new Random(1);
+    target = Bytes32.random(rnd);
+    targetId = NodeId.wrap(target);
+    nodeIds = new Bytes[NODE_COUNT];
+    ids = new NodeId[NODE_COUNT];
+    for (int i = 0; i < NODE_COUNT; i++) {
+      nodeIds[i] = Bytes32.random(rnd);
+      ids[i] = NodeId.wrap(nodeIds[i]);
+    }
+  }
+
+  @Benchmark
+  public Bytes[] sortBytesByDistance() {
+    final Bytes[] sorted = nodeIds.clone();
+    Arrays.sort(sorted, Comparator.comparing(nodeId -> Functions.distance(target, nodeId)));
+    return sorted;
+  }
+
+  @Benchmark
+  public NodeId[] sortNodeIdsByDistance() {
+    final NodeId[] sorted = ids.clone();
+    Arrays.sort(sorted, targetId::compareDistance);
+    return sorted;
+  }
+
+  @Benchmark
+  public void logDistanceBytes(final Blackhole blackhole) {
+    for (Bytes nodeId : nodeIds) {
+      blackhole.consume(Functions.logDistance(target, nodeId));
+    }
+  }
+
+  @Benchmark
+  public void logDistanceNodeId(final Blackhole blackhole) {
+    for (NodeId nodeId : ids) {
+      blackhole.consume(targetId.logDistance(nodeId));
+    }
+  }
+}
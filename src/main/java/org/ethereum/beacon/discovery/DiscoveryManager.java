@@ -4,11 +4,15 @@
 
 package org.ethereum.beacon.discovery;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import org.apache.tuweni.bytes.Bytes;
+import org.ethereum.beacon.discovery.message.handler.FindNodeStats;
+import org.ethereum.beacon.discovery.pipeline.handler.SessionStats;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 
 /**
@@ -31,11 +35,27 @@ public interface DiscoveryManager {
    * @param nodeRecord Ethereum Node record
    * @param distances Distances to search for
    * @return Future which is fired when reply is received or fails in timeout/not successful
-   *     handshake/bad message exchange.
+   *     handshake/bad message exchange. If only some packets of the reply are received in time, it
+   *     completes with the records from those, see {@link
+   *     org.ethereum.beacon.discovery.pipeline.info.FoundNodes#isPartial()}.
    */
   CompletableFuture<Collection<NodeRecord>> findNodes(
       NodeRecord nodeRecord, List<Integer> distances);
 
+  /**
+   * Initiates FINDNODE with node `nodeRecord`, passing on the records in each packet of the reply
+   * as it arrives.
+   *
+   * @param nodeRecord Ethereum Node record
+   * @param distances Distances to search for
+   * @param onNodesReceived Called with the records of each NODES packet received
+   * @return Future which is fired when reply is received, as {@link #findNodes(NodeRecord, List)}
+   */
+  CompletableFuture<Collection<NodeRecord>> findNodes(
+      NodeRecord nodeRecord,
+      List<Integer> distances,
+      Consumer<Collection<NodeRecord>> onNodesReceived);
+
   /**
    * Initiates PING with node `nodeRecord`
    *
@@ -49,4 +69,14 @@ public interface DiscoveryManager {
   CompletableFuture<Bytes> talk(NodeRecord nodeRecord, Bytes protocol, Bytes request);
 
   Stream<NodeRecord> streamActiveSessions();
+
+  /**
+   * Returns how long responses from node `nodeRecord` usually take at most, based on the responses
+   * to earlier requests in its session.
+   */
+  Duration getExpectedRtt(NodeRecord nodeRecord);
+
+  SessionStats getSessionStats();
+
+  FindNodeStats getFindNodeStats();
 }
@@ -9,12 +9,15 @@ import static org.ethereum.beacon.discovery.util.Utils.RECOVERABLE_ERRORS_PREDIC
 import com.google.common.annotations.VisibleForTesting;
 import io.netty.channel.socket.InternetProtocolFamily;
 import io.netty.channel.socket.nio.NioDatagramChannel;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.crypto.SECP256K1.SecretKey;
@@ -22,6 +25,8 @@ import org.ethereum.beacon.discovery.message.FindNodeMessage;
 import org.ethereum.beacon.discovery.message.PingMessage;
 import org.ethereum.beacon.discovery.message.TalkReqMessage;
 import org.ethereum.beacon.discovery.message.handler.ExternalAddressSelector;
+import org.ethereum.beacon.discovery.message.handler.FindNodeHandler;
+import org.ethereum.beacon.discovery.message.handler.FindNodeStats;
 import org.ethereum.beacon.discovery.network.DiscoveryClient;
 import org.ethereum.beacon.discovery.network.NettyDiscoveryClientImpl;
 import org.ethereum.beacon.discovery.network.NettyDiscoveryServer;
@@ -42,6 +47,8 @@ import org.ethereum.beacon.discovery.pipeline.handler.NodeSessionRequestHandler;
 import org.ethereum.beacon.discovery.pipeline.handler.OutgoingParcelHandler;
 import org.ethereum.beacon.discovery.pipeline.handler.PacketDispatcherHandler;
 import org.ethereum.beacon.discovery.pipeline.handler.PacketSourceFilter;
+import org.ethereum.beacon.discovery.pipeline.handler.SessionStats;
+import org.ethereum.beacon.discovery.pipeline.handler.StatelessWhoAreYouHandler;
 import org.ethereum.beacon.discovery.pipeline.handler.UnauthorizedMessagePacketHandler;
 import org.ethereum.beacon.discovery.pipeline.handler.UnknownPacketTagToSender;
 import org.ethereum.beacon.discovery.pipeline.handler.WhoAreYouPacketHandler;
@@ -54,8 +61,11 @@ import org.ethereum.beacon.discovery.scheduler.Scheduler;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
 import org.ethereum.beacon.discovery.schema.NodeSession;
+import org.ethereum.beacon.discovery.schema.RttEstimator;
 import org.ethereum.beacon.discovery.storage.KBuckets;
 import org.ethereum.beacon.discovery.storage.LocalNodeRecordStore;
+import org.ethereum.beacon.discovery.storage.SessionSnapshotStore;
+import org.ethereum.beacon.discovery.util.Functions;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,6 +84,8 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
   private final AddressAccessPolicy addressAccessPolicy;
   private volatile DiscoveryClient discoveryClient;
   private final NodeSessionManager nodeSessionManager;
+  private final FindNodeHandler findNodeHandler = new FindNodeHandler();
+  private final Optional<SessionSnapshotStore> sessionSnapshotStore;
 
   public DiscoveryManagerImpl(
       final List<NettyDiscoveryServer> discoveryServers,
@@ -85,8 +97,14 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
       final ExpirationSchedulerFactory expirationSchedulerFactory,
       final TalkHandler talkHandler,
       final ExternalAddressSelector externalAddressSelector,
-      final AddressAccessPolicy addressAccessPolicy) {
+      final AddressAccessPolicy addressAccessPolicy,
+      final int maxSessions,
+      final int maxUnauthenticatedSessions,
+      final int maxInFlightRequestsPerSession,
+      final boolean statelessWhoAreYou,
+      final Optional<SessionSnapshotStore> sessionSnapshotStore) {
     this.localNodeRecordStore = localNodeRecordStore;
+    this.sessionSnapshotStore = sessionSnapshotStore;
     this.addressAccessPolicy = addressAccessPolicy;
     final NodeRecord homeNodeRecord = localNodeRecordStore.getLocalNodeRecord();
 
@@ -97,12 +115,21 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
             homeNodeSecretKey,
             nodeBucketStorage,
             outgoingPipeline,
-            expirationSchedulerFactory);
+            expirationSchedulerFactory,
+            maxSessions,
+            maxUnauthenticatedSessions,
+            maxInFlightRequestsPerSession);
     incomingPipeline
         .addHandler(new PacketSourceFilter(addressAccessPolicy))
         .addHandler(new IncomingDataPacker(homeNodeRecord.getNodeId()))
         .addHandler(new WhoAreYouSessionResolver(nodeSessionManager))
-        .addHandler(new UnknownPacketTagToSender())
+        .addHandler(new UnknownPacketTagToSender());
+    if (statelessWhoAreYou) {
+      incomingPipeline.addHandler(
+          new StatelessWhoAreYouHandler(
+              nodeSessionManager, outgoingPipeline, Clock.systemUTC(), Functions.getRandom()));
+    }
+    incomingPipeline
         .addHandler(nodeSessionManager)
         .addHandler(new PacketDispatcherHandler())
         .addHandler(new WhoAreYouPacketHandler(outgoingPipeline, taskScheduler))
@@ -120,7 +147,8 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
                 localNodeRecordStore,
                 talkHandler,
                 this::requestUpdatedEnr,
-                externalAddressSelector))
+                externalAddressSelector,
+                findNodeHandler))
         .addHandler(new BadPacketHandler());
     final FluxSink<NetworkParcel> outgoingSink = outgoingMessages.sink();
     outgoingPipeline
@@ -128,7 +156,7 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
         .addHandler(new NodeSessionRequestHandler())
         .addHandler(nodeSessionManager)
         .addHandler(new NewTaskHandler())
-        .addHandler(new NextTaskHandler(outgoingPipeline, taskScheduler));
+        .addHandler(new NextTaskHandler());
   }
 
   private void requestUpdatedEnr(final NodeRecord record) {
@@ -144,6 +172,7 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
   public CompletableFuture<Void> start() {
     incomingPipeline.build();
     outgoingPipeline.build();
+    sessionSnapshotStore.ifPresent(store -> nodeSessionManager.restoreSessions(store.load()));
     discoveryServers.forEach(
         discoveryServer ->
             Flux.from(discoveryServer.getIncomingPackets())
@@ -177,6 +206,8 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
       client.stop();
     }
     discoveryServers.forEach(NettyDiscoveryServer::stop);
+    sessionSnapshotStore.ifPresent(
+        store -> store.save(nodeSessionManager.createSessionSnapshots()));
   }
 
   @Override
@@ -201,11 +232,19 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
   @Override
   public CompletableFuture<Collection<NodeRecord>> findNodes(
       final NodeRecord nodeRecord, final List<Integer> distances) {
+    return findNodes(nodeRecord, distances, nodes -> {});
+  }
+
+  @Override
+  public CompletableFuture<Collection<NodeRecord>> findNodes(
+      final NodeRecord nodeRecord,
+      final List<Integer> distances,
+      final Consumer<Collection<NodeRecord>> onNodesReceived) {
     Request<Collection<NodeRecord>> request =
         new Request<>(
             new CompletableFuture<>(),
             reqId -> new FindNodeMessage(reqId, distances),
-            new FindNodeResponseHandler(distances, addressAccessPolicy));
+            new FindNodeResponseHandler(distances, addressAccessPolicy, onNodesReceived));
     return executeTaskImpl(nodeRecord, request);
   }
 
@@ -226,7 +265,8 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
         new Request<>(
             new CompletableFuture<>(),
             reqId -> new TalkReqMessage(reqId, protocol, requestBytes),
-            MultiPacketResponseHandler.SINGLE_PACKET_RESPONSE_HANDLER);
+            MultiPacketResponseHandler.SINGLE_PACKET_RESPONSE_HANDLER,
+            false);
     return executeTaskImpl(nodeRecord, request);
   }
 
@@ -254,4 +294,22 @@ public class DiscoveryManagerImpl implements DiscoveryManager {
   public Stream<NodeRecord> streamActiveSessions() {
     return nodeSessionManager.streamActiveSessions();
   }
+
+  @Override
+  public Duration getExpectedRtt(final NodeRecord nodeRecord) {
+    return nodeSessionManager
+        .getNodeSession(nodeRecord.getNodeId())
+        .map(NodeSession::getExpectedRtt)
+        .orElse(RttEstimator.DEFAULT_EXPECTED_RTT);
+  }
+
+  @Override
+  public SessionStats getSessionStats() {
+    return nodeSessionManager.getSessionStats();
+  }
+
+  @Override
+  public FindNodeStats getFindNodeStats() {
+    return findNodeHandler.getStats();
+  }
 }
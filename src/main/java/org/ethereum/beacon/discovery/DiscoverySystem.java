@@ -3,14 +3,19 @@
  */
 package org.ethereum.beacon.discovery;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import org.apache.tuweni.bytes.Bytes;
+import org.ethereum.beacon.discovery.message.handler.FindNodeStats;
+import org.ethereum.beacon.discovery.pipeline.handler.SessionStats;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.storage.BucketStats;
+import org.reactivestreams.Publisher;
 
 public interface DiscoverySystem {
 
@@ -22,6 +27,11 @@ public interface DiscoverySystem {
 
   BucketStats getBucketStats();
 
+  SessionStats getSessionStats();
+
+  /** Returns how often FINDNODE requests from other nodes were answered from the response cache */
+  FindNodeStats getFindNodeStats();
+
   void updateCustomFieldValue(final String fieldName, final Bytes value);
 
   /**
@@ -30,7 +40,9 @@ public interface DiscoverySystem {
    * @param nodeRecord Ethereum Node record
    * @param distances Distances to search for
    * @return Future which is fired when reply is received or fails in timeout/not successful
-   *     handshake/bad message exchange. Contains the collection of nodes returned by the peer.
+   *     handshake/bad message exchange. Contains the collection of nodes returned by the peer,
+   *     which is partial if not all packets of the reply arrived in time, see {@link
+   *     org.ethereum.beacon.discovery.pipeline.info.FoundNodes#isPartial(Collection)}.
    */
   CompletableFuture<Collection<NodeRecord>> findNodes(
       NodeRecord nodeRecord, List<Integer> distances);
@@ -56,6 +68,40 @@ public interface DiscoverySystem {
 
   CompletableFuture<Collection<NodeRecord>> searchForNewPeers();
 
+  /**
+   * Looks up the current record of a node on the network, unlike {@link #lookupNode(Bytes)} which
+   * only checks the local KBuckets.
+   *
+   * @param nodeId NodeId, big endian UInt256 Node ID in bytes
+   * @return Future with the node record if found, completed as soon as a peer returns it. Falls
+   *     back to the locally stored record if no peer did.
+   */
+  CompletableFuture<Optional<NodeRecord>> findNode(Bytes nodeId);
+
+  /**
+   * Looks up the nodes closest to {@code target} on the network. Only nodes which responded to a
+   * query during the lookup are returned, including the node with exactly the ID {@code target}
+   * if it exists and responded.
+   *
+   * @param target NodeId to search around, big endian UInt256 in bytes
+   * @param k number of nodes to return
+   * @return Future with up to {@code k} nodes, closest to {@code target} first
+   */
+  CompletableFuture<List<NodeRecord>> findClosest(Bytes target, int k);
+
+  /**
+   * Searches the network for nodes whose records match {@code predicate}, e.g. nodes with a
+   * particular custom field value. Checks every record seen during the search, not only the ones
+   * added to the KBuckets. The search starts on subscription.
+   *
+   * @param predicate Nodes to search for
+   * @param count Number of matching nodes after which the search completes
+   * @param timeout Time after which the search completes regardless
+   * @return Publisher emitting each matching node once as soon as it is found
+   */
+  Publisher<NodeRecord> searchForNodes(
+      Predicate<NodeRecord> predicate, int count, Duration timeout);
+
   /**
    * Lookup node in locally stored KBuckets by its nodeId. Allows lookup of local node record.
    *
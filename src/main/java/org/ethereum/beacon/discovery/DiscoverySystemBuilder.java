@@ -15,6 +15,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.channel.socket.InternetProtocolFamily;
 import java.net.Inet6Address;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.ArrayList;
@@ -29,13 +30,16 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.crypto.SECP256K1.SecretKey;
 import org.ethereum.beacon.discovery.liveness.LivenessChecker;
 import org.ethereum.beacon.discovery.liveness.LivenessChecker.Pinger;
+import org.ethereum.beacon.discovery.liveness.LivenessChecker.ResponseHistory;
 import org.ethereum.beacon.discovery.message.handler.DefaultExternalAddressSelector;
 import org.ethereum.beacon.discovery.message.handler.ExternalAddressSelector;
 import org.ethereum.beacon.discovery.network.NettyDiscoveryServer;
 import org.ethereum.beacon.discovery.network.NettyDiscoveryServerImpl;
+import org.ethereum.beacon.discovery.pipeline.handler.NodeSessionManager;
 import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
 import org.ethereum.beacon.discovery.scheduler.Schedulers;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
@@ -43,8 +47,14 @@ import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
 import org.ethereum.beacon.discovery.storage.KBuckets;
 import org.ethereum.beacon.discovery.storage.LocalNodeRecordStore;
 import org.ethereum.beacon.discovery.storage.NewAddressHandler;
+import org.ethereum.beacon.discovery.storage.NodeDatabase;
+import org.ethereum.beacon.discovery.storage.NodeDatabaseEntry;
+import org.ethereum.beacon.discovery.storage.NodeDatabaseStore;
 import org.ethereum.beacon.discovery.storage.NodeRecordListener;
+import org.ethereum.beacon.discovery.storage.RoutingTableStore;
+import org.ethereum.beacon.discovery.storage.SessionSnapshotStore;
 import org.ethereum.beacon.discovery.task.DiscoveryTaskManager;
+import org.ethereum.beacon.discovery.util.Functions;
 
 public class DiscoverySystemBuilder {
 
@@ -65,8 +75,22 @@ public class DiscoverySystemBuilder {
   private List<NettyDiscoveryServer> discoveryServers;
   private ExternalAddressSelector externalAddressSelector;
   private AddressAccessPolicy addressAccessPolicy = AddressAccessPolicy.ALLOW_ALL;
+  private int maxSessions = NodeSessionManager.DEFAULT_MAX_SESSIONS;
+  private int maxUnauthenticatedSessions = NodeSessionManager.DEFAULT_MAX_UNAUTHENTICATED_SESSIONS;
+  private int maxInFlightRequestsPerSession =
+      NodeSessionManager.DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION;
+  private boolean statelessWhoAreYou = false;
+  private int bucketSize = KBuckets.DEFAULT_BUCKET_SIZE;
+  private int replacementCacheSize = KBuckets.DEFAULT_REPLACEMENT_CACHE_SIZE;
+  private Optional<Path> sessionSnapshotFile = Optional.empty();
+  private Duration sessionSnapshotMaxAge;
+  private Optional<Path> routingTableFile = Optional.empty();
+  private Duration routingTableStaleAfter;
+  private int nodeDatabaseCapacity = NodeDatabase.DEFAULT_CAPACITY;
+  private Optional<Path> nodeDatabaseFile = Optional.empty();
+  private int maxConcurrentLivenessChecks = LivenessChecker.DEFAULT_MAX_CONCURRENT_PINGS;
   private final Clock clock = Clock.systemUTC();
-  private final LivenessChecker livenessChecker = new LivenessChecker(clock);
+  private LivenessChecker livenessChecker;
 
   public DiscoverySystemBuilder trafficReadLimit(final int trafficReadLimit) {
     this.trafficReadLimit = trafficReadLimit;
@@ -148,6 +172,115 @@ public class DiscoverySystemBuilder {
     return this;
   }
 
+  /** Sets the maximum number of sessions held at any time, including unauthenticated ones. */
+  public DiscoverySystemBuilder maxSessions(final int maxSessions) {
+    checkArgument(maxSessions > 0, "maxSessions must be positive");
+    this.maxSessions = maxSessions;
+    return this;
+  }
+
+  /** Sets the maximum number of sessions which have not yet completed the handshake. */
+  public DiscoverySystemBuilder maxUnauthenticatedSessions(final int maxUnauthenticatedSessions) {
+    checkArgument(maxUnauthenticatedSessions > 0, "maxUnauthenticatedSessions must be positive");
+    this.maxUnauthenticatedSessions = maxUnauthenticatedSessions;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of requests sent to a single peer which may await a reply at the same
+   * time. Further requests are queued and sent, in order, as replies arrive or requests time out.
+   */
+  public DiscoverySystemBuilder maxInFlightRequestsPerSession(
+      final int maxInFlightRequestsPerSession) {
+    checkArgument(
+        maxInFlightRequestsPerSession > 0, "maxInFlightRequestsPerSession must be positive");
+    this.maxInFlightRequestsPerSession = maxInFlightRequestsPerSession;
+    return this;
+  }
+
+  /**
+   * Sets the number of nodes kept in each routing table bucket. Larger buckets are copied on every
+   * change, so prefer {@link #replacementCacheSize(int)} to keep many nodes.
+   */
+  public DiscoverySystemBuilder bucketSize(final int bucketSize) {
+    checkArgument(bucketSize > 0, "bucketSize must be positive");
+    this.bucketSize = bucketSize;
+    return this;
+  }
+
+  /**
+   * Sets the number of confirmed live nodes kept per routing table distance to replace nodes which
+   * drop out of the bucket. Replacement nodes are stored compactly, so crawlers and boot nodes can
+   * set this to thousands to keep tens of thousands of verified nodes in total.
+   */
+  public DiscoverySystemBuilder replacementCacheSize(final int replacementCacheSize) {
+    checkArgument(replacementCacheSize >= 0, "replacementCacheSize must not be negative");
+    this.replacementCacheSize = replacementCacheSize;
+    return this;
+  }
+
+  /**
+   * When enabled, WHOAREYOU challenges to unknown senders are sent without creating a session. The
+   * session is only created once a valid handshake answers the challenge.
+   */
+  public DiscoverySystemBuilder statelessWhoAreYou(final boolean statelessWhoAreYou) {
+    this.statelessWhoAreYou = statelessWhoAreYou;
+    return this;
+  }
+
+  /**
+   * Keeps authenticated sessions across restarts. Session keys are written encrypted to {@code
+   * file} on stop and restored on start if the snapshot is not older than {@code maxAge}, so peers
+   * don't have to repeat the handshake.
+   */
+  public DiscoverySystemBuilder sessionSnapshot(final Path file, final Duration maxAge) {
+    checkNotNull(file, "Missing session snapshot file");
+    checkArgument(!maxAge.isNegative(), "maxAge must not be negative");
+    this.sessionSnapshotFile = Optional.of(file);
+    this.sessionSnapshotMaxAge = maxAge;
+    return this;
+  }
+
+  /**
+   * Keeps the routing table across restarts. Live nodes are saved to {@code file} periodically and
+   * on stop, and restored on start. Nodes not confirmed as live within {@code staleAfter} are
+   * pinged again before they are treated as live.
+   */
+  public DiscoverySystemBuilder routingTableFile(final Path file, final Duration staleAfter) {
+    checkNotNull(file, "Missing routing table file");
+    checkArgument(!staleAfter.isNegative(), "staleAfter must not be negative");
+    this.routingTableFile = Optional.of(file);
+    this.routingTableStaleAfter = staleAfter;
+    return this;
+  }
+
+  /**
+   * Sets the number of nodes pinged at a time to check they are still live. Further checks wait in
+   * a queue, so large routing tables may need more to be revalidated in time.
+   */
+  public DiscoverySystemBuilder maxConcurrentLivenessChecks(final int maxConcurrentLivenessChecks) {
+    checkArgument(maxConcurrentLivenessChecks > 0, "maxConcurrentLivenessChecks must be positive");
+    this.maxConcurrentLivenessChecks = maxConcurrentLivenessChecks;
+    return this;
+  }
+
+  /** Sets the number of nodes kept in the node database of every node record seen. */
+  public DiscoverySystemBuilder nodeDatabaseCapacity(final int nodeDatabaseCapacity) {
+    checkArgument(nodeDatabaseCapacity > 0, "nodeDatabaseCapacity must be positive");
+    this.nodeDatabaseCapacity = nodeDatabaseCapacity;
+    return this;
+  }
+
+  /**
+   * Keeps the node database across restarts. It is saved to {@code file} periodically and on stop,
+   * and restored on start.
+   */
+  public DiscoverySystemBuilder nodeDatabaseFile(final Path file) {
+    checkNotNull(file, "Missing node database file");
+    this.nodeDatabaseFile = Optional.of(file);
+    return this;
+  }
+
   public DiscoverySystemBuilder talkHandler(final TalkHandler talkHandler) {
     this.talkHandler = talkHandler;
     return this;
@@ -197,6 +330,7 @@ public class DiscoverySystemBuilder {
   }
 
   private void createDefaults() {
+    livenessChecker = new LivenessChecker(clock, maxConcurrentLivenessChecks);
     newAddressHandler =
         requireNonNullElseGet(
             newAddressHandler,
@@ -241,7 +375,18 @@ public class DiscoverySystemBuilder {
                     localNodeRecord, secretKey, localNodeRecordListener, newAddressHandler));
     nodeBucketStorage =
         requireNonNullElseGet(
-            nodeBucketStorage, () -> new KBuckets(clock, localNodeRecordStore, livenessChecker));
+            nodeBucketStorage,
+            () ->
+                new KBuckets(
+                    clock,
+                    localNodeRecordStore,
+                    livenessChecker,
+                    bucketSize,
+                    replacementCacheSize,
+                    new NodeDatabase(
+                        clock,
+                        nodeDatabaseCapacity,
+                        localNodeRecordStore.getLocalNodeRecord().getNodeId())));
     expirationSchedulerFactory =
         requireNonNullElseGet(
             expirationSchedulerFactory,
@@ -282,6 +427,7 @@ public class DiscoverySystemBuilder {
 
     final DiscoveryManager discoveryManager = buildDiscoveryManager();
     livenessChecker.setPinger(new AsyncPinger(discoveryManager::ping));
+    livenessChecker.setResponseHistory(new KBucketsResponseHistory(nodeBucketStorage));
 
     final DiscoveryTaskManager discoveryTaskManager =
         new DiscoveryTaskManager(
@@ -292,7 +438,10 @@ public class DiscoverySystemBuilder {
             expirationSchedulerFactory,
             recursiveLookupInterval,
             retryTimeout,
-            lifeCheckInterval);
+            lifeCheckInterval,
+            routingTableFile.map(
+                file -> new RoutingTableStore(file, nodeRecordFactory, routingTableStaleAfter)),
+            nodeDatabaseFile.map(file -> new NodeDatabaseStore(file, nodeRecordFactory)));
     return new DiscoverySystemImpl(
         discoveryManager,
         discoveryTaskManager,
@@ -314,7 +463,20 @@ public class DiscoverySystemBuilder {
         expirationSchedulerFactory,
         talkHandler,
         externalAddressSelector,
-        addressAccessPolicy);
+        addressAccessPolicy,
+        maxSessions,
+        Math.min(maxUnauthenticatedSessions, maxSessions),
+        maxInFlightRequestsPerSession,
+        statelessWhoAreYou,
+        sessionSnapshotFile.map(
+            file ->
+                new SessionSnapshotStore(
+                    file,
+                    secretKey,
+                    nodeRecordFactory,
+                    clock,
+                    sessionSnapshotMaxAge,
+                    Functions.getRandom())));
   }
 
   /**
@@ -341,4 +503,30 @@ public class DiscoverySystemBuilder {
           .thenCompose(Function.identity());
     }
   }
+
+  /**
+   * Answers when nodes last responded from the node database. Liveness is confirmed from a separate
+   * thread for the same reason as {@link AsyncPinger}.
+   */
+  private static final class KBucketsResponseHistory implements ResponseHistory {
+    private final KBuckets buckets;
+
+    private KBucketsResponseHistory(final KBuckets buckets) {
+      this.buckets = buckets;
+    }
+
+    @Override
+    public long getLastResponseTime(final Bytes nodeId) {
+      return buckets
+          .getNodeDatabase()
+          .get(nodeId)
+          .map(NodeDatabaseEntry::getLastResponseTime)
+          .orElse(NEVER_RESPONDED);
+    }
+
+    @Override
+    public void confirmLiveness(final NodeRecord node) {
+      CompletableFuture.runAsync(() -> buckets.onLivenessConfirmed(node));
+    }
+  }
 }
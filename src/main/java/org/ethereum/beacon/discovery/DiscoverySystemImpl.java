@@ -3,20 +3,25 @@
  */
 package org.ethereum.beacon.discovery;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.message.handler.FindNodeStats;
+import org.ethereum.beacon.discovery.pipeline.handler.SessionStats;
 import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.storage.BucketStats;
 import org.ethereum.beacon.discovery.storage.KBuckets;
 import org.ethereum.beacon.discovery.task.DiscoveryTaskManager;
+import org.reactivestreams.Publisher;
 
 public class DiscoverySystemImpl implements DiscoverySystem, MutableDiscoverySystem {
   private static final Logger LOG = LogManager.getLogger(DiscoverySystemImpl.class);
@@ -73,6 +78,16 @@ public class DiscoverySystemImpl implements DiscoverySystem, MutableDiscoverySys
     return buckets.getStats();
   }
 
+  @Override
+  public SessionStats getSessionStats() {
+    return discoveryManager.getSessionStats();
+  }
+
+  @Override
+  public FindNodeStats getFindNodeStats() {
+    return discoveryManager.getFindNodeStats();
+  }
+
   @Override
   public void updateCustomFieldValue(final String fieldName, final Bytes value) {
     discoveryManager.updateCustomFieldValue(fieldName, value);
@@ -105,6 +120,25 @@ public class DiscoverySystemImpl implements DiscoverySystem, MutableDiscoverySys
     return taskManager.searchForNewPeers();
   }
 
+  @Override
+  public CompletableFuture<Optional<NodeRecord>> findNode(final Bytes nodeId) {
+    if (nodeId.equals(getLocalNodeRecord().getNodeId())) {
+      return CompletableFuture.completedFuture(Optional.of(getLocalNodeRecord()));
+    }
+    return taskManager.findNode(nodeId);
+  }
+
+  @Override
+  public CompletableFuture<List<NodeRecord>> findClosest(final Bytes target, final int k) {
+    return taskManager.findClosest(target, k);
+  }
+
+  @Override
+  public Publisher<NodeRecord> searchForNodes(
+      final Predicate<NodeRecord> predicate, final int count, final Duration timeout) {
+    return taskManager.searchForNodes(predicate, count, timeout);
+  }
+
   /**
    * Lookup node in locally stored KBuckets by its nodeId. Allows lookup of local node record.
    *
@@ -116,10 +150,7 @@ public class DiscoverySystemImpl implements DiscoverySystem, MutableDiscoverySys
     if (nodeId.equals(getLocalNodeRecord().getNodeId())) {
       return Optional.of(getLocalNodeRecord());
     }
-    return buckets
-        .streamClosestNodes(nodeId)
-        .findFirst()
-        .filter(node -> node.getNodeId().equals(nodeId));
+    return buckets.getLiveNode(nodeId);
   }
 
   @Override
@@ -3,62 +3,109 @@
  */
 package org.ethereum.beacon.discovery.liveness;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.time.Clock;
 import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.database.ExpirationSet;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Pings nodes to check they are still live, up to a configurable number at a time.
+ *
+ * <p>Checks are tracked by node ID. Further checks for a node already being pinged or waiting to be
+ * are coalesced into the existing one. Waiting checks are pinged stalest first, i.e. the node which
+ * responded to one of our requests least recently, with nodes that never responded first. A node
+ * which responded recently isn't pinged, its liveness is confirmed through the {@link
+ * ResponseHistory} instead.
+ */
 public class LivenessChecker {
   private static final Logger LOG = LoggerFactory.getLogger(LivenessChecker.class);
 
-  static final int MAX_CONCURRENT_PINGS = 3;
+  public static final int DEFAULT_MAX_CONCURRENT_PINGS = 16;
   static final int MAX_QUEUE_SIZE = 1000;
   static final int MAX_IGNORE_SET_SIZE = 1000;
   static final Duration IGNORE_DURATION = Duration.ofSeconds(30);
+  static final Duration RECENT_RESPONSE_DURATION = Duration.ofSeconds(10);
 
-  private final Set<NodeRecord> activePings = new HashSet<>();
-  private final Set<NodeRecord> queuedPings = new LinkedHashSet<>();
+  private final Clock clock;
+  private final int maxConcurrentPings;
+  private final Set<NodeId> activePings = new HashSet<>();
+  private final Map<NodeId, QueuedCheck> queuedChecks = new HashMap<>();
+  private final PriorityQueue<QueuedCheck> checkQueue =
+      new PriorityQueue<>(
+          Comparator.comparingLong((QueuedCheck check) -> check.lastResponseTime)
+              .thenComparingLong(check -> check.sequence));
   private final ExpirationSet<Bytes> ignoredNodes;
+  private long nextSequence = 0;
+
+  private Pinger pinger = node -> CompletableFuture.completedFuture(null);
+  private ResponseHistory responseHistory = ResponseHistory.NONE;
 
   public LivenessChecker(final Clock clock) {
-    this.ignoredNodes = new ExpirationSet<>(IGNORE_DURATION, clock, MAX_IGNORE_SET_SIZE);
+    this(clock, DEFAULT_MAX_CONCURRENT_PINGS);
   }
 
-  private Pinger pinger = node -> CompletableFuture.completedFuture(null);
+  /** @param maxConcurrentPings number of nodes pinged at a time, further checks are queued */
+  public LivenessChecker(final Clock clock, final int maxConcurrentPings) {
+    checkArgument(maxConcurrentPings > 0, "maxConcurrentPings must be positive");
+    this.clock = clock;
+    this.maxConcurrentPings = maxConcurrentPings;
+    this.ignoredNodes = new ExpirationSet<>(IGNORE_DURATION, clock, MAX_IGNORE_SET_SIZE);
+  }
 
   public synchronized void setPinger(final Pinger pinger) {
     this.pinger = pinger;
   }
 
+  public synchronized void setResponseHistory(final ResponseHistory responseHistory) {
+    this.responseHistory = responseHistory;
+  }
+
   /**
    * Adds the specified node to the queue of nodes to perform a liveness check on.
    *
    * @param node the node to check liveness
    */
   public synchronized void checkLiveness(NodeRecord node) {
-    if (activePings.contains(node) || isABadPeer(node)) {
+    final NodeId nodeId = NodeId.wrap(node.getNodeId());
+    if (activePings.contains(nodeId) || isABadPeer(node)) {
       // Already checking node or node should be ignored
-      // Note: We don't need to check queuedPings because it's a set so the add just does nothing
-      // and if we have capacity to ping immediately the queue must be empty.
       return;
     }
-    if (activePings.size() < MAX_CONCURRENT_PINGS) {
-      sendPing(node);
-    } else if (queuedPings.size() < MAX_QUEUE_SIZE) {
-      queuedPings.add(node);
+    final QueuedCheck queued = queuedChecks.get(nodeId);
+    if (queued != null) {
+      // Ping the latest record once it's the node's turn
+      queued.updateNode(node);
+      return;
+    }
+    final long lastResponseTime = responseHistory.getLastResponseTime(node.getNodeId());
+    if (hasRespondedRecently(lastResponseTime)) {
+      responseHistory.confirmLiveness(node);
+      return;
+    }
+    if (activePings.size() < maxConcurrentPings) {
+      sendPing(nodeId, node);
+    } else if (queuedChecks.size() < MAX_QUEUE_SIZE) {
+      final QueuedCheck check = new QueuedCheck(nodeId, node, lastResponseTime, nextSequence++);
+      queuedChecks.put(nodeId, check);
+      checkQueue.add(check);
     }
   }
 
-  private void sendPing(final NodeRecord node) {
-    queuedPings.remove(node);
-    activePings.add(node);
+  private void sendPing(final NodeId nodeId, final NodeRecord node) {
+    activePings.add(nodeId);
     pinger
         .ping(node)
         .whenComplete(
@@ -70,13 +117,35 @@ public class LivenessChecker {
                 if (error != null) {
                   ignoredNodes.add(node.getNodeId());
                 }
-                activePings.remove(node);
-                // Ping the next node in the queue if any.
-                queuedPings.stream().findFirst().ifPresent(this::sendPing);
+                activePings.remove(nodeId);
+                sendNextQueuedPing();
               }
             });
   }
 
+  private void sendNextQueuedPing() {
+    QueuedCheck check;
+    while ((check = checkQueue.poll()) != null) {
+      queuedChecks.remove(check.nodeId);
+      final NodeRecord node = check.node;
+      if (isABadPeer(node)) {
+        continue;
+      }
+      // The node may have answered another request while it was waiting
+      if (hasRespondedRecently(responseHistory.getLastResponseTime(node.getNodeId()))) {
+        responseHistory.confirmLiveness(node);
+        continue;
+      }
+      sendPing(check.nodeId, node);
+      return;
+    }
+  }
+
+  private boolean hasRespondedRecently(final long lastResponseTime) {
+    return lastResponseTime != ResponseHistory.NEVER_RESPONDED
+        && clock.millis() - lastResponseTime < RECENT_RESPONSE_DURATION.toMillis();
+  }
+
   public boolean isABadPeer(final NodeRecord nodeRecord) {
     return ignoredNodes.contains(nodeRecord.getNodeId());
   }
@@ -84,4 +153,53 @@ public class LivenessChecker {
   public interface Pinger {
     CompletableFuture<Void> ping(NodeRecord node);
   }
+
+  /**
+   * Tells when nodes last responded to one of our requests. Like {@link Pinger}, its methods are
+   * called with the liveness checker's lock held so must not block on other locks.
+   */
+  public interface ResponseHistory {
+    long NEVER_RESPONDED = 0;
+
+    ResponseHistory NONE =
+        new ResponseHistory() {
+          @Override
+          public long getLastResponseTime(final Bytes nodeId) {
+            return NEVER_RESPONDED;
+          }
+
+          @Override
+          public void confirmLiveness(final NodeRecord node) {}
+        };
+
+    /** Returns when the node last responded, or {@link #NEVER_RESPONDED}. */
+    long getLastResponseTime(Bytes nodeId);
+
+    /** Called instead of pinging a node which responded recently. */
+    void confirmLiveness(NodeRecord node);
+  }
+
+  private static class QueuedCheck {
+    private final NodeId nodeId;
+    private final long lastResponseTime;
+    private final long sequence;
+    private NodeRecord node;
+
+    private QueuedCheck(
+        final NodeId nodeId,
+        final NodeRecord node,
+        final long lastResponseTime,
+        final long sequence) {
+      this.nodeId = nodeId;
+      this.node = node;
+      this.lastResponseTime = lastResponseTime;
+      this.sequence = sequence;
+    }
+
+    private void updateNode(final NodeRecord newNode) {
+      if (newNode.getSeq().compareTo(node.getSeq()) > 0) {
+        node = newNode;
+      }
+    }
+  }
 }
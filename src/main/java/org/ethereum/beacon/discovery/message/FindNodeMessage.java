@@ -5,17 +5,11 @@
 package org.ethereum.beacon.discovery.message;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static org.ethereum.beacon.discovery.util.RlpUtil.checkMaxSize;
 
 import com.google.common.base.Objects;
 import java.util.List;
 import org.apache.tuweni.bytes.Bytes;
-import org.apache.tuweni.rlp.RLP;
-import org.apache.tuweni.rlp.RLPReader;
-import org.apache.tuweni.rlp.RLPWriter;
 import org.ethereum.beacon.discovery.util.DecodeException;
-import org.ethereum.beacon.discovery.util.RlpDecodeException;
-import org.ethereum.beacon.discovery.util.RlpUtil;
 
 /**
  * FINDNODE queries for nodes at the given logarithmic distance from the recipient's node ID. The
@@ -49,18 +43,7 @@ public class FindNodeMessage implements V5Message {
   }
 
   public static FindNodeMessage fromBytes(Bytes bytes) throws DecodeException {
-    return RlpUtil.readRlpList(
-        bytes,
-        reader -> {
-          final Bytes requestId = checkMaxSize(reader.readValue(), MAX_REQUEST_ID_SIZE);
-          List<Integer> distances = reader.readListContents(RLPReader::readInt);
-          for (Integer distance : distances) {
-            if (!isValidDistance(distance)) {
-              throw new RlpDecodeException("Invalid distance");
-            }
-          }
-          return new FindNodeMessage(requestId, distances);
-        });
+    return V5MessageCodec.decodeBody(bytes, V5MessageCodec::decodeFindNode);
   }
 
   @Override
@@ -74,13 +57,7 @@ public class FindNodeMessage implements V5Message {
 
   @Override
   public Bytes getBytes() {
-    return Bytes.concatenate(
-        Bytes.of(getCode().byteCode()),
-        RLP.encodeList(
-            writer -> {
-              writer.writeValue(requestId);
-              writer.writeList(getDistances(), RLPWriter::writeInt);
-            }));
+    return V5MessageCodec.encode(this);
   }
 
   @Override
@@ -4,15 +4,12 @@
 
 package org.ethereum.beacon.discovery.message;
 
-import static org.ethereum.beacon.discovery.util.RlpUtil.checkMaxSize;
-
 import java.util.List;
 import java.util.Objects;
 import org.apache.tuweni.bytes.Bytes;
-import org.apache.tuweni.rlp.RLP;
+import org.ethereum.beacon.discovery.schema.LazyNodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
-import org.ethereum.beacon.discovery.util.RlpUtil;
 
 /**
  * NODES is the response to a FINDNODE or TOPICQUERY message. Multiple NODES messages may be sent as
@@ -24,23 +21,34 @@ public class NodesMessage implements V5Message {
   // Total number of responses to the request
   private final Integer total;
   // List of nodes upon request
-  private final List<NodeRecord> nodeRecords;
+  private final List<LazyNodeRecord> lazyNodeRecords;
+  // Decoded on first use for received messages
+  private List<NodeRecord> nodeRecords;
 
   public NodesMessage(Bytes requestId, Integer total, List<NodeRecord> nodeRecords) {
+    this(requestId, total, nodeRecords, nodeRecords.stream().map(LazyNodeRecord::of).toList());
+  }
+
+  private NodesMessage(
+      final Bytes requestId,
+      final Integer total,
+      final List<NodeRecord> nodeRecords,
+      final List<LazyNodeRecord> lazyNodeRecords) {
     this.requestId = requestId;
     this.total = total;
     this.nodeRecords = nodeRecords;
+    this.lazyNodeRecords = lazyNodeRecords;
+  }
+
+  /** Creates a received message, of which the records are decoded on demand. */
+  static NodesMessage fromLazyNodeRecords(
+      final Bytes requestId, final int total, final List<LazyNodeRecord> lazyNodeRecords) {
+    return new NodesMessage(requestId, total, null, lazyNodeRecords);
   }
 
   public static NodesMessage fromBytes(Bytes messageBytes, NodeRecordFactory nodeRecordFactory) {
-    return RlpUtil.readRlpList(
-        messageBytes,
-        reader -> {
-          final Bytes requestId = checkMaxSize(reader.readValue(), MAX_REQUEST_ID_SIZE);
-          final int total = reader.readInt();
-          final List<NodeRecord> nodeRecords = reader.readListContents(nodeRecordFactory::fromRlp);
-          return new NodesMessage(requestId, total, nodeRecords);
-        });
+    return V5MessageCodec.decodeBody(
+        messageBytes, buffer -> V5MessageCodec.decodeNodes(buffer, nodeRecordFactory));
   }
 
   @Override
@@ -52,24 +60,29 @@ public class NodesMessage implements V5Message {
     return total;
   }
 
+  /**
+   * Returns the node records, fully decoding those of a received message.
+   *
+   * @throws org.ethereum.beacon.discovery.util.DecodeException if a record is malformed
+   */
   public synchronized List<NodeRecord> getNodeRecords() {
+    if (nodeRecords == null) {
+      nodeRecords = lazyNodeRecords.stream().map(LazyNodeRecord::decode).toList();
+    }
     return nodeRecords;
   }
 
+  /**
+   * Returns the node records with only their node ID and addresses decoded, so they can be
+   * filtered before fully decoding them.
+   */
+  public List<LazyNodeRecord> getLazyNodeRecords() {
+    return lazyNodeRecords;
+  }
+
   @Override
   public Bytes getBytes() {
-    return Bytes.concatenate(
-        Bytes.of(getCode().byteCode()),
-        RLP.encodeList(
-            writer -> {
-              writer.writeValue(requestId);
-              writer.writeInt(total);
-              writer.writeList(
-                  getNodeRecords(),
-                  (itemWriter, nodeRecord) -> {
-                    nodeRecord.writeRlp(itemWriter);
-                  });
-            }));
+    return V5MessageCodec.encode(this);
   }
 
   @Override
@@ -88,12 +101,12 @@ public class NodesMessage implements V5Message {
     NodesMessage that = (NodesMessage) o;
     return requestId.equals(that.requestId)
         && total.equals(that.total)
-        && nodeRecords.equals(that.nodeRecords);
+        && getNodeRecords().equals(that.getNodeRecords());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(requestId, total, nodeRecords);
+    return Objects.hash(requestId, total, getNodeRecords());
   }
 
   @Override
@@ -104,7 +117,7 @@ public class NodesMessage implements V5Message {
         + ", total="
         + total
         + ", nodeRecords="
-        + nodeRecords
+        + lazyNodeRecords
         + '}';
   }
 }
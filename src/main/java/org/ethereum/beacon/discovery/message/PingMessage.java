@@ -4,13 +4,9 @@
 
 package org.ethereum.beacon.discovery.message;
 
-import static org.ethereum.beacon.discovery.util.RlpUtil.checkMaxSize;
-
 import com.google.common.base.Objects;
 import org.apache.tuweni.bytes.Bytes;
-import org.apache.tuweni.rlp.RLP;
 import org.apache.tuweni.units.bigints.UInt64;
-import org.ethereum.beacon.discovery.util.RlpUtil;
 
 /**
  * PING checks whether the recipient is alive and informs it about the sender's ENR sequence number.
@@ -27,13 +23,7 @@ public class PingMessage implements V5Message {
   }
 
   public static PingMessage fromBytes(Bytes bytes) {
-    return RlpUtil.readRlpList(
-        bytes,
-        reader -> {
-          final Bytes requestId = checkMaxSize(reader.readValue(), MAX_REQUEST_ID_SIZE);
-          final UInt64 enrSeq = UInt64.valueOf(reader.readBigInteger());
-          return new PingMessage(requestId, enrSeq);
-        });
+    return V5MessageCodec.decodeBody(bytes, V5MessageCodec::decodePing);
   }
 
   @Override
@@ -47,13 +37,7 @@ public class PingMessage implements V5Message {
 
   @Override
   public Bytes getBytes() {
-    return Bytes.concatenate(
-        Bytes.of(getCode().byteCode()),
-        RLP.encodeList(
-            writer -> {
-              writer.writeValue(requestId);
-              writer.writeBigInteger(enrSeq.toBigInteger());
-            }));
+    return V5MessageCodec.encode(this);
   }
 
   @Override
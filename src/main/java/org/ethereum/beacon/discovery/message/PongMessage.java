@@ -4,16 +4,9 @@
 
 package org.ethereum.beacon.discovery.message;
 
-import static org.ethereum.beacon.discovery.util.RlpUtil.checkMaxSize;
-import static org.ethereum.beacon.discovery.util.RlpUtil.checkSizeEither;
-import static org.ethereum.beacon.discovery.util.Utils.isPortValid;
-
 import com.google.common.base.Objects;
 import org.apache.tuweni.bytes.Bytes;
-import org.apache.tuweni.rlp.RLP;
 import org.apache.tuweni.units.bigints.UInt64;
-import org.ethereum.beacon.discovery.util.RlpDecodeException;
-import org.ethereum.beacon.discovery.util.RlpUtil;
 
 /** PONG is the reply to PING {@link PingMessage} */
 public class PongMessage implements V5Message {
@@ -34,18 +27,7 @@ public class PongMessage implements V5Message {
   }
 
   public static PongMessage fromBytes(Bytes bytes) {
-    return RlpUtil.readRlpList(
-        bytes,
-        reader -> {
-          final Bytes requestId = checkMaxSize(reader.readValue(), MAX_REQUEST_ID_SIZE);
-          final UInt64 enrSeq = UInt64.valueOf(reader.readBigInteger());
-          final Bytes recipientIp = checkSizeEither(reader.readValue(), 4, 16);
-          final int recipientPort = reader.readInt();
-          if (!isPortValid(recipientPort)) {
-            throw new RlpDecodeException("Invalid port number");
-          }
-          return new PongMessage(requestId, enrSeq, recipientIp, recipientPort);
-        });
+    return V5MessageCodec.decodeBody(bytes, V5MessageCodec::decodePong);
   }
 
   @Override
@@ -67,15 +49,7 @@ public class PongMessage implements V5Message {
 
   @Override
   public Bytes getBytes() {
-    return Bytes.concatenate(
-        Bytes.of(getCode().byteCode()),
-        RLP.encodeList(
-            writer -> {
-              writer.writeValue(requestId);
-              writer.writeBigInteger(enrSeq.toBigInteger());
-              writer.writeValue(recipientIp);
-              writer.writeInt(recipientPort);
-            }));
+    return V5MessageCodec.encode(this);
   }
 
   @Override
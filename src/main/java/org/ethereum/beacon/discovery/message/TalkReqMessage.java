@@ -4,12 +4,8 @@
 
 package org.ethereum.beacon.discovery.message;
 
-import static org.ethereum.beacon.discovery.util.RlpUtil.checkMaxSize;
-
 import java.util.Objects;
 import org.apache.tuweni.bytes.Bytes;
-import org.apache.tuweni.rlp.RLP;
-import org.ethereum.beacon.discovery.util.RlpUtil;
 
 /**
  * TALKREQ sends an application-level request. The purpose of this message is pre-negotiating
@@ -31,14 +27,7 @@ public class TalkReqMessage implements V5Message {
   }
 
   public static TalkReqMessage fromBytes(Bytes bytes) {
-    return RlpUtil.readRlpList(
-        bytes,
-        reader -> {
-          final Bytes requestId = checkMaxSize(reader.readValue(), MAX_REQUEST_ID_SIZE);
-          final Bytes protocol = reader.readValue();
-          final Bytes request = reader.readValue();
-          return new TalkReqMessage(requestId, protocol, request);
-        });
+    return V5MessageCodec.decodeBody(bytes, V5MessageCodec::decodeTalkReq);
   }
 
   @Override
@@ -56,14 +45,7 @@ public class TalkReqMessage implements V5Message {
 
   @Override
   public Bytes getBytes() {
-    return Bytes.concatenate(
-        Bytes.of(getCode().byteCode()),
-        RLP.encodeList(
-            writer -> {
-              writer.writeValue(requestId);
-              writer.writeValue(protocol);
-              writer.writeValue(request);
-            }));
+    return V5MessageCodec.encode(this);
   }
 
   @Override
@@ -4,12 +4,8 @@
 
 package org.ethereum.beacon.discovery.message;
 
-import static org.ethereum.beacon.discovery.util.RlpUtil.checkMaxSize;
-
 import java.util.Objects;
 import org.apache.tuweni.bytes.Bytes;
-import org.apache.tuweni.rlp.RLP;
-import org.ethereum.beacon.discovery.util.RlpUtil;
 
 /** TALKRESP is the response to TALKREQ. */
 public class TalkRespMessage implements V5Message {
@@ -25,13 +21,7 @@ public class TalkRespMessage implements V5Message {
   }
 
   public static TalkRespMessage fromBytes(Bytes bytes) {
-    return RlpUtil.readRlpList(
-        bytes,
-        reader -> {
-          final Bytes requestId = checkMaxSize(reader.readValue(), MAX_REQUEST_ID_SIZE);
-          final Bytes response = reader.readValue();
-          return new TalkRespMessage(requestId, response);
-        });
+    return V5MessageCodec.decodeBody(bytes, V5MessageCodec::decodeTalkResp);
   }
 
   @Override
@@ -45,13 +35,7 @@ public class TalkRespMessage implements V5Message {
 
   @Override
   public Bytes getBytes() {
-    return Bytes.concatenate(
-        Bytes.of(getCode().byteCode()),
-        RLP.encodeList(
-            writer -> {
-              writer.writeValue(requestId);
-              writer.writeValue(response);
-            }));
+    return V5MessageCodec.encode(this);
   }
 
   @Override
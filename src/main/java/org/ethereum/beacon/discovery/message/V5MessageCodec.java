@@ -0,0 +1,501 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.message;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.ethereum.beacon.discovery.message.V5Message.MAX_REQUEST_ID_SIZE;
+import static org.ethereum.beacon.discovery.util.RlpUtil.checkSizeEither;
+import static org.ethereum.beacon.discovery.util.Utils.isPortValid;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.rlp.RLP;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.ethereum.beacon.discovery.schema.LazyNodeRecord;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.DecodeException;
+import org.ethereum.beacon.discovery.util.RlpDecodeException;
+
+/**
+ * Encodes and decodes the PING, PONG, FINDNODE, NODES, TALKREQ and TALKRESP messages, i.e. the
+ * message code followed by the RLP list of the message fields.
+ *
+ * <p>The encoded size is computed up front so messages are written straight into a buffer of the
+ * right size, or one provided by the caller. Decoding reads from a {@link ByteBuffer} and only
+ * allocates the field values of the resulting message, which are copied so the buffer can be
+ * reused. Only canonical RLP is accepted, the same as the tuweni RLP reader this replaces.
+ */
+public class V5MessageCodec {
+  private static final int SHORT_STRING_OFFSET = 0x80;
+  private static final int LONG_STRING_OFFSET = 0xb7;
+  private static final int SHORT_LIST_OFFSET = 0xc0;
+  private static final int LONG_LIST_OFFSET = 0xf7;
+  private static final int MAX_SHORT_LENGTH = 55;
+  private static final int MAX_LENGTH_SIZE = 4;
+
+  /** Returns the encoded size of {@code message}, including the message code. */
+  public static int getEncodedSize(final V5Message message) {
+    return 1 + listSize(getPayloadSize(message));
+  }
+
+  /** Encodes {@code message} into a new array of the exact size. */
+  public static Bytes encode(final V5Message message) {
+    final byte[] bytes = new byte[getEncodedSize(message)];
+    encode(message, ByteBuffer.wrap(bytes));
+    return Bytes.wrap(bytes);
+  }
+
+  /**
+   * Writes {@code message} to {@code buffer} at its position, advancing it by the encoded size.
+   *
+   * @throws IllegalArgumentException if the buffer doesn't have room for the message
+   */
+  public static void encode(final V5Message message, final ByteBuffer buffer) {
+    final int payloadSize = getPayloadSize(message);
+    final int size = 1 + listSize(payloadSize);
+    checkArgument(
+        buffer.remaining() >= size,
+        "Buffer has %s bytes left but %s are needed",
+        buffer.remaining(),
+        size);
+    buffer.put(message.getCode().byteCode());
+    writeLength(buffer, SHORT_LIST_OFFSET, payloadSize);
+    writeValue(buffer, message.getRequestId());
+    switch (message.getCode()) {
+      case PING:
+        {
+          writeLong(buffer, ((PingMessage) message).getEnrSeq().toLong());
+          break;
+        }
+      case PONG:
+        {
+          final PongMessage pong = (PongMessage) message;
+          writeLong(buffer, pong.getEnrSeq().toLong());
+          writeValue(buffer, pong.getRecipientIp());
+          writeLong(buffer, pong.getRecipientPort());
+          break;
+        }
+      case FINDNODE:
+        {
+          final List<Integer> distances = ((FindNodeMessage) message).getDistances();
+          writeLength(buffer, SHORT_LIST_OFFSET, getDistancesSize(distances));
+          distances.forEach(distance -> writeLong(buffer, distance));
+          break;
+        }
+      case NODES:
+        {
+          final NodesMessage nodes = (NodesMessage) message;
+          writeLong(buffer, nodes.getTotal());
+          writeLength(buffer, SHORT_LIST_OFFSET, getNodeRecordsSize(nodes.getNodeRecords()));
+          // Records are already encoded, they keep their canonical encoding
+          nodes.getNodeRecords().forEach(record -> put(buffer, record.serialize()));
+          break;
+        }
+      case TALKREQ:
+        {
+          final TalkReqMessage talkReq = (TalkReqMessage) message;
+          writeValue(buffer, talkReq.getProtocol());
+          writeValue(buffer, talkReq.getRequest());
+          break;
+        }
+      case TALKRESP:
+        {
+          writeValue(buffer, ((TalkRespMessage) message).getResponse());
+          break;
+        }
+      default:
+        {
+          throw unsupported(message.getCode());
+        }
+    }
+  }
+
+  /**
+   * Decodes the message from the position of {@code buffer} up to its limit, advancing the
+   * position to the limit.
+   *
+   * @throws DecodeException if the message is malformed or there is data after it
+   */
+  public static V5Message decode(
+      final ByteBuffer buffer, final NodeRecordFactory nodeRecordFactory) {
+    final byte codeByte = peek(buffer);
+    final MessageCode code = MessageCode.fromNumber(codeByte);
+    if (code == null) {
+      throw new DecodeException("Invalid message code: " + codeByte);
+    }
+    buffer.get();
+    final V5Message message;
+    switch (code) {
+      case PING:
+        {
+          message = decodePing(buffer);
+          break;
+        }
+      case PONG:
+        {
+          message = decodePong(buffer);
+          break;
+        }
+      case FINDNODE:
+        {
+          message = decodeFindNode(buffer);
+          break;
+        }
+      case NODES:
+        {
+          message = decodeNodes(buffer, nodeRecordFactory);
+          break;
+        }
+      case TALKREQ:
+        {
+          message = decodeTalkReq(buffer);
+          break;
+        }
+      case TALKRESP:
+        {
+          message = decodeTalkResp(buffer);
+          break;
+        }
+      default:
+        {
+          throw unsupported(code);
+        }
+    }
+    checkComplete(buffer, buffer.limit());
+    return message;
+  }
+
+  /** Decodes a message body, the RLP list without the message code, which must fill all bytes. */
+  static <T> T decodeBody(final Bytes bytes, final Function<ByteBuffer, T> decoder) {
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes.toArrayUnsafe());
+    final T message = decoder.apply(buffer);
+    checkComplete(buffer, buffer.limit());
+    return message;
+  }
+
+  static PingMessage decodePing(final ByteBuffer buffer) {
+    final int end = readListEnd(buffer);
+    final Bytes requestId = readValue(buffer, MAX_REQUEST_ID_SIZE);
+    final UInt64 enrSeq = readUInt64(buffer);
+    checkComplete(buffer, end);
+    return new PingMessage(requestId, enrSeq);
+  }
+
+  static PongMessage decodePong(final ByteBuffer buffer) {
+    final int end = readListEnd(buffer);
+    final Bytes requestId = readValue(buffer, MAX_REQUEST_ID_SIZE);
+    final UInt64 enrSeq = readUInt64(buffer);
+    final Bytes recipientIp = checkSizeEither(readValue(buffer, 16), 4, 16);
+    final int recipientPort = readInt(buffer);
+    if (!isPortValid(recipientPort)) {
+      throw new RlpDecodeException("Invalid port number");
+    }
+    checkComplete(buffer, end);
+    return new PongMessage(requestId, enrSeq, recipientIp, recipientPort);
+  }
+
+  static FindNodeMessage decodeFindNode(final ByteBuffer buffer) {
+    final int end = readListEnd(buffer);
+    final Bytes requestId = readValue(buffer, MAX_REQUEST_ID_SIZE);
+    final int distancesEnd = readListEnd(buffer);
+    final List<Integer> distances = new ArrayList<>();
+    while (buffer.position() < distancesEnd) {
+      final int distance = readInt(buffer);
+      if (!FindNodeMessage.isValidDistance(distance)) {
+        throw new RlpDecodeException("Invalid distance");
+      }
+      distances.add(distance);
+    }
+    checkComplete(buffer, distancesEnd);
+    checkComplete(buffer, end);
+    return new FindNodeMessage(requestId, distances);
+  }
+
+  static NodesMessage decodeNodes(
+      final ByteBuffer buffer, final NodeRecordFactory nodeRecordFactory) {
+    final int end = readListEnd(buffer);
+    final Bytes requestId = readValue(buffer, MAX_REQUEST_ID_SIZE);
+    final int total = readInt(buffer);
+    final int recordsEnd = readListEnd(buffer);
+    final List<LazyNodeRecord> nodeRecords = new ArrayList<>();
+    while (buffer.position() < recordsEnd) {
+      final int recordStart = buffer.position();
+      buffer.position(readListEnd(buffer));
+      final byte[] record = new byte[buffer.position() - recordStart];
+      buffer.get(recordStart, record);
+      nodeRecords.add(RLP.decode(Bytes.wrap(record), nodeRecordFactory::fromRlpLazily));
+    }
+    checkComplete(buffer, recordsEnd);
+    checkComplete(buffer, end);
+    return NodesMessage.fromLazyNodeRecords(requestId, total, nodeRecords);
+  }
+
+  static TalkReqMessage decodeTalkReq(final ByteBuffer buffer) {
+    final int end = readListEnd(buffer);
+    final Bytes requestId = readValue(buffer, MAX_REQUEST_ID_SIZE);
+    final Bytes protocol = readValue(buffer, Integer.MAX_VALUE);
+    final Bytes request = readValue(buffer, Integer.MAX_VALUE);
+    checkComplete(buffer, end);
+    return new TalkReqMessage(requestId, protocol, request);
+  }
+
+  static TalkRespMessage decodeTalkResp(final ByteBuffer buffer) {
+    final int end = readListEnd(buffer);
+    final Bytes requestId = readValue(buffer, MAX_REQUEST_ID_SIZE);
+    final Bytes response = readValue(buffer, Integer.MAX_VALUE);
+    checkComplete(buffer, end);
+    return new TalkRespMessage(requestId, response);
+  }
+
+  private static int getPayloadSize(final V5Message message) {
+    final int requestIdSize = valueSize(message.getRequestId());
+    switch (message.getCode()) {
+      case PING:
+        {
+          return requestIdSize + longSize(((PingMessage) message).getEnrSeq().toLong());
+        }
+      case PONG:
+        {
+          final PongMessage pong = (PongMessage) message;
+          return requestIdSize
+              + longSize(pong.getEnrSeq().toLong())
+              + valueSize(pong.getRecipientIp())
+              + longSize(pong.getRecipientPort());
+        }
+      case FINDNODE:
+        {
+          final List<Integer> distances = ((FindNodeMessage) message).getDistances();
+          return requestIdSize + listSize(getDistancesSize(distances));
+        }
+      case NODES:
+        {
+          final NodesMessage nodes = (NodesMessage) message;
+          return requestIdSize
+              + longSize(nodes.getTotal())
+              + listSize(getNodeRecordsSize(nodes.getNodeRecords()));
+        }
+      case TALKREQ:
+        {
+          final TalkReqMessage talkReq = (TalkReqMessage) message;
+          return requestIdSize
+              + valueSize(talkReq.getProtocol())
+              + valueSize(talkReq.getRequest());
+        }
+      case TALKRESP:
+        {
+          return requestIdSize + valueSize(((TalkRespMessage) message).getResponse());
+        }
+      default:
+        {
+          throw unsupported(message.getCode());
+        }
+    }
+  }
+
+  private static int getDistancesSize(final List<Integer> distances) {
+    int size = 0;
+    for (int distance : distances) {
+      size += longSize(distance);
+    }
+    return size;
+  }
+
+  private static int getNodeRecordsSize(final List<NodeRecord> nodeRecords) {
+    int size = 0;
+    for (NodeRecord nodeRecord : nodeRecords) {
+      size += nodeRecord.serialize().size();
+    }
+    return size;
+  }
+
+  private static RuntimeException unsupported(final MessageCode code) {
+    return new RuntimeException(
+        String.format("Creation of discovery V5 messages from code %s is not supported", code));
+  }
+
+  // Encoding
+
+  private static int valueSize(final Bytes value) {
+    if (value.size() == 1 && (value.get(0) & 0xff) < SHORT_STRING_OFFSET) {
+      return 1;
+    }
+    return lengthSize(value.size()) + value.size();
+  }
+
+  // Integers are encoded as their minimal big-endian bytes, treating ints as longs like tuweni
+  private static int longSize(final long value) {
+    if (value > 0 && value < SHORT_STRING_OFFSET) {
+      return 1;
+    }
+    return 1 + byteCount(value);
+  }
+
+  private static int listSize(final int payloadSize) {
+    return lengthSize(payloadSize) + payloadSize;
+  }
+
+  private static int lengthSize(final int length) {
+    return length <= MAX_SHORT_LENGTH ? 1 : 1 + byteCount(length);
+  }
+
+  private static int byteCount(final long value) {
+    return (Long.SIZE - Long.numberOfLeadingZeros(value) + 7) / Byte.SIZE;
+  }
+
+  private static void writeValue(final ByteBuffer buffer, final Bytes value) {
+    if (value.size() == 1 && (value.get(0) & 0xff) < SHORT_STRING_OFFSET) {
+      buffer.put(value.get(0));
+      return;
+    }
+    writeLength(buffer, SHORT_STRING_OFFSET, value.size());
+    put(buffer, value);
+  }
+
+  private static void writeLong(final ByteBuffer buffer, final long value) {
+    if (value > 0 && value < SHORT_STRING_OFFSET) {
+      buffer.put((byte) value);
+      return;
+    }
+    final int byteCount = byteCount(value);
+    buffer.put((byte) (SHORT_STRING_OFFSET + byteCount));
+    writeBigEndian(buffer, value, byteCount);
+  }
+
+  private static void writeLength(final ByteBuffer buffer, final int offset, final int length) {
+    if (length <= MAX_SHORT_LENGTH) {
+      buffer.put((byte) (offset + length));
+      return;
+    }
+    final int byteCount = byteCount(length);
+    buffer.put((byte) (offset + MAX_SHORT_LENGTH + byteCount));
+    writeBigEndian(buffer, length, byteCount);
+  }
+
+  private static void writeBigEndian(final ByteBuffer buffer, final long value, final int size) {
+    for (int i = size - 1; i >= 0; i--) {
+      buffer.put((byte) (value >>> (i * Byte.SIZE)));
+    }
+  }
+
+  private static void put(final ByteBuffer buffer, final Bytes bytes) {
+    // No copy for values wrapping a whole array, which is how they are usually created
+    buffer.put(bytes.toArrayUnsafe());
+  }
+
+  // Decoding
+
+  private static byte peek(final ByteBuffer buffer) {
+    if (!buffer.hasRemaining()) {
+      throw new RlpDecodeException("Unexpected end of input");
+    }
+    return buffer.get(buffer.position());
+  }
+
+  /** Reads a list header, returning the position where the list ends. */
+  private static int readListEnd(final ByteBuffer buffer) {
+    final int prefix = peek(buffer) & 0xff;
+    if (prefix < SHORT_LIST_OFFSET) {
+      throw new RlpDecodeException("Expected a list but got a value");
+    }
+    buffer.get();
+    final int length;
+    if (prefix <= LONG_LIST_OFFSET) {
+      length = prefix - SHORT_LIST_OFFSET;
+    } else {
+      length = readLongLength(buffer, prefix - LONG_LIST_OFFSET);
+    }
+    checkAvailable(buffer, length);
+    return buffer.position() + length;
+  }
+
+  /** Reads a value header, returning the value length with the position at its first byte. */
+  private static int readValueLength(final ByteBuffer buffer) {
+    final int prefix = peek(buffer) & 0xff;
+    if (prefix < SHORT_STRING_OFFSET) {
+      // The byte is its own value
+      return 1;
+    }
+    if (prefix >= SHORT_LIST_OFFSET) {
+      throw new RlpDecodeException("Expected a value but got a list");
+    }
+    buffer.get();
+    final int length;
+    if (prefix <= LONG_STRING_OFFSET) {
+      length = prefix - SHORT_STRING_OFFSET;
+      if (length == 1 && (peek(buffer) & 0xff) < SHORT_STRING_OFFSET) {
+        throw new RlpDecodeException("Single byte value below 0x80 must not have a prefix");
+      }
+    } else {
+      length = readLongLength(buffer, prefix - LONG_STRING_OFFSET);
+    }
+    checkAvailable(buffer, length);
+    return length;
+  }
+
+  private static int readLongLength(final ByteBuffer buffer, final int lengthSize) {
+    checkAvailable(buffer, lengthSize);
+    if (lengthSize > MAX_LENGTH_SIZE || buffer.get(buffer.position()) == 0) {
+      throw new RlpDecodeException("Invalid length encoding");
+    }
+    long length = 0;
+    for (int i = 0; i < lengthSize; i++) {
+      length = (length << Byte.SIZE) | (buffer.get() & 0xff);
+    }
+    if (length <= MAX_SHORT_LENGTH || length > Integer.MAX_VALUE) {
+      throw new RlpDecodeException("Invalid length encoding");
+    }
+    return (int) length;
+  }
+
+  private static Bytes readValue(final ByteBuffer buffer, final int maxSize) {
+    final int length = readValueLength(buffer);
+    if (length > maxSize) {
+      throw new RlpDecodeException("Value of size " + length + " exceeds max size " + maxSize);
+    }
+    final byte[] value = new byte[length];
+    buffer.get(value);
+    return Bytes.wrap(value);
+  }
+
+  private static long readLong(final ByteBuffer buffer, final int maxSize) {
+    final int length = readValueLength(buffer);
+    if (length > maxSize) {
+      throw new RlpDecodeException("Integer of " + length + " bytes is too large");
+    }
+    if (length > 0 && buffer.get(buffer.position()) == 0) {
+      throw new RlpDecodeException("Integer has leading zero bytes");
+    }
+    long value = 0;
+    for (int i = 0; i < length; i++) {
+      value = (value << Byte.SIZE) | (buffer.get() & 0xff);
+    }
+    return value;
+  }
+
+  private static int readInt(final ByteBuffer buffer) {
+    return (int) readLong(buffer, Integer.BYTES);
+  }
+
+  private static UInt64 readUInt64(final ByteBuffer buffer) {
+    final long value = readLong(buffer, Long.BYTES);
+    return value >= 0 ? UInt64.valueOf(value) : UInt64.fromBytes(Bytes.ofUnsignedLong(value));
+  }
+
+  private static void checkAvailable(final ByteBuffer buffer, final int length) {
+    if (length > buffer.remaining()) {
+      throw new RlpDecodeException("Unexpected end of input");
+    }
+  }
+
+  private static void checkComplete(final ByteBuffer buffer, final int end) {
+    if (buffer.position() != end) {
+      throw new RlpDecodeException("Unexpected trailing data detected");
+    }
+  }
+}
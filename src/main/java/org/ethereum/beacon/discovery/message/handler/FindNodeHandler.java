@@ -4,65 +4,137 @@
 
 package org.ethereum.beacon.discovery.message.handler;
 
-import static java.util.Collections.emptyList;
-import static java.util.Collections.singletonList;
-
-import com.google.common.collect.Lists;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.message.FindNodeMessage;
 import org.ethereum.beacon.discovery.message.NodesMessage;
+import org.ethereum.beacon.discovery.message.V5Message;
+import org.ethereum.beacon.discovery.message.V5MessageCodec;
+import org.ethereum.beacon.discovery.packet.OrdinaryMessagePacket;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Answers FINDNODE requests with the live nodes in the requested buckets.
+ *
+ * <p>The same distances are requested over and over, especially from boot nodes, so the batches of
+ * records to send are cached by the requested distances. A cached response is used as long as the
+ * versions of the buckets it was built from are unchanged. Records keep their encoding, so sending
+ * a cached response only copies the encoded records into each NODES message.
+ */
 public class FindNodeHandler implements MessageHandler<FindNodeMessage> {
   private static final Logger LOG = LoggerFactory.getLogger(FindNodeHandler.class);
 
-  /**
-   * The maximum size of any packet is 1280 bytes. Implementations should not generate or process
-   * packets larger than this size. As per specification the maximum size of an ENR is 300 bytes. A
-   * NODES message containing all FINDNODE response records would be at least 4800 bytes, not
-   * including additional data such as the header. To stay below the size limit, NODES responses are
-   * sent as multiple messages and specify the total number of responses in the message. 4х300 =
-   * 1200 and we always have 80 bytes for everything else.
-   */
-  private static final int MAX_NODES_PER_MESSAGE = 4;
-
   /**
    * Implementations should limit the number of nodes in the result set. The recommended result
    * limit for FINDNODE queries is 16 nodes.
    */
   private static final int MAX_TOTAL_NODES_PER_RESPONSE = 16;
 
+  /**
+   * The maximum size of any packet is 1280 bytes, so NODES responses are sent as multiple messages
+   * which specify the total number of messages in the response. Each message is filled with records
+   * up to the largest message which fits in a packet. As per specification the maximum size of an
+   * ENR is 300 bytes, so at least 3 records fit in a message, and typical records of 130 to 200
+   * bytes fit 6 or more.
+   *
+   * <p>Some implementations ignore responses of more than 5 messages, so a response takes at most
+   * the 4 messages it took when 4 records were sent per message. Records which don't fit in those
+   * are left out, which only happens when most records are close to the maximum size.
+   */
+  private static final int MAX_MESSAGES_PER_RESPONSE = 4;
+
+  // Largest request ID, so batches fit in a message whatever the request ID
+  private static final Bytes MAX_REQUEST_ID =
+      Bytes.repeat((byte) 0xff, V5Message.MAX_REQUEST_ID_SIZE);
+
+  /** Maximum number of distinct sets of requested distances a response is cached for. */
+  private static final int MAX_CACHED_RESPONSES = 1024;
+
+  // Batches of records to send by the requested distances, without duplicates and in order
+  private final Cache<List<Integer>, CachedResponse> responses =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_RESPONSES).build();
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong cacheMisses = new AtomicLong();
+
   public FindNodeHandler() {}
 
   @Override
   public void handle(FindNodeMessage message, NodeSession session) {
-    List<NodeRecord> nodeRecordInfos =
-        message.getDistances().stream()
-            .distinct()
-            .flatMap(session::getNodeRecordsInBucket)
-            .limit(MAX_TOTAL_NODES_PER_RESPONSE)
-            .collect(Collectors.toList());
-
-    List<List<NodeRecord>> nodeRecordBatches =
-        Lists.partition(nodeRecordInfos, MAX_NODES_PER_MESSAGE);
+    final List<Integer> distances = message.getDistances().stream().distinct().toList();
+    // Versions are read before the buckets so a response is never newer than its versions
+    final long[] versions = distances.stream().mapToLong(session::getBucketVersion).toArray();
+    CachedResponse response = responses.getIfPresent(distances);
+    if (response != null && Arrays.equals(response.versions, versions)) {
+      cacheHits.incrementAndGet();
+    } else {
+      cacheMisses.incrementAndGet();
+      response = new CachedResponse(versions, createNodeRecordBatches(distances, session));
+      responses.put(distances, response);
+    }
+    final List<List<NodeRecord>> nodeRecordBatches = response.nodeRecordBatches;
 
     LOG.trace(
-        "Sending {} nodes in reply to request with distances {} in session {}",
-        nodeRecordInfos.size(),
+        "Sending {} batches of nodes in reply to request with distances {} in session {}",
+        nodeRecordBatches.size(),
         message.getDistances(),
         session);
 
-    List<List<NodeRecord>> nonEmptyNodeRecordsList =
-        nodeRecordBatches.isEmpty() ? singletonList(emptyList()) : nodeRecordBatches;
-
-    nonEmptyNodeRecordsList.forEach(
+    nodeRecordBatches.forEach(
         recordsList ->
             session.sendOutgoingOrdinary(
-                new NodesMessage(
-                    message.getRequestId(), nonEmptyNodeRecordsList.size(), recordsList)));
+                new NodesMessage(message.getRequestId(), nodeRecordBatches.size(), recordsList)));
+  }
+
+  private static List<List<NodeRecord>> createNodeRecordBatches(
+      final List<Integer> distances, final NodeSession session) {
+    final List<NodeRecord> nodeRecords =
+        distances.stream()
+            .flatMap(session::getNodeRecordsInBucket)
+            .limit(MAX_TOTAL_NODES_PER_RESPONSE)
+            .toList();
+
+    final List<List<NodeRecord>> nodeRecordBatches = new ArrayList<>();
+    List<NodeRecord> batch = new ArrayList<>();
+    for (NodeRecord nodeRecord : nodeRecords) {
+      batch.add(nodeRecord);
+      if (batch.size() > 1 && getMaxEncodedSize(batch) > OrdinaryMessagePacket.MAX_MESSAGE_SIZE) {
+        batch.remove(batch.size() - 1);
+        nodeRecordBatches.add(batch);
+        if (nodeRecordBatches.size() == MAX_MESSAGES_PER_RESPONSE) {
+          return nodeRecordBatches;
+        }
+        batch = new ArrayList<>(List.of(nodeRecord));
+      }
+    }
+    // Always at least one message, even if there are no records
+    nodeRecordBatches.add(batch);
+    return nodeRecordBatches;
+  }
+
+  private static int getMaxEncodedSize(final List<NodeRecord> nodeRecords) {
+    return V5MessageCodec.getEncodedSize(
+        new NodesMessage(MAX_REQUEST_ID, MAX_MESSAGES_PER_RESPONSE, nodeRecords));
+  }
+
+  public FindNodeStats getStats() {
+    return new FindNodeStats(cacheHits.get(), cacheMisses.get(), responses.size());
+  }
+
+  private static class CachedResponse {
+    private final long[] versions;
+    private final List<List<NodeRecord>> nodeRecordBatches;
+
+    private CachedResponse(final long[] versions, final List<List<NodeRecord>> nodeRecordBatches) {
+      this.versions = versions;
+      this.nodeRecordBatches = nodeRecordBatches;
+    }
   }
 }
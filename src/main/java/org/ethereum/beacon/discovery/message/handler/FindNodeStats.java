@@ -0,0 +1,54 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.message.handler;
+
+import com.google.common.base.MoreObjects;
+
+public class FindNodeStats {
+  private final long cacheHitCount;
+  private final long cacheMissCount;
+  private final long cachedResponseCount;
+
+  public FindNodeStats(
+      final long cacheHitCount, final long cacheMissCount, final long cachedResponseCount) {
+    this.cacheHitCount = cacheHitCount;
+    this.cacheMissCount = cacheMissCount;
+    this.cachedResponseCount = cachedResponseCount;
+  }
+
+  /** Total number of FINDNODE requests answered with a cached response */
+  public long getCacheHitCount() {
+    return cacheHitCount;
+  }
+
+  /**
+   * Total number of FINDNODE requests for which the response was built from the routing table,
+   * because it wasn't cached or the buckets changed since
+   */
+  public long getCacheMissCount() {
+    return cacheMissCount;
+  }
+
+  /** Share of FINDNODE requests answered with a cached response, 1.0 if there were none */
+  public double getCacheHitRate() {
+    final long requestCount = cacheHitCount + cacheMissCount;
+    return requestCount == 0 ? 1.0 : (double) cacheHitCount / requestCount;
+  }
+
+  /** Number of responses currently cached, which may include ones no longer up to date */
+  public long getCachedResponseCount() {
+    return cachedResponseCount;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("cacheHitCount", cacheHitCount)
+        .add("cacheMissCount", cacheMissCount)
+        .add("cacheHitRate", getCacheHitRate())
+        .add("cachedResponseCount", cachedResponseCount)
+        .toString();
+  }
+}
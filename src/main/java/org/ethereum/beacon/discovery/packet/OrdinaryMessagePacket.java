@@ -18,6 +18,12 @@ import org.ethereum.beacon.discovery.util.DecodeException;
  */
 public interface OrdinaryMessagePacket extends MessagePacket<OrdinaryAuthData> {
 
+  /**
+   * Size of the largest message which fits in a packet of 1280 bytes, after the 16 byte masking IV,
+   * the 23 byte static header, the 32 byte source node ID as authdata and the 16 byte GCM tag.
+   */
+  int MAX_MESSAGE_SIZE = 1280 - 16 - 23 - 32 - 16;
+
   static OrdinaryMessagePacket create(
       Bytes16 maskingIV, Header<OrdinaryAuthData> header, V5Message message, Bytes gcmKey) {
     return new OrdinaryMessageImpl(maskingIV, header, message, gcmKey);
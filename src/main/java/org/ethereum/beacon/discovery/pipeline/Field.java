@@ -5,6 +5,7 @@
 package org.ethereum.beacon.discovery.pipeline;
 
 import java.net.InetSocketAddress;
+import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.message.V5Message;
 import org.ethereum.beacon.discovery.packet.HandshakeMessagePacket;
 import org.ethereum.beacon.discovery.packet.MessagePacket;
@@ -43,6 +44,8 @@ public class Field<T> {
   public static final Field<Object> BAD_PACKET = new Field<>("BAD_PACKET"); // Bad, rejected packet
   public static final Field<Throwable> BAD_EXCEPTION =
       new Field<>("BAD_EXCEPTION"); // Stores exception for bad packet or message
+  public static final Field<Bytes> WHOAREYOU_CHALLENGE =
+      new Field<>("WHOAREYOU_CHALLENGE"); // Challenge sent before the session was created
 
   private final String name;
 
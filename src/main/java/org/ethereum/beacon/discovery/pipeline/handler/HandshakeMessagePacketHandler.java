@@ -21,6 +21,7 @@ import org.ethereum.beacon.discovery.schema.EnrField;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
 import org.ethereum.beacon.discovery.schema.NodeSession;
+import org.ethereum.beacon.discovery.storage.NodeSource;
 import org.ethereum.beacon.discovery.type.Bytes16;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.slf4j.Logger;
@@ -140,7 +141,7 @@ public class HandshakeMessagePacketHandler implements EnvelopeHandler {
 
       session.setState(AUTHENTICATED);
       envelope.remove(Field.PACKET_HANDSHAKE);
-      enr.ifPresent(session::onNodeRecordReceived);
+      enr.ifPresent(record -> session.onNodeRecordReceived(record, NodeSource.HANDSHAKE));
       NextTaskHandler.tryToSendAwaitTaskIfAny(session, outgoingPipeline, scheduler);
     } catch (Exception ex) {
       LOG.debug(
@@ -8,6 +8,7 @@ import org.ethereum.beacon.discovery.TalkHandler;
 import org.ethereum.beacon.discovery.message.V5Message;
 import org.ethereum.beacon.discovery.message.handler.EnrUpdateTracker.EnrUpdater;
 import org.ethereum.beacon.discovery.message.handler.ExternalAddressSelector;
+import org.ethereum.beacon.discovery.message.handler.FindNodeHandler;
 import org.ethereum.beacon.discovery.pipeline.Envelope;
 import org.ethereum.beacon.discovery.pipeline.EnvelopeHandler;
 import org.ethereum.beacon.discovery.pipeline.Field;
@@ -27,12 +28,17 @@ public class MessageHandler implements EnvelopeHandler {
       LocalNodeRecordStore localNodeRecordStore,
       TalkHandler talkHandler,
       EnrUpdater enrUpdater,
-      ExternalAddressSelector externalAddressSelector) {
+      ExternalAddressSelector externalAddressSelector,
+      FindNodeHandler findNodeHandler) {
 
     this.messageProcessor =
         new MessageProcessor(
             new DiscoveryV5MessageProcessor(
-                localNodeRecordStore, talkHandler, enrUpdater, externalAddressSelector));
+                localNodeRecordStore,
+                talkHandler,
+                enrUpdater,
+                externalAddressSelector,
+                findNodeHandler));
   }
 
   @Override
@@ -4,11 +4,9 @@
 
 package org.ethereum.beacon.discovery.pipeline.handler;
 
-import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.ThreadLocalRandom;
 import org.apache.tuweni.bytes.Bytes;
-import org.ethereum.beacon.discovery.message.V5Message;
 import org.ethereum.beacon.discovery.pipeline.Envelope;
 import org.ethereum.beacon.discovery.pipeline.EnvelopeHandler;
 import org.ethereum.beacon.discovery.pipeline.Field;
@@ -18,30 +16,27 @@ import org.ethereum.beacon.discovery.pipeline.info.RequestInfo;
 import org.ethereum.beacon.discovery.scheduler.Scheduler;
 import org.ethereum.beacon.discovery.schema.NodeSession;
 import org.ethereum.beacon.discovery.schema.NodeSession.SessionState;
-import org.ethereum.beacon.discovery.task.TaskStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Gets next request task in session and processes it */
+/**
+ * Gets next request task in session and processes it. Once the session is authenticated, queued
+ * requests are sent straight away up to the in-flight window of the session.
+ */
 public class NextTaskHandler implements EnvelopeHandler {
   private static final Logger LOG = LoggerFactory.getLogger(NextTaskHandler.class);
-  private static final int DEFAULT_DELAY_MS = 1000;
   private static final int RANDOM_MESSAGE_SIZE = 128;
-  private final Pipeline outgoingPipeline;
-  private final Scheduler scheduler;
-
-  public NextTaskHandler(Pipeline outgoingPipeline, Scheduler scheduler) {
-    this.outgoingPipeline = outgoingPipeline;
-    this.scheduler = scheduler;
-  }
 
+  /**
+   * Triggers sending of the queued requests, if any. Runs via the scheduler so no locks held by the
+   * caller are held while sending.
+   */
   public static void tryToSendAwaitTaskIfAny(
       NodeSession session, Pipeline outgoingPipeline, Scheduler scheduler) {
     if (session.getFirstAwaitRequestInfo().isPresent()) {
       Envelope dummy = new Envelope();
       dummy.put(Field.SESSION, session);
-      scheduler.executeWithDelay(
-          Duration.ofMillis(DEFAULT_DELAY_MS), () -> outgoingPipeline.push(dummy));
+      scheduler.execute(() -> outgoingPipeline.push(dummy));
     }
   }
 
@@ -61,17 +56,16 @@ public class NextTaskHandler implements EnvelopeHandler {
       return;
     }
 
-    RequestInfo requestInfo = requestInfoOpt.get();
-    LOG.trace("Envelope {}: processing awaiting request {}", envelope.getIdString(), requestInfo);
+    LOG.trace(
+        "Envelope {}: processing awaiting request {}",
+        envelope.getIdString(),
+        requestInfoOpt.get());
 
     if (session.getState().equals(SessionState.INITIAL)) {
       session.sendOutgoingRandom(Bytes.random(RANDOM_MESSAGE_SIZE, ThreadLocalRandom.current()));
       session.setState(SessionState.RANDOM_PACKET_SENT);
     } else if (session.getState().equals(SessionState.AUTHENTICATED)) {
-      V5Message message = requestInfo.getMessage();
-      session.sendOutgoingOrdinary(message);
-      requestInfo.setTaskStatus(TaskStatus.SENT);
-      tryToSendAwaitTaskIfAny(session, outgoingPipeline, scheduler);
+      session.sendAwaitingRequests();
     }
   }
 }
@@ -4,16 +4,23 @@
 
 package org.ethereum.beacon.discovery.pipeline.handler;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.net.InetSocketAddress;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.crypto.SECP256K1.SecretKey;
@@ -26,9 +33,12 @@ import org.ethereum.beacon.discovery.scheduler.ExpirationScheduler;
 import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeSession;
+import org.ethereum.beacon.discovery.schema.NodeSession.SessionState;
 import org.ethereum.beacon.discovery.storage.KBuckets;
 import org.ethereum.beacon.discovery.storage.LocalNodeRecordStore;
+import org.ethereum.beacon.discovery.storage.SessionSnapshot;
 import org.ethereum.beacon.discovery.type.Bytes12;
+import org.ethereum.beacon.discovery.type.NodeId;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,26 +46,58 @@ import org.slf4j.LoggerFactory;
 /**
  * Performs {@link Field#SESSION_LOOKUP} request. Looks up for Node session based on NodeId, which
  * should be in request field and stores it in {@link Field#SESSION} field.
+ *
+ * <p>The number of sessions is bounded both in total and for sessions which have not completed the
+ * handshake yet. When a limit is reached the least recently used unauthenticated session is evicted
+ * first, then the least recently used authenticated one. Sessions with in-flight requests are never
+ * evicted. If no session can be evicted, sessions for incoming packets are not created while
+ * sessions for our own outgoing requests are allowed to exceed the limit.
+ *
+ * <p>Locking: sessions call back into the manager while holding their own lock, so the manager
+ * never calls synchronized {@link NodeSession} methods while holding its lock.
  */
 public class NodeSessionManager implements EnvelopeHandler {
+  public static final int DEFAULT_MAX_SESSIONS = 1024;
+  public static final int DEFAULT_MAX_UNAUTHENTICATED_SESSIONS = 256;
+  public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION = 4;
   private static final int SESSION_CLEANUP_DELAY_SECONDS = 180;
   private static final int REQUEST_CLEANUP_DELAY_SECONDS = 60;
   private static final Logger LOG = LoggerFactory.getLogger(NodeSessionManager.class);
   private final LocalNodeRecordStore localNodeRecordStore;
   private final SecretKey staticNodeKey;
   private final KBuckets nodeBucketStorage;
-  private final Map<SessionKey, NodeSession> recentSessions = new ConcurrentHashMap<>();
+  // Access ordered so iteration starts from the least recently used session. Guarded by this.
+  private final Map<SessionKey, NodeSession> recentSessions = new LinkedHashMap<>(16, 0.75f, true);
+  // Sessions currently counted as unauthenticated. Guarded by this and updated only under the
+  // lock, as a session's own state may already have changed before it calls back.
+  private final Set<NodeSession> unauthenticatedSessions = new HashSet<>();
   private final Map<Bytes12, NodeSession> lastNonceToSession = new ConcurrentHashMap<>();
   private final Pipeline outgoingPipeline;
   private final ExpirationScheduler<SessionKey> sessionExpirationScheduler;
   private final ExpirationScheduler<Bytes> requestExpirationScheduler;
+  private final int maxSessions;
+  private final int maxUnauthenticatedSessions;
+  private final int maxInFlightRequestsPerSession;
+  private final AtomicLong evictedUnauthenticatedSessions = new AtomicLong();
+  private final AtomicLong evictedAuthenticatedSessions = new AtomicLong();
+  private final AtomicLong rejectedSessions = new AtomicLong();
 
   public NodeSessionManager(
       final LocalNodeRecordStore localNodeRecordStore,
       final SecretKey staticNodeKey,
       final KBuckets nodeBucketStorage,
       final Pipeline outgoingPipeline,
-      final ExpirationSchedulerFactory expirationSchedulerFactory) {
+      final ExpirationSchedulerFactory expirationSchedulerFactory,
+      final int maxSessions,
+      final int maxUnauthenticatedSessions,
+      final int maxInFlightRequestsPerSession) {
+    checkArgument(maxSessions > 0, "maxSessions must be positive");
+    checkArgument(
+        maxUnauthenticatedSessions > 0 && maxUnauthenticatedSessions <= maxSessions,
+        "maxUnauthenticatedSessions must be positive and not greater than maxSessions");
+    this.maxSessions = maxSessions;
+    this.maxUnauthenticatedSessions = maxUnauthenticatedSessions;
+    this.maxInFlightRequestsPerSession = maxInFlightRequestsPerSession;
     this.localNodeRecordStore = localNodeRecordStore;
     this.staticNodeKey = staticNodeKey;
     this.nodeBucketStorage = nodeBucketStorage;
@@ -88,6 +130,7 @@ public class NodeSessionManager implements EnvelopeHandler {
         .ifPresentOrElse(
             nodeSession -> {
               envelope.put(Field.SESSION, nodeSession);
+              restoreWhoAreYouChallenge(envelope, nodeSession);
               LOG.trace(
                   "Session resolved: {} in envelope #{}", nodeSession, envelope.getIdString());
             },
@@ -96,24 +139,109 @@ public class NodeSessionManager implements EnvelopeHandler {
                     "Session could not be resolved or created for {}", sessionRequest.getNodeId()));
   }
 
+  private void restoreWhoAreYouChallenge(final Envelope envelope, final NodeSession nodeSession) {
+    final Bytes challenge = envelope.get(Field.WHOAREYOU_CHALLENGE);
+    if (challenge == null) {
+      return;
+    }
+    envelope.remove(Field.WHOAREYOU_CHALLENGE);
+    // Only a fresh session can take over a challenge sent by StatelessWhoAreYouHandler
+    if (nodeSession.getState() == SessionState.INITIAL) {
+      nodeSession.restoreWhoAreYouChallenge(challenge);
+    }
+  }
+
   private Optional<NodeSession> getOrCreateSession(
       final SessionLookup sessionLookup, final Envelope envelope) {
+    final boolean incoming = envelope.contains(Field.REMOTE_SENDER);
     return getRemoteSocketAddress(envelope)
-        .map(
+        .flatMap(
             remoteSocketAddress -> {
-              SessionKey sessionKey =
+              final SessionKey sessionKey =
                   new SessionKey(sessionLookup.getNodeId(), remoteSocketAddress);
-              NodeSession context =
-                  recentSessions.computeIfAbsent(
-                      sessionKey,
-                      existingSessionKey ->
-                          createNodeSession(existingSessionKey, sessionLookup.getNodeRecord()));
-
-              sessionExpirationScheduler.put(sessionKey, () -> deleteSession(sessionKey));
+              final Optional<NodeSession> context =
+                  getSession(sessionKey)
+                      .or(
+                          () ->
+                              addSession(
+                                  sessionKey,
+                                  createNodeSession(sessionKey, sessionLookup.getNodeRecord()),
+                                  incoming));
+              context.ifPresent(
+                  __ ->
+                      sessionExpirationScheduler.put(sessionKey, () -> deleteSession(sessionKey)));
               return context;
             });
   }
 
+  /** Returns the session with the node at the given address, if any, without creating one */
+  public Optional<NodeSession> getExistingSession(
+      final Bytes nodeId, final InetSocketAddress remoteAddress) {
+    return getSession(new SessionKey(nodeId, remoteAddress));
+  }
+
+  private synchronized Optional<NodeSession> getSession(final SessionKey sessionKey) {
+    return Optional.ofNullable(recentSessions.get(sessionKey));
+  }
+
+  private Optional<NodeSession> addSession(
+      final SessionKey sessionKey, final NodeSession newSession, final boolean incoming) {
+    final List<NodeSession> evictedSessions = new ArrayList<>();
+    final Optional<NodeSession> session;
+    synchronized (this) {
+      final NodeSession existingSession = recentSessions.get(sessionKey);
+      if (existingSession != null) {
+        // Lost the race to create the session
+        session = Optional.of(existingSession);
+      } else if (makeRoomForNewSession(evictedSessions) || !incoming) {
+        recentSessions.put(sessionKey, newSession);
+        unauthenticatedSessions.add(newSession);
+        session = Optional.of(newSession);
+      } else {
+        rejectedSessions.incrementAndGet();
+        session = Optional.empty();
+      }
+    }
+    evictedSessions.forEach(this::onSessionRemoved);
+    return session;
+  }
+
+  private boolean makeRoomForNewSession(final List<NodeSession> evictedSessions) {
+    if (unauthenticatedSessions.size() >= maxUnauthenticatedSessions
+        && !evictLeastRecentlyUsed(false, evictedSessions)) {
+      return false;
+    }
+    return recentSessions.size() < maxSessions
+        || evictLeastRecentlyUsed(false, evictedSessions)
+        || evictLeastRecentlyUsed(true, evictedSessions);
+  }
+
+  private boolean evictLeastRecentlyUsed(
+      final boolean authenticated, final List<NodeSession> evictedSessions) {
+    final Iterator<Map.Entry<SessionKey, NodeSession>> iterator =
+        recentSessions.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Map.Entry<SessionKey, NodeSession> entry = iterator.next();
+      final NodeSession session = entry.getValue();
+      if (unauthenticatedSessions.contains(session) == authenticated
+          || session.hasInFlightRequests()) {
+        continue;
+      }
+      iterator.remove();
+      sessionExpirationScheduler.cancel(entry.getKey());
+      if (authenticated) {
+        evictedAuthenticatedSessions.incrementAndGet();
+      } else {
+        unauthenticatedSessions.remove(session);
+        evictedUnauthenticatedSessions.incrementAndGet();
+      }
+      LOG.trace("Evicted session {} to stay within session limits", session);
+      evictedSessions.add(session);
+      return true;
+    }
+    return false;
+  }
+
   public void dropSession(final NodeSession session) {
     final SessionKey sessionKey = new SessionKey(session.getNodeId(), session.getRemoteAddress());
     sessionExpirationScheduler.cancel(sessionKey);
@@ -121,23 +249,49 @@ public class NodeSessionManager implements EnvelopeHandler {
   }
 
   private void deleteSession(final SessionKey sessionKey) {
-    final NodeSession removedSession = recentSessions.remove(sessionKey);
+    final NodeSession removedSession;
+    synchronized (this) {
+      removedSession = recentSessions.remove(sessionKey);
+      if (removedSession != null) {
+        unauthenticatedSessions.remove(removedSession);
+      }
+    }
     if (removedSession != null) {
-      // Mark inactive to prevent registering any new nonces
-      removedSession.markInactive();
-      // And then clean up the last recorded nonce, if any
-      removedSession.getLastOutboundNonce().ifPresent(lastNonceToSession::remove);
+      onSessionRemoved(removedSession);
     }
   }
 
+  private void onSessionRemoved(final NodeSession removedSession) {
+    // Mark inactive to prevent registering any new nonces
+    removedSession.markInactive();
+    // And then clean up the last recorded nonce, if any
+    removedSession.getLastOutboundNonce().ifPresent(lastNonceToSession::remove);
+  }
+
   @VisibleForTesting
-  public Optional<NodeSession> getNodeSession(final Bytes nodeId) {
+  public synchronized Optional<NodeSession> getNodeSession(final Bytes nodeId) {
+    final NodeId id = NodeId.wrap(nodeId);
     return recentSessions.entrySet().stream()
-        .filter(e -> e.getKey().nodeId.equals(nodeId))
+        .filter(e -> e.getKey().id.equals(id))
         .map(Map.Entry::getValue)
         .findFirst();
   }
 
+  public SessionStats getSessionStats() {
+    final int sessionCount;
+    final int unauthenticatedCount;
+    synchronized (this) {
+      sessionCount = recentSessions.size();
+      unauthenticatedCount = unauthenticatedSessions.size();
+    }
+    return new SessionStats(
+        sessionCount,
+        unauthenticatedCount,
+        evictedUnauthenticatedSessions.get(),
+        evictedAuthenticatedSessions.get(),
+        rejectedSessions.get());
+  }
+
   public Optional<NodeSession> getNodeSessionByLastOutboundNonce(final Bytes12 nonce) {
     return Optional.ofNullable(lastNonceToSession.get(nonce));
   }
@@ -148,6 +302,70 @@ public class NodeSessionManager implements EnvelopeHandler {
     lastNonceToSession.put(newNonce, session);
   }
 
+  /**
+   * Called by an active session, while holding its own lock, whenever its state changes so the
+   * number of unauthenticated sessions can be tracked without polling every session.
+   */
+  public synchronized void onSessionStateChange(
+      final NodeSession session, final SessionState previousState, final SessionState newState) {
+    final boolean wasAuthenticated = previousState == SessionState.AUTHENTICATED;
+    final boolean isAuthenticated = newState == SessionState.AUTHENTICATED;
+    if (wasAuthenticated == isAuthenticated) {
+      return;
+    }
+    final SessionKey sessionKey = new SessionKey(session.getNodeId(), session.getRemoteAddress());
+    if (recentSessions.get(sessionKey) != session) {
+      // Already removed, and no longer counted
+      return;
+    }
+    if (isAuthenticated) {
+      unauthenticatedSessions.remove(session);
+    } else {
+      unauthenticatedSessions.add(session);
+    }
+  }
+
+  /** Captures the keys of all authenticated sessions with a known node record. */
+  public List<SessionSnapshot> createSessionSnapshots() {
+    final List<NodeSession> sessions;
+    synchronized (this) {
+      sessions = new ArrayList<>(recentSessions.values());
+    }
+    final List<SessionSnapshot> snapshots = new ArrayList<>();
+    for (NodeSession session : sessions) {
+      session.createSnapshot().ifPresent(snapshots::add);
+    }
+    return snapshots;
+  }
+
+  /**
+   * Recreates authenticated sessions from snapshots taken before a restart. Sessions which already
+   * exist are kept and no session is evicted to make room. If the peer no longer knows a restored
+   * session it answers our next message with WHOAREYOU and a new handshake is done as usual.
+   */
+  public void restoreSessions(final List<SessionSnapshot> snapshots) {
+    int restored = 0;
+    for (SessionSnapshot snapshot : snapshots) {
+      final SessionKey sessionKey =
+          new SessionKey(snapshot.getNodeRecord().getNodeId(), snapshot.getRemoteAddress());
+      final NodeSession session =
+          createNodeSession(sessionKey, Optional.of(snapshot.getNodeRecord()));
+      // Not yet added so the state change doesn't count as a handshake completing
+      session.restore(snapshot);
+      synchronized (this) {
+        if (recentSessions.size() >= maxSessions) {
+          break;
+        }
+        if (recentSessions.putIfAbsent(sessionKey, session) != null) {
+          continue;
+        }
+      }
+      sessionExpirationScheduler.put(sessionKey, () -> deleteSession(sessionKey));
+      restored++;
+    }
+    LOG.debug("Restored {} of {} sessions from snapshot", restored, snapshots.size());
+  }
+
   private NodeSession createNodeSession(
       final SessionKey key, final Optional<NodeRecord> suppliedNodeRecord) {
     final Optional<NodeRecord> nodeRecord =
@@ -163,7 +381,8 @@ public class NodeSessionManager implements EnvelopeHandler {
         nodeBucketStorage,
         outgoingPipeline::push,
         random,
-        requestExpirationScheduler);
+        requestExpirationScheduler,
+        maxInFlightRequestsPerSession);
   }
 
   private Optional<InetSocketAddress> getRemoteSocketAddress(final Envelope envelope) {
@@ -187,18 +406,25 @@ public class NodeSessionManager implements EnvelopeHandler {
   }
 
   public Stream<NodeRecord> streamActiveSessions() {
-    return recentSessions.values().stream()
+    final List<NodeSession> sessions;
+    synchronized (this) {
+      sessions = new ArrayList<>(recentSessions.values());
+    }
+    return sessions.stream()
         .filter(NodeSession::isAuthenticated)
         .flatMap(session -> session.getNodeRecord().stream());
   }
 
   private static class SessionKey {
     private final Bytes nodeId;
+    // Used for equality as it compares and hashes faster than the raw bytes
+    private final NodeId id;
     private final InetSocketAddress remoteSocketAddress;
 
     private SessionKey(final Bytes nodeId, final InetSocketAddress remoteSocketAddress) {
       checkNotNull(remoteSocketAddress);
       this.nodeId = nodeId;
+      this.id = NodeId.wrap(nodeId);
       this.remoteSocketAddress = remoteSocketAddress;
     }
 
@@ -211,13 +437,12 @@ public class NodeSessionManager implements EnvelopeHandler {
         return false;
       }
       final SessionKey that = (SessionKey) o;
-      return Objects.equals(nodeId, that.nodeId)
-          && Objects.equals(remoteSocketAddress, that.remoteSocketAddress);
+      return id.equals(that.id) && remoteSocketAddress.equals(that.remoteSocketAddress);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(nodeId, remoteSocketAddress);
+      return 31 * id.hashCode() + remoteSocketAddress.hashCode();
     }
   }
 }
@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.pipeline.handler;
+
+import com.google.common.base.MoreObjects;
+
+public class SessionStats {
+  private final int sessionCount;
+  private final int unauthenticatedSessionCount;
+  private final long evictedUnauthenticatedSessionCount;
+  private final long evictedAuthenticatedSessionCount;
+  private final long rejectedSessionCount;
+
+  public SessionStats(
+      final int sessionCount,
+      final int unauthenticatedSessionCount,
+      final long evictedUnauthenticatedSessionCount,
+      final long evictedAuthenticatedSessionCount,
+      final long rejectedSessionCount) {
+    this.sessionCount = sessionCount;
+    this.unauthenticatedSessionCount = unauthenticatedSessionCount;
+    this.evictedUnauthenticatedSessionCount = evictedUnauthenticatedSessionCount;
+    this.evictedAuthenticatedSessionCount = evictedAuthenticatedSessionCount;
+    this.rejectedSessionCount = rejectedSessionCount;
+  }
+
+  /** Number of sessions currently held */
+  public int getSessionCount() {
+    return sessionCount;
+  }
+
+  /** Number of sessions currently held which have not completed the handshake */
+  public int getUnauthenticatedSessionCount() {
+    return unauthenticatedSessionCount;
+  }
+
+  /** Total number of unauthenticated sessions evicted to stay within the session limits */
+  public long getEvictedUnauthenticatedSessionCount() {
+    return evictedUnauthenticatedSessionCount;
+  }
+
+  /** Total number of authenticated sessions evicted to stay within the session limits */
+  public long getEvictedAuthenticatedSessionCount() {
+    return evictedAuthenticatedSessionCount;
+  }
+
+  /** Total number of incoming sessions not created because no session could be evicted */
+  public long getRejectedSessionCount() {
+    return rejectedSessionCount;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("sessionCount", sessionCount)
+        .add("unauthenticatedSessionCount", unauthenticatedSessionCount)
+        .add("evictedUnauthenticatedSessionCount", evictedUnauthenticatedSessionCount)
+        .add("evictedAuthenticatedSessionCount", evictedAuthenticatedSessionCount)
+        .add("rejectedSessionCount", rejectedSessionCount)
+        .toString();
+  }
+}
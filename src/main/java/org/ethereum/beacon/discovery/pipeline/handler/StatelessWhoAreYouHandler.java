@@ -0,0 +1,245 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.pipeline.handler;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.ethereum.beacon.discovery.network.NetworkParcelV5;
+import org.ethereum.beacon.discovery.packet.HandshakeMessagePacket;
+import org.ethereum.beacon.discovery.packet.Header;
+import org.ethereum.beacon.discovery.packet.OrdinaryMessagePacket;
+import org.ethereum.beacon.discovery.packet.Packet;
+import org.ethereum.beacon.discovery.packet.RawPacket;
+import org.ethereum.beacon.discovery.packet.WhoAreYouPacket;
+import org.ethereum.beacon.discovery.packet.WhoAreYouPacket.WhoAreYouAuthData;
+import org.ethereum.beacon.discovery.pipeline.Envelope;
+import org.ethereum.beacon.discovery.pipeline.EnvelopeHandler;
+import org.ethereum.beacon.discovery.pipeline.Field;
+import org.ethereum.beacon.discovery.pipeline.HandlerUtil;
+import org.ethereum.beacon.discovery.pipeline.Pipeline;
+import org.ethereum.beacon.discovery.type.Bytes12;
+import org.ethereum.beacon.discovery.type.Bytes16;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers packets from senders we have no session with by a WHOAREYOU without creating a {@link
+ * org.ethereum.beacon.discovery.schema.NodeSession}. The masking IV and id-nonce of the challenge
+ * are derived from a rotating secret, the sender and the nonce of its packet, so only the nonce is
+ * kept until the handshake arrives. A session is created only when a handshake answers a known
+ * challenge, the challenge is then handed over via {@link Field#WHOAREYOU_CHALLENGE}.
+ *
+ * <p>The challenge nonce can't be derived as the handshake packet doesn't repeat it, so pending
+ * nonces are kept in a cache bounded in size which needs no scheduled clean up.
+ */
+public class StatelessWhoAreYouHandler implements EnvelopeHandler {
+  private static final Logger LOG = LoggerFactory.getLogger(StatelessWhoAreYouHandler.class);
+  static final Duration SECRET_ROTATION_PERIOD = Duration.ofSeconds(30);
+  private static final int MAX_PENDING_CHALLENGES = 10_000;
+
+  private final NodeSessionManager nodeSessionManager;
+  private final Pipeline outgoingPipeline;
+  private final Clock clock;
+  private final Random rnd;
+  private final Cache<ChallengeKey, PendingChallenge> pendingChallenges;
+  private long currentEpoch = Long.MIN_VALUE;
+  private Bytes32 currentSecret;
+  private Bytes32 previousSecret;
+
+  public StatelessWhoAreYouHandler(
+      final NodeSessionManager nodeSessionManager,
+      final Pipeline outgoingPipeline,
+      final Clock clock,
+      final Random rnd) {
+    this.nodeSessionManager = nodeSessionManager;
+    this.outgoingPipeline = outgoingPipeline;
+    this.clock = clock;
+    this.rnd = rnd;
+    this.pendingChallenges =
+        CacheBuilder.newBuilder()
+            .maximumSize(MAX_PENDING_CHALLENGES)
+            .expireAfterWrite(SECRET_ROTATION_PERIOD.toMillis(), TimeUnit.MILLISECONDS)
+            .ticker(
+                new Ticker() {
+                  @Override
+                  public long read() {
+                    return TimeUnit.MILLISECONDS.toNanos(clock.millis());
+                  }
+                })
+            .build();
+  }
+
+  @Override
+  public void handle(final Envelope envelope) {
+    if (!HandlerUtil.requireField(Field.SESSION_LOOKUP, envelope)) {
+      return;
+    }
+    if (!HandlerUtil.requireField(Field.REMOTE_SENDER, envelope)) {
+      return;
+    }
+    if (!HandlerUtil.requireField(Field.PACKET, envelope)) {
+      return;
+    }
+    if (envelope.contains(Field.SESSION)) {
+      return;
+    }
+    final SessionLookup sessionLookup = envelope.get(Field.SESSION_LOOKUP);
+    final InetSocketAddress sender = envelope.get(Field.REMOTE_SENDER);
+    if (nodeSessionManager.getExistingSession(sessionLookup.getNodeId(), sender).isPresent()) {
+      return;
+    }
+    LOG.trace(
+        "Envelope {} in StatelessWhoAreYouHandler, requirements are satisfied!",
+        envelope.getIdString());
+
+    final ChallengeKey challengeKey = new ChallengeKey(sessionLookup.getNodeId(), sender);
+    final Packet<?> packet = envelope.get(Field.PACKET);
+    if (packet instanceof OrdinaryMessagePacket) {
+      envelope.remove(Field.SESSION_LOOKUP);
+      sendWhoAreYou(challengeKey, packet.getHeader().getStaticHeader().getNonce());
+    } else if (packet instanceof HandshakeMessagePacket) {
+      final Optional<Bytes> challenge = takeChallenge(challengeKey);
+      if (challenge.isPresent()) {
+        envelope.put(Field.WHOAREYOU_CHALLENGE, challenge.get());
+      } else {
+        envelope.remove(Field.SESSION_LOOKUP);
+        envelope.put(Field.BAD_PACKET, packet);
+        envelope.put(
+            Field.BAD_EXCEPTION, new RuntimeException("Handshake without a WHOAREYOU challenge"));
+      }
+    }
+  }
+
+  private void sendWhoAreYou(final ChallengeKey challengeKey, final Bytes12 nonce) {
+    final long epoch;
+    final Bytes32 secret;
+    synchronized (this) {
+      rotateSecretIfRequired();
+      epoch = currentEpoch;
+      secret = currentSecret;
+    }
+    final Challenge challenge = deriveChallenge(secret, challengeKey, nonce);
+    pendingChallenges.put(challengeKey, new PendingChallenge(nonce, epoch));
+    final WhoAreYouPacket packet = WhoAreYouPacket.create(challenge.header);
+    LOG.trace("Sending stateless WhoAreYou message {} to {}", packet, challengeKey.address);
+    final RawPacket rawPacket =
+        RawPacket.createAndMask(challenge.maskingIV, packet, Bytes16.wrap(challengeKey.nodeId, 0));
+    outgoingPipeline.push(new NetworkParcelV5(rawPacket, challengeKey.address));
+  }
+
+  @VisibleForTesting
+  Optional<Bytes> takeChallenge(final ChallengeKey challengeKey) {
+    final PendingChallenge pending = pendingChallenges.asMap().remove(challengeKey);
+    if (pending == null) {
+      return Optional.empty();
+    }
+    final Bytes32 secret;
+    synchronized (this) {
+      rotateSecretIfRequired();
+      if (pending.epoch == currentEpoch) {
+        secret = currentSecret;
+      } else if (pending.epoch == currentEpoch - 1 && previousSecret != null) {
+        secret = previousSecret;
+      } else {
+        return Optional.empty();
+      }
+    }
+    final Challenge challenge = deriveChallenge(secret, challengeKey, pending.nonce);
+    return Optional.of(Bytes.wrap(challenge.maskingIV, challenge.header.getBytes()));
+  }
+
+  private void rotateSecretIfRequired() {
+    final long epoch = clock.millis() / SECRET_ROTATION_PERIOD.toMillis();
+    if (epoch == currentEpoch) {
+      return;
+    }
+    previousSecret = epoch == currentEpoch + 1 ? currentSecret : null;
+    currentSecret = Bytes32.random(rnd);
+    currentEpoch = epoch;
+  }
+
+  private static Challenge deriveChallenge(
+      final Bytes32 secret, final ChallengeKey challengeKey, final Bytes12 nonce) {
+    final HMac hmac = new HMac(new SHA256Digest());
+    hmac.init(new KeyParameter(secret.toArrayUnsafe()));
+    final Bytes input =
+        Bytes.concatenate(
+            challengeKey.nodeId,
+            Bytes.wrap(challengeKey.address.getAddress().getAddress()),
+            Bytes.ofUnsignedShort(challengeKey.address.getPort()),
+            nonce);
+    hmac.update(input.toArrayUnsafe(), 0, input.size());
+    final byte[] output = new byte[hmac.getMacSize()];
+    hmac.doFinal(output, 0);
+    final Bytes material = Bytes.wrap(output);
+    // The ENR seq is unknown without a session, so the peer is asked to always send its record
+    final Header<WhoAreYouAuthData> header =
+        Header.createWhoAreYouHeader(nonce, Bytes16.wrap(material, 16), UInt64.ZERO);
+    return new Challenge(Bytes16.wrap(material, 0), header);
+  }
+
+  private static class Challenge {
+    private final Bytes16 maskingIV;
+    private final Header<WhoAreYouAuthData> header;
+
+    private Challenge(final Bytes16 maskingIV, final Header<WhoAreYouAuthData> header) {
+      this.maskingIV = maskingIV;
+      this.header = header;
+    }
+  }
+
+  private static class PendingChallenge {
+    private final Bytes12 nonce;
+    private final long epoch;
+
+    private PendingChallenge(final Bytes12 nonce, final long epoch) {
+      this.nonce = nonce;
+      this.epoch = epoch;
+    }
+  }
+
+  @VisibleForTesting
+  static class ChallengeKey {
+    private final Bytes nodeId;
+    private final InetSocketAddress address;
+
+    ChallengeKey(final Bytes nodeId, final InetSocketAddress address) {
+      this.nodeId = nodeId;
+      this.address = address;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final ChallengeKey that = (ChallengeKey) o;
+      return Objects.equals(nodeId, that.nodeId) && Objects.equals(address, that.address);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(nodeId, address);
+    }
+  }
+}
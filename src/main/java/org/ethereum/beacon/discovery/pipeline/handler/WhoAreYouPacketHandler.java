@@ -9,7 +9,6 @@ import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.crypto.SECP256K1.KeyPair;
 import org.apache.tuweni.units.bigints.UInt64;
-import org.ethereum.beacon.discovery.message.V5Message;
 import org.ethereum.beacon.discovery.packet.HandshakeMessagePacket.HandshakeAuthData;
 import org.ethereum.beacon.discovery.packet.Header;
 import org.ethereum.beacon.discovery.packet.WhoAreYouPacket;
@@ -23,7 +22,6 @@ import org.ethereum.beacon.discovery.scheduler.Scheduler;
 import org.ethereum.beacon.discovery.schema.EnrField;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeSession;
-import org.ethereum.beacon.discovery.schema.NodeSession.SessionState;
 import org.ethereum.beacon.discovery.type.Bytes12;
 import org.ethereum.beacon.discovery.type.Bytes16;
 import org.ethereum.beacon.discovery.util.Functions;
@@ -102,11 +100,10 @@ public class WhoAreYouPacketHandler implements EnvelopeHandler {
               challengeData);
       session.setInitiatorKey(hkdfKeys.getInitiatorKey());
       session.setRecipientKey(hkdfKeys.getRecipientKey());
-      final V5Message message =
+      final RequestInfo requestInfo =
           session
               .getFirstAwaitRequestInfo()
               .or(session::getFirstSentRequestInfo)
-              .map(RequestInfo::getMessage)
               .orElseThrow(
                   () ->
                       new RuntimeException(
@@ -135,9 +132,7 @@ public class WhoAreYouPacketHandler implements EnvelopeHandler {
               idSignature,
               ephemeralPubKey,
               Optional.ofNullable(respRecord));
-      session.setState(SessionState.AUTHENTICATED);
-
-      session.sendOutgoingHandshake(header, message);
+      session.sendOutgoingHandshake(header, requestInfo);
 
       envelope.remove(Field.PACKET_WHOAREYOU);
       NextTaskHandler.tryToSendAwaitTaskIfAny(session, outgoingPipeline, scheduler);
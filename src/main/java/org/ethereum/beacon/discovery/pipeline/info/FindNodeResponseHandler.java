@@ -6,14 +6,30 @@ package org.ethereum.beacon.discovery.pipeline.info;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.AddressAccessPolicy;
 import org.ethereum.beacon.discovery.message.NodesMessage;
+import org.ethereum.beacon.discovery.schema.LazyNodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeSession;
+import org.ethereum.beacon.discovery.storage.NodeSource;
+import org.ethereum.beacon.discovery.util.DecodeException;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Collects the node records from the NODES packets sent in response to a FINDNODE request.
+ *
+ * <p>Records from each packet are passed on as soon as it arrives, so callers can use them before
+ * the whole response is received. If the request times out part way, it completes with the records
+ * received so far as a partial {@link FoundNodes} result.
+ *
+ * <p>Records at the wrong distance or with a disallowed address are dropped based on their node ID
+ * and address alone, before decoding their other fields and checking their signature.
+ */
 public class FindNodeResponseHandler implements MultiPacketResponseHandler<NodesMessage> {
   private static final Logger LOG = LoggerFactory.getLogger(FindNodeResponseHandler.class);
   private static final int NOT_SET = -1;
@@ -21,17 +37,43 @@ public class FindNodeResponseHandler implements MultiPacketResponseHandler<Nodes
   private final List<NodeRecord> foundNodes = new ArrayList<>();
   private final Collection<Integer> distances;
   private final AddressAccessPolicy addressAccessPolicy;
+  private final Consumer<Collection<NodeRecord>> onNodesReceived;
   private int totalPackets = NOT_SET;
   private int receivedPackets = 0;
 
   public FindNodeResponseHandler(
       final Collection<Integer> distances, final AddressAccessPolicy addressAccessPolicy) {
+    this(distances, addressAccessPolicy, nodes -> {});
+  }
+
+  /**
+   * @param onNodesReceived called with the accepted records of each NODES packet as it arrives
+   */
+  public FindNodeResponseHandler(
+      final Collection<Integer> distances,
+      final AddressAccessPolicy addressAccessPolicy,
+      final Consumer<Collection<NodeRecord>> onNodesReceived) {
     this.distances = distances;
     this.addressAccessPolicy = addressAccessPolicy;
+    this.onNodesReceived = onNodesReceived;
   }
 
   @Override
-  public synchronized boolean handleResponseMessage(NodesMessage message, NodeSession session) {
+  public boolean handleResponseMessage(NodesMessage message, NodeSession session) {
+    final List<NodeRecord> packetNodes = new ArrayList<>();
+    final boolean complete;
+    synchronized (this) {
+      complete = handlePacket(message, session, packetNodes);
+    }
+    // Outside the lock as the caller may send further requests in response
+    if (!packetNodes.isEmpty()) {
+      onNodesReceived.accept(packetNodes);
+    }
+    return complete;
+  }
+
+  private boolean handlePacket(
+      final NodesMessage message, final NodeSession session, final List<NodeRecord> packetNodes) {
     if (totalPackets == NOT_SET) {
       totalPackets = message.getTotal();
       if (totalPackets < 1 || totalPackets > MAX_TOTAL_PACKETS) {
@@ -51,25 +93,61 @@ public class FindNodeResponseHandler implements MultiPacketResponseHandler<Nodes
     // Parse node records
     LOG.trace(
         "Received {} node records in session {}. Packet {}/{}.",
-        message.getNodeRecords().size(),
+        message.getLazyNodeRecords().size(),
         session,
         receivedPackets,
         message.getTotal());
-    message.getNodeRecords().stream()
+    // Only records which pass the cheap checks are fully decoded and have their signature checked
+    message.getLazyNodeRecords().stream()
+        .filter(this::isWellFormed)
+        .filter(record -> hasCorrectDistance(session, record.getNodeId().orElseThrow()))
+        .filter(this::isAllowed)
+        .flatMap(record -> decode(record).stream())
         .filter(this::isValid)
-        .filter(record -> hasCorrectDistance(session, record))
-        .filter(addressAccessPolicy::allow)
         .forEach(
             nodeRecord -> {
               foundNodes.add(nodeRecord);
-              session.onNodeRecordReceived(nodeRecord);
+              packetNodes.add(nodeRecord);
+              session.onNodeRecordReceived(nodeRecord, NodeSource.NODES_RESPONSE);
             });
 
     return receivedPackets >= totalPackets;
   }
 
+  /** Returns the accepted records, flagged as partial unless all packets were received. */
   public synchronized List<NodeRecord> getFoundNodes() {
-    return foundNodes;
+    return new FoundNodes(foundNodes, receivedPackets < totalPackets);
+  }
+
+  @Override
+  public synchronized Optional<?> getPartialResult() {
+    if (receivedPackets == 0) {
+      // No response from the peer at all
+      return Optional.empty();
+    }
+    return Optional.of(getFoundNodes());
+  }
+
+  private boolean isWellFormed(final LazyNodeRecord record) {
+    if (record.getNodeId().isEmpty()) {
+      LOG.debug("Rejecting malformed node record {}", record);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean isAllowed(final LazyNodeRecord record) {
+    // Same as AddressAccessPolicy.allow(NodeRecord)
+    return record.getTcpAddress().map(addressAccessPolicy::allow).orElse(true);
+  }
+
+  private Optional<NodeRecord> decode(final LazyNodeRecord record) {
+    try {
+      return Optional.of(record.decode());
+    } catch (final DecodeException | IllegalArgumentException e) {
+      LOG.debug("Rejecting malformed node record {}", record, e);
+      return Optional.empty();
+    }
   }
 
   private boolean isValid(final NodeRecord record) {
@@ -80,12 +158,12 @@ public class FindNodeResponseHandler implements MultiPacketResponseHandler<Nodes
     return true;
   }
 
-  private boolean hasCorrectDistance(final NodeSession session, final NodeRecord nodeRecordV5) {
-    final int actualDistance = Functions.logDistance(nodeRecordV5.getNodeId(), session.getNodeId());
+  private boolean hasCorrectDistance(final NodeSession session, final Bytes nodeId) {
+    final int actualDistance = Functions.logDistance(nodeId, session.getNodeId());
     if (!distances.contains(actualDistance)) {
       LOG.debug(
           "Rejecting node record {} received from {} because distance was not in {}.",
-          nodeRecordV5.getNodeId(),
+          nodeId,
           session.getNodeId(),
           distances);
       return false;
@@ -0,0 +1,43 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.pipeline.info;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+
+/**
+ * Node records returned in reply to a FINDNODE request. The result is partial if the request
+ * reached its deadline before all NODES packets of the response arrived, in which case it holds
+ * the records from the packets that did.
+ */
+public class FoundNodes extends AbstractList<NodeRecord> {
+  private final List<NodeRecord> nodes;
+  private final boolean partial;
+
+  public FoundNodes(final Collection<NodeRecord> nodes, final boolean partial) {
+    this.nodes = List.copyOf(nodes);
+    this.partial = partial;
+  }
+
+  /** Returns true if {@code nodes} is the partial result of a FINDNODE request. */
+  public static boolean isPartial(final Collection<NodeRecord> nodes) {
+    return nodes instanceof FoundNodes && ((FoundNodes) nodes).isPartial();
+  }
+
+  public boolean isPartial() {
+    return partial;
+  }
+
+  @Override
+  public NodeRecord get(final int index) {
+    return nodes.get(index);
+  }
+
+  @Override
+  public int size() {
+    return nodes.size();
+  }
+}
@@ -3,6 +3,7 @@
  */
 package org.ethereum.beacon.discovery.pipeline.info;
 
+import java.util.Optional;
 import org.ethereum.beacon.discovery.message.V5Message;
 import org.ethereum.beacon.discovery.schema.NodeSession;
 
@@ -16,4 +17,12 @@ public interface MultiPacketResponseHandler<TMessageType extends V5Message> {
    * @return true if all expected packets are received, false otherwise
    */
   boolean handleResponseMessage(TMessageType msg, NodeSession session);
+
+  /**
+   * Returns the result built from the packets received so far, which the request completes with
+   * if it times out before the rest arrive. Empty if the request should fail instead.
+   */
+  default Optional<?> getPartialResult() {
+    return Optional.empty();
+  }
 }
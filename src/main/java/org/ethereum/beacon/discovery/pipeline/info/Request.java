@@ -12,14 +12,29 @@ public class Request<TResponse> {
   private final CompletableFuture<TResponse> resultPromise;
   private final Function<Bytes, V5Message> requestMessageFactory;
   private final MultiPacketResponseHandler<?> responseHandler;
+  private final boolean usesRttDeadline;
 
   public Request(
       CompletableFuture<TResponse> resultPromise,
       Function<Bytes, V5Message> requestMessageFactory,
       MultiPacketResponseHandler<?> responseHandler) {
+    this(resultPromise, requestMessageFactory, responseHandler, true);
+  }
+
+  /**
+   * @param usesRttDeadline whether the request times out based on the round trip time to the node
+   *     and its response time is sampled for that estimate. Application requests such as TALKREQ
+   *     may take arbitrarily long to be answered, so they keep the fixed request expiry instead.
+   */
+  public Request(
+      CompletableFuture<TResponse> resultPromise,
+      Function<Bytes, V5Message> requestMessageFactory,
+      MultiPacketResponseHandler<?> responseHandler,
+      boolean usesRttDeadline) {
     this.resultPromise = resultPromise;
     this.requestMessageFactory = requestMessageFactory;
     this.responseHandler = responseHandler;
+    this.usesRttDeadline = usesRttDeadline;
   }
 
   public CompletableFuture<TResponse> getResultPromise() {
@@ -33,4 +48,8 @@ public class Request<TResponse> {
   public MultiPacketResponseHandler<?> getResponseHandler() {
     return responseHandler;
   }
+
+  public boolean usesRttDeadline() {
+    return usesRttDeadline;
+  }
 }
@@ -10,6 +10,7 @@ import org.ethereum.beacon.discovery.task.TaskStatus;
 
 /** Stores info related to performed request */
 public class RequestInfo {
+  public static final long NOT_SENT = -1;
 
   public static RequestInfo create(Bytes requestId, Request<?> request) {
     return new RequestInfo(TaskStatus.AWAIT, requestId, request);
@@ -19,6 +20,7 @@ public class RequestInfo {
   private final Request<?> request;
   private TaskStatus taskStatus;
   private V5Message message;
+  private long sentTime = NOT_SENT;
 
   private RequestInfo(TaskStatus taskStatus, Bytes requestId, Request<?> request) {
     this.taskStatus = taskStatus;
@@ -34,6 +36,15 @@ public class RequestInfo {
     this.taskStatus = taskStatus;
   }
 
+  /** Returns when the request was sent in milliseconds since the epoch, or {@link #NOT_SENT}. */
+  public synchronized long getSentTime() {
+    return sentTime;
+  }
+
+  public synchronized void setSentTime(long sentTime) {
+    this.sentTime = sentTime;
+  }
+
   public synchronized V5Message getMessage() {
     if (message == null) {
       message = getRequest().getRequestMessageFactory().apply(getRequestId());
@@ -40,13 +40,14 @@ public class DiscoveryV5MessageProcessor implements DiscoveryMessageProcessor<V5
       LocalNodeRecordStore localNodeRecordStore,
       TalkHandler talkHandler,
       EnrUpdater enrUpdater,
-      ExternalAddressSelector externalAddressSelector) {
+      ExternalAddressSelector externalAddressSelector,
+      FindNodeHandler findNodeHandler) {
 
     final EnrUpdateTracker enrUpdateTracker = new EnrUpdateTracker(enrUpdater);
     messageHandlers.put(MessageCode.PING, new PingHandler(enrUpdateTracker));
     messageHandlers.put(
         MessageCode.PONG, new PongHandler(externalAddressSelector, enrUpdateTracker));
-    messageHandlers.put(MessageCode.FINDNODE, new FindNodeHandler());
+    messageHandlers.put(MessageCode.FINDNODE, findNodeHandler);
     messageHandlers.put(MessageCode.NODES, new NodesHandler());
     messageHandlers.put(MessageCode.TALKREQ, new TalkReqHandler(talkHandler));
     messageHandlers.put(MessageCode.TALKRESP, new TalkRespHandler());
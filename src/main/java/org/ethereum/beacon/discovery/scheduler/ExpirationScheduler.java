@@ -4,6 +4,7 @@
 
 package org.ethereum.beacon.discovery.scheduler;
 
+import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
@@ -34,6 +35,22 @@ public class ExpirationScheduler<Key> {
    * @param runnable Task
    */
   public void put(Key key, Runnable runnable) {
+    schedule(key, runnable, delay, timeUnit);
+  }
+
+  /**
+   * Puts scheduled task with a delay specific to this task, renewing (cancelling old) timeout for
+   * the task associated with the key
+   *
+   * @param key Task key
+   * @param runnable Task
+   * @param delay Delay to run the task after
+   */
+  public void put(Key key, Runnable runnable, Duration delay) {
+    schedule(key, runnable, delay.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  private void schedule(Key key, Runnable runnable, long delay, TimeUnit timeUnit) {
     cancel(key);
     ScheduledFuture<?> future =
         scheduler.schedule(
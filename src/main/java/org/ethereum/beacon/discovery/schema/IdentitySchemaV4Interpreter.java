@@ -59,7 +59,7 @@ public class IdentitySchemaV4Interpreter implements IdentitySchemaInterpreter {
     }
     Bytes pubKey = (Bytes) nodeRecord.get(EnrField.PKEY_SECP256K1); // compressed
     return Functions.verifyECDSASignature(
-        nodeRecord.getSignature(), Functions.hashKeccak(nodeRecord.serializeNoSignature()), pubKey);
+        nodeRecord.getSignature(), nodeRecord.getContentHash(), pubKey);
   }
 
   @Override
@@ -87,9 +87,7 @@ public class IdentitySchemaV4Interpreter implements IdentitySchemaInterpreter {
 
   @Override
   public void sign(final NodeRecord nodeRecord, final SecretKey secretKey) {
-    Bytes signature =
-        Functions.sign(secretKey, Functions.hashKeccak(nodeRecord.serializeNoSignature()));
-    nodeRecord.setSignature(signature);
+    nodeRecord.setSignature(Functions.sign(secretKey, nodeRecord.getContentHash()));
   }
 
   @Override
@@ -0,0 +1,188 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.schema;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.ethereum.beacon.discovery.util.DecodeException;
+
+/**
+ * Node record read from RLP with only the fields needed for its node ID and addresses decoded.
+ *
+ * <p>Records received in NODES messages are often dropped for their distance or address, so those
+ * are checked first. Decoding the other fields and checking the signature is left to {@link
+ * #decode()}, for the records which are kept.
+ */
+public class LazyNodeRecord {
+  static final Set<String> SUMMARY_FIELDS =
+      Set.of(
+          EnrField.ID,
+          EnrField.PKEY_SECP256K1,
+          EnrField.IP_V4,
+          EnrField.IP_V6,
+          EnrField.TCP,
+          EnrField.TCP_V6,
+          EnrField.UDP,
+          EnrField.UDP_V6);
+
+  private final IdentitySchemaInterpreter identitySchemaInterpreter;
+  private final NodeRecordInterner interner;
+  private final UInt64 seq;
+  private final Bytes signature;
+  // Raw keys and values, in the order they were read
+  private final List<Bytes> keys;
+  private final List<Object> values;
+  private final Map<String, Object> summaryFields;
+
+  private volatile Optional<NodeRecord> summary;
+  private volatile NodeRecord nodeRecord;
+
+  LazyNodeRecord(
+      final IdentitySchemaInterpreter identitySchemaInterpreter,
+      final NodeRecordInterner interner,
+      final UInt64 seq,
+      final Bytes signature,
+      final List<Bytes> keys,
+      final List<Object> values,
+      final Map<String, Object> summaryFields) {
+    this.identitySchemaInterpreter = identitySchemaInterpreter;
+    this.interner = interner;
+    this.seq = seq;
+    this.signature = signature;
+    this.keys = keys;
+    this.values = values;
+    this.summaryFields = summaryFields;
+  }
+
+  private LazyNodeRecord(final NodeRecord nodeRecord) {
+    this(
+        null,
+        null,
+        nodeRecord.getSeq(),
+        nodeRecord.getSignature(),
+        List.of(),
+        List.of(),
+        Map.of());
+    this.summary = Optional.of(nodeRecord);
+    this.nodeRecord = nodeRecord;
+  }
+
+  /** Wraps a record which is already decoded. */
+  public static LazyNodeRecord of(final NodeRecord nodeRecord) {
+    return new LazyNodeRecord(nodeRecord);
+  }
+
+  public UInt64 getSeq() {
+    return seq;
+  }
+
+  /**
+   * Returns the node ID, or empty if the record is malformed, e.g. it has no valid public key or
+   * its address fields can't be decoded.
+   */
+  public Optional<Bytes> getNodeId() {
+    return getSummary().map(NodeRecord::getNodeId);
+  }
+
+  /** Returns the UDP address, empty if there is none or the record is malformed. */
+  public Optional<InetSocketAddress> getUdpAddress() {
+    return getSummary().flatMap(NodeRecord::getUdpAddress);
+  }
+
+  /** Returns the TCP address, empty if there is none or the record is malformed. */
+  public Optional<InetSocketAddress> getTcpAddress() {
+    return getSummary().flatMap(NodeRecord::getTcpAddress);
+  }
+
+  /**
+   * Returns the fully decoded record. If the same record was decoded before and is valid, that
+   * instance is returned instead of decoding it again. Otherwise the decoded record becomes the
+   * canonical instance.
+   *
+   * @throws DecodeException if the record's fields are malformed
+   */
+  public NodeRecord decode() {
+    NodeRecord result = nodeRecord;
+    if (result == null) {
+      result = findCanonical().orElseGet(() -> interner.intern(decodeFields()));
+      nodeRecord = result;
+    }
+    return result;
+  }
+
+  private Optional<NodeRecord> findCanonical() {
+    final Object publicKey = summaryFields.get(EnrField.PKEY_SECP256K1);
+    if (!(publicKey instanceof Bytes)) {
+      return Optional.empty();
+    }
+    return interner.find((Bytes) publicKey, seq, signature).filter(this::hasSameSummaryFields);
+  }
+
+  private boolean hasSameSummaryFields(final NodeRecord canonical) {
+    // The signature is only checked against the canonical record's fields. Node ID and address
+    // checks done on the summary must hold for the returned record too, so a replayed signature
+    // with another address mustn't resolve to the canonical record.
+    return getSummary()
+        .map(
+            summary ->
+                SUMMARY_FIELDS.stream()
+                    .allMatch(field -> Objects.equals(summary.get(field), canonical.get(field))))
+        .orElse(false);
+  }
+
+  private NodeRecord decodeFields() {
+    final Map<String, Object> rawFields = new HashMap<>();
+    String previousKey = null;
+    for (int i = 0; i < keys.size(); i++) {
+      final String key = new String(keys.get(i).toArrayUnsafe(), UTF_8);
+      if (previousKey != null && key.compareTo(previousKey) <= 0) {
+        throw new DecodeException("ENR fields are not in strict order");
+      }
+      previousKey = key;
+      rawFields.put(key, values.get(i));
+    }
+    return NodeRecord.fromRawFields(identitySchemaInterpreter, seq, signature, rawFields);
+  }
+
+  private Optional<NodeRecord> getSummary() {
+    Optional<NodeRecord> result = summary;
+    if (result == null) {
+      result = createSummary();
+      summary = result;
+    }
+    return result;
+  }
+
+  private Optional<NodeRecord> createSummary() {
+    try {
+      // A record of just the summary fields, which the interpreter derives the node ID and
+      // addresses from the same way as for the full record
+      final NodeRecord result =
+          NodeRecord.fromRawFields(identitySchemaInterpreter, seq, signature, summaryFields);
+      // Derived and cached straight away, so a missing or invalid public key or a malformed
+      // address is found here rather than failing a caller later
+      result.getNodeId();
+      result.getUdpAddress();
+      result.getTcpAddress();
+      return Optional.of(result);
+    } catch (final RuntimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return nodeRecord != null ? nodeRecord.toString() : "LazyNodeRecord{seq=" + seq + "}";
+  }
+}
@@ -10,24 +10,31 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import java.net.InetSocketAddress;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.crypto.SECP256K1.SecretKey;
 import org.apache.tuweni.rlp.RLP;
 import org.apache.tuweni.rlp.RLPWriter;
 import org.apache.tuweni.units.bigints.UInt64;
+import org.ethereum.beacon.discovery.util.Functions;
 
 /**
  * Ethereum Node Record V4
  *
  * <p>Node record as described in <a href="https://eips.ethereum.org/EIPS/eip-778">EIP-778</a>
+ *
+ * <p>Fields can't be changed once the record is created. The only change allowed is setting the
+ * signature when the record is signed. The canonical encoding is kept once computed, and so are
+ * values derived from the fields such as the node ID and addresses. They are computed on first use
+ * as many records are only passed along and never looked at in detail.
  */
 public class NodeRecord {
 
@@ -41,11 +48,22 @@ public class NodeRecord {
   private static final EnrFieldInterpreter ENR_FIELD_INTERPRETER = EnrFieldInterpreterV4.DEFAULT;
   private final UInt64 seq;
   // Signature
-  private Bytes signature;
+  private volatile Bytes signature;
   // optional fields
-  private final Map<String, Object> fields = new HashMap<>();
+  private final Map<String, Object> fields;
   private final IdentitySchemaInterpreter identitySchemaInterpreter;
 
+  // Computed on first use. Those including the signature are reset when it is set.
+  private volatile Bytes serialized;
+  private volatile int hashCode;
+  private volatile Boolean valid;
+  private volatile Bytes32 contentHash;
+  private volatile Bytes nodeId;
+  private volatile Optional<InetSocketAddress> udpAddress;
+  private volatile Optional<InetSocketAddress> udp6Address;
+  private volatile Optional<InetSocketAddress> tcpAddress;
+  private volatile Optional<InetSocketAddress> tcp6Address;
+
   private NodeRecord(
       IdentitySchemaInterpreter identitySchemaInterpreter,
       UInt64 seq,
@@ -54,8 +72,8 @@ public class NodeRecord {
     this.seq = seq;
     this.signature = signature;
     this.identitySchemaInterpreter = identitySchemaInterpreter;
-    this.fields.putAll(fields);
-    // serialise to check size
+    this.fields = Collections.unmodifiableMap(new HashMap<>(fields));
+    // serialise to check size, the encoding is kept for later
     Bytes serializedNodeRecord = serialize();
     checkArgument(
         serializedNodeRecord.size() <= MAX_ENCODED_SIZE,
@@ -103,10 +121,6 @@ public class NodeRecord {
     return identitySchemaInterpreter.getScheme();
   }
 
-  public void set(String key, Object value) {
-    fields.put(key, value);
-  }
-
   public Object get(String key) {
     return fields.get(key);
   }
@@ -127,8 +141,12 @@ public class NodeRecord {
     return signature;
   }
 
+  /** Sets the signature of the record, only meant to be used when signing it. */
   public void setSignature(Bytes signature) {
     this.signature = signature;
+    serialized = null;
+    hashCode = 0;
+    valid = null;
   }
 
   @Override
@@ -140,18 +158,27 @@ public class NodeRecord {
       return false;
     }
     NodeRecord that = (NodeRecord) o;
-    return Objects.equals(seq, that.seq)
-        && Objects.equals(signature, that.signature)
-        && Objects.equals(fields, that.fields);
+    // The canonical encoding covers the sequence number, signature and all fields
+    return serialize().equals(that.serialize());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(seq, signature, fields);
+    int result = hashCode;
+    if (result == 0) {
+      result = serialize().hashCode();
+      hashCode = result;
+    }
+    return result;
   }
 
   public boolean isValid() {
-    return identitySchemaInterpreter.isValid(this);
+    Boolean result = valid;
+    if (result == null) {
+      result = identitySchemaInterpreter.isValid(this);
+      valid = result;
+    }
+    return result;
   }
 
   public void sign(final SecretKey secretKey) {
@@ -196,35 +223,74 @@ public class NodeRecord {
   }
 
   public Bytes serialize() {
-    return serializeImpl(true);
+    Bytes result = serialized;
+    if (result == null) {
+      result = asRlpImpl(true);
+      serialized = result;
+    }
+    return result;
   }
 
   public Bytes serializeNoSignature() {
-    return serializeImpl(false);
+    return asRlpImpl(false);
   }
 
-  private Bytes serializeImpl(boolean withSignature) {
-    return asRlpImpl(withSignature);
+  /**
+   * Returns the keccak256 hash of the record without the signature, which is what gets signed. Only
+   * the hash is kept, the encoding it is computed from is not needed afterwards.
+   */
+  public Bytes32 getContentHash() {
+    Bytes32 result = contentHash;
+    if (result == null) {
+      result = Functions.hashKeccak(serializeNoSignature());
+      contentHash = result;
+    }
+    return result;
   }
 
   public Bytes getNodeId() {
-    return identitySchemaInterpreter.getNodeId(this);
+    Bytes result = nodeId;
+    if (result == null) {
+      result = identitySchemaInterpreter.getNodeId(this);
+      nodeId = result;
+    }
+    return result;
   }
 
   public Optional<InetSocketAddress> getTcpAddress() {
-    return identitySchemaInterpreter.getTcpAddress(this);
+    Optional<InetSocketAddress> result = tcpAddress;
+    if (result == null) {
+      result = identitySchemaInterpreter.getTcpAddress(this);
+      tcpAddress = result;
+    }
+    return result;
   }
 
   public Optional<InetSocketAddress> getTcp6Address() {
-    return identitySchemaInterpreter.getTcp6Address(this);
+    Optional<InetSocketAddress> result = tcp6Address;
+    if (result == null) {
+      result = identitySchemaInterpreter.getTcp6Address(this);
+      tcp6Address = result;
+    }
+    return result;
   }
 
   public Optional<InetSocketAddress> getUdpAddress() {
-    return identitySchemaInterpreter.getUdpAddress(this);
+    Optional<InetSocketAddress> result = udpAddress;
+    if (result == null) {
+      result = identitySchemaInterpreter.getUdpAddress(this);
+      udpAddress = result;
+    }
+    return result;
   }
 
   public Optional<InetSocketAddress> getUdp6Address() {
-    return identitySchemaInterpreter.getUdp6Address(this);
+    Optional<InetSocketAddress> result = udp6Address;
+    if (result == null) {
+      result = identitySchemaInterpreter.getUdp6Address(this);
+      udp6Address = result;
+    }
+    return result;
   }
 
   public NodeRecord withNewAddress(
@@ -8,11 +8,13 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.ethereum.beacon.discovery.util.RlpUtil.checkComplete;
 import static org.ethereum.beacon.discovery.util.RlpUtil.checkMaxSize;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.rlp.RLP;
 import org.apache.tuweni.rlp.RLPReader;
@@ -25,8 +27,12 @@ public class NodeRecordFactory {
       new NodeRecordFactory(new IdentitySchemaV4Interpreter());
   private static final int MAX_ENR_RLP_SIZE = 300;
   private static final int MAX_FIELD_KEY_SIZE = MAX_ENR_RLP_SIZE;
+  private static final Map<Bytes, String> SUMMARY_FIELD_KEYS =
+      LazyNodeRecord.SUMMARY_FIELDS.stream()
+          .collect(Collectors.toMap(name -> Bytes.wrap(name.getBytes(UTF_8)), name -> name));
 
   Map<IdentitySchema, IdentitySchemaInterpreter> interpreters = new HashMap<>();
+  private final NodeRecordInterner interner = new NodeRecordInterner();
 
   public NodeRecordFactory(IdentitySchemaInterpreter... identitySchemaInterpreters) {
     for (IdentitySchemaInterpreter identitySchemaInterpreter : identitySchemaInterpreters) {
@@ -73,57 +79,74 @@ public class NodeRecordFactory {
     return fromBytes(bytes.toArray());
   }
 
+  /** Returns the canonical instances of the valid records decoded by this factory. */
+  public NodeRecordInterner getInterner() {
+    return interner;
+  }
+
   public NodeRecord fromRlp(final RLPReader reader) {
+    return fromRlpLazily(reader).decode();
+  }
+
+  /**
+   * Reads a node record, decoding only the fields its node ID and addresses are derived from. The
+   * rest are checked and decoded by {@link LazyNodeRecord#decode()}.
+   */
+  public LazyNodeRecord fromRlpLazily(final RLPReader reader) {
     return reader.readList(
         listReader -> {
           final Bytes signature = listReader.readValue();
           final UInt64 seq =
               UInt64.fromBytes(checkMaxSize(listReader.readValue(), RlpUtil.UINT64_MAX_SIZE));
 
-          final Map<String, Object> rawFields = new HashMap<>();
-          IdentitySchema nodeIdentity = null;
-          String previousKey = null;
+          final List<Bytes> keys = new ArrayList<>();
+          final List<Object> values = new ArrayList<>();
+          final Map<String, Object> summaryFields = new HashMap<>();
           while (!listReader.isComplete()) {
-            String key =
-                new String(
-                    checkMaxSize(listReader.readValue(), MAX_FIELD_KEY_SIZE).toArrayUnsafe(),
-                    UTF_8);
-            if (previousKey != null && key.compareTo(previousKey) <= 0) {
-              throw new DecodeException("ENR fields are not in strict order");
-            }
-            previousKey = key;
-
-            if ("id".equals(key)) {
-              Bytes idVersion = checkMaxSize(listReader.readValue(), MAX_ENR_RLP_SIZE);
-              String verString = new String(idVersion.toArrayUnsafe(), UTF_8);
-              nodeIdentity = IdentitySchema.fromString(verString);
-              if (nodeIdentity == null) { // no interpreter for such id
-                throw new DecodeException(
-                    String.format(
-                        "Unknown node identity scheme '%s', couldn't create node record.",
-                        verString));
-              }
-              rawFields.put(key, idVersion);
-            } else {
-              rawFields.put(key, readKeyValue(listReader, RlpUtil.MAX_NESTED_LIST_LEVELS));
+            final Bytes key = checkMaxSize(listReader.readValue(), MAX_FIELD_KEY_SIZE);
+            final Object value = readKeyValue(listReader, RlpUtil.MAX_NESTED_LIST_LEVELS);
+            keys.add(key);
+            values.add(value);
+            // Compared as bytes to avoid decoding the keys of fields which aren't needed yet
+            final String summaryField = SUMMARY_FIELD_KEYS.get(key);
+            if (summaryField != null) {
+              summaryFields.put(summaryField, value);
             }
           }
-          if (nodeIdentity == null) { // no `id` key-values
-            throw new DecodeException("Unknown node identity scheme, not defined in record ");
-          }
-
-          IdentitySchemaInterpreter identitySchemaInterpreter = interpreters.get(nodeIdentity);
-          if (identitySchemaInterpreter == null) {
-            throw new DecodeException(
-                String.format(
-                    "No Ethereum record interpreter found for identity scheme %s", nodeIdentity));
-          }
 
+          final IdentitySchemaInterpreter identitySchemaInterpreter =
+              getInterpreter(summaryFields.get(EnrField.ID));
           checkComplete(listReader);
-          return NodeRecord.fromRawFields(identitySchemaInterpreter, seq, signature, rawFields);
+          return new LazyNodeRecord(
+              identitySchemaInterpreter, interner, seq, signature, keys, values, summaryFields);
         });
   }
 
+  private IdentitySchemaInterpreter getInterpreter(final Object idVersion) {
+    if (idVersion == null) { // no `id` key-values
+      throw new DecodeException("Unknown node identity scheme, not defined in record ");
+    }
+    if (!(idVersion instanceof Bytes)) {
+      throw new DecodeException("Node identity scheme is not a value");
+    }
+    String verString =
+        new String(checkMaxSize((Bytes) idVersion, MAX_ENR_RLP_SIZE).toArrayUnsafe(), UTF_8);
+    IdentitySchema nodeIdentity = IdentitySchema.fromString(verString);
+    if (nodeIdentity == null) { // no interpreter for such id
+      throw new DecodeException(
+          String.format(
+              "Unknown node identity scheme '%s', couldn't create node record.", verString));
+    }
+
+    IdentitySchemaInterpreter identitySchemaInterpreter = interpreters.get(nodeIdentity);
+    if (identitySchemaInterpreter == null) {
+      throw new DecodeException(
+          String.format(
+              "No Ethereum record interpreter found for identity scheme %s", nodeIdentity));
+    }
+    return identitySchemaInterpreter;
+  }
+
   private Object readKeyValue(final RLPReader reader, final int remainingListLevels) {
     if (reader.nextIsList() && remainingListLevels > 0) {
       return reader.readListContents(
@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.schema;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Optional;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.units.bigints.UInt64;
+
+/**
+ * Keeps one canonical instance of the latest record of each node, so the routing table, sessions,
+ * lookups and the node database share it instead of each holding its own copy. The same record
+ * arriving again resolves to that instance without being decoded or verified again.
+ *
+ * <p>Records are keyed by their public key, which identifies the node without deriving its node
+ * ID. They are held weakly, an instance is dropped once nothing else refers to it. A record only
+ * becomes canonical once its signature is checked, so a forged copy can't take the place of the
+ * real one.
+ */
+public class NodeRecordInterner {
+  private final Cache<Bytes, NodeRecord> records = CacheBuilder.newBuilder().weakValues().build();
+
+  /**
+   * Returns the canonical instance of {@code record}, which becomes canonical itself if its
+   * signature is valid and no record with the same or a later sequence number is known. Otherwise
+   * {@code record} is returned as is.
+   */
+  public NodeRecord intern(final NodeRecord record) {
+    final Object publicKey = record.get(EnrField.PKEY_SECP256K1);
+    if (!(publicKey instanceof Bytes)) {
+      return record;
+    }
+    final NodeRecord canonical =
+        records
+            .asMap()
+            .compute(
+                (Bytes) publicKey,
+                (key, existing) -> {
+                  if (existing != null && record.getSeq().compareTo(existing.getSeq()) <= 0) {
+                    return existing;
+                  }
+                  // A forged record with a higher sequence number must not replace the real one
+                  return record.isValid() ? record : existing;
+                });
+    return record.equals(canonical) ? canonical : record;
+  }
+
+  /**
+   * Returns the canonical instance of the record with the given sequence number and signature if
+   * it is known and valid, so the record doesn't need decoding.
+   */
+  public Optional<NodeRecord> find(final Bytes publicKey, final UInt64 seq, final Bytes signature) {
+    final NodeRecord record = records.getIfPresent(publicKey);
+    // A valid signature for the same key and sequence number identifies the record content
+    if (record == null
+        || !record.getSeq().equals(seq)
+        || !record.getSignature().equals(signature)) {
+      return Optional.empty();
+    }
+    if (!record.isValid()) {
+      records.asMap().remove(publicKey, record);
+      return Optional.empty();
+    }
+    return Optional.of(record);
+  }
+
+  /** Returns the number of nodes with a canonical record, which may include collected ones. */
+  public long size() {
+    return records.size();
+  }
+}
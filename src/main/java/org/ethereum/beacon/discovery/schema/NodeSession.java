@@ -4,18 +4,23 @@
 
 package org.ethereum.beacon.discovery.schema;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static org.ethereum.beacon.discovery.task.TaskStatus.AWAIT;
 import static org.ethereum.beacon.discovery.task.TaskStatus.SENT;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -39,6 +44,8 @@ import org.ethereum.beacon.discovery.pipeline.info.RequestInfo;
 import org.ethereum.beacon.discovery.scheduler.ExpirationScheduler;
 import org.ethereum.beacon.discovery.storage.KBuckets;
 import org.ethereum.beacon.discovery.storage.LocalNodeRecordStore;
+import org.ethereum.beacon.discovery.storage.NodeSource;
+import org.ethereum.beacon.discovery.storage.SessionSnapshot;
 import org.ethereum.beacon.discovery.type.Bytes12;
 import org.ethereum.beacon.discovery.type.Bytes16;
 import org.slf4j.Logger;
@@ -61,10 +68,17 @@ public class NodeSession {
   private final Random rnd;
   private final Bytes nodeId;
   private Optional<NodeRecord> nodeRecord;
-  private SessionState state = SessionState.INITIAL;
+  private volatile SessionState state = SessionState.INITIAL;
   private Bytes initiatorKey;
   private Bytes recipientKey;
+  // When the session was authenticated, guarded by this
+  private long establishedTime;
+  // All requests by id, the two indexes below split them into awaiting and sent requests
   private final Map<Bytes, RequestInfo> requestIdStatuses;
+  // Requests waiting to be sent in the order they were created. Guarded by this.
+  private final Map<Bytes, RequestInfo> awaitingRequests = new LinkedHashMap<>();
+  // Requests which were sent in the order they were sent. Guarded by this.
+  private final Map<Bytes, RequestInfo> sentRequests = new LinkedHashMap<>();
   private final ExpirationScheduler<Bytes> requestExpirationScheduler;
   private final SecretKey staticNodeKey;
   private Optional<InetSocketAddress> reportedExternalAddress = Optional.empty();
@@ -72,6 +86,9 @@ public class NodeSession {
   private Optional<Bytes12> lastOutboundNonce = Optional.empty();
   private boolean active = true;
   private final Function<Random, Bytes12> nonceGenerator;
+  private final int maxInFlightRequests;
+  private final Clock clock;
+  private final RttEstimator rttEstimator = new RttEstimator();
 
   public NodeSession(
       final Bytes nodeId,
@@ -83,7 +100,8 @@ public class NodeSession {
       final KBuckets nodeBucketStorage,
       final Consumer<NetworkParcel> outgoingPipeline,
       final Random rnd,
-      final ExpirationScheduler<Bytes> requestExpirationScheduler) {
+      final ExpirationScheduler<Bytes> requestExpirationScheduler,
+      final int maxInFlightRequests) {
     this(
         nodeId,
         nodeRecord,
@@ -95,7 +113,9 @@ public class NodeSession {
         outgoingPipeline,
         rnd,
         requestExpirationScheduler,
-        new ConcurrentHashMap<>());
+        maxInFlightRequests,
+        new ConcurrentHashMap<>(),
+        Clock.systemUTC());
   }
 
   @VisibleForTesting
@@ -110,7 +130,10 @@ public class NodeSession {
       final Consumer<NetworkParcel> outgoingPipeline,
       final Random rnd,
       final ExpirationScheduler<Bytes> requestExpirationScheduler,
-      final Map<Bytes, RequestInfo> requestIdStatuses) {
+      final int maxInFlightRequests,
+      final Map<Bytes, RequestInfo> requestIdStatuses,
+      final Clock clock) {
+    checkArgument(maxInFlightRequests > 0, "maxInFlightRequests must be positive");
     this.nodeId = nodeId;
     this.nodeRecord = nodeRecord;
     this.remoteAddress = remoteAddress;
@@ -124,6 +147,8 @@ public class NodeSession {
     this.requestExpirationScheduler = requestExpirationScheduler;
     this.nonceGenerator = new NonceGenerator();
     this.requestIdStatuses = requestIdStatuses;
+    this.maxInFlightRequests = maxInFlightRequests;
+    this.clock = clock;
   }
 
   public Bytes getNodeId() {
@@ -167,6 +192,35 @@ public class NodeSession {
     sendOutgoing(maskingIV, packet);
   }
 
+  /**
+   * Restores the challenge of a WHOAREYOU packet which was sent without a session, so the handshake
+   * which answers it can be verified by this session.
+   */
+  public synchronized void restoreWhoAreYouChallenge(final Bytes challenge) {
+    whoAreYouChallenge = Optional.of(challenge);
+    setState(SessionState.WHOAREYOU_SENT);
+  }
+
+  /** Returns the keys of this session if it is authenticated with a known node record. */
+  public synchronized Optional<SessionSnapshot> createSnapshot() {
+    if (!isAuthenticated()) {
+      return Optional.empty();
+    }
+    return nodeRecord.map(
+        record ->
+            new SessionSnapshot(
+                record, remoteAddress, initiatorKey, recipientKey, establishedTime));
+  }
+
+  /** Resumes a session from keys agreed before a restart, skipping the handshake. */
+  public synchronized void restore(final SessionSnapshot snapshot) {
+    initiatorKey = snapshot.getInitiatorKey();
+    recipientKey = snapshot.getRecipientKey();
+    setState(SessionState.AUTHENTICATED);
+    // The keys are as old as when they were first agreed
+    establishedTime = snapshot.getEstablishedTime();
+  }
+
   public void sendOutgoingHandshake(
       final Header<HandshakeAuthData> header, final V5Message message) {
     LOG.trace("Sending outgoing Handshake message {}, {} in session {}", header, message, this);
@@ -176,6 +230,18 @@ public class NodeSession {
     sendOutgoing(maskingIV, handshakeMessagePacket);
   }
 
+  /**
+   * Sends the handshake carrying the given request and marks the session as authenticated. Done
+   * under the session lock so no queued request can be sent before the handshake.
+   */
+  public synchronized void sendOutgoingHandshake(
+      final Header<HandshakeAuthData> header, final RequestInfo requestInfo) {
+    // The request goes out within the handshake, so it must not be sent again
+    markRequestSent(requestInfo);
+    setState(SessionState.AUTHENTICATED);
+    sendOutgoingHandshake(header, requestInfo.getMessage());
+  }
+
   private void sendOutgoing(final Bytes16 maskingIV, final Packet<?> packet) {
     Bytes16 destNodeId = Bytes16.wrap(getNodeId(), 0);
     RawPacket rawPacket = RawPacket.createAndMask(maskingIV, packet, destNodeId);
@@ -207,17 +273,81 @@ public class NodeSession {
             });
     RequestInfo requestInfo = RequestInfo.create(wrappedId, request);
     requestIdStatuses.put(wrappedId, requestInfo);
-    requestExpirationScheduler.put(
-        wrappedId,
-        () -> {
-          LOG.trace(
-              "Request {} expired for id {} in session {}: no reply", requestInfo, wrappedId, this);
-          requestIdStatuses.remove(wrappedId);
-          resetHandshakeState();
-        });
+    awaitingRequests.put(wrappedId, requestInfo);
+    // Replaced by a deadline based on the round trip time once a protocol request is sent
+    requestExpirationScheduler.put(wrappedId, () -> onRequestExpired(requestInfo));
     return requestInfo;
   }
 
+  /** Moves the request from the queue of awaiting requests to the sent ones. */
+  public synchronized void markRequestSent(final RequestInfo requestInfo) {
+    final Bytes requestId = requestInfo.getRequestId();
+    if (awaitingRequests.remove(requestId) == null) {
+      // Already sent, completed, cancelled or expired
+      return;
+    }
+    requestInfo.setTaskStatus(SENT);
+    requestInfo.setSentTime(clock.millis());
+    sentRequests.put(requestId, requestInfo);
+    if (requestInfo.getRequest().usesRttDeadline()) {
+      requestExpirationScheduler.put(
+          requestId, () -> onRequestExpired(requestInfo), rttEstimator.getTimeout());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized void onRequestExpired(final RequestInfo requestInfo) {
+    final Bytes requestId = requestInfo.getRequestId();
+    LOG.trace("Request {} expired for id {} in session {}: no reply", requestInfo, requestId, this);
+    if (removeRequestInfo(requestId) == null) {
+      return;
+    }
+    final Optional<?> partialResult =
+        requestInfo.getRequest().getResponseHandler().getPartialResult();
+    if (partialResult.isPresent()) {
+      // The node replied but not all packets of the response arrived, use what did
+      LOG.debug("Request {} in session {} completed with a partial response", requestId, this);
+      ((Request<Object>) requestInfo.getRequest()).getResultPromise().complete(partialResult.get());
+      sendAwaitingRequests();
+      return;
+    }
+    if (isRttSample(requestInfo)) {
+      rttEstimator.onTimeout();
+    }
+    nodeRecord.ifPresent(nodeBucketStorage::onNodeUnresponsive);
+    resetHandshakeState();
+    requestInfo
+        .getRequest()
+        .getResultPromise()
+        .completeExceptionally(new TimeoutException("No reply to request " + requestId));
+    sendAwaitingRequests();
+  }
+
+  /**
+   * Returns how long responses from this node usually take at most, see {@link
+   * RttEstimator#getExpectedRtt()}.
+   */
+  public Duration getExpectedRtt() {
+    return rttEstimator.getExpectedRtt();
+  }
+
+  /**
+   * Sends awaiting requests in the order they were created for as long as fewer than the maximum
+   * number of in-flight requests are awaiting a reply. Does nothing until the session is
+   * authenticated.
+   */
+  public synchronized void sendAwaitingRequests() {
+    while (isAuthenticated() && sentRequests.size() < maxInFlightRequests) {
+      final Optional<RequestInfo> nextRequest = getFirstAwaitRequestInfo();
+      if (nextRequest.isEmpty()) {
+        return;
+      }
+      final RequestInfo requestInfo = nextRequest.get();
+      markRequestSent(requestInfo);
+      sendOutgoingOrdinary(requestInfo.getMessage());
+    }
+  }
+
   private synchronized void resetHandshakeState() {
     if (state == SessionState.WHOAREYOU_SENT || state == SessionState.RANDOM_PACKET_SENT) {
       setState(SessionState.INITIAL);
@@ -272,10 +402,15 @@ public class NodeSession {
   }
 
   /** If true indicates that handshake is complete */
-  public synchronized boolean isAuthenticated() {
+  public boolean isAuthenticated() {
     return SessionState.AUTHENTICATED.equals(state);
   }
 
+  /** Returns true if there are requests which are either waiting to be sent or awaiting reply */
+  public boolean hasInFlightRequests() {
+    return !requestIdStatuses.isEmpty();
+  }
+
   public Bytes32 getHomeNodeId() {
     return homeNodeId;
   }
@@ -316,7 +451,17 @@ public class NodeSession {
   public synchronized <T> void clearRequestInfo(final Bytes requestId, T result) {
     final RequestInfo requestInfo = clearRequestInfo(requestId);
     checkNotNull(requestInfo, "Attempting to clear an unknown request");
+    if (isRttSample(requestInfo)) {
+      rttEstimator.onResponse(clock.millis() - requestInfo.getSentTime());
+    }
     ((Request<T>) requestInfo.getRequest()).getResultPromise().complete(result);
+    // A slot in the in-flight window was freed up
+    sendAwaitingRequests();
+  }
+
+  private static boolean isRttSample(final RequestInfo requestInfo) {
+    return requestInfo.getRequest().usesRttDeadline()
+        && requestInfo.getSentTime() != RequestInfo.NOT_SENT;
   }
 
   /** Updates nodeRecord {@link NodeStatus} to ACTIVE of the node associated with this session */
@@ -325,14 +470,19 @@ public class NodeSession {
   }
 
   private synchronized RequestInfo clearRequestInfo(final Bytes requestId) {
-    final RequestInfo requestInfo = requestIdStatuses.remove(requestId);
+    final RequestInfo requestInfo = removeRequestInfo(requestId);
     requestExpirationScheduler.cancel(requestId);
     return requestInfo;
   }
 
-  public synchronized Optional<RequestInfo> getRequestInfo(final Bytes requestId) {
-    final RequestInfo requestInfo = requestIdStatuses.get(requestId);
-    return requestId == null ? Optional.empty() : Optional.of(requestInfo);
+  private synchronized RequestInfo removeRequestInfo(final Bytes requestId) {
+    awaitingRequests.remove(requestId);
+    sentRequests.remove(requestId);
+    return requestIdStatuses.remove(requestId);
+  }
+
+  public Optional<RequestInfo> getRequestInfo(final Bytes requestId) {
+    return Optional.ofNullable(requestIdStatuses.get(requestId));
   }
 
   /**
@@ -340,32 +490,40 @@ public class NodeSession {
    * authenticated
    */
   public synchronized Optional<RequestInfo> getFirstAwaitRequestInfo() {
-    return requestIdStatuses.values().stream()
-        .filter(requestInfo -> AWAIT.equals(requestInfo.getTaskStatus()))
-        .findFirst();
+    final Iterator<RequestInfo> iterator = awaitingRequests.values().iterator();
+    return iterator.hasNext() ? Optional.of(iterator.next()) : Optional.empty();
   }
 
   public synchronized Optional<RequestInfo> getFirstSentRequestInfo() {
-    return requestIdStatuses.values().stream()
-        .filter(requestInfo -> SENT.equals(requestInfo.getTaskStatus()))
-        .findFirst();
+    // Requests which started receiving a multi-packet response are skipped
+    for (RequestInfo requestInfo : sentRequests.values()) {
+      if (SENT.equals(requestInfo.getTaskStatus())) {
+        return Optional.of(requestInfo);
+      }
+    }
+    return Optional.empty();
   }
 
   public Stream<NodeRecord> getNodeRecordsInBucket(final int distance) {
     return nodeBucketStorage.getLiveNodeRecords(distance);
   }
 
+  /** Returns the version of the bucket, see {@link KBuckets#getBucketVersion(int)}. */
+  public long getBucketVersion(final int distance) {
+    return nodeBucketStorage.getBucketVersion(distance);
+  }
+
   public NodeRecord getHomeNodeRecord() {
     return localNodeRecordStore.getLocalNodeRecord();
   }
 
-  public synchronized void onNodeRecordReceived(final NodeRecord node) {
+  public synchronized void onNodeRecordReceived(final NodeRecord node, final NodeSource source) {
     if (node.getNodeId().equals(nodeId) && isUpdateRequired(node, nodeRecord)) {
       LOG.trace(
           String.format("NodeRecord updated from %s to %s in session %s", nodeRecord, node, this));
       nodeRecord = Optional.of(node);
     }
-    nodeBucketStorage.offer(node);
+    nodeBucketStorage.offer(node, source);
   }
 
   private boolean isUpdateRequired(
@@ -379,13 +537,20 @@ public class NodeSession {
     return "NodeSession{" + nodeId + " (" + state + ")}";
   }
 
-  public synchronized SessionState getState() {
+  public SessionState getState() {
     return state;
   }
 
   public synchronized void setState(final SessionState newStatus) {
     LOG.trace(String.format("Switching status of node %s from %s to %s", nodeId, state, newStatus));
+    final SessionState previousState = state;
     this.state = newStatus;
+    if (newStatus == SessionState.AUTHENTICATED && previousState != SessionState.AUTHENTICATED) {
+      establishedTime = clock.millis();
+    }
+    if (active) {
+      nodeSessionManager.onSessionStateChange(this, previousState, newStatus);
+    }
   }
 
   public SecretKey getStaticNodeKey() {
@@ -0,0 +1,68 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.schema;
+
+import java.time.Duration;
+
+/**
+ * Estimates the round trip time of requests to a peer to decide how long to wait for a response,
+ * the same way TCP computes its retransmission timeout (RFC 6298).
+ *
+ * <p>The smoothed RTT and its variance are updated from each response. The timeout is the smoothed
+ * RTT plus four times the variance, doubled after each timed out request until the next response.
+ * The expected RTT is a tighter bound after which a response is late but may still arrive.
+ */
+public class RttEstimator {
+  /** Expected RTT of peers with no responses yet. */
+  public static final Duration DEFAULT_EXPECTED_RTT = Duration.ofSeconds(1);
+
+  static final long INITIAL_TIMEOUT_MILLIS = 2000;
+  static final long MIN_TIMEOUT_MILLIS = 500;
+  static final long MAX_TIMEOUT_MILLIS = 5000;
+  private static final long NO_SAMPLES = -1;
+
+  private long smoothedRtt = NO_SAMPLES;
+  private long rttVariance;
+  private int backoff = 1;
+
+  /** Records the time between sending a request and receiving its response. */
+  public synchronized void onResponse(final long rttMillis) {
+    if (smoothedRtt == NO_SAMPLES) {
+      smoothedRtt = rttMillis;
+      rttVariance = rttMillis / 2;
+    } else {
+      rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - rttMillis)) / 4;
+      smoothedRtt = (7 * smoothedRtt + rttMillis) / 8;
+    }
+    backoff = 1;
+  }
+
+  /** Records that a request timed out, doubling the timeout of further requests. */
+  public synchronized void onTimeout() {
+    if (backoff * getBaseTimeoutMillis() < MAX_TIMEOUT_MILLIS) {
+      backoff *= 2;
+    }
+  }
+
+  /** Returns how long to wait for the response to a request before giving up. */
+  public synchronized Duration getTimeout() {
+    return Duration.ofMillis(Math.min(backoff * getBaseTimeoutMillis(), MAX_TIMEOUT_MILLIS));
+  }
+
+  /** Returns how long a response usually takes at most. */
+  public synchronized Duration getExpectedRtt() {
+    if (smoothedRtt == NO_SAMPLES) {
+      return DEFAULT_EXPECTED_RTT;
+    }
+    return Duration.ofMillis(Math.min(smoothedRtt + 2 * rttVariance, MAX_TIMEOUT_MILLIS));
+  }
+
+  private long getBaseTimeoutMillis() {
+    if (smoothedRtt == NO_SAMPLES) {
+      return INITIAL_TIMEOUT_MILLIS;
+    }
+    return Math.max(smoothedRtt + 4 * rttVariance, MIN_TIMEOUT_MILLIS);
+  }
+}
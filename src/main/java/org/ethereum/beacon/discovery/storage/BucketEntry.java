@@ -4,11 +4,10 @@
 package org.ethereum.beacon.discovery.storage;
 
 import com.google.common.base.MoreObjects;
-import java.util.Objects;
 import java.util.concurrent.TimeUnit;
-import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.liveness.LivenessChecker;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
 
 class BucketEntry {
 
@@ -26,6 +25,7 @@ class BucketEntry {
 
   private final LivenessChecker livenessChecker;
   private final NodeRecord node;
+  private final NodeId nodeId;
   private final long lastLivenessConfirmationTime;
   private long lastPingTime = NEVER;
 
@@ -39,17 +39,22 @@ class BucketEntry {
       final long lastLivenessConfirmationTime) {
     this.livenessChecker = livenessChecker;
     this.node = node;
+    this.nodeId = NodeId.wrap(node.getNodeId());
     this.lastLivenessConfirmationTime = lastLivenessConfirmationTime;
   }
 
-  public Bytes getNodeId() {
-    return node.getNodeId();
+  public NodeId getNodeId() {
+    return nodeId;
   }
 
   public NodeRecord getNode() {
     return node;
   }
 
+  public long getLastLivenessConfirmationTime() {
+    return lastLivenessConfirmationTime;
+  }
+
   public void checkLiveness(final long currentTime) {
     if (currentTime - lastPingTime >= MIN_MILLIS_BETWEEN_PINGS
         && currentTime - lastLivenessConfirmationTime >= MIN_MILLIS_BETWEEN_PINGS) {
@@ -59,8 +64,22 @@ class BucketEntry {
   }
 
   public boolean hasFailedLivenessCheck(final long currentTime) {
-    return lastLivenessConfirmationTime < lastPingTime // Haven't responded to last ping
-        && currentTime - lastPingTime >= PING_TIMEOUT_MILLIS;
+    return isAwaitingResponse() && currentTime - lastPingTime >= PING_TIMEOUT_MILLIS;
+  }
+
+  /** Returns true if the node hasn't responded to the last ping yet. */
+  public boolean isAwaitingResponse() {
+    return lastLivenessConfirmationTime < lastPingTime;
+  }
+
+  /**
+   * Returns the time from which the last ping is considered failed if still awaiting a response,
+   * otherwise the time from which {@link #checkLiveness(long)} pings the node again.
+   */
+  public long getNextCheckTime() {
+    return isAwaitingResponse()
+        ? lastPingTime + PING_TIMEOUT_MILLIS
+        : Math.max(lastPingTime, lastLivenessConfirmationTime) + MIN_MILLIS_BETWEEN_PINGS;
   }
 
   /**
@@ -77,6 +96,10 @@ class BucketEntry {
     return lastLivenessConfirmationTime != NEVER;
   }
 
+  public RoutingTableEntry toRoutingTableEntry() {
+    return new RoutingTableEntry(node, lastLivenessConfirmationTime);
+  }
+
   public BucketEntry withLastConfirmedTime(final long currentTime) {
     return new BucketEntry(livenessChecker, node, currentTime);
   }
@@ -90,12 +113,12 @@ class BucketEntry {
       return false;
     }
     final BucketEntry that = (BucketEntry) o;
-    return node.getNodeId().equals(that.node.getNodeId());
+    return nodeId.equals(that.nodeId);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(node.getNodeId());
+    return nodeId.hashCode();
   }
 
   @Override
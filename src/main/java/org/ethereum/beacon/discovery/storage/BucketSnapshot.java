@@ -0,0 +1,86 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
+
+/**
+ * Immutable copy of the nodes in a {@link KBucket}. A new snapshot is published after every change
+ * to the bucket so reads never need to lock the routing table.
+ *
+ * <p>Only the node and node ID of the held entries are read, both of which never change.
+ */
+class BucketSnapshot {
+  /** All entries in the bucket, live entries first as in the bucket itself. */
+  private final List<BucketEntry> entries;
+
+  private final List<NodeRecord> nodes;
+  private final Map<NodeId, Integer> indexById;
+  private final int liveNodeCount;
+  private final int replacementNodeCount;
+
+  BucketSnapshot(
+      final List<BucketEntry> entries, final int liveNodeCount, final int replacementNodeCount) {
+    this.entries = List.copyOf(entries);
+    this.nodes = entries.stream().map(BucketEntry::getNode).toList();
+    final Map<NodeId, Integer> indexById = new HashMap<>();
+    for (int i = 0; i < entries.size(); i++) {
+      indexById.put(entries.get(i).getNodeId(), i);
+    }
+    this.indexById = indexById;
+    this.liveNodeCount = liveNodeCount;
+    this.replacementNodeCount = replacementNodeCount;
+  }
+
+  public List<NodeRecord> getAllNodes() {
+    return nodes;
+  }
+
+  public List<NodeRecord> getLiveNodes() {
+    return nodes.subList(0, liveNodeCount);
+  }
+
+  public List<BucketEntry> getLiveEntries() {
+    return entries.subList(0, liveNodeCount);
+  }
+
+  public boolean hasLiveNodes() {
+    return liveNodeCount > 0;
+  }
+
+  /** Returns true if both snapshots have the same live nodes, in any order. */
+  public boolean hasSameLiveNodes(final BucketSnapshot other) {
+    if (liveNodeCount != other.liveNodeCount) {
+      return false;
+    }
+    for (NodeRecord node : other.getLiveNodes()) {
+      final Integer index = indexById.get(NodeId.wrap(node.getNodeId()));
+      if (index == null || index >= liveNodeCount || !nodes.get(index).equals(node)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public Optional<NodeRecord> getNode(final NodeId nodeId) {
+    return Optional.ofNullable(indexById.get(nodeId)).map(nodes::get);
+  }
+
+  public Optional<NodeRecord> getLiveNode(final NodeId nodeId) {
+    final Integer index = indexById.get(nodeId);
+    if (index == null || index >= liveNodeCount) {
+      return Optional.empty();
+    }
+    return Optional.of(nodes.get(index));
+  }
+
+  public void updateStats(final int distance, final BucketStats stats) {
+    stats.setBucketStat(distance, liveNodeCount, nodes.size(), replacementNodeCount);
+  }
+}
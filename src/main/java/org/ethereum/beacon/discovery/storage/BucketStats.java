@@ -9,10 +9,16 @@ import java.util.stream.IntStream;
 public class BucketStats {
   private final int[] allNodeCounts = new int[KBuckets.MAXIMUM_BUCKET + 1];
   private final int[] liveNodeCounts = new int[KBuckets.MAXIMUM_BUCKET + 1];
+  private final int[] replacementNodeCounts = new int[KBuckets.MAXIMUM_BUCKET + 1];
 
-  void setBucketStat(final int distance, final int liveNodeCount, final int allNodeCount) {
+  void setBucketStat(
+      final int distance,
+      final int liveNodeCount,
+      final int allNodeCount,
+      final int replacementNodeCount) {
     liveNodeCounts[distance] = liveNodeCount;
     allNodeCounts[distance] = allNodeCount;
+    replacementNodeCounts[distance] = replacementNodeCount;
   }
 
   public int[] getLiveNodeCounts() {
@@ -23,6 +29,10 @@ public class BucketStats {
     return allNodeCounts;
   }
 
+  public int[] getReplacementNodeCounts() {
+    return replacementNodeCounts;
+  }
+
   public int getTotalLiveNodeCount() {
     return IntStream.of(liveNodeCounts).sum();
   }
@@ -31,25 +41,34 @@ public class BucketStats {
     return IntStream.of(allNodeCounts).sum();
   }
 
+  public int getTotalReplacementNodeCount() {
+    return IntStream.of(replacementNodeCounts).sum();
+  }
+
   public String format() {
     final StringBuilder str = new StringBuilder("Node counts by distance:\n");
     for (int distance = 0; distance <= KBuckets.MAXIMUM_BUCKET; distance++) {
       final int liveCount = liveNodeCounts[distance];
       final int allCount = allNodeCounts[distance];
-      if (allCount > 0 || liveCount > 0) {
+      final int replacementCount = replacementNodeCounts[distance];
+      if (allCount > 0 || liveCount > 0 || replacementCount > 0) {
         str.append("Distance: ")
             .append(distance)
             .append(" Live: ")
             .append(liveCount)
             .append(" Total: ")
             .append(allCount)
+            .append(" Replacements: ")
+            .append(replacementCount)
             .append("\n");
       }
     }
     str.append("Total Live: ")
         .append(getTotalLiveNodeCount())
         .append(" Total: ")
-        .append(getTotalNodeCount());
+        .append(getTotalNodeCount())
+        .append(" Replacements: ")
+        .append(getTotalReplacementNodeCount());
     return str.toString();
   }
 
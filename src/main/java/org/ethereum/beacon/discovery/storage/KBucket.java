@@ -7,11 +7,12 @@ import java.time.Clock;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.liveness.LivenessChecker;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
 
 class KBucket {
 
@@ -19,6 +20,8 @@ class KBucket {
 
   private final LivenessChecker livenessChecker;
   private final Clock clock;
+  private final int bucketSize;
+  private final Consumer<NodeRecord> unresponsiveNodeListener;
 
   /**
    * The nodes actually in the bucket, ordered by time they were last confirmed as live.
@@ -30,20 +33,39 @@ class KBucket {
   private final List<BucketEntry> nodes = new ArrayList<>();
 
   /**
-   * Stores a node which could not be added because the bucket was full, but is confirmed live and
+   * Stores nodes which could not be added because the bucket was full, but are confirmed live and
    * able to be inserted immediately should any node in the bucket be removed.
    */
-  private Optional<BucketEntry> pendingNode = Optional.empty();
+  private final ReplacementCache replacements;
 
-  private long lastMaintenanceTime = 0;
+  public KBucket(
+      final LivenessChecker livenessChecker,
+      final Clock clock,
+      final int bucketSize,
+      final int replacementCacheSize) {
+    this(livenessChecker, clock, bucketSize, replacementCacheSize, node -> {});
+  }
 
-  public KBucket(final LivenessChecker livenessChecker, final Clock clock) {
+  /**
+   * @param unresponsiveNodeListener notified of nodes removed because they failed to respond to a
+   *     ping
+   */
+  public KBucket(
+      final LivenessChecker livenessChecker,
+      final Clock clock,
+      final int bucketSize,
+      final int replacementCacheSize,
+      final Consumer<NodeRecord> unresponsiveNodeListener) {
     this.livenessChecker = livenessChecker;
     this.clock = clock;
+    this.bucketSize = bucketSize;
+    this.unresponsiveNodeListener = unresponsiveNodeListener;
+    this.replacements = new ReplacementCache(livenessChecker, replacementCacheSize);
   }
 
-  public void updateStats(final int distance, final BucketStats stats) {
-    stats.setBucketStat(distance, (int) streamLiveEntries().count(), nodes.size());
+  /** Creates an immutable copy of the current bucket content. */
+  public BucketSnapshot createSnapshot() {
+    return new BucketSnapshot(nodes, (int) streamLiveEntries().count(), replacements.size());
   }
 
   public List<NodeRecord> getAllNodes() {
@@ -58,8 +80,54 @@ class KBucket {
     return nodes.stream().takeWhile(BucketEntry::isLive);
   }
 
+  /** Returns the replacement node that would be inserted next if a node is removed. */
   public Optional<NodeRecord> getPendingNode() {
-    return pendingNode.map(BucketEntry::getNode);
+    return replacements.getNext();
+  }
+
+  public List<NodeRecord> getReplacementNodes() {
+    return replacements.getNodes();
+  }
+
+  /**
+   * Returns the live nodes in the bucket followed by up to {@code maxReplacements} replacement
+   * nodes, the next to be inserted first.
+   */
+  public List<RoutingTableEntry> getLiveEntries(final int maxReplacements) {
+    final List<RoutingTableEntry> entries =
+        streamLiveEntries()
+            .map(BucketEntry::toRoutingTableEntry)
+            .collect(Collectors.toCollection(ArrayList::new));
+    entries.addAll(replacements.getEntries(maxReplacements));
+    return entries;
+  }
+
+  /**
+   * Adds a node previously confirmed as live, e.g. loaded from disk after a restart. Nodes are
+   * expected in order of their last confirmation, most recent first.
+   *
+   * <p>A stale node is added without counting as live and is pinged straight away, unless the
+   * bucket is full in which case it is pinged before it replaces another node.
+   */
+  public void restore(final RoutingTableEntry restored, final boolean stale) {
+    final NodeRecord node = restored.getNode();
+    if (getEntry(node).isPresent()) {
+      return;
+    }
+    if (isFull()) {
+      replacements.onLivenessConfirmed(
+          NodeId.wrap(node.getNodeId()), node, restored.getLastLivenessConfirmationTime());
+    } else if (stale) {
+      final BucketEntry entry = new BucketEntry(livenessChecker, node);
+      nodes.add(entry);
+      entry.checkLiveness(clock.millis());
+    } else {
+      // Live nodes stay ahead of any stale ones already added
+      final int position = (int) streamLiveEntries().count();
+      nodes.add(
+          position,
+          new BucketEntry(livenessChecker, node, restored.getLastLivenessConfirmationTime()));
+    }
   }
 
   public void offer(final NodeRecord node) {
@@ -86,7 +154,8 @@ class KBucket {
     }
     if (isFull()) {
       nodes.getLast().checkLiveness(clock.millis());
-      if (pendingNode.isEmpty()) {
+      if (replacements.hasRoomFor(clock.millis())
+          && !replacements.contains(NodeId.wrap(node.getNodeId()))) {
         livenessChecker.checkLiveness(node);
       }
     } else {
@@ -106,17 +175,16 @@ class KBucket {
               performMaintenance();
             },
             () -> {
-              if (pendingNode.isPresent()
-                  && pendingNode.get().getNodeId().equals(node.getNodeId())) {
-                // Update pending node
-                pendingNode = Optional.of(pendingNode.get().withLastConfirmedTime(clock.millis()));
+              final NodeId nodeId = NodeId.wrap(node.getNodeId());
+              if (replacements.contains(nodeId)) {
+                // Update the replacement before maintenance so it isn't considered timed out
+                replacements.onLivenessConfirmed(nodeId, node, clock.millis());
               }
               performMaintenance();
               if (isFull()) {
-                if (pendingNode.isEmpty()) {
-                  pendingNode = Optional.of(new BucketEntry(livenessChecker, node, clock.millis()));
-                }
+                replacements.onLivenessConfirmed(nodeId, node, clock.millis());
               } else {
+                replacements.remove(nodeId);
                 nodes.addFirst(new BucketEntry(livenessChecker, node, clock.millis()));
               }
             });
@@ -125,9 +193,11 @@ class KBucket {
   /**
    * Performs any pending maintenance on the bucket.
    *
-   * <p>If the pending node has not been pinged recently, schedule a ping for it.
+   * <p>If the next replacement node has not been pinged recently, schedule a ping for it, otherwise
+   * periodically revalidate the least recently confirmed replacement node.
    *
-   * <p>If the pending node has not responded to the last ping within a reasonable time, remove it.
+   * <p>If a replacement node has not responded to the last ping within a reasonable time, remove
+   * it.
    *
    * <p>If the last node in the bucket has not been pinged recently, schedule a ping for it.
    *
@@ -136,13 +206,12 @@ class KBucket {
    *
    * <p>a. remove it from the bucket.
    *
-   * <p>b. if there is a pending node, insert it into the bucket (at appropriate position based on
-   * when it was last confirmed as live)
+   * <p>b. if there is a replacement node, insert the next one into the bucket (at appropriate
+   * position based on when it was last confirmed as live, pinging it if that was not recent)
    */
   public void performMaintenance() {
     final long currentTime = clock.millis();
-    lastMaintenanceTime = currentTime;
-    performPendingNodeMaintenance();
+    replacements.performMaintenance(currentTime).ifPresent(unresponsiveNodeListener);
 
     if (nodes.isEmpty()) {
       return;
@@ -150,59 +219,86 @@ class KBucket {
     final BucketEntry lastNode = nodes.getLast();
     if (lastNode.hasFailedLivenessCheck(currentTime)) {
       nodes.remove(lastNode);
-      pendingNode.ifPresent(
-          pendingEntry -> {
-            nodes.addFirst(pendingEntry);
-            pendingNode = Optional.empty();
-          });
+      unresponsiveNodeListener.accept(lastNode.getNode());
+      insertNextReplacement(currentTime);
     } else {
       lastNode.checkLiveness(currentTime);
     }
   }
 
-  public long getLastMaintenanceTime() {
-    return lastMaintenanceTime;
+  private void insertNextReplacement(final long currentTime) {
+    replacements
+        .removeNext()
+        .ifPresent(
+            entry -> {
+              // Keep the bucket ordered by confirmation time, ahead of any unconfirmed nodes
+              int position = 0;
+              while (position < nodes.size()
+                  && nodes.get(position).isLive()
+                  && nodes.get(position).getLastLivenessConfirmationTime()
+                      > entry.getLastLivenessConfirmationTime()) {
+                position++;
+              }
+              nodes.add(position, entry);
+              entry.checkLiveness(currentTime);
+            });
+  }
+
+  /**
+   * Returns when {@link #performMaintenance()} next needs to check whether a ping to the last node
+   * or a replacement node has timed out, or {@link MaintenanceSchedule#NOT_DUE}.
+   */
+  public long getNextTimeoutCheckTime() {
+    long nextCheckTime = replacements.getNextTimeoutCheckTime();
+    if (!nodes.isEmpty() && nodes.getLast().isAwaitingResponse()) {
+      nextCheckTime = Math.min(nextCheckTime, nodes.getLast().getNextCheckTime());
+    }
+    return nextCheckTime;
+  }
+
+  /**
+   * Returns when {@link #performMaintenance()} next needs to ping the last node or a replacement
+   * node to revalidate it, or {@link MaintenanceSchedule#NOT_DUE}.
+   */
+  public long getNextRevalidationTime() {
+    long nextCheckTime = replacements.getNextRevalidationTime();
+    if (!nodes.isEmpty() && !nodes.getLast().isAwaitingResponse()) {
+      nextCheckTime = Math.min(nextCheckTime, nodes.getLast().getNextCheckTime());
+    }
+    return nextCheckTime;
   }
 
-  private void performPendingNodeMaintenance() {
-    pendingNode.ifPresent(
-        pendingEntry -> {
-          final long currentTime = clock.millis();
-          if (pendingEntry.hasFailedLivenessCheck(currentTime)) {
-            pendingNode = Optional.empty();
-          } else {
-            pendingEntry.checkLiveness(currentTime);
-          }
-        });
+  public int getNodeCount() {
+    return nodes.size();
+  }
+
+  /** Returns true if the node is in the bucket or its replacement cache. */
+  public boolean contains(final NodeId nodeId) {
+    return getEntry(nodeId).isPresent() || replacements.contains(nodeId);
   }
 
   private boolean isFull() {
-    return nodes.size() >= K;
+    return nodes.size() >= bucketSize;
   }
 
   private Optional<BucketEntry> getEntry(final NodeRecord nodeRecord) {
-    return getEntry(nodeRecord.getNodeId());
+    return getEntry(NodeId.wrap(nodeRecord.getNodeId()));
   }
 
-  private Optional<BucketEntry> getEntry(final Bytes nodeId) {
+  private Optional<BucketEntry> getEntry(final NodeId nodeId) {
     return nodes.stream().filter(node -> node.getNodeId().equals(nodeId)).findAny();
   }
 
-  public Optional<NodeRecord> getNode(final Bytes targetNodeId) {
-    return getEntry(targetNodeId).map(BucketEntry::getNode);
-  }
-
   public boolean isEmpty() {
     return nodes.isEmpty();
   }
 
-  public void deleteNode(Bytes nodeId) {
+  public void deleteNode(final NodeId nodeId) {
     nodes.removeIf((bucketEntry) -> bucketEntry.getNodeId().equals(nodeId));
-    performPendingNodeMaintenance();
-    pendingNode.ifPresent(
-        pendingEntry -> {
-          nodes.addFirst(pendingEntry);
-          pendingNode = Optional.empty();
-        });
+    replacements.remove(nodeId);
+    replacements.performMaintenance(clock.millis()).ifPresent(unresponsiveNodeListener);
+    if (!isFull()) {
+      insertNextReplacement(clock.millis());
+    }
   }
 }
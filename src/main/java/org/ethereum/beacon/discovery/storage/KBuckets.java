@@ -3,22 +3,35 @@
  */
 package org.ethereum.beacon.discovery.storage;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.liveness.LivenessChecker;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
-import org.ethereum.beacon.discovery.util.Functions;
+import org.ethereum.beacon.discovery.type.NodeId;
 
+/**
+ * The routing table. Changes are serialised by the lock on this object and publish an immutable
+ * {@link BucketSnapshot} of the changed bucket. Reads are served from the snapshots without
+ * locking, so answering FINDNODE requests never waits for maintenance or incoming offers.
+ */
 public class KBuckets {
   /**
    * Minimum distance we create a bucket for. 0 is our local node record and negative distances
@@ -29,81 +42,222 @@ public class KBuckets {
   /** Maximum distance we create a bucket for. This is enough to cover all 32 byte node IDs. */
   public static final int MAXIMUM_BUCKET = 256;
 
+  /** Number of nodes per bucket recommended by the specification. */
+  public static final int DEFAULT_BUCKET_SIZE = KBucket.K;
+
+  /** Number of confirmed live nodes kept per bucket to replace nodes which are removed. */
+  public static final int DEFAULT_REPLACEMENT_CACHE_SIZE = 1;
+
   private final LocalNodeRecordStore localNodeRecordStore;
-  private final Bytes homeNodeId;
+  private final NodeId homeNodeId;
   private final LivenessChecker livenessChecker;
+  private final NodeDatabase nodeDatabase;
+  // Guarded by this
   private final Map<Integer, KBucket> buckets = new HashMap<>();
+  // Latest snapshot of each bucket indexed by distance, null if the bucket was never created
+  private final AtomicReferenceArray<BucketSnapshot> snapshots =
+      new AtomicReferenceArray<>(MAXIMUM_BUCKET + 1);
+  // Bit set for each distance whose bucket has live nodes, so closest node queries skip empty ones
+  private final AtomicLongArray liveBuckets =
+      new AtomicLongArray(MAXIMUM_BUCKET / Long.SIZE + 1);
+  // Number of changes to the live nodes at each distance, so results derived from a bucket can be
+  // reused until they change
+  private final AtomicLongArray bucketVersions = new AtomicLongArray(MAXIMUM_BUCKET + 1);
+  // Guarded by this
+  private final MaintenanceSchedule maintenanceSchedule = new MaintenanceSchedule();
   private final Clock clock;
+  private final int bucketSize;
+  private final int replacementCacheSize;
 
   public KBuckets(
       final Clock clock,
       final LocalNodeRecordStore localNodeRecordStore,
       final LivenessChecker livenessChecker) {
+    this(
+        clock,
+        localNodeRecordStore,
+        livenessChecker,
+        DEFAULT_BUCKET_SIZE,
+        DEFAULT_REPLACEMENT_CACHE_SIZE);
+  }
+
+  /**
+   * Creates a routing table with the given number of nodes per bucket and per replacement cache.
+   *
+   * <p>Nodes in the replacement caches are held in a compact layout, so a large replacement cache
+   * size can be used to keep tens of thousands of verified nodes, e.g. for a crawler or boot node.
+   * Buckets themselves are copied on each change and should stay small, which also keeps FINDNODE
+   * responses served from them at the size recommended by the specification.
+   */
+  public KBuckets(
+      final Clock clock,
+      final LocalNodeRecordStore localNodeRecordStore,
+      final LivenessChecker livenessChecker,
+      final int bucketSize,
+      final int replacementCacheSize) {
+    this(
+        clock,
+        localNodeRecordStore,
+        livenessChecker,
+        bucketSize,
+        replacementCacheSize,
+        new NodeDatabase(
+            clock,
+            NodeDatabase.DEFAULT_CAPACITY,
+            localNodeRecordStore.getLocalNodeRecord().getNodeId()));
+  }
+
+  /**
+   * Creates a routing table which records every node it is offered or contacts in {@code
+   * nodeDatabase}, and refills buckets from it when nodes are removed. The database must be indexed
+   * by distance from the same local node.
+   */
+  public KBuckets(
+      final Clock clock,
+      final LocalNodeRecordStore localNodeRecordStore,
+      final LivenessChecker livenessChecker,
+      final int bucketSize,
+      final int replacementCacheSize,
+      final NodeDatabase nodeDatabase) {
+    checkArgument(bucketSize > 0, "Bucket size must be positive");
+    checkArgument(replacementCacheSize >= 0, "Replacement cache size must not be negative");
     this.clock = clock;
     this.localNodeRecordStore = localNodeRecordStore;
-    this.homeNodeId = localNodeRecordStore.getLocalNodeRecord().getNodeId();
+    this.homeNodeId = NodeId.wrap(localNodeRecordStore.getLocalNodeRecord().getNodeId());
     this.livenessChecker = livenessChecker;
+    this.bucketSize = bucketSize;
+    this.replacementCacheSize = replacementCacheSize;
+    this.nodeDatabase = nodeDatabase;
   }
 
-  public synchronized Stream<NodeRecord> getLiveNodeRecords(int distance) {
-    if (distance == 0) {
-      return Stream.of(localNodeRecordStore.getLocalNodeRecord());
-    }
-    return streamFromBucket(distance, bucket -> bucket.getLiveNodes().stream());
+  public NodeDatabase getNodeDatabase() {
+    return nodeDatabase;
   }
 
-  public synchronized Stream<NodeRecord> getAllNodeRecords(int distance) {
+  public Stream<NodeRecord> getLiveNodeRecords(int distance) {
     if (distance == 0) {
       return Stream.of(localNodeRecordStore.getLocalNodeRecord());
     }
-    return streamFromBucket(distance, bucket -> bucket.getAllNodes().stream());
+    return getSnapshot(distance)
+        .map(snapshot -> snapshot.getLiveNodes().stream())
+        .orElseGet(Stream::empty);
   }
 
   /**
-   * Extracts a {@link Stream} from a {@link KBucket} at a given distance, ensuring that all
-   * accesses to the KBucket are completed prior to the method returning.
-   *
-   * <p>Specifically this method avoids using {@code getBucket(distance).stream().flatMap(mapper)}
-   * as the mapper is then called after the method returns. That leads to thread safety issues.
-   *
-   * @param distance the bucket distance
-   * @param mapper the function to convert the KBucket to a Stream of objects
-   * @param <T> the type of object in the returned Stream
-   * @return the result of applying mapper to the bucket at the requested distance, or an empty
-   *     stream if there is no bucket at that distance.
+   * Returns the version of the bucket at {@code distance}, which changes whenever its live nodes
+   * change, but not when they are only reordered or its other entries change. The version is read
+   * before the nodes, so nodes read after it are at least as recent.
+   * At distance 0, where the local node record is, it is the sequence number of that record.
    */
-  private <T> Stream<T> streamFromBucket(int distance, final Function<KBucket, Stream<T>> mapper) {
-    final Optional<KBucket> bucket = getBucket(distance);
-    if (bucket.isPresent()) {
-      return mapper.apply(bucket.get());
-    } else {
-      return Stream.empty();
+  public long getBucketVersion(final int distance) {
+    if (distance == 0) {
+      return localNodeRecordStore.getLocalNodeRecord().getSeq().toLong();
+    }
+    if (distance > MAXIMUM_BUCKET || distance < MINIMUM_BUCKET) {
+      return 0;
+    }
+    return bucketVersions.get(distance);
+  }
+
+  /** Returns the confirmed live nodes waiting to replace nodes removed from a bucket. */
+  public synchronized List<NodeRecord> getReplacementNodeRecords(final int distance) {
+    final KBucket bucket = buckets.get(distance);
+    return bucket != null ? bucket.getReplacementNodes() : List.of();
+  }
+
+  public Stream<NodeRecord> getAllNodeRecords(int distance) {
+    if (distance == 0) {
+      return Stream.of(localNodeRecordStore.getLocalNodeRecord());
     }
+    return getSnapshot(distance)
+        .map(snapshot -> snapshot.getAllNodes().stream())
+        .orElseGet(Stream::empty);
   }
 
   public Stream<NodeRecord> streamClosestNodes(Bytes nodeId) {
     return StreamSupport.stream(
         Spliterators.spliteratorUnknownSize(
-            new KBucketsIterator(this, homeNodeId, nodeId), Spliterator.ORDERED),
+            new KBucketsIterator(this, homeNodeId, NodeId.wrap(nodeId)), Spliterator.ORDERED),
         false);
   }
 
-  private Optional<KBucket> getBucket(final int distance) {
-    return Optional.ofNullable(buckets.get(distance));
+  /** Returns up to {@code limit} live nodes closest to {@code target}, closest first. */
+  public List<NodeRecord> closest(final Bytes target, final int limit) {
+    final List<NodeRecord> closest = new ArrayList<>();
+    final KBucketsIterator iterator = new KBucketsIterator(this, homeNodeId, NodeId.wrap(target));
+    while (closest.size() < limit && iterator.hasNext()) {
+      closest.add(iterator.next());
+    }
+    return closest;
   }
 
-  public synchronized void offer(NodeRecord node) {
-    final int distance = Functions.logDistance(homeNodeId, node.getNodeId());
-    if (distance > MAXIMUM_BUCKET) {
-      // Distance too great, ignore.
+  /**
+   * Returns up to {@code limit} nodes from the node database closest to {@code target}, closest
+   * first. Unlike {@link #closest(Bytes, int)} these are not necessarily live.
+   */
+  public List<NodeRecord> closestKnownNodes(final Bytes target, final int limit) {
+    return nodeDatabase.closest(target, limit);
+  }
+
+  List<BucketEntry> getLiveEntries(final int distance) {
+    return getSnapshot(distance).map(BucketSnapshot::getLiveEntries).orElse(List.of());
+  }
+
+  /**
+   * Returns the smallest distance from {@code fromDistance} onwards with live nodes in its bucket,
+   * or -1 if there is none.
+   */
+  int nextLiveBucket(final int fromDistance) {
+    if (fromDistance > MAXIMUM_BUCKET) {
+      return -1;
+    }
+    final int firstWord = fromDistance / Long.SIZE;
+    for (int word = firstWord; word < liveBuckets.length(); word++) {
+      long bits = liveBuckets.get(word);
+      if (word == firstWord) {
+        bits &= -1L << (fromDistance % Long.SIZE);
+      }
+      if (bits != 0) {
+        return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+      }
+    }
+    return -1;
+  }
+
+  private Optional<BucketSnapshot> getSnapshot(final int distance) {
+    if (distance > MAXIMUM_BUCKET || distance < MINIMUM_BUCKET) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(snapshots.get(distance));
+  }
+
+  public void offer(NodeRecord node) {
+    offer(node, NodeSource.LOCAL);
+  }
+
+  public synchronized void offer(final NodeRecord node, final NodeSource source) {
+    final int distance = homeNodeId.logDistance(NodeId.wrap(node.getNodeId()));
+    if (distance > MAXIMUM_BUCKET || distance < MINIMUM_BUCKET) {
+      // Distance too great or our own record, ignore.
       return;
     }
-    getOrCreateBucket(distance).ifPresent(bucket -> bucket.offer(node));
+    nodeDatabase.onNodeSeen(node, source);
+    getOrCreateBucket(distance)
+        .ifPresent(
+            bucket -> {
+              bucket.offer(node);
+              publishSnapshot(distance, bucket);
+            });
   }
 
-  public synchronized BucketStats getStats() {
+  public BucketStats getStats() {
     final BucketStats stats = new BucketStats();
-    buckets.forEach((distance, bucket) -> bucket.updateStats(distance, stats));
+    for (int distance = MINIMUM_BUCKET; distance <= MAXIMUM_BUCKET; distance++) {
+      final BucketSnapshot snapshot = snapshots.get(distance);
+      if (snapshot != null) {
+        snapshot.updateStats(distance, stats);
+      }
+    }
     return stats;
   }
 
@@ -115,16 +269,82 @@ public class KBuckets {
    * @param node the node for which liveness was confirmed.
    */
   public synchronized void onNodeContacted(NodeRecord node) {
-    final int distance = Functions.logDistance(homeNodeId, node.getNodeId());
-    getOrCreateBucket(distance).ifPresent(bucket -> bucket.onLivenessConfirmed(node));
+    final int distance = homeNodeId.logDistance(NodeId.wrap(node.getNodeId()));
+    if (distance >= MINIMUM_BUCKET) {
+      nodeDatabase.onNodeResponded(node);
+    }
+    onLivenessConfirmed(node);
   }
 
-  /** Performs maintenance on the least recently touch bucket (excluding any empty buckets). */
+  /**
+   * Called when a node is known to be live without a new response, e.g. because it responded to
+   * another request recently.
+   */
+  public synchronized void onLivenessConfirmed(final NodeRecord node) {
+    final int distance = homeNodeId.logDistance(NodeId.wrap(node.getNodeId()));
+    getOrCreateBucket(distance)
+        .ifPresent(
+            bucket -> {
+              bucket.onLivenessConfirmed(node);
+              publishSnapshot(distance, bucket);
+            });
+  }
+
+  /** Called when a request we sent to {@code node} received no response. */
+  public void onNodeUnresponsive(final NodeRecord node) {
+    nodeDatabase.onNodeUnresponsive(node.getNodeId());
+  }
+
+  /**
+   * Performs maintenance on every bucket with a ping that may have timed out, and on the bucket
+   * most overdue for revalidation of its nodes. Buckets are tracked by when they are next due, so
+   * the cost doesn't depend on the size of the table.
+   */
   public synchronized void performMaintenance() {
-    buckets.values().stream()
-        .filter(bucket -> !bucket.isEmpty())
-        .min(Comparator.comparing(KBucket::getLastMaintenanceTime))
-        .ifPresent(KBucket::performMaintenance);
+    final long currentTime = clock.millis();
+    // Each bucket is done at most once per poll, the limit just guards against a bucket which
+    // remains due after its maintenance
+    for (int i = 0; i <= MAXIMUM_BUCKET; i++) {
+      final int distance = maintenanceSchedule.pollTimeoutCheck(currentTime);
+      if (distance == MaintenanceSchedule.NONE_DUE) {
+        break;
+      }
+      performMaintenance(distance);
+    }
+    // Revalidating one bucket per call spreads the pings out
+    final int distance = maintenanceSchedule.pollRevalidation(currentTime);
+    if (distance != MaintenanceSchedule.NONE_DUE) {
+      performMaintenance(distance);
+    }
+  }
+
+  private void performMaintenance(final int distance) {
+    final KBucket bucket = buckets.get(distance);
+    final int nodeCount = bucket.getNodeCount();
+    bucket.performMaintenance();
+    if (bucket.getNodeCount() < nodeCount) {
+      refill(distance, bucket);
+    }
+    publishSnapshot(distance, bucket);
+  }
+
+  /**
+   * Offers nodes at {@code distance} from the node database to fill any free space left in the
+   * bucket once its replacement cache is exhausted. They are pinged before being treated as live.
+   */
+  private void refill(final int distance, final KBucket bucket) {
+    final int freeSlots = bucketSize - bucket.getNodeCount();
+    if (freeSlots <= 0) {
+      return;
+    }
+    nodeDatabase
+        .findAtDistance(
+            distance,
+            entry ->
+                // Only nodes which haven't failed to respond since they last did
+                entry.getFailureCount() == 0 && !bucket.contains(entry.getNodeId()),
+            freeSlots)
+        .forEach(entry -> bucket.offer(entry.getNode()));
   }
 
   private Optional<KBucket> getOrCreateBucket(final int distance) {
@@ -133,26 +353,115 @@ public class KBuckets {
       return Optional.empty();
     }
     return Optional.of(
-        buckets.computeIfAbsent(distance, __ -> new KBucket(livenessChecker, clock)));
+        buckets.computeIfAbsent(
+            distance,
+            __ ->
+                new KBucket(
+                    livenessChecker,
+                    clock,
+                    bucketSize,
+                    replacementCacheSize,
+                    node -> nodeDatabase.onNodeUnresponsive(node.getNodeId()))));
+  }
+
+  private void publishSnapshot(final int distance, final KBucket bucket) {
+    maintenanceSchedule.schedule(
+        distance, bucket.getNextTimeoutCheckTime(), bucket.getNextRevalidationTime());
+    final BucketSnapshot previous = snapshots.get(distance);
+    final BucketSnapshot snapshot = bucket.createSnapshot();
+    snapshots.set(distance, snapshot);
+    // Only updated while holding the lock so a plain read and write is enough
+    final int word = distance / Long.SIZE;
+    final long mask = 1L << (distance % Long.SIZE);
+    final long bits = liveBuckets.get(word);
+    liveBuckets.set(word, snapshot.hasLiveNodes() ? bits | mask : bits & ~mask);
+    // After the snapshot, so a reader seeing the new version also sees the new nodes
+    if (previous == null || !previous.hasSameLiveNodes(snapshot)) {
+      bucketVersions.incrementAndGet(distance);
+    }
   }
 
-  public synchronized Optional<NodeRecord> getNode(final Bytes nodeId) {
-    return getBucket(Functions.logDistance(homeNodeId, nodeId))
-        .flatMap(bucket -> bucket.getNode(nodeId));
+  public Optional<NodeRecord> getNode(final Bytes nodeId) {
+    final NodeId id = NodeId.wrap(nodeId);
+    return getSnapshot(homeNodeId.logDistance(id)).flatMap(snapshot -> snapshot.getNode(id));
   }
 
-  public synchronized boolean containsNode(final Bytes nodeId) {
+  /** Returns the node with the given ID if it is in the table and confirmed as live. */
+  public Optional<NodeRecord> getLiveNode(final Bytes nodeId) {
+    final NodeId id = NodeId.wrap(nodeId);
+    return getSnapshot(homeNodeId.logDistance(id)).flatMap(snapshot -> snapshot.getLiveNode(id));
+  }
+
+  public boolean containsNode(final Bytes nodeId) {
     return getNode(nodeId).isPresent();
   }
 
-  public synchronized List<List<NodeRecord>> getNodeRecordBuckets() {
-    return buckets.values().stream().map(KBucket::getAllNodes).toList();
+  public List<List<NodeRecord>> getNodeRecordBuckets() {
+    final List<List<NodeRecord>> nodeRecordBuckets = new ArrayList<>();
+    for (int distance = MINIMUM_BUCKET; distance <= MAXIMUM_BUCKET; distance++) {
+      final BucketSnapshot snapshot = snapshots.get(distance);
+      if (snapshot != null) {
+        nodeRecordBuckets.add(snapshot.getAllNodes());
+      }
+    }
+    return nodeRecordBuckets;
+  }
+
+  /**
+   * Returns the live nodes and up to {@code maxReplacementsPerBucket} replacement nodes of each
+   * bucket, the most recently confirmed first, with their last liveness confirmation time.
+   */
+  public synchronized List<RoutingTableEntry> getRoutingTableEntries(
+      final int maxReplacementsPerBucket) {
+    final List<RoutingTableEntry> entries = new ArrayList<>();
+    for (int distance = MINIMUM_BUCKET; distance <= MAXIMUM_BUCKET; distance++) {
+      final KBucket bucket = buckets.get(distance);
+      if (bucket != null) {
+        entries.addAll(bucket.getLiveEntries(maxReplacementsPerBucket));
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Adds nodes which were previously in the routing table, e.g. before a restart. Nodes not
+   * confirmed as live within {@code staleAfter} have to be confirmed again before they are treated
+   * as live.
+   */
+  public synchronized void restore(
+      final Collection<RoutingTableEntry> entries, final Duration staleAfter) {
+    final long staleBefore = clock.millis() - staleAfter.toMillis();
+    final Set<Integer> changedDistances = new HashSet<>();
+    entries.stream()
+        .sorted(
+            Comparator.comparingLong(RoutingTableEntry::getLastLivenessConfirmationTime)
+                .reversed())
+        .forEach(
+            entry -> {
+              final int distance =
+                  homeNodeId.logDistance(NodeId.wrap(entry.getNode().getNodeId()));
+              getOrCreateBucket(distance)
+                  .ifPresent(
+                      bucket -> {
+                        bucket.restore(
+                            entry, entry.getLastLivenessConfirmationTime() < staleBefore);
+                        changedDistances.add(distance);
+                      });
+            });
+    changedDistances.forEach(distance -> publishSnapshot(distance, buckets.get(distance)));
   }
 
   public synchronized void deleteNode(final Bytes nodeId) {
-    final int distance = Functions.logDistance(homeNodeId, nodeId);
+    final NodeId id = NodeId.wrap(nodeId);
+    final int distance = homeNodeId.logDistance(id);
+    nodeDatabase.remove(nodeId);
     if (distance <= MAXIMUM_BUCKET) {
-      getBucket(distance).ifPresent((bucket) -> bucket.deleteNode(nodeId));
+      final KBucket bucket = buckets.get(distance);
+      if (bucket != null) {
+        bucket.deleteNode(id);
+        refill(distance, bucket);
+        publishSnapshot(distance, bucket);
+      }
     }
   }
 }
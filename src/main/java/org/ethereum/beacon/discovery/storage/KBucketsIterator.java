@@ -4,66 +4,90 @@
 
 package org.ethereum.beacon.discovery.storage;
 
-import static java.util.stream.Collectors.toCollection;
-
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.TreeSet;
-import java.util.stream.Stream;
-import org.apache.tuweni.bytes.Bytes;
+import java.util.List;
+import java.util.NoSuchElementException;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
-import org.ethereum.beacon.discovery.util.Functions;
+import org.ethereum.beacon.discovery.type.NodeId;
 
+/**
+ * Iterates the live nodes in the buckets, closest to the target first.
+ *
+ * <p>With the target in the bucket at distance d, the nodes in bucket d are closest to it. Nodes in
+ * all buckets nearer to us than d are then at log distance d from the target, and nodes in each
+ * bucket further than d at the distance of that bucket. Buckets without live nodes are skipped.
+ */
 public class KBucketsIterator implements Iterator<NodeRecord> {
 
+  private enum Stage {
+    TARGET_BUCKET,
+    NEARER_BUCKETS,
+    FURTHER_BUCKETS,
+    DONE
+  }
+
   private final KBuckets buckets;
-  private final Comparator<NodeRecord> distanceComparator;
-  private int lowDistance;
-  private int highDistance;
+  private final Comparator<BucketEntry> closestFirst;
+  private final int targetDistance;
+  private Stage stage = Stage.TARGET_BUCKET;
+  private int lastDistance;
 
-  private Iterator<NodeRecord> currentBatch = Collections.emptyIterator();
+  // Reused for each batch of nodes at the same log distance from the target
+  private final List<BucketEntry> currentBatch = new ArrayList<>();
+  private int currentIndex = 0;
 
   public KBucketsIterator(
-      final KBuckets buckets, final Bytes homeNodeId, final Bytes targetNodeId) {
+      final KBuckets buckets, final NodeId homeNodeId, final NodeId targetNodeId) {
     this.buckets = buckets;
-    this.distanceComparator =
-        Comparator.comparing(node -> Functions.distance(targetNodeId, node.getNodeId()));
-    final int initialDistance = Functions.logDistance(homeNodeId, targetNodeId);
-    lowDistance = initialDistance;
-    highDistance = initialDistance;
+    this.closestFirst = Comparator.comparing(BucketEntry::getNodeId, targetNodeId::compareDistance);
+    this.targetDistance = homeNodeId.logDistance(targetNodeId);
+    this.lastDistance = targetDistance;
   }
 
   @Override
   public boolean hasNext() {
-    while (!currentBatch.hasNext() && hasMoreBucketsToScan()) {
+    while (currentIndex >= currentBatch.size() && stage != Stage.DONE) {
       updateCurrentBatch();
-      // Prepare for the next buckets
-      lowDistance--;
-      highDistance++;
     }
-    return currentBatch.hasNext();
-  }
-
-  private boolean hasMoreBucketsToScan() {
-    return lowDistance > 0 || highDistance <= KBuckets.MAXIMUM_BUCKET;
+    return currentIndex < currentBatch.size();
   }
 
   private void updateCurrentBatch() {
-    final Stream<NodeRecord> lowNodes =
-        lowDistance > 0 ? buckets.getLiveNodeRecords(lowDistance) : Stream.empty();
-    final Stream<NodeRecord> highNodes =
-        highDistance > lowDistance && highDistance <= KBuckets.MAXIMUM_BUCKET
-            ? buckets.getLiveNodeRecords(highDistance)
-            : Stream.empty();
-    currentBatch =
-        Stream.concat(lowNodes, highNodes)
-            .collect(toCollection(() -> new TreeSet<>(distanceComparator)))
-            .iterator();
+    currentBatch.clear();
+    currentIndex = 0;
+    switch (stage) {
+      case TARGET_BUCKET -> {
+        currentBatch.addAll(buckets.getLiveEntries(targetDistance));
+        stage = Stage.NEARER_BUCKETS;
+      }
+      case NEARER_BUCKETS -> {
+        for (int distance = buckets.nextLiveBucket(KBuckets.MINIMUM_BUCKET);
+            distance >= 0 && distance < targetDistance;
+            distance = buckets.nextLiveBucket(distance + 1)) {
+          currentBatch.addAll(buckets.getLiveEntries(distance));
+        }
+        stage = Stage.FURTHER_BUCKETS;
+      }
+      case FURTHER_BUCKETS -> {
+        lastDistance = buckets.nextLiveBucket(lastDistance + 1);
+        if (lastDistance < 0) {
+          stage = Stage.DONE;
+        } else {
+          currentBatch.addAll(buckets.getLiveEntries(lastDistance));
+        }
+      }
+      case DONE -> {}
+    }
+    currentBatch.sort(closestFirst);
   }
 
   @Override
   public NodeRecord next() {
-    return currentBatch.next();
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return currentBatch.get(currentIndex++).getNode();
   }
 }
@@ -0,0 +1,96 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * When each bucket of the routing table next needs maintenance, so a maintenance round only visits
+ * buckets with work to do instead of scanning the table.
+ *
+ * <p>Buckets are scheduled in two lanes. The fast lane holds buckets waiting for a ping to a new,
+ * unconfirmed or revalidated node to time out, which should be acted on as soon as they are due.
+ * The slow lane holds buckets whose long-lived nodes are due to be revalidated, which can be spread
+ * out over time.
+ *
+ * <p>Not thread safe, {@link KBuckets} only accesses it while holding its lock.
+ */
+class MaintenanceSchedule {
+  static final long NOT_DUE = Long.MAX_VALUE;
+  static final int NONE_DUE = -1;
+
+  private final Lane timeoutChecks = new Lane();
+  private final Lane revalidations = new Lane();
+
+  void schedule(final int distance, final long timeoutCheckTime, final long revalidationTime) {
+    timeoutChecks.schedule(distance, timeoutCheckTime);
+    revalidations.schedule(distance, revalidationTime);
+  }
+
+  /** Removes and returns a bucket due to check for timed out pings, or {@link #NONE_DUE}. */
+  int pollTimeoutCheck(final long currentTime) {
+    return timeoutChecks.poll(currentTime);
+  }
+
+  /** Removes and returns the bucket most overdue for revalidation, or {@link #NONE_DUE}. */
+  int pollRevalidation(final long currentTime) {
+    return revalidations.poll(currentTime);
+  }
+
+  private static class Lane {
+    private final long[] dueTimes = new long[KBuckets.MAXIMUM_BUCKET + 1];
+    // May hold outdated entries for rescheduled buckets, skipped when they come up
+    private final PriorityQueue<ScheduledBucket> queue =
+        new PriorityQueue<>(Comparator.comparingLong(scheduled -> scheduled.dueTime));
+
+    private Lane() {
+      Arrays.fill(dueTimes, NOT_DUE);
+    }
+
+    private void schedule(final int distance, final long dueTime) {
+      if (dueTimes[distance] == dueTime) {
+        return;
+      }
+      dueTimes[distance] = dueTime;
+      if (dueTime != NOT_DUE) {
+        queue.add(new ScheduledBucket(distance, dueTime));
+        if (queue.size() > 4 * dueTimes.length) {
+          compact();
+        }
+      }
+    }
+
+    private int poll(final long currentTime) {
+      while (!queue.isEmpty() && queue.peek().dueTime <= currentTime) {
+        final ScheduledBucket scheduled = queue.poll();
+        if (dueTimes[scheduled.distance] == scheduled.dueTime) {
+          dueTimes[scheduled.distance] = NOT_DUE;
+          return scheduled.distance;
+        }
+      }
+      return NONE_DUE;
+    }
+
+    private void compact() {
+      queue.clear();
+      for (int distance = 0; distance < dueTimes.length; distance++) {
+        if (dueTimes[distance] != NOT_DUE) {
+          queue.add(new ScheduledBucket(distance, dueTimes[distance]));
+        }
+      }
+    }
+  }
+
+  private static class ScheduledBucket {
+    private final int distance;
+    private final long dueTime;
+
+    private ScheduledBucket(final int distance, final long dueTime) {
+      this.distance = distance;
+      this.dueTime = dueTime;
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.SequencedMap;
+import java.util.SequencedSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import org.apache.tuweni.bytes.Bytes;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
+
+/**
+ * Every node record we have seen, not just the ones in the routing table, keyed by node ID. Used
+ * to refill buckets and seed lookups without going to the network.
+ *
+ * <p>Records are not verified as live when added. Each entry counts how often the node responded or
+ * failed to respond to our requests so unreachable nodes can be skipped. When full, the least
+ * recently seen node is dropped.
+ *
+ * <p>Node IDs are also indexed by their log distance from the home node and in ID order, so
+ * refilling a bucket and finding the nodes closest to a target only visit the relevant nodes
+ * rather than the whole database.
+ *
+ * <p>Held in memory, see {@link NodeDatabaseStore} to keep it across restarts.
+ */
+public class NodeDatabase {
+  public static final int DEFAULT_CAPACITY = 10_000;
+
+  private final Clock clock;
+  private final int capacity;
+  private final NodeId homeNodeId;
+  // Guarded by this. Ordered by when the node was last seen, least recently seen first
+  private final SequencedMap<NodeId, NodeDatabaseEntry> entries;
+  // Guarded by this. IDs of the entries by log distance from the home node, in the same order
+  private final List<SequencedSet<NodeId>> idsByDistance = new ArrayList<>();
+  // Guarded by this. IDs of the entries in ID order
+  private final NavigableSet<NodeId> sortedIds = new TreeSet<>();
+
+  /**
+   * @param homeNodeId the ID of the local node, which entries are indexed by their distance from
+   */
+  public NodeDatabase(final Clock clock, final int capacity, final Bytes homeNodeId) {
+    checkArgument(capacity > 0, "Capacity must be positive");
+    this.clock = clock;
+    this.capacity = capacity;
+    this.homeNodeId = NodeId.wrap(homeNodeId);
+    this.entries =
+        new LinkedHashMap<>() {
+          @Override
+          protected boolean removeEldestEntry(final Map.Entry<NodeId, NodeDatabaseEntry> eldest) {
+            if (size() <= NodeDatabase.this.capacity) {
+              return false;
+            }
+            removeFromIndexes(eldest.getKey());
+            return true;
+          }
+        };
+    for (int distance = 0; distance <= KBuckets.MAXIMUM_BUCKET; distance++) {
+      idsByDistance.add(new LinkedHashSet<>());
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized Optional<NodeDatabaseEntry> get(final Bytes nodeId) {
+    return Optional.ofNullable(entries.get(NodeId.wrap(nodeId)));
+  }
+
+  /** Records that {@code node} was seen, keeping the record with the highest sequence number. */
+  public synchronized void onNodeSeen(final NodeRecord node, final NodeSource source) {
+    final NodeId nodeId = NodeId.wrap(node.getNodeId());
+    final NodeDatabaseEntry existing = entries.get(nodeId);
+    putMostRecent(
+        nodeId,
+        existing != null
+            ? existing.withSeen(node, clock.millis())
+            : NodeDatabaseEntry.create(node, source, clock.millis()));
+  }
+
+  /** Records that {@code node} responded to one of our requests. */
+  public synchronized void onNodeResponded(final NodeRecord node) {
+    final NodeId nodeId = NodeId.wrap(node.getNodeId());
+    final long currentTime = clock.millis();
+    final NodeDatabaseEntry existing = entries.get(nodeId);
+    final NodeDatabaseEntry entry =
+        existing != null ? existing : NodeDatabaseEntry.create(node, NodeSource.LOCAL, currentTime);
+    putMostRecent(nodeId, entry.withResponse(node, currentTime));
+  }
+
+  /** Records that a node failed to respond to one of our requests. */
+  public synchronized void onNodeUnresponsive(final Bytes nodeId) {
+    // Replacing the value of an existing key keeps its position
+    entries.computeIfPresent(NodeId.wrap(nodeId), (__, entry) -> entry.withFailure());
+  }
+
+  public synchronized void remove(final Bytes nodeId) {
+    final NodeId id = NodeId.wrap(nodeId);
+    if (entries.remove(id) != null) {
+      removeFromIndexes(id);
+    }
+  }
+
+  /** Returns up to {@code limit} entries matching {@code filter}, most recently seen first. */
+  public synchronized List<NodeDatabaseEntry> find(
+      final Predicate<NodeDatabaseEntry> filter, final int limit) {
+    final List<NodeDatabaseEntry> result = new ArrayList<>();
+    for (NodeDatabaseEntry entry : entries.sequencedValues().reversed()) {
+      if (result.size() >= limit) {
+        break;
+      }
+      if (filter.test(entry)) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns up to {@code limit} entries at log distance {@code distance} from the home node
+   * matching {@code filter}, most recently seen first. Only the nodes at that distance are visited.
+   */
+  public synchronized List<NodeDatabaseEntry> findAtDistance(
+      final int distance, final Predicate<NodeDatabaseEntry> filter, final int limit) {
+    checkArgument(distance >= 0 && distance <= KBuckets.MAXIMUM_BUCKET, "Invalid distance");
+    final List<NodeDatabaseEntry> result = new ArrayList<>();
+    for (NodeId nodeId : idsByDistance.get(distance).reversed()) {
+      if (result.size() >= limit) {
+        break;
+      }
+      final NodeDatabaseEntry entry = entries.get(nodeId);
+      if (filter.test(entry)) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  /** Returns up to {@code limit} reachable nodes closest to {@code target}, closest first. */
+  public synchronized List<NodeRecord> closest(final Bytes target, final int limit) {
+    if (limit <= 0) {
+      return List.of();
+    }
+    final NodeId targetId = NodeId.wrap(target);
+    // Nodes within a log distance of the target are all closer than the nodes outside it, and are
+    // a range of IDs. The range is widened until it holds enough nodes, so only about as many
+    // nodes as requested are visited.
+    List<NodeDatabaseEntry> reachable = List.of();
+    for (int bits = 0; bits <= KBuckets.MAXIMUM_BUCKET && reachable.size() < limit; bits++) {
+      final NodeId lowest = targetId.withLowBits(bits, false);
+      final NodeId highest = targetId.withLowBits(bits, true);
+      reachable =
+          sortedIds.subSet(lowest, true, highest, true).stream()
+              .map(entries::get)
+              .filter(NodeDatabaseEntry::isReachable)
+              .toList();
+    }
+    return reachable.stream()
+        .sorted(Comparator.comparing(NodeDatabaseEntry::getNodeId, targetId::compareDistance))
+        .limit(limit)
+        .map(NodeDatabaseEntry::getNode)
+        .toList();
+  }
+
+  /** Returns all entries, least recently seen first. */
+  public synchronized List<NodeDatabaseEntry> getEntries() {
+    return new ArrayList<>(entries.values());
+  }
+
+  /**
+   * Adds previously saved entries, least recently seen first. Nodes already known since are kept
+   * as they are.
+   */
+  public synchronized void restore(final Collection<NodeDatabaseEntry> restored) {
+    final Map<NodeId, NodeDatabaseEntry> current = new LinkedHashMap<>(entries);
+    entries.clear();
+    idsByDistance.forEach(Set::clear);
+    sortedIds.clear();
+    restored.forEach(entry -> putMostRecent(entry.getNodeId(), entry));
+    current.forEach(this::putMostRecent);
+  }
+
+  private void putMostRecent(final NodeId nodeId, final NodeDatabaseEntry entry) {
+    // Removed first so it moves to the end, replacing the value of a key keeps its position
+    entries.remove(nodeId);
+    final SequencedSet<NodeId> sameDistance = idsByDistance.get(homeNodeId.logDistance(nodeId));
+    sameDistance.remove(nodeId);
+    sameDistance.add(nodeId);
+    sortedIds.add(nodeId);
+    // Last, as it may drop the least recently seen entry from the indexes
+    entries.put(nodeId, entry);
+  }
+
+  private void removeFromIndexes(final NodeId nodeId) {
+    idsByDistance.get(homeNodeId.logDistance(nodeId)).remove(nodeId);
+    sortedIds.remove(nodeId);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import com.google.common.base.MoreObjects;
+import java.util.Objects;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
+
+/**
+ * What we know about a node in the {@link NodeDatabase}. Times are milliseconds since the epoch.
+ */
+public class NodeDatabaseEntry {
+  /** Nodes which failed to respond this many times in a row are no longer handed out. */
+  static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+  private final NodeId nodeId;
+  private final NodeRecord node;
+  private final NodeSource source;
+  private final long firstSeenTime;
+  private final long lastSeenTime;
+  private final long lastResponseTime;
+  private final int responseCount;
+  private final int failureCount;
+
+  public NodeDatabaseEntry(
+      final NodeRecord node,
+      final NodeSource source,
+      final long firstSeenTime,
+      final long lastSeenTime,
+      final long lastResponseTime,
+      final int responseCount,
+      final int failureCount) {
+    this.nodeId = NodeId.wrap(node.getNodeId());
+    this.node = node;
+    this.source = source;
+    this.firstSeenTime = firstSeenTime;
+    this.lastSeenTime = lastSeenTime;
+    this.lastResponseTime = lastResponseTime;
+    this.responseCount = responseCount;
+    this.failureCount = failureCount;
+  }
+
+  static NodeDatabaseEntry create(
+      final NodeRecord node, final NodeSource source, final long currentTime) {
+    return new NodeDatabaseEntry(node, source, currentTime, currentTime, 0, 0, 0);
+  }
+
+  public NodeId getNodeId() {
+    return nodeId;
+  }
+
+  /** The latest record seen for the node. */
+  public NodeRecord getNode() {
+    return node;
+  }
+
+  public NodeSource getSource() {
+    return source;
+  }
+
+  public long getFirstSeenTime() {
+    return firstSeenTime;
+  }
+
+  public long getLastSeenTime() {
+    return lastSeenTime;
+  }
+
+  /** When the node last responded to one of our requests, or 0 if it never did. */
+  public long getLastResponseTime() {
+    return lastResponseTime;
+  }
+
+  /** Number of our requests the node responded to, e.g. PONGs. */
+  public int getResponseCount() {
+    return responseCount;
+  }
+
+  /** Number of our requests in a row the node failed to respond to. */
+  public int getFailureCount() {
+    return failureCount;
+  }
+
+  /** Returns false if the node stopped responding to our requests. */
+  public boolean isReachable() {
+    return failureCount < MAX_CONSECUTIVE_FAILURES;
+  }
+
+  NodeDatabaseEntry withSeen(final NodeRecord newRecord, final long currentTime) {
+    return new NodeDatabaseEntry(
+        latestRecord(newRecord),
+        source,
+        firstSeenTime,
+        currentTime,
+        lastResponseTime,
+        responseCount,
+        failureCount);
+  }
+
+  NodeDatabaseEntry withResponse(final NodeRecord newRecord, final long currentTime) {
+    return new NodeDatabaseEntry(
+        latestRecord(newRecord),
+        source,
+        firstSeenTime,
+        currentTime,
+        currentTime,
+        responseCount + 1,
+        0);
+  }
+
+  NodeDatabaseEntry withFailure() {
+    return new NodeDatabaseEntry(
+        node,
+        source,
+        firstSeenTime,
+        lastSeenTime,
+        lastResponseTime,
+        responseCount,
+        failureCount + 1);
+  }
+
+  private NodeRecord latestRecord(final NodeRecord newRecord) {
+    return newRecord.getSeq().compareTo(node.getSeq()) > 0 ? newRecord : node;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final NodeDatabaseEntry that = (NodeDatabaseEntry) o;
+    return firstSeenTime == that.firstSeenTime
+        && lastSeenTime == that.lastSeenTime
+        && lastResponseTime == that.lastResponseTime
+        && responseCount == that.responseCount
+        && failureCount == that.failureCount
+        && Objects.equals(node, that.node)
+        && source == that.source;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        node, source, firstSeenTime, lastSeenTime, lastResponseTime, responseCount, failureCount);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("node", node)
+        .add("source", source)
+        .add("firstSeenTime", firstSeenTime)
+        .add("lastSeenTime", lastSeenTime)
+        .add("lastResponseTime", lastResponseTime)
+        .add("responseCount", responseCount)
+        .add("failureCount", failureCount)
+        .toString();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.rlp.RLP;
+import org.apache.tuweni.rlp.RLPReader;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.RlpDecodeException;
+import org.ethereum.beacon.discovery.util.RlpUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the {@link NodeDatabase} in a local file across restarts. As with {@link
+ * RoutingTableStore}, the file is rewritten as a whole on each save and any problem with it just
+ * means the database starts empty.
+ */
+public class NodeDatabaseStore {
+  private static final Logger LOG = LoggerFactory.getLogger(NodeDatabaseStore.class);
+  private static final int VERSION = 1;
+
+  private final Path file;
+  private final NodeRecordFactory nodeRecordFactory;
+
+  public NodeDatabaseStore(final Path file, final NodeRecordFactory nodeRecordFactory) {
+    this.file = file;
+    this.nodeRecordFactory = nodeRecordFactory;
+  }
+
+  /** Loads the saved entries into {@code nodeDatabase}. */
+  public void restore(final NodeDatabase nodeDatabase) {
+    final List<NodeDatabaseEntry> entries = load();
+    nodeDatabase.restore(entries);
+    LOG.debug("Restored {} nodes from {}", entries.size(), file);
+  }
+
+  /** Saves all entries in {@code nodeDatabase}. Failures are logged and otherwise ignored. */
+  public void save(final NodeDatabase nodeDatabase) {
+    save(nodeDatabase.getEntries());
+  }
+
+  void save(final List<NodeDatabaseEntry> entries) {
+    final Bytes content =
+        RLP.encodeList(
+            writer -> {
+              writer.writeInt(VERSION);
+              writer.writeList(
+                  entries,
+                  (listWriter, entry) ->
+                      listWriter.writeList(
+                          entryWriter -> {
+                            entry.getNode().writeRlp(entryWriter);
+                            entryWriter.writeString(entry.getSource().name());
+                            entryWriter.writeLong(entry.getFirstSeenTime());
+                            entryWriter.writeLong(entry.getLastSeenTime());
+                            entryWriter.writeLong(entry.getLastResponseTime());
+                            entryWriter.writeInt(entry.getResponseCount());
+                            entryWriter.writeInt(entry.getFailureCount());
+                          }));
+            });
+    if (StoreFileUtil.writeAtomically(file, content, "node database")) {
+      LOG.trace("Saved {} nodes to {}", entries.size(), file);
+    }
+  }
+
+  /** Reads the saved entries. Returns an empty list if there are none or they can't be read. */
+  List<NodeDatabaseEntry> load() {
+    if (!Files.exists(file)) {
+      return Collections.emptyList();
+    }
+    try {
+      return RlpUtil.readRlpList(Bytes.wrap(Files.readAllBytes(file)), this::readEntries);
+    } catch (final IOException | RuntimeException e) {
+      LOG.warn("Ignoring invalid node database file {}", file, e);
+      return Collections.emptyList();
+    }
+  }
+
+  private List<NodeDatabaseEntry> readEntries(final RLPReader reader) {
+    final int version = reader.readInt();
+    if (version != VERSION) {
+      throw new RlpDecodeException("Unsupported node database version " + version);
+    }
+    return reader.readListContents(entryReader -> entryReader.readList(this::readEntry));
+  }
+
+  private NodeDatabaseEntry readEntry(final RLPReader reader) {
+    return new NodeDatabaseEntry(
+        nodeRecordFactory.fromRlp(reader),
+        NodeSource.valueOf(reader.readString()),
+        reader.readLong(),
+        reader.readLong(),
+        reader.readLong(),
+        reader.readInt(),
+        reader.readInt());
+  }
+}
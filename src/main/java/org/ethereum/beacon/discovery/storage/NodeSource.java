@@ -0,0 +1,15 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+/** Where a node record was first learned from. */
+public enum NodeSource {
+  /** Sent by the node itself during a handshake. */
+  HANDSHAKE,
+  /** Returned by another node in a NODES response. */
+  NODES_RESPONSE,
+  /** Added locally, e.g. through the API or as a node we contacted without a known record. */
+  LOCAL
+}
@@ -0,0 +1,375 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.ethereum.beacon.discovery.storage.BucketEntry.MIN_MILLIS_BETWEEN_PINGS;
+import static org.ethereum.beacon.discovery.storage.BucketEntry.PING_TIMEOUT_MILLIS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import org.ethereum.beacon.discovery.liveness.LivenessChecker;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
+
+/**
+ * Nodes confirmed as live which could not be added to a full {@link KBucket}, the next of which is
+ * inserted should a node in the bucket be removed.
+ *
+ * <p>As the cache may hold many thousands of nodes per distance, entries are stored in a compact
+ * layout: node IDs packed into a long array, timestamps in primitive arrays and the records
+ * themselves held once, with an open addressing index from node ID to slot. Node IDs are hashes, so
+ * their hash code needs no further mixing. Entries stay in their slot until removed and are linked
+ * in order of their last liveness confirmation, so no removal has to move other entries.
+ *
+ * <p>The most recently confirmed entry is the next to be inserted into the bucket and is pinged
+ * during maintenance once its confirmation is older than {@link
+ * BucketEntry#MIN_MILLIS_BETWEEN_PINGS}. The least recently confirmed entry is revalidated at the
+ * same interval, so entries which have gone offline age out, and is evicted when a new node is
+ * confirmed while the cache is full. Only one ping is awaited at a time.
+ */
+class ReplacementCache {
+  private static final int ID_WORDS = NodeId.SIZE / Long.BYTES;
+  private static final int NEVER = -1;
+  private static final int NO_ENTRY = -1;
+  private static final int INITIAL_ALLOCATION = 16;
+
+  private final LivenessChecker livenessChecker;
+  private final int capacity;
+  // Arrays are indexed by slot and grow as entries are added, up to the capacity
+  private long[] nodeIds = new long[0];
+  private int[] hashes = new int[0];
+  private long[] lastLivenessConfirmationTimes = new long[0];
+  private long[] lastPingTimes = new long[0];
+  private NodeRecord[] nodes = new NodeRecord[0];
+  // Links between entries ordered by last confirmation. Free slots are chained through newer.
+  private int[] newer = new int[0];
+  private int[] older = new int[0];
+  private int newest = NO_ENTRY;
+  private int oldest = NO_ENTRY;
+  private int firstFreeSlot = NO_ENTRY;
+  private int usedSlots = 0;
+  // Slot + 1 of the entry with a given ID, 0 for an empty index position
+  private int[] index;
+  private int size = 0;
+  // The entry awaiting a response to a ping, if any
+  private int pingedSlot = NO_ENTRY;
+  private long lastRevalidationTime = NEVER;
+
+  ReplacementCache(final LivenessChecker livenessChecker, final int capacity) {
+    checkArgument(capacity >= 0, "Capacity must not be negative");
+    this.livenessChecker = livenessChecker;
+    this.capacity = capacity;
+    allocate(Math.min(capacity, INITIAL_ALLOCATION));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean isFull() {
+    return size >= capacity;
+  }
+
+  /**
+   * Returns true if a new node confirmed as live at {@code currentTime} would be added, either
+   * because the cache isn't full or because its least recently confirmed entry can be evicted.
+   */
+  public boolean hasRoomFor(final long currentTime) {
+    return !isFull() || (capacity > 0 && isEvictable(oldest, currentTime));
+  }
+
+  public boolean contains(final NodeId nodeId) {
+    return findSlot(nodeId) != NO_ENTRY;
+  }
+
+  /** Returns the node that will be inserted into the bucket next. */
+  public Optional<NodeRecord> getNext() {
+    return isEmpty() ? Optional.empty() : Optional.of(nodes[newest]);
+  }
+
+  /** Returns all nodes in the cache, the next to be inserted first. */
+  public List<NodeRecord> getNodes() {
+    final List<NodeRecord> result = new ArrayList<>(size);
+    for (int slot = newest; slot != NO_ENTRY; slot = older[slot]) {
+      result.add(nodes[slot]);
+    }
+    return result;
+  }
+
+  /** Returns up to {@code limit} entries in the cache, the next to be inserted first. */
+  public List<RoutingTableEntry> getEntries(final int limit) {
+    final List<RoutingTableEntry> result = new ArrayList<>(Math.min(size, limit));
+    for (int slot = newest; slot != NO_ENTRY && result.size() < limit; slot = older[slot]) {
+      result.add(new RoutingTableEntry(nodes[slot], lastLivenessConfirmationTimes[slot]));
+    }
+    return result;
+  }
+
+  /**
+   * Adds a node confirmed as live at {@code currentTime}, or updates the confirmation time if it is
+   * already present. When the cache is full, the least recently confirmed entry is evicted to make
+   * room if it is older than the new confirmation and not recently confirmed or being revalidated.
+   */
+  public void onLivenessConfirmed(
+      final NodeId nodeId, final NodeRecord node, final long currentTime) {
+    final int existing = findSlot(nodeId);
+    if (existing != NO_ENTRY) {
+      if (existing == pingedSlot) {
+        pingedSlot = NO_ENTRY;
+      }
+      lastLivenessConfirmationTimes[existing] = currentTime;
+      unlink(existing);
+      link(existing);
+      return;
+    }
+    if (isFull()) {
+      if (!hasRoomFor(currentTime)) {
+        return;
+      }
+      remove(oldest);
+    }
+    final int slot = allocateSlot();
+    nodeId.copyTo(nodeIds, slot * ID_WORDS);
+    hashes[slot] = nodeId.hashCode();
+    nodes[slot] = node;
+    lastLivenessConfirmationTimes[slot] = currentTime;
+    lastPingTimes[slot] = NEVER;
+    insertIntoIndex(slot);
+    link(slot);
+    size++;
+  }
+
+  /** Removes and returns the node to be inserted into the bucket next. */
+  public Optional<BucketEntry> removeNext() {
+    if (isEmpty()) {
+      return Optional.empty();
+    }
+    final BucketEntry entry =
+        new BucketEntry(livenessChecker, nodes[newest], lastLivenessConfirmationTimes[newest]);
+    remove(newest);
+    return Optional.of(entry);
+  }
+
+  public void remove(final NodeId nodeId) {
+    final int slot = findSlot(nodeId);
+    if (slot != NO_ENTRY) {
+      remove(slot);
+    }
+  }
+
+  /**
+   * Returns when {@link #performMaintenance(long)} removes the node awaiting a response to a ping
+   * if it still hasn't responded, or {@link MaintenanceSchedule#NOT_DUE} if no ping is awaited.
+   */
+  public long getNextTimeoutCheckTime() {
+    return pingedSlot == NO_ENTRY
+        ? MaintenanceSchedule.NOT_DUE
+        : lastPingTimes[pingedSlot] + PING_TIMEOUT_MILLIS;
+  }
+
+  /**
+   * Returns when {@link #performMaintenance(long)} next pings the next or the least recently
+   * confirmed node, or {@link MaintenanceSchedule#NOT_DUE} when empty or awaiting a response.
+   */
+  public long getNextRevalidationTime() {
+    if (isEmpty() || pingedSlot != NO_ENTRY) {
+      return MaintenanceSchedule.NOT_DUE;
+    }
+    final long nextPingTime =
+        Math.max(lastPingTimes[newest], lastLivenessConfirmationTimes[newest])
+            + MIN_MILLIS_BETWEEN_PINGS;
+    if (oldest == newest) {
+      return nextPingTime;
+    }
+    final long nextRevalidationTime =
+        Math.max(lastRevalidationTime, lastLivenessConfirmationTimes[oldest])
+            + MIN_MILLIS_BETWEEN_PINGS;
+    return Math.min(nextPingTime, nextRevalidationTime);
+  }
+
+  /**
+   * Removes the node awaiting a response if its ping has timed out. Otherwise, unless a response
+   * is still awaited, pings the next node if it hasn't been confirmed as live recently or else
+   * revalidates the least recently confirmed node.
+   *
+   * @return the node removed for failing to respond, if any
+   */
+  public Optional<NodeRecord> performMaintenance(final long currentTime) {
+    if (pingedSlot != NO_ENTRY) {
+      if (currentTime - lastPingTimes[pingedSlot] < PING_TIMEOUT_MILLIS) {
+        return Optional.empty();
+      }
+      final NodeRecord node = nodes[pingedSlot];
+      remove(pingedSlot);
+      return Optional.of(node);
+    }
+    if (isEmpty()) {
+      return Optional.empty();
+    }
+    if (currentTime - lastPingTimes[newest] >= MIN_MILLIS_BETWEEN_PINGS
+        && currentTime - lastLivenessConfirmationTimes[newest] >= MIN_MILLIS_BETWEEN_PINGS) {
+      ping(newest, currentTime);
+    } else if (oldest != newest
+        && currentTime - lastRevalidationTime >= MIN_MILLIS_BETWEEN_PINGS
+        && currentTime - lastLivenessConfirmationTimes[oldest] >= MIN_MILLIS_BETWEEN_PINGS) {
+      ping(oldest, currentTime);
+      lastRevalidationTime = currentTime;
+    }
+    return Optional.empty();
+  }
+
+  private void ping(final int slot, final long currentTime) {
+    livenessChecker.checkLiveness(nodes[slot]);
+    lastPingTimes[slot] = currentTime;
+    pingedSlot = slot;
+  }
+
+  private boolean isEvictable(final int slot, final long currentTime) {
+    return slot != pingedSlot
+        && currentTime - lastLivenessConfirmationTimes[slot] >= MIN_MILLIS_BETWEEN_PINGS;
+  }
+
+  private void remove(final int slot) {
+    if (slot == pingedSlot) {
+      pingedSlot = NO_ENTRY;
+    }
+    removeFromIndex(slot);
+    unlink(slot);
+    nodes[slot] = null;
+    newer[slot] = firstFreeSlot;
+    firstFreeSlot = slot;
+    size--;
+  }
+
+  private int allocateSlot() {
+    if (firstFreeSlot != NO_ENTRY) {
+      final int slot = firstFreeSlot;
+      firstFreeSlot = newer[slot];
+      return slot;
+    }
+    if (usedSlots == nodes.length) {
+      allocate((int) Math.min(capacity, 2L * nodes.length));
+    }
+    return usedSlots++;
+  }
+
+  /**
+   * Links the entry in order of its last confirmation. Entries are usually confirmed now, making
+   * them the newest, or restored most recent first, making them the oldest, so the position is
+   * searched for from the oldest entry.
+   */
+  private void link(final int slot) {
+    final long confirmationTime = lastLivenessConfirmationTimes[slot];
+    int newerSlot = NO_ENTRY;
+    if (newest != NO_ENTRY && confirmationTime < lastLivenessConfirmationTimes[newest]) {
+      newerSlot = oldest;
+      while (lastLivenessConfirmationTimes[newerSlot] <= confirmationTime) {
+        newerSlot = newer[newerSlot];
+      }
+    }
+    final int olderSlot = newerSlot == NO_ENTRY ? newest : older[newerSlot];
+    newer[slot] = newerSlot;
+    older[slot] = olderSlot;
+    if (newerSlot == NO_ENTRY) {
+      newest = slot;
+    } else {
+      older[newerSlot] = slot;
+    }
+    if (olderSlot == NO_ENTRY) {
+      oldest = slot;
+    } else {
+      newer[olderSlot] = slot;
+    }
+  }
+
+  private void unlink(final int slot) {
+    final int newerSlot = newer[slot];
+    final int olderSlot = older[slot];
+    if (newerSlot == NO_ENTRY) {
+      newest = olderSlot;
+    } else {
+      older[newerSlot] = olderSlot;
+    }
+    if (olderSlot == NO_ENTRY) {
+      oldest = newerSlot;
+    } else {
+      newer[olderSlot] = newerSlot;
+    }
+  }
+
+  private void allocate(final int length) {
+    nodeIds = Arrays.copyOf(nodeIds, length * ID_WORDS);
+    hashes = Arrays.copyOf(hashes, length);
+    lastLivenessConfirmationTimes = Arrays.copyOf(lastLivenessConfirmationTimes, length);
+    lastPingTimes = Arrays.copyOf(lastPingTimes, length);
+    nodes = Arrays.copyOf(nodes, length);
+    newer = Arrays.copyOf(newer, length);
+    older = Arrays.copyOf(older, length);
+    // Keep the index at most half full
+    index = new int[Integer.highestOneBit(Math.max(1, length) * 2) * 2];
+    for (int slot = newest; slot != NO_ENTRY; slot = older[slot]) {
+      insertIntoIndex(slot);
+    }
+  }
+
+  private int findSlot(final NodeId nodeId) {
+    if (isEmpty()) {
+      return NO_ENTRY;
+    }
+    for (int position = indexPositionFor(nodeId.hashCode());
+        index[position] != 0;
+        position = nextIndexPosition(position)) {
+      final int slot = index[position] - 1;
+      if (nodeId.isEqualTo(nodeIds, slot * ID_WORDS)) {
+        return slot;
+      }
+    }
+    return NO_ENTRY;
+  }
+  private void insertIntoIndex(final int slot) {
+    int position = indexPositionFor(hashes[slot]);
+    while (index[position] != 0) {
+      position = nextIndexPosition(position);
+    }
+    index[position] = slot + 1;
+  }
+
+  private void removeFromIndex(final int slot) {
+    int position = indexPositionFor(hashes[slot]);
+    while (index[position] != slot + 1) {
+      position = nextIndexPosition(position);
+    }
+    // Shift back any following entries that would otherwise no longer be found
+    int next = nextIndexPosition(position);
+    while (index[next] != 0) {
+      final int home = indexPositionFor(hashes[index[next] - 1]);
+      if (isOutsideRange(home, position, next)) {
+        index[position] = index[next];
+        position = next;
+      }
+      next = nextIndexPosition(next);
+    }
+    index[position] = 0;
+  }
+
+  /** Returns true if {@code home} is not in the cyclic range ({@code hole}, {@code current}]. */
+  private static boolean isOutsideRange(final int home, final int hole, final int current) {
+    return hole <= current ? home <= hole || home > current : home <= hole && home > current;
+  }
+
+  private int indexPositionFor(final int hash) {
+    return hash & (index.length - 1);
+  }
+
+  private int nextIndexPosition(final int position) {
+    return (position + 1) & (index.length - 1);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import com.google.common.base.MoreObjects;
+import java.util.Objects;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+
+/** A node in the routing table together with the last time it was confirmed as live. */
+public class RoutingTableEntry {
+  private final NodeRecord node;
+  private final long lastLivenessConfirmationTime;
+
+  public RoutingTableEntry(final NodeRecord node, final long lastLivenessConfirmationTime) {
+    this.node = node;
+    this.lastLivenessConfirmationTime = lastLivenessConfirmationTime;
+  }
+
+  public NodeRecord getNode() {
+    return node;
+  }
+
+  /** Milliseconds since the epoch when the node last responded to us. */
+  public long getLastLivenessConfirmationTime() {
+    return lastLivenessConfirmationTime;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final RoutingTableEntry that = (RoutingTableEntry) o;
+    return lastLivenessConfirmationTime == that.lastLivenessConfirmationTime
+        && Objects.equals(node, that.node);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(node, lastLivenessConfirmationTime);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("node", node)
+        .add("lastLivenessConfirmationTime", lastLivenessConfirmationTime)
+        .toString();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.rlp.RLP;
+import org.apache.tuweni.rlp.RLPReader;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.RlpDecodeException;
+import org.ethereum.beacon.discovery.util.RlpUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the live nodes of the routing table, with the time each was last confirmed as live, in a
+ * local file so a restarted node has a useful table straight away instead of rebuilding it from the
+ * boot nodes.
+ *
+ * <p>Replacement caches can be configured to hold tens of thousands of nodes, so only the {@link
+ * #MAX_SAVED_REPLACEMENTS_PER_BUCKET} most recently confirmed replacement nodes of each bucket are
+ * saved. As only a few dozen buckets ever hold nodes, that keeps the file to a few thousand records
+ * and it is simply rewritten as a whole on each save.
+ *
+ * <p>Nodes confirmed as live within {@code staleAfter} of the restart are restored as live. Older
+ * nodes are kept but have to respond to a ping before they are handed out to peers. Any problem
+ * with the file just means the table starts empty.
+ */
+public class RoutingTableStore {
+  private static final Logger LOG = LoggerFactory.getLogger(RoutingTableStore.class);
+  private static final int VERSION = 1;
+  static final int MAX_SAVED_REPLACEMENTS_PER_BUCKET = 4 * KBucket.K;
+
+  private final Path file;
+  private final NodeRecordFactory nodeRecordFactory;
+  private final Duration staleAfter;
+
+  public RoutingTableStore(
+      final Path file, final NodeRecordFactory nodeRecordFactory, final Duration staleAfter) {
+    this.file = file;
+    this.nodeRecordFactory = nodeRecordFactory;
+    this.staleAfter = staleAfter;
+  }
+
+  /** Loads the saved nodes into {@code buckets}. */
+  public void restore(final KBuckets buckets) {
+    final List<RoutingTableEntry> entries = load();
+    buckets.restore(entries, staleAfter);
+    LOG.debug("Restored {} nodes from {}", entries.size(), file);
+  }
+
+  /** Saves the live nodes in {@code buckets}. Failures are logged and otherwise ignored. */
+  public void save(final KBuckets buckets) {
+    save(buckets.getRoutingTableEntries(MAX_SAVED_REPLACEMENTS_PER_BUCKET));
+  }
+
+  void save(final List<RoutingTableEntry> entries) {
+    final Bytes content =
+        RLP.encodeList(
+            writer -> {
+              writer.writeInt(VERSION);
+              writer.writeList(
+                  entries,
+                  (listWriter, entry) ->
+                      listWriter.writeList(
+                          entryWriter -> {
+                            entry.getNode().writeRlp(entryWriter);
+                            entryWriter.writeLong(entry.getLastLivenessConfirmationTime());
+                          }));
+            });
+    if (StoreFileUtil.writeAtomically(file, content, "routing table")) {
+      LOG.trace("Saved {} nodes to {}", entries.size(), file);
+    }
+  }
+
+  /** Reads the saved nodes. Returns an empty list if there are none or they can't be read. */
+  List<RoutingTableEntry> load() {
+    if (!Files.exists(file)) {
+      return Collections.emptyList();
+    }
+    try {
+      return RlpUtil.readRlpList(Bytes.wrap(Files.readAllBytes(file)), this::readEntries);
+    } catch (final IOException | RuntimeException e) {
+      LOG.warn("Ignoring invalid routing table file {}", file, e);
+      return Collections.emptyList();
+    }
+  }
+
+  private List<RoutingTableEntry> readEntries(final RLPReader reader) {
+    final int version = reader.readInt();
+    if (version != VERSION) {
+      throw new RlpDecodeException("Unsupported routing table version " + version);
+    }
+    return reader.readListContents(entryReader -> entryReader.readList(this::readEntry));
+  }
+
+  private RoutingTableEntry readEntry(final RLPReader reader) {
+    return new RoutingTableEntry(nodeRecordFactory.fromRlp(reader), reader.readLong());
+  }
+}
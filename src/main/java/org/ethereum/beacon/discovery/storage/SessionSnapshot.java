@@ -0,0 +1,88 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import com.google.common.base.MoreObjects;
+import java.net.InetSocketAddress;
+import java.util.Objects;
+import org.apache.tuweni.bytes.Bytes;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+
+/** Keys and peer details of an authenticated session, enough to resume it without a handshake. */
+public class SessionSnapshot {
+  private final NodeRecord nodeRecord;
+  private final InetSocketAddress remoteAddress;
+  private final Bytes initiatorKey;
+  private final Bytes recipientKey;
+  private final long establishedTime;
+
+  /**
+   * @param establishedTime when the keys were agreed in milliseconds since the epoch, which a
+   *     restored session keeps
+   */
+  public SessionSnapshot(
+      final NodeRecord nodeRecord,
+      final InetSocketAddress remoteAddress,
+      final Bytes initiatorKey,
+      final Bytes recipientKey,
+      final long establishedTime) {
+    this.nodeRecord = nodeRecord;
+    this.remoteAddress = remoteAddress;
+    this.initiatorKey = initiatorKey;
+    this.recipientKey = recipientKey;
+    this.establishedTime = establishedTime;
+  }
+
+  public NodeRecord getNodeRecord() {
+    return nodeRecord;
+  }
+
+  public InetSocketAddress getRemoteAddress() {
+    return remoteAddress;
+  }
+
+  public Bytes getInitiatorKey() {
+    return initiatorKey;
+  }
+
+  public Bytes getRecipientKey() {
+    return recipientKey;
+  }
+
+  public long getEstablishedTime() {
+    return establishedTime;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final SessionSnapshot that = (SessionSnapshot) o;
+    return Objects.equals(nodeRecord, that.nodeRecord)
+        && Objects.equals(remoteAddress, that.remoteAddress)
+        && Objects.equals(initiatorKey, that.initiatorKey)
+        && Objects.equals(recipientKey, that.recipientKey)
+        && establishedTime == that.establishedTime;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(nodeRecord, remoteAddress, initiatorKey, recipientKey, establishedTime);
+  }
+
+  @Override
+  public String toString() {
+    // Session keys are deliberately left out
+    return MoreObjects.toStringHelper(this)
+        .add("nodeRecord", nodeRecord)
+        .add("remoteAddress", remoteAddress)
+        .add("establishedTime", establishedTime)
+        .toString();
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.crypto.SECP256K1.SecretKey;
+import org.apache.tuweni.rlp.RLP;
+import org.apache.tuweni.rlp.RLPReader;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.CryptoUtil;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.ethereum.beacon.discovery.util.RlpDecodeException;
+import org.ethereum.beacon.discovery.util.RlpUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps authenticated sessions across restarts in a local file. The file is encrypted with AES-GCM
+ * under a key derived from the static node key with HKDF, so it is only readable by the same node.
+ *
+ * <p>A snapshot is restored at most once: the file is deleted when read. Sessions established
+ * longer ago than the configured maximum age are not restored, as peers are likely to have dropped
+ * them by then. Any problem with the file just means sessions are not restored and peers go
+ * through a normal handshake.
+ */
+public class SessionSnapshotStore {
+  private static final Logger LOG = LoggerFactory.getLogger(SessionSnapshotStore.class);
+  private static final Bytes KEY_INFO =
+      Bytes.wrap("discv5 session snapshot key".getBytes(StandardCharsets.US_ASCII));
+  private static final Bytes ASSOCIATED_DATA =
+      Bytes.wrap("discv5 session snapshot".getBytes(StandardCharsets.US_ASCII));
+  private static final int VERSION = 2;
+  private static final int AES_KEY_SIZE = 16;
+  private static final int NONCE_SIZE = 12;
+  private static final int MAX_KEY_SIZE = 16;
+  private static final int MAX_IP_SIZE = 16;
+
+  private final Path file;
+  private final Bytes encryptionKey;
+  private final NodeRecordFactory nodeRecordFactory;
+  private final Clock clock;
+  private final Duration maxAge;
+  private final Random rnd;
+
+  public SessionSnapshotStore(
+      final Path file,
+      final SecretKey staticNodeKey,
+      final NodeRecordFactory nodeRecordFactory,
+      final Clock clock,
+      final Duration maxAge,
+      final Random rnd) {
+    this.file = file;
+    this.encryptionKey =
+        Functions.hkdf(staticNodeKey.bytes(), Bytes.EMPTY, KEY_INFO, AES_KEY_SIZE);
+    this.nodeRecordFactory = nodeRecordFactory;
+    this.clock = clock;
+    this.maxAge = maxAge;
+    this.rnd = rnd;
+  }
+
+  /** Writes the snapshot replacing any previous one. Failures are logged and otherwise ignored. */
+  public void save(final List<SessionSnapshot> sessions) {
+    final Bytes plain =
+        RLP.encodeList(
+            writer -> {
+              writer.writeInt(VERSION);
+              writer.writeList(
+                  sessions,
+                  (listWriter, session) ->
+                      listWriter.writeList(
+                          sessionWriter -> {
+                            session.getNodeRecord().writeRlp(sessionWriter);
+                            sessionWriter.writeValue(
+                                Bytes.wrap(session.getRemoteAddress().getAddress().getAddress()));
+                            sessionWriter.writeInt(session.getRemoteAddress().getPort());
+                            sessionWriter.writeValue(session.getInitiatorKey());
+                            sessionWriter.writeValue(session.getRecipientKey());
+                            sessionWriter.writeLong(session.getEstablishedTime());
+                          }));
+            });
+    final Bytes nonce = Bytes.random(NONCE_SIZE, rnd);
+    final Bytes encrypted =
+        CryptoUtil.aesgcmEncrypt(encryptionKey, nonce, plain, ASSOCIATED_DATA);
+    if (StoreFileUtil.writeAtomically(file, Bytes.wrap(nonce, encrypted), "session snapshot")) {
+      LOG.debug("Saved {} sessions to {}", sessions.size(), file);
+    }
+  }
+
+  /**
+   * Reads and deletes the snapshot, leaving out sessions that are too old. Returns an empty list if
+   * there is no snapshot or it can't be read.
+   */
+  public List<SessionSnapshot> load() {
+    if (!Files.exists(file)) {
+      return Collections.emptyList();
+    }
+    final Bytes content;
+    try {
+      content = Bytes.wrap(Files.readAllBytes(file));
+      Files.delete(file);
+    } catch (final IOException e) {
+      LOG.warn("Failed to read session snapshot from {}", file, e);
+      return Collections.emptyList();
+    }
+    try {
+      if (content.size() < NONCE_SIZE) {
+        throw new RlpDecodeException("Session snapshot is truncated");
+      }
+      final Bytes plain =
+          CryptoUtil.aesgcmDecrypt(
+              encryptionKey,
+              content.slice(0, NONCE_SIZE),
+              content.slice(NONCE_SIZE),
+              ASSOCIATED_DATA);
+      return RlpUtil.readRlpList(plain, this::readSnapshot);
+    } catch (final RuntimeException e) {
+      LOG.warn("Ignoring invalid session snapshot {}", file, e);
+      return Collections.emptyList();
+    }
+  }
+
+  private List<SessionSnapshot> readSnapshot(final RLPReader reader) {
+    final int version = reader.readInt();
+    if (version != VERSION) {
+      throw new RlpDecodeException("Unsupported session snapshot version " + version);
+    }
+    final long currentTime = clock.millis();
+    return reader.readListContents(sessionReader -> sessionReader.readList(this::readSession))
+        .stream()
+        .filter(session -> isRecentEnough(session, currentTime))
+        .toList();
+  }
+
+  private boolean isRecentEnough(final SessionSnapshot session, final long currentTime) {
+    final Duration age = Duration.ofMillis(currentTime - session.getEstablishedTime());
+    if (age.compareTo(maxAge) > 0) {
+      LOG.debug("Session with {} is {} old, not restoring it", session.getRemoteAddress(), age);
+      return false;
+    }
+    return true;
+  }
+
+  private SessionSnapshot readSession(final RLPReader reader) {
+    return new SessionSnapshot(
+        nodeRecordFactory.fromRlp(reader),
+        readAddress(reader),
+        RlpUtil.checkMaxSize(reader.readValue(), MAX_KEY_SIZE),
+        RlpUtil.checkMaxSize(reader.readValue(), MAX_KEY_SIZE),
+        reader.readLong());
+  }
+
+  private static InetSocketAddress readAddress(final RLPReader reader) {
+    final Bytes ip = RlpUtil.checkMaxSize(reader.readValue(), MAX_IP_SIZE);
+    final int port = reader.readInt();
+    try {
+      return new InetSocketAddress(InetAddress.getByAddress(ip.toArrayUnsafe()), port);
+    } catch (final UnknownHostException e) {
+      throw new RlpDecodeException("Invalid IP address in session snapshot: " + ip);
+    }
+  }
+}
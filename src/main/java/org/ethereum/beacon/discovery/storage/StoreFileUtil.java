@@ -0,0 +1,41 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.apache.tuweni.bytes.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Helpers shared by the stores which keep state in a local file across restarts. */
+class StoreFileUtil {
+  private static final Logger LOG = LoggerFactory.getLogger(StoreFileUtil.class);
+
+  private StoreFileUtil() {}
+
+  /**
+   * Replaces the content of {@code file} by writing a temporary file next to it and atomically
+   * moving that into place, so a failure never leaves a partially written file behind. Failures
+   * are logged and otherwise ignored.
+   *
+   * @param description what the file holds, for the log message on failure
+   * @return true if the file was written
+   */
+  static boolean writeAtomically(final Path file, final Bytes content, final String description) {
+    try {
+      final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(tempFile, content.toArrayUnsafe());
+      Files.move(
+          tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (final IOException e) {
+      LOG.warn("Failed to save {} to {}", description, file, e);
+      return false;
+    }
+  }
+}
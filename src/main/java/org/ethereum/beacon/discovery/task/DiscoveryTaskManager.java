@@ -11,9 +11,14 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.ethereum.beacon.discovery.DiscoveryManager;
@@ -21,6 +26,9 @@ import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
 import org.ethereum.beacon.discovery.scheduler.Scheduler;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.storage.KBuckets;
+import org.ethereum.beacon.discovery.storage.NodeDatabaseStore;
+import org.ethereum.beacon.discovery.storage.RoutingTableStore;
+import reactor.core.publisher.Flux;
 
 /** Manages recurrent node check task(s) */
 public class DiscoveryTaskManager {
@@ -28,23 +36,37 @@ public class DiscoveryTaskManager {
   public static final Duration DEFAULT_RETRY_TIMEOUT = Duration.ofSeconds(10);
   public static final Duration DEFAULT_LIVE_CHECK_INTERVAL = Duration.ofSeconds(1);
   public static final Duration DEFAULT_RECURSIVE_LOOKUP_INTERVAL = Duration.ofSeconds(10);
+  public static final Duration SAVE_INTERVAL = Duration.ofMinutes(1);
   private static final int RECURSIVE_SEARCH_QUERY_LIMIT = 15;
+  // Queries allowed per node wanted in the result of a targeted lookup
+  private static final int TARGETED_LOOKUP_QUERIES_PER_RESULT = 3;
   private static final int LOOKUP_REQUEST_LIMIT = 4;
+  private static final int NODE_SEARCH_QUERY_BUDGET = 20 * NodeSearchTask.LOOKUP_QUERY_LIMIT;
   private final Bytes homeNodeId;
+  private final DiscoveryManager discoveryManager;
   private final Scheduler scheduler;
   private final RecursiveLookupTasks recursiveLookupTasks;
   private final KBuckets nodeBucketStorage;
+  private final Optional<RoutingTableStore> routingTableStore;
+  private final Optional<NodeDatabaseStore> nodeDatabaseStore;
+  private final Map<Bytes, CompletableFuture<Optional<NodeRecord>>> activeNodeLookups =
+      new ConcurrentHashMap<>();
 
   private final Duration recursiveLookupInterval;
   private final Duration liveCheckInterval;
   private CompletableFuture<Void> recursiveLookupSchedule;
   private CompletableFuture<Void> maintenanceSchedule;
+  private CompletableFuture<Void> saveSchedule;
 
   /**
    * @param discoveryManager Discovery manager
    * @param nodeBucketStorage Node bucket storage. stores only closest nodes in ready-to-answer
    *     format
    * @param scheduler scheduler to run recurrent tasks on
+   * @param routingTableStore store the routing table is restored from on start and saved to
+   *     periodically and on stop
+   * @param nodeDatabaseStore store the node database is restored from on start and saved to
+   *     periodically and on stop
    */
   public DiscoveryTaskManager(
       DiscoveryManager discoveryManager,
@@ -54,8 +76,11 @@ public class DiscoveryTaskManager {
       ExpirationSchedulerFactory expirationSchedulerFactory,
       Duration recursiveLookupInterval,
       Duration retryTimeout,
-      Duration liveCheckInterval) {
+      Duration liveCheckInterval,
+      Optional<RoutingTableStore> routingTableStore,
+      Optional<NodeDatabaseStore> nodeDatabaseStore) {
     this.homeNodeId = homeNodeId;
+    this.discoveryManager = discoveryManager;
     this.scheduler = scheduler;
     this.nodeBucketStorage = nodeBucketStorage;
     this.recursiveLookupTasks =
@@ -63,20 +88,35 @@ public class DiscoveryTaskManager {
             discoveryManager, scheduler, expirationSchedulerFactory, retryTimeout);
     this.recursiveLookupInterval = recursiveLookupInterval;
     this.liveCheckInterval = liveCheckInterval;
+    this.routingTableStore = routingTableStore;
+    this.nodeDatabaseStore = nodeDatabaseStore;
   }
 
   public synchronized void start() {
+    // Restore before the first lookup so it can start from the restored nodes
+    nodeDatabaseStore.ifPresent(store -> store.restore(nodeBucketStorage.getNodeDatabase()));
+    routingTableStore.ifPresent(store -> store.restore(nodeBucketStorage));
     recursiveLookupSchedule =
         scheduler.executeAtFixedRate(
             Duration.ZERO, recursiveLookupInterval, this::performSearchForNewPeers);
     maintenanceSchedule =
         scheduler.executeAtFixedRate(
             Duration.ZERO, liveCheckInterval, nodeBucketStorage::performMaintenance);
+    if (routingTableStore.isPresent() || nodeDatabaseStore.isPresent()) {
+      saveSchedule = scheduler.executeAtFixedRate(SAVE_INTERVAL, SAVE_INTERVAL, this::save);
+    }
   }
 
   public synchronized void stop() {
     safeCancel(recursiveLookupSchedule);
     safeCancel(maintenanceSchedule);
+    safeCancel(saveSchedule);
+    save();
+  }
+
+  private void save() {
+    routingTableStore.ifPresent(store -> store.save(nodeBucketStorage));
+    nodeDatabaseStore.ifPresent(store -> store.save(nodeBucketStorage.getNodeDatabase()));
   }
 
   private void safeCancel(final Future<?> future) {
@@ -94,12 +134,105 @@ public class DiscoveryTaskManager {
     return new RecursiveLookupTask(
             nodeBucketStorage,
             this::findNodes,
+            this::whenQuerySlow,
+            RecursiveLookupTask.DEFAULT_ALPHA,
+            RecursiveLookupTask.DEFAULT_K,
             RECURSIVE_SEARCH_QUERY_LIMIT,
+            Integer.MAX_VALUE,
             Bytes32.random(),
             homeNodeId)
         .execute();
   }
 
+  /**
+   * Looks up the current record of the node with ID {@code nodeId}. Completes as soon as a peer
+   * returns the record. Concurrent lookups of the same node share a single lookup.
+   */
+  public CompletableFuture<Optional<NodeRecord>> findNode(final Bytes nodeId) {
+    final CompletableFuture<Optional<NodeRecord>> result = new CompletableFuture<>();
+    final CompletableFuture<Optional<NodeRecord>> existing =
+        activeNodeLookups.putIfAbsent(nodeId, result);
+    if (existing != null) {
+      return existing.copy();
+    }
+    scheduler
+        .execute(() -> performFindNode(nodeId))
+        .thenCompose(Function.identity())
+        .whenComplete(
+            (node, error) -> {
+              activeNodeLookups.remove(nodeId, result);
+              if (error != null) {
+                result.completeExceptionally(error);
+              } else {
+                result.complete(node);
+              }
+            });
+    return result.copy();
+  }
+
+  /**
+   * Looks up the {@code k} nodes closest to {@code target} which responded to the lookup, closest
+   * first. Nodes only mentioned by other peers are not included as they may not be reachable.
+   */
+  public CompletableFuture<List<NodeRecord>> findClosest(final Bytes target, final int k) {
+    checkArgument(k > 0, "k must be positive");
+    return scheduler
+        .execute(
+            () -> {
+              final RecursiveLookupTask lookup = createTargetedLookup(target, k, false);
+              return lookup
+                  .execute()
+                  .thenApply(__ -> lookup.getRespondedNodes().stream().limit(k).toList());
+            })
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Searches for up to {@code count} nodes matching {@code predicate}, stopping after {@code
+   * timeout}. Matching nodes are emitted as soon as they are found.
+   */
+  public Flux<NodeRecord> searchForNodes(
+      final Predicate<NodeRecord> predicate, final int count, final Duration timeout) {
+    return new NodeSearchTask(
+            nodeBucketStorage,
+            this::findNodes,
+            this::whenQuerySlow,
+            Bytes32::random,
+            homeNodeId,
+            predicate,
+            count,
+            NODE_SEARCH_QUERY_BUDGET)
+        .execute()
+        .take(timeout);
+  }
+
+  private CompletableFuture<Optional<NodeRecord>> performFindNode(final Bytes nodeId) {
+    return createTargetedLookup(nodeId, RecursiveLookupTask.DEFAULT_K, true)
+        .execute()
+        .thenApply(
+            nodes ->
+                // Closest first so the node itself comes first if it was found
+                nodes.stream()
+                    .findFirst()
+                    .filter(node -> node.getNodeId().equals(nodeId))
+                    .or(() -> nodeBucketStorage.getLiveNode(nodeId)));
+  }
+
+  private RecursiveLookupTask createTargetedLookup(
+      final Bytes target, final int k, final boolean stopAtTarget) {
+    return new RecursiveLookupTask(
+        nodeBucketStorage,
+        this::findNodes,
+        this::whenQuerySlow,
+        RecursiveLookupTask.DEFAULT_ALPHA,
+        k,
+        TARGETED_LOOKUP_QUERIES_PER_RESULT * k,
+        Integer.MAX_VALUE,
+        stopAtTarget,
+        target,
+        homeNodeId);
+  }
+
   @VisibleForTesting
   static List<Integer> lookupDistances(int targetDistance) {
     checkArgument(
@@ -130,8 +263,17 @@ public class DiscoveryTaskManager {
     return distances;
   }
 
+  private CompletableFuture<Void> whenQuerySlow(final NodeRecord peer) {
+    return scheduler.executeWithDelayR(discoveryManager.getExpectedRtt(peer), () -> {});
+  }
+
   private CompletableFuture<Collection<NodeRecord>> findNodes(
-      final NodeRecord nodeRecord, final int targetDistance) {
-    return recursiveLookupTasks.add(nodeRecord, lookupDistances(targetDistance));
+      final NodeRecord nodeRecord,
+      final int targetDistance,
+      final Consumer<Collection<NodeRecord>> onNodesReceived) {
+    // Distance 0 is the peer itself, asking for it gets its current record
+    final List<Integer> distances =
+        targetDistance == 0 ? List.of(0) : lookupDistances(targetDistance);
+    return recursiveLookupTasks.add(nodeRecord, distances, onNodesReceived);
   }
 }
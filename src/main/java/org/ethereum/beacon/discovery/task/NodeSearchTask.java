@@ -0,0 +1,180 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.task;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.apache.tuweni.bytes.Bytes;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.storage.KBuckets;
+import org.ethereum.beacon.discovery.task.RecursiveLookupTask.FindNodesAction;
+import org.ethereum.beacon.discovery.task.RecursiveLookupTask.SlowQueryTimer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Searches for nodes whose records match a predicate, e.g. nodes advertising a particular custom
+ * ENR field.
+ *
+ * <p>Nodes already in the node database are checked first, then lookups towards varied targets are
+ * run one after another. Every node returned in a NODES response is checked, including ones which
+ * never make it into the routing table. The search completes once {@code count} matching nodes are
+ * found, the query budget is used up or no peers are left to query.
+ */
+public class NodeSearchTask {
+  static final int LOOKUP_QUERY_LIMIT = 15;
+
+  private final KBuckets buckets;
+  private final FindNodesAction sendFindNodesRequest;
+  private final SlowQueryTimer slowQueryTimer;
+  private final Supplier<Bytes> targetSupplier;
+  private final Bytes homeNodeId;
+  private final Predicate<NodeRecord> predicate;
+  private final int count;
+  private final Set<Bytes> checkedNodes = new HashSet<>();
+  private int remainingQueryBudget;
+  private int matchCount = 0;
+  private boolean done = false;
+  private FluxSink<NodeRecord> matches;
+  private RecursiveLookupTask currentLookup;
+
+  /**
+   * @param slowQueryTimer signals when a query is slow, see {@link RecursiveLookupTask}
+   * @param targetSupplier supplies the target of each lookup
+   * @param predicate nodes to search for
+   * @param count number of matching nodes after which the search completes
+   * @param queryBudget maximum number of FINDNODE requests sent across all lookups
+   */
+  public NodeSearchTask(
+      final KBuckets buckets,
+      final FindNodesAction sendFindNodesRequest,
+      final SlowQueryTimer slowQueryTimer,
+      final Supplier<Bytes> targetSupplier,
+      final Bytes homeNodeId,
+      final Predicate<NodeRecord> predicate,
+      final int count,
+      final int queryBudget) {
+    checkArgument(count > 0, "Count must be positive");
+    checkArgument(queryBudget >= 0, "Query budget must not be negative");
+    this.buckets = buckets;
+    this.sendFindNodesRequest = sendFindNodesRequest;
+    this.slowQueryTimer = slowQueryTimer;
+    this.targetSupplier = targetSupplier;
+    this.homeNodeId = homeNodeId;
+    this.predicate = predicate;
+    this.count = count;
+    this.remainingQueryBudget = queryBudget;
+  }
+
+  /**
+   * Starts the search when subscribed to. Emits each matching node once, as soon as it is found.
+   * Cancelling the subscription stops the search, including the running lookup. May only be
+   * subscribed to once.
+   */
+  public Flux<NodeRecord> execute() {
+    return Flux.create(
+        sink -> {
+          sink.onDispose(this::cancel);
+          start(sink);
+        });
+  }
+
+  private synchronized void start(final FluxSink<NodeRecord> sink) {
+    checkState(matches == null, "Search already started");
+    matches = sink;
+    buckets
+        .getNodeDatabase()
+        .find(entry -> predicate.test(entry.getNode()), count)
+        .forEach(entry -> onNodeFound(entry.getNode()));
+    startNextLookup();
+  }
+
+  private void cancel() {
+    final RecursiveLookupTask lookup;
+    synchronized (this) {
+      done = true;
+      lookup = currentLookup;
+    }
+    // Outside the lock as the lookup calls back into this task while holding its own lock
+    if (lookup != null) {
+      lookup.cancel();
+    }
+  }
+
+  private synchronized void startNextLookup() {
+    if (done) {
+      return;
+    }
+    if (remainingQueryBudget <= 0) {
+      complete();
+      return;
+    }
+    final int budgetBeforeLookup = remainingQueryBudget;
+    final RecursiveLookupTask lookup =
+        new RecursiveLookupTask(
+            buckets,
+            this::findNodes,
+            slowQueryTimer,
+            RecursiveLookupTask.DEFAULT_ALPHA,
+            RecursiveLookupTask.DEFAULT_K,
+            Math.min(LOOKUP_QUERY_LIMIT, remainingQueryBudget),
+            Integer.MAX_VALUE,
+            targetSupplier.get(),
+            homeNodeId);
+    currentLookup = lookup;
+    lookup.streamFoundNodes().subscribe(this::onNodeFound);
+    lookup
+        .execute()
+        .whenComplete(
+            (__, error) -> {
+              synchronized (this) {
+                if (remainingQueryBudget == budgetBeforeLookup) {
+                  // No peers to query, further lookups won't find anything either
+                  complete();
+                } else {
+                  startNextLookup();
+                }
+              }
+            });
+  }
+
+  private CompletableFuture<Collection<NodeRecord>> findNodes(
+      final NodeRecord sendTo,
+      final int targetDistance,
+      final Consumer<Collection<NodeRecord>> onNodesReceived) {
+    synchronized (this) {
+      remainingQueryBudget--;
+    }
+    return sendFindNodesRequest.findNodes(sendTo, targetDistance, onNodesReceived);
+  }
+
+  private synchronized void onNodeFound(final NodeRecord node) {
+    if (done || node.getNodeId().equals(homeNodeId) || !checkedNodes.add(node.getNodeId())) {
+      return;
+    }
+    if (predicate.test(node)) {
+      matchCount++;
+      matches.next(node);
+      if (matchCount >= count) {
+        complete();
+      }
+    }
+  }
+
+  private void complete() {
+    if (!done) {
+      done = true;
+      matches.complete();
+    }
+  }
+}
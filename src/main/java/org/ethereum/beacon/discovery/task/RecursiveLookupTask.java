@@ -6,56 +6,166 @@ package org.ethereum.beacon.discovery.task;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.Consumer;
 import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.storage.KBuckets;
-import org.ethereum.beacon.discovery.util.Functions;
+import org.ethereum.beacon.discovery.type.NodeId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
 
+/**
+ * Iterative Kademlia lookup of the nodes closest to a target.
+ *
+ * <p>Up to {@code alpha} of the {@code k} closest nodes seen so far are queried at a time. The
+ * lookup completes once the {@code k} closest nodes that responded have all been queried, the total
+ * query limit is used up, the target itself is found, unless the lookup is for the nodes closest to
+ * it, or {@code resultLimit} nodes have been found.
+ *
+ * <p>A query to a peer which is slower than the peer usually is no longer counts towards {@code
+ * alpha}, so the next closest node is queried instead of waiting on it. The lookup still waits for
+ * slow queries to be answered or fail before it completes, so late responses are used. Nodes in
+ * the first packets of a multi-packet response become candidates as soon as they arrive, without
+ * waiting for the rest.
+ *
+ * <p>The result holds the nodes returned by the queried peers, closest to the target first. Each
+ * newly found node is also published by {@link #streamFoundNodes()} as soon as it arrives. The
+ * peers which actually responded are available from {@link #getRespondedNodes()}.
+ */
 public class RecursiveLookupTask {
   private static final Logger LOG = LoggerFactory.getLogger(RecursiveLookupTask.class);
-  private static final int MAX_CONCURRENT_QUERIES = 3;
-  private final KBuckets buckets;
+  public static final int DEFAULT_ALPHA = 3;
+  public static final int DEFAULT_K = KBuckets.DEFAULT_BUCKET_SIZE;
+  /** Never considers queries slow, so a new query is only sent when one completes. */
+  public static final SlowQueryTimer NO_HEDGING = peer -> new CompletableFuture<>();
+
   private final FindNodesAction sendFindNodesRequest;
-  private final Bytes targetNodeId;
-  private final Set<Bytes> queriedNodeIds = new HashSet<>();
-  private final Comparator<NodeRecord> distanceComparator;
-  private int availableQuerySlots = MAX_CONCURRENT_QUERIES;
+  private final SlowQueryTimer slowQueryTimer;
+  private final NodeId target;
+  private final NodeId homeNodeId;
+  private final int alpha;
+  private final int k;
+  private final int resultLimit;
+  private final boolean stopAtTarget;
+  // In-flight queries which aren't slow yet
+  private int activeQueries = 0;
+  // In-flight queries which are slow but haven't been answered or failed yet
+  private int slowQueries = 0;
   private int remainingTotalQueryLimit;
   private final CompletableFuture<Collection<NodeRecord>> future = new CompletableFuture<>();
-  private final NavigableSet<NodeRecord> foundNodes;
+  private final Sinks.Many<NodeRecord> foundNodesSink = Sinks.many().replay().all();
+  // All nodes which are or may be queried, closest to the target first
+  private final NavigableMap<NodeId, Candidate> candidates;
+  // Closest to the target first
+  private final NavigableMap<NodeId, NodeRecord> foundNodes;
+
+  public RecursiveLookupTask(
+      final KBuckets buckets,
+      final FindNodesAction sendFindNodesRequest,
+      final int totalQueryLimit,
+      final Bytes targetNodeId,
+      final Bytes homeNodeId) {
+    this(
+        buckets,
+        sendFindNodesRequest,
+        DEFAULT_ALPHA,
+        DEFAULT_K,
+        totalQueryLimit,
+        Integer.MAX_VALUE,
+        targetNodeId,
+        homeNodeId);
+  }
 
   public RecursiveLookupTask(
       final KBuckets buckets,
       final FindNodesAction sendFindNodesRequest,
+      final int alpha,
+      final int k,
       final int totalQueryLimit,
+      final int resultLimit,
       final Bytes targetNodeId,
       final Bytes homeNodeId) {
+    this(
+        buckets,
+        sendFindNodesRequest,
+        NO_HEDGING,
+        alpha,
+        k,
+        totalQueryLimit,
+        resultLimit,
+        targetNodeId,
+        homeNodeId);
+  }
+
+  public RecursiveLookupTask(
+      final KBuckets buckets,
+      final FindNodesAction sendFindNodesRequest,
+      final SlowQueryTimer slowQueryTimer,
+      final int alpha,
+      final int k,
+      final int totalQueryLimit,
+      final int resultLimit,
+      final Bytes targetNodeId,
+      final Bytes homeNodeId) {
+    this(
+        buckets,
+        sendFindNodesRequest,
+        slowQueryTimer,
+        alpha,
+        k,
+        totalQueryLimit,
+        resultLimit,
+        true,
+        targetNodeId,
+        homeNodeId);
+  }
+
+  /**
+   * @param slowQueryTimer signals when a query is slow, so another node may be queried
+   * @param alpha maximum number of concurrent queries which are not slow
+   * @param k number of closest nodes which must have been queried for the lookup to complete
+   * @param totalQueryLimit maximum number of queries sent
+   * @param resultLimit number of found nodes after which the lookup completes early
+   * @param stopAtTarget whether the lookup completes early when the target itself is found, rather
+   *     than querying it like any other node
+   */
+  public RecursiveLookupTask(
+      final KBuckets buckets,
+      final FindNodesAction sendFindNodesRequest,
+      final SlowQueryTimer slowQueryTimer,
+      final int alpha,
+      final int k,
+      final int totalQueryLimit,
+      final int resultLimit,
+      final boolean stopAtTarget,
+      final Bytes targetNodeId,
+      final Bytes homeNodeId) {
+    checkArgument(alpha > 0, "Must allow positive number of concurrent queries");
+    checkArgument(k > 0, "k must be positive");
     checkArgument(totalQueryLimit > 0, "Must allow positive number of queries");
-    this.buckets = buckets;
+    checkArgument(resultLimit > 0, "Result limit must be positive");
     this.sendFindNodesRequest = sendFindNodesRequest;
+    this.slowQueryTimer = slowQueryTimer;
+    this.alpha = alpha;
+    this.k = k;
     this.remainingTotalQueryLimit = totalQueryLimit;
-    this.targetNodeId = targetNodeId;
-    this.distanceComparator =
-        Comparator.<NodeRecord, BigInteger>comparing(
-                node -> Functions.distance(targetNodeId, node.getNodeId()))
-            .reversed()
-            .thenComparing(NodeRecord::getNodeId);
-    this.foundNodes = new TreeSet<>(distanceComparator);
-    // Don't query ourselves
-    this.queriedNodeIds.add(homeNodeId);
+    this.resultLimit = resultLimit;
+    this.stopAtTarget = stopAtTarget;
+    this.target = NodeId.wrap(targetNodeId);
+    this.homeNodeId = NodeId.wrap(homeNodeId);
+    this.candidates = new TreeMap<>(target::compareDistance);
+    this.foundNodes = new TreeMap<>(target::compareDistance);
+    // Live nodes from the table first, then nodes seen before which may be closer still
+    buckets.streamClosestNodes(targetNodeId).limit(k).forEach(this::addCandidate);
+    buckets.closestKnownNodes(targetNodeId, k).forEach(this::addCandidate);
   }
 
   public CompletableFuture<Collection<NodeRecord>> execute() {
@@ -63,71 +173,172 @@ public class RecursiveLookupTask {
     return future;
   }
 
+  /**
+   * Stops the lookup, completing it with the nodes found so far. No further queries are sent and
+   * responses to queries already in flight are ignored.
+   */
+  public synchronized void cancel() {
+    complete();
+  }
+
+  /**
+   * Returns the nodes found by this lookup as they arrive. Completes when the lookup does, late
+   * subscribers receive all nodes found so far.
+   */
+  public Flux<NodeRecord> streamFoundNodes() {
+    return foundNodesSink.asFlux();
+  }
+
+  /**
+   * Returns the nodes which responded to a query from this lookup, closest to the target first.
+   * Unlike the result, this excludes nodes which were only mentioned by other peers.
+   */
+  public synchronized List<NodeRecord> getRespondedNodes() {
+    return candidates.values().stream()
+        .filter(candidate -> candidate.state == QueryState.QUERIED)
+        .map(candidate -> candidate.node)
+        .toList();
+  }
+
+  private void addCandidate(final NodeRecord node) {
+    final NodeId nodeId = NodeId.wrap(node.getNodeId());
+    if (!nodeId.equals(homeNodeId)) {
+      candidates.putIfAbsent(nodeId, new Candidate(nodeId, node));
+    }
+  }
+
   private synchronized void sendRequests() {
-    checkArgument(availableQuerySlots >= 0, "Available query slots should never be negative");
+    checkArgument(activeQueries >= 0, "Active queries should never be negative");
     checkArgument(
         remainingTotalQueryLimit >= 0, "Remaining total query limit should never be negative");
-    if (availableQuerySlots == 0 || future.isDone()) {
+    if (future.isDone()) {
       return;
     }
-    if (buckets.containsNode(targetNodeId)) {
-      future.complete(foundNodes);
-      return;
+    final List<Candidate> toQuery = new ArrayList<>();
+    int closestSeen = 0;
+    for (Candidate candidate : candidates.values()) {
+      if (closestSeen >= k
+          || activeQueries + toQuery.size() >= alpha
+          || toQuery.size() >= remainingTotalQueryLimit) {
+        break;
+      }
+      if (candidate.state == QueryState.FAILED) {
+        // Unresponsive nodes don't count towards the k closest
+        continue;
+      }
+      closestSeen++;
+      if (candidate.state == QueryState.NOT_QUERIED) {
+        toQuery.add(candidate);
+      }
     }
-    final int maxNodesToQuery = Math.min(availableQuerySlots, remainingTotalQueryLimit);
-
-    final Stream<NodeRecord> closestNodesFromBuckets =
-        buckets
-            .streamClosestNodes(targetNodeId)
-            .filter(record -> !queriedNodeIds.contains(record.getNodeId()))
-            .limit(maxNodesToQuery);
-
-    final Stream<NodeRecord> foundNodesToQuery =
-        foundNodes.stream()
-            .filter(record -> !queriedNodeIds.contains(record.getNodeId()))
-            .limit(maxNodesToQuery);
-
-    // Mix the two sources together and select the closest from either.
-    queryPeers(
-        Stream.concat(closestNodesFromBuckets, foundNodesToQuery)
-            .sorted(distanceComparator)
-            .limit(maxNodesToQuery)
-            .collect(Collectors.toList()));
-    if (availableQuerySlots == MAX_CONCURRENT_QUERIES) {
-      // There are no in-progress queries even after we looked for more to send so must have run out
-      // of possible nodes to query or reached the query limit.
-      future.complete(foundNodes);
+    queryPeers(toQuery);
+    if (activeQueries == 0 && slowQueries == 0) {
+      // Nothing in progress even after looking for more to query, so the k closest nodes have all
+      // answered or failed, or the query limit was reached.
+      complete();
     }
   }
 
-  private void queryPeers(final List<NodeRecord> nodesToQuery) {
+  private void queryPeers(final List<Candidate> nodesToQuery) {
     // Update state to indicate all nodes queried before we start sending requests.
     // Otherwise if any request completes synchronously we recurse back into this method and wind up
     // sending too many requests
-    nodesToQuery.stream().map(NodeRecord::getNodeId).forEach(queriedNodeIds::add);
-    availableQuerySlots -= nodesToQuery.size();
+    nodesToQuery.forEach(candidate -> candidate.state = QueryState.QUERYING);
+    activeQueries += nodesToQuery.size();
     remainingTotalQueryLimit -= nodesToQuery.size();
     nodesToQuery.forEach(this::queryPeer);
   }
 
-  private void queryPeer(final NodeRecord peer) {
+  private void queryPeer(final Candidate candidate) {
+    final NodeRecord peer = candidate.node;
     sendFindNodesRequest
-        .findNodes(peer, Functions.logDistance(peer.getNodeId(), targetNodeId))
+        .findNodes(peer, candidate.nodeId.logDistance(target), this::onNodesReceived)
         .whenComplete(
             (nodes, error) -> {
               synchronized (this) {
-                availableQuerySlots++;
+                if (candidate.slow) {
+                  slowQueries--;
+                } else {
+                  activeQueries--;
+                }
                 if (error != null) {
                   LOG.debug("Failed to query node {}: {}", peer.getNodeId(), error.toString());
+                  candidate.state = QueryState.FAILED;
                 } else {
-                  foundNodes.addAll(nodes);
+                  candidate.state = QueryState.QUERIED;
+                  nodes.forEach(this::onNodeFound);
                 }
                 sendRequests();
               }
             });
+    slowQueryTimer.whenSlow(peer).thenRun(() -> onQuerySlow(candidate));
+  }
+
+  private synchronized void onNodesReceived(final Collection<NodeRecord> nodes) {
+    nodes.forEach(this::onNodeFound);
+    sendRequests();
+  }
+
+  private synchronized void onQuerySlow(final Candidate candidate) {
+    if (candidate.state != QueryState.QUERYING || candidate.slow) {
+      return;
+    }
+    LOG.trace("Query to node {} is slow, querying next node", candidate.node.getNodeId());
+    candidate.slow = true;
+    activeQueries--;
+    slowQueries++;
+    sendRequests();
+  }
+
+  private void onNodeFound(final NodeRecord node) {
+    final NodeId nodeId = NodeId.wrap(node.getNodeId());
+    if (future.isDone() || foundNodes.putIfAbsent(nodeId, node) != null) {
+      return;
+    }
+    foundNodesSink.tryEmitNext(node);
+    addCandidate(node);
+    if ((stopAtTarget && nodeId.equals(target)) || foundNodes.size() >= resultLimit) {
+      complete();
+    }
+  }
+
+  private void complete() {
+    if (future.complete(foundNodes.values())) {
+      foundNodesSink.tryEmitComplete();
+    }
+  }
+
+  private enum QueryState {
+    NOT_QUERIED,
+    QUERYING,
+    QUERIED,
+    FAILED
+  }
+
+  /** A node to query together with its ID, converted once rather than on each comparison. */
+  private static class Candidate {
+    private final NodeId nodeId;
+    private final NodeRecord node;
+    private QueryState state = QueryState.NOT_QUERIED;
+    private boolean slow = false;
+
+    private Candidate(final NodeId nodeId, final NodeRecord node) {
+      this.nodeId = nodeId;
+      this.node = node;
+    }
   }
 
   public interface FindNodesAction {
-    CompletableFuture<Collection<NodeRecord>> findNodes(NodeRecord sendTo, int targetDistance);
+    /**
+     * Sends a FINDNODE request to {@code sendTo}, calling {@code onNodesReceived} with the nodes in
+     * each packet of the response as it arrives. The returned future completes with all of them.
+     */
+    CompletableFuture<Collection<NodeRecord>> findNodes(
+        NodeRecord sendTo, int targetDistance, Consumer<Collection<NodeRecord>> onNodesReceived);
+  }
+
+  public interface SlowQueryTimer {
+    /** Returns a future completed once a query sent to {@code peer} now is slow. */
+    CompletableFuture<Void> whenSlow(NodeRecord peer);
   }
 }
@@ -4,30 +4,42 @@
 
 package org.ethereum.beacon.discovery.task;
 
-import com.google.common.collect.Sets;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import org.apache.tuweni.bytes.Bytes;
 import org.ethereum.beacon.discovery.DiscoveryManager;
+import org.ethereum.beacon.discovery.pipeline.info.FoundNodes;
 import org.ethereum.beacon.discovery.scheduler.ExpirationScheduler;
 import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
 import org.ethereum.beacon.discovery.scheduler.Scheduler;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.util.Functions;
 
 /**
  * Sends FindNode to closest NodeRecords added via {@link #add(NodeRecord, List)}. Tasks is called
  * failed if timeout is reached and reply from node is not received.
+ *
+ * <p>Only one request is sent to a node at a time. A task for a node which is already being queried
+ * for all of its distances waits for that request and gets the returned nodes at its own
+ * distances, including those in packets received after it was added. A task for other distances
+ * is sent once the current request completes. A task with only some distances in common gets the
+ * nodes at those from the current request and sends a follow-up for the rest once it completes.
  */
 public class RecursiveLookupTasks {
   private final Scheduler scheduler;
   private final DiscoveryManager discoveryManager;
-  private final Set<Bytes> currentTasks = Sets.newConcurrentHashSet();
+  // Guarded by this
+  private final Map<Bytes, PendingRequest> currentTasks = new HashMap<>();
   private final ExpirationScheduler<Bytes> taskTimeouts;
 
   public RecursiveLookupTasks(
@@ -43,19 +55,58 @@ public class RecursiveLookupTasks {
 
   public CompletableFuture<Collection<NodeRecord>> add(
       NodeRecord nodeRecord, List<Integer> distances) {
-    if (!currentTasks.add(nodeRecord.getNodeId())) {
-      return CompletableFuture.failedFuture(new IllegalStateException("Already querying node"));
+    return add(nodeRecord, distances, nodes -> {});
+  }
+
+  /**
+   * Adds a task which also passes on the nodes in each packet of the reply as it arrives.
+   *
+   * @param onNodesReceived called with the returned nodes at {@code distances} from each packet
+   */
+  public synchronized CompletableFuture<Collection<NodeRecord>> add(
+      NodeRecord nodeRecord,
+      List<Integer> distances,
+      Consumer<Collection<NodeRecord>> onNodesReceived) {
+    final Bytes nodeId = nodeRecord.getNodeId();
+    final PendingRequest pending = currentTasks.get(nodeId);
+    if (pending != null) {
+      final List<Integer> coveredDistances =
+          distances.stream().filter(pending.distances::contains).toList();
+      if (coveredDistances.isEmpty()) {
+        return pending
+            .result
+            .handle((__, ___) -> null)
+            .thenCompose(__ -> add(nodeRecord, distances, onNodesReceived));
+      }
+      pending.listeners.add(
+          nodes -> onNodesReceived.accept(filterByDistance(nodeId, nodes, coveredDistances)));
+      final CompletableFuture<Collection<NodeRecord>> coveredResult =
+          pending.result.thenApply(nodes -> filterByDistance(nodeId, nodes, coveredDistances));
+      if (coveredDistances.size() == distances.size()) {
+        return coveredResult;
+      }
+      final List<Integer> otherDistances =
+          distances.stream().filter(distance -> !pending.distances.contains(distance)).toList();
+      return coveredResult.thenCompose(
+          coveredNodes ->
+              add(nodeRecord, otherDistances, onNodesReceived)
+                  .thenApply(otherNodes -> combine(coveredNodes, otherNodes)));
     }
 
     final CompletableFuture<Collection<NodeRecord>> result = new CompletableFuture<>();
+    final PendingRequest newRequest = new PendingRequest(distances, result);
+    newRequest.listeners.add(onNodesReceived);
+    currentTasks.put(nodeId, newRequest);
     scheduler.execute(
         () -> {
           CompletableFuture<Collection<NodeRecord>> request =
-              discoveryManager.findNodes(nodeRecord, distances);
+              discoveryManager.findNodes(nodeRecord, distances, newRequest::onNodesReceived);
           addTimeout(nodeRecord, request);
           request.whenComplete(
               (foundNodes, throwable) -> {
-                currentTasks.remove(nodeRecord.getNodeId());
+                synchronized (this) {
+                  currentTasks.remove(nodeId);
+                }
                 if (throwable != null) {
                   result.completeExceptionally(throwable);
                 } else {
@@ -66,6 +117,22 @@ public class RecursiveLookupTasks {
     return result;
   }
 
+  private static Collection<NodeRecord> filterByDistance(
+      final Bytes nodeId, final Collection<NodeRecord> nodes, final List<Integer> distances) {
+    return new FoundNodes(
+        nodes.stream()
+            .filter(node -> distances.contains(Functions.logDistance(node.getNodeId(), nodeId)))
+            .toList(),
+        FoundNodes.isPartial(nodes));
+  }
+
+  private static Collection<NodeRecord> combine(
+      final Collection<NodeRecord> first, final Collection<NodeRecord> second) {
+    final List<NodeRecord> nodes = new ArrayList<>(first);
+    nodes.addAll(second);
+    return new FoundNodes(nodes, FoundNodes.isPartial(first) || FoundNodes.isPartial(second));
+  }
+
   private void addTimeout(final NodeRecord nodeRecord, final CompletableFuture<?> retry) {
     taskTimeouts.put(
         nodeRecord.getNodeId(),
@@ -73,4 +140,20 @@ public class RecursiveLookupTasks {
             retry.completeExceptionally(
                 new TimeoutException("Timeout for node recursive lookup task")));
   }
+
+  private static class PendingRequest {
+    private final List<Integer> distances;
+    private final CompletableFuture<Collection<NodeRecord>> result;
+    private final List<Consumer<Collection<NodeRecord>>> listeners = new CopyOnWriteArrayList<>();
+
+    private PendingRequest(
+        final List<Integer> distances, final CompletableFuture<Collection<NodeRecord>> result) {
+      this.distances = distances;
+      this.result = result;
+    }
+
+    private void onNodesReceived(final Collection<NodeRecord> nodes) {
+      listeners.forEach(listener -> listener.accept(nodes));
+    }
+  }
 }
@@ -0,0 +1,175 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.type;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+
+/**
+ * A 256 bit node ID held as four big-endian longs, so XOR distance math needs no allocation.
+ *
+ * <p>Shorter inputs are treated as big-endian numbers, i.e. left padded with zeros.
+ */
+public final class NodeId implements Comparable<NodeId> {
+  public static final int SIZE = 32;
+  private static final int WORDS = 4;
+
+  // w0 is the most significant word
+  private final long w0;
+  private final long w1;
+  private final long w2;
+  private final long w3;
+
+  private NodeId(final long w0, final long w1, final long w2, final long w3) {
+    this.w0 = w0;
+    this.w1 = w1;
+    this.w2 = w2;
+    this.w3 = w3;
+  }
+
+  public static NodeId wrap(final Bytes bytes) {
+    checkArgument(bytes.size() <= SIZE, "Node ID can't be longer than %s bytes", SIZE);
+    final int padding = SIZE - bytes.size();
+    return new NodeId(
+        readWord(bytes, -padding),
+        readWord(bytes, Long.BYTES - padding),
+        readWord(bytes, 2 * Long.BYTES - padding),
+        readWord(bytes, 3 * Long.BYTES - padding));
+  }
+
+  public static NodeId fromHexString(final String hex) {
+    return wrap(Bytes.fromHexString(hex));
+  }
+
+  private static long readWord(final Bytes bytes, final int offset) {
+    if (offset >= 0) {
+      return bytes.getLong(offset);
+    }
+    // Only part of the word is covered by the input, the rest is padding
+    long word = 0;
+    for (int i = 0; i < offset + Long.BYTES; i++) {
+      word = (word << Byte.SIZE) | (bytes.get(i) & 0xFF);
+    }
+    return word;
+  }
+
+  private long word(final int index) {
+    return switch (index) {
+      case 0 -> w0;
+      case 1 -> w1;
+      case 2 -> w2;
+      default -> w3;
+    };
+  }
+
+  public NodeId xor(final NodeId other) {
+    return new NodeId(w0 ^ other.w0, w1 ^ other.w1, w2 ^ other.w2, w3 ^ other.w3);
+  }
+
+  /**
+   * Returns the log distance to {@code other}: the bit length of the XOR of both IDs, from 0 for
+   * equal IDs to 256.
+   */
+  public int logDistance(final NodeId other) {
+    for (int i = 0; i < WORDS; i++) {
+      final long xor = word(i) ^ other.word(i);
+      if (xor != 0) {
+        return (WORDS - i) * Long.SIZE - Long.numberOfLeadingZeros(xor);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Compares the XOR distances of {@code a} and {@code b} to this ID. Negative if {@code a} is
+   * closer, positive if {@code b} is closer and 0 only if both are the same ID.
+   */
+  public int compareDistance(final NodeId a, final NodeId b) {
+    for (int i = 0; i < WORDS; i++) {
+      final int result = Long.compareUnsigned(word(i) ^ a.word(i), word(i) ^ b.word(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns this ID with its lowest {@code bits} bits cleared or set. All IDs within log distance
+   * {@code bits} of this one are between the two, so they are a range in ID order.
+   */
+  public NodeId withLowBits(final int bits, final boolean set) {
+    checkArgument(bits >= 0 && bits <= WORDS * Long.SIZE, "Invalid number of bits: %s", bits);
+    return new NodeId(
+        withLowBits(0, bits, set),
+        withLowBits(1, bits, set),
+        withLowBits(2, bits, set),
+        withLowBits(3, bits, set));
+  }
+
+  private long withLowBits(final int index, final int bits, final boolean set) {
+    // Number of the lowest bits which fall in this word
+    final int wordBits = Math.clamp(bits - (WORDS - 1 - index) * Long.SIZE, 0, Long.SIZE);
+    final long mask = wordBits == Long.SIZE ? -1L : (1L << wordBits) - 1;
+    return set ? word(index) | mask : word(index) & ~mask;
+  }
+
+  /** Writes the ID as four longs into {@code words}, starting at {@code offset}. */
+  public void copyTo(final long[] words, final int offset) {
+    for (int i = 0; i < WORDS; i++) {
+      words[offset + i] = word(i);
+    }
+  }
+
+  /** Returns true if the four longs in {@code words} at {@code offset} hold this ID. */
+  public boolean isEqualTo(final long[] words, final int offset) {
+    return w0 == words[offset]
+        && w1 == words[offset + 1]
+        && w2 == words[offset + 2]
+        && w3 == words[offset + 3];
+  }
+
+  public Bytes toBytes() {
+    final MutableBytes bytes = MutableBytes.create(SIZE);
+    for (int i = 0; i < WORDS; i++) {
+      bytes.setLong(i * Long.BYTES, word(i));
+    }
+    return bytes;
+  }
+
+  @Override
+  public int compareTo(final NodeId other) {
+    for (int i = 0; i < WORDS; i++) {
+      final int result = Long.compareUnsigned(word(i), other.word(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof NodeId)) {
+      return false;
+    }
+    final NodeId that = (NodeId) o;
+    return w0 == that.w0 && w1 == that.w1 && w2 == that.w2 && w3 == that.w3;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(w0 ^ w1 ^ w2 ^ w3);
+  }
+
+  @Override
+  public String toString() {
+    return toBytes().toHexString();
+  }
+}
@@ -86,8 +86,9 @@ public class Functions {
       LOG.trace("Invalid signature size, should be {} bytes", SIGNATURE_SIZE);
       return false;
     }
-    final PublicKey publicKey = derivePublicKeyFromCompressed(pubKey);
     try {
+      // A malformed public key can't have signed anything
+      final PublicKey publicKey = derivePublicKeyFromCompressed(pubKey);
       for (byte v = 0; v <= 1; v++) {
         final boolean verified =
             SECP256K1.verifyHashed(
@@ -194,25 +195,34 @@ public class Functions {
       final Bytes destNodeId,
       final Bytes keyAgreement,
       final Bytes idNonce) {
+    Bytes info =
+        Bytes.concatenate(
+            Bytes.wrap("discovery v5 key agreement".getBytes()), srcNodeId, destNodeId);
+    // initiator-key || recipient-key || auth-resp-key
+    Bytes hkdfOutput =
+        hkdf(
+            keyAgreement,
+            idNonce,
+            info,
+            INITIATOR_KEY_LENGTH + RECIPIENT_KEY_LENGTH + AUTH_RESP_KEY_LENGTH);
+    Bytes initiatorKey = hkdfOutput.slice(0, INITIATOR_KEY_LENGTH);
+    Bytes recipientKey = hkdfOutput.slice(INITIATOR_KEY_LENGTH, RECIPIENT_KEY_LENGTH);
+    Bytes authRespKey = hkdfOutput.slice(INITIATOR_KEY_LENGTH + RECIPIENT_KEY_LENGTH);
+    return new HKDFKeys(initiatorKey, recipientKey, authRespKey);
+  }
+
+  /** HKDF-Extract and HKDF-Expand with SHA-256, producing {@code length} bytes of key material */
+  public static Bytes hkdf(
+      final Bytes secret, final Bytes salt, final Bytes info, final int length) {
     try {
-      Bytes info =
-          Bytes.concatenate(
-              Bytes.wrap("discovery v5 key agreement".getBytes()), srcNodeId, destNodeId);
       HKDFParameters hkdfParameters =
-          new HKDFParameters(keyAgreement.toArray(), idNonce.toArray(), info.toArray());
+          new HKDFParameters(secret.toArray(), salt.toArray(), info.toArray());
       Digest digest = new SHA256Digest();
       HKDFBytesGenerator hkdfBytesGenerator = new HKDFBytesGenerator(digest);
       hkdfBytesGenerator.init(hkdfParameters);
-      // initiator-key || recipient-key || auth-resp-key
-      byte[] hkdfOutputBytes =
-          new byte[INITIATOR_KEY_LENGTH + RECIPIENT_KEY_LENGTH + AUTH_RESP_KEY_LENGTH];
-      hkdfBytesGenerator.generateBytes(
-          hkdfOutputBytes, 0, INITIATOR_KEY_LENGTH + RECIPIENT_KEY_LENGTH + AUTH_RESP_KEY_LENGTH);
-      Bytes hkdfOutput = Bytes.wrap(hkdfOutputBytes);
-      Bytes initiatorKey = hkdfOutput.slice(0, INITIATOR_KEY_LENGTH);
-      Bytes recipientKey = hkdfOutput.slice(INITIATOR_KEY_LENGTH, RECIPIENT_KEY_LENGTH);
-      Bytes authRespKey = hkdfOutput.slice(INITIATOR_KEY_LENGTH + RECIPIENT_KEY_LENGTH);
-      return new HKDFKeys(initiatorKey, recipientKey, authRespKey);
+      byte[] hkdfOutputBytes = new byte[length];
+      hkdfBytesGenerator.generateBytes(hkdfOutputBytes, 0, length);
+      return Bytes.wrap(hkdfOutputBytes);
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
@@ -14,6 +14,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.Clock;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -25,6 +26,7 @@ import org.ethereum.beacon.discovery.network.NettyDiscoveryServerImpl;
 import org.ethereum.beacon.discovery.packet.HandshakeMessagePacket;
 import org.ethereum.beacon.discovery.packet.OrdinaryMessagePacket;
 import org.ethereum.beacon.discovery.packet.WhoAreYouPacket;
+import org.ethereum.beacon.discovery.pipeline.handler.NodeSessionManager;
 import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
 import org.ethereum.beacon.discovery.scheduler.Schedulers;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
@@ -84,7 +86,12 @@ public class DiscoveryNetworkTest {
             expirationSchedulerFactory,
             TalkHandler.NOOP,
             ExternalAddressSelector.NOOP,
-            ALLOW_ALL);
+            ALLOW_ALL,
+            NodeSessionManager.DEFAULT_MAX_SESSIONS,
+            NodeSessionManager.DEFAULT_MAX_UNAUTHENTICATED_SESSIONS,
+            NodeSessionManager.DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION,
+            false,
+            Optional.empty());
     livenessChecker1.setPinger(discoveryManager1::ping);
     DiscoveryManagerImpl discoveryManager2 =
         new DiscoveryManagerImpl(
@@ -103,7 +110,12 @@ public class DiscoveryNetworkTest {
             expirationSchedulerFactory,
             TalkHandler.NOOP,
             ExternalAddressSelector.NOOP,
-            ALLOW_ALL);
+            ALLOW_ALL,
+            NodeSessionManager.DEFAULT_MAX_SESSIONS,
+            NodeSessionManager.DEFAULT_MAX_UNAUTHENTICATED_SESSIONS,
+            NodeSessionManager.DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION,
+            false,
+            Optional.empty());
     livenessChecker2.setPinger(discoveryManager2::ping);
 
     // 3) Expect standard 1 => 2 dialog
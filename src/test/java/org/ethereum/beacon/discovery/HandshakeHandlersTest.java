@@ -35,6 +35,7 @@ import org.ethereum.beacon.discovery.message.FindNodeMessage;
 import org.ethereum.beacon.discovery.message.PingMessage;
 import org.ethereum.beacon.discovery.message.handler.EnrUpdateTracker;
 import org.ethereum.beacon.discovery.message.handler.ExternalAddressSelector;
+import org.ethereum.beacon.discovery.message.handler.FindNodeHandler;
 import org.ethereum.beacon.discovery.network.NetworkParcel;
 import org.ethereum.beacon.discovery.packet.HandshakeMessagePacket;
 import org.ethereum.beacon.discovery.packet.Header;
@@ -122,7 +123,8 @@ public class HandshakeHandlersTest {
             nodeBucketStorage1,
             outgoingMessages1to2,
             rnd,
-            reqeustExpirationScheduler);
+            reqeustExpirationScheduler,
+            NodeSessionManager.DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION);
     LinkedBlockingQueue<RawPacket> outgoing2Packets = new LinkedBlockingQueue<>();
     final Consumer<NetworkParcel> outgoingMessages2to1 =
         parcel -> {
@@ -145,7 +147,8 @@ public class HandshakeHandlersTest {
             nodeBucketStorage2,
             outgoingMessages2to1,
             rnd,
-            reqeustExpirationScheduler);
+            reqeustExpirationScheduler,
+            NodeSessionManager.DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION);
 
     Scheduler taskScheduler = Schedulers.createDefault().events();
     Pipeline outgoingPipeline = new PipelineImpl().build();
@@ -227,7 +230,8 @@ public class HandshakeHandlersTest {
             localNodeRecordStoreAt1,
             TalkHandler.NOOP,
             EnrUpdateTracker.EnrUpdater.NOOP,
-            ExternalAddressSelector.NOOP);
+            ExternalAddressSelector.NOOP,
+            new FindNodeHandler());
     messageHandler.handle(envelopeAt1From2WithMessage);
 
     // Node 2 handles message from Node 1
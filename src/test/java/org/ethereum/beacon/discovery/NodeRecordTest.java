@@ -15,18 +15,22 @@ import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.crypto.SECP256K1.KeyPair;
+import org.apache.tuweni.rlp.RLP;
 import org.apache.tuweni.units.bigints.UInt64;
 import org.ethereum.beacon.discovery.schema.EnrField;
 import org.ethereum.beacon.discovery.schema.IdentitySchema;
 import org.ethereum.beacon.discovery.schema.IdentitySchemaInterpreter;
 import org.ethereum.beacon.discovery.schema.IdentitySchemaV4Interpreter;
+import org.ethereum.beacon.discovery.schema.LazyNodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeRecordBuilder;
 import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.DecodeException;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -129,6 +133,30 @@ public class NodeRecordTest {
     assertFalse(nodeRecord1.isValid());
   }
 
+  @Test
+  public void shouldUpdateEncodingWhenSigned() {
+    final KeyPair keyPair = Functions.randomKeyPair(new Random(SEED));
+    final NodeRecord record =
+        NODE_RECORD_FACTORY.createFromValues(
+            UInt64.ONE,
+            new EnrField(EnrField.ID, IdentitySchema.V4),
+            new EnrField(
+                EnrField.PKEY_SECP256K1,
+                Functions.deriveCompressedPublicKeyFromPrivate(keyPair.secretKey())),
+            new EnrField(EnrField.IP_V4, Bytes.fromHexString("0x7F000001")),
+            new EnrField(EnrField.UDP, 30303));
+    final Bytes unsigned = record.serialize();
+    final int unsignedHashCode = record.hashCode();
+    record.sign(keyPair.secretKey());
+
+    assertTrue(record.isValid());
+    assertNotEquals(unsigned, record.serialize());
+    final NodeRecord decoded = NODE_RECORD_FACTORY.fromBytes(record.serialize());
+    assertEquals(record, decoded);
+    assertEquals(decoded.hashCode(), record.hashCode());
+    assertNotEquals(unsignedHashCode, record.hashCode());
+  }
+
   @Test
   public void testCustomField() {
     Random rnd = new Random(SEED);
@@ -260,4 +288,49 @@ public class NodeRecordTest {
                 UInt64.ONE,
                 List.of(new EnrField("test", Bytes.repeat((byte) 0xFF, 300)))));
   }
+
+  @Test
+  public void shouldDecodeNodeIdAndAddressesLazily() {
+    final NodeRecord record =
+        new NodeRecordBuilder()
+            .secretKey(Functions.randomKeyPair(new Random(SEED)).secretKey())
+            .seq(3)
+            .address("127.0.0.1", 30303, 30304)
+            .customField("eth2", Bytes.fromHexString("0xdeadbeef"))
+            .build();
+
+    final LazyNodeRecord lazyRecord =
+        RLP.decode(record.serialize(), NODE_RECORD_FACTORY::fromRlpLazily);
+
+    assertEquals(Optional.of(record.getNodeId()), lazyRecord.getNodeId());
+    assertEquals(record.getSeq(), lazyRecord.getSeq());
+    assertEquals(record.getUdpAddress(), lazyRecord.getUdpAddress());
+    assertEquals(record.getTcpAddress(), lazyRecord.getTcpAddress());
+    assertEquals(record, lazyRecord.decode());
+    assertTrue(lazyRecord.decode().isValid());
+  }
+
+  @Test
+  public void shouldOnlyRejectFieldOrderWhenFullyDecoded() {
+    final KeyPair keyPair = Functions.randomKeyPair(new Random(SEED));
+    final Bytes publicKey = Functions.deriveCompressedPublicKeyFromPrivate(keyPair.secretKey());
+    final Bytes encoded =
+        RLP.encodeList(
+            writer -> {
+              writer.writeValue(Bytes.wrap(new byte[64]));
+              writer.writeInt(1);
+              writer.writeString(EnrField.PKEY_SECP256K1);
+              writer.writeValue(publicKey);
+              writer.writeString(EnrField.ID);
+              writer.writeString(IdentitySchema.V4.stringName());
+            });
+
+    final LazyNodeRecord lazyRecord = RLP.decode(encoded, NODE_RECORD_FACTORY::fromRlpLazily);
+
+    assertEquals(
+        Optional.of(IdentitySchemaInterpreter.V4.calculateNodeId(publicKey)),
+        lazyRecord.getNodeId());
+    Assertions.assertThrows(DecodeException.class, lazyRecord::decode);
+    Assertions.assertThrows(DecodeException.class, () -> NODE_RECORD_FACTORY.fromBytes(encoded));
+  }
 }
@@ -446,6 +446,26 @@ public class DiscoveryIntegrationTest {
         });
   }
 
+  @Test
+  public void shouldFindNodeNotInLocalBuckets() throws Exception {
+    final DiscoverySystem bootnode = createDiscoveryClient();
+    final DiscoverySystem node1 = createDiscoveryClient(bootnode.getLocalNodeRecord());
+    final DiscoverySystem node2 = createDiscoveryClient(bootnode.getLocalNodeRecord());
+    final Bytes node2Id = node2.getLocalNodeRecord().getNodeId();
+
+    waitFor(
+        () -> {
+          assertThat(bootnode.lookupNode(node2Id)).contains(node2.getLocalNodeRecord());
+          final CompletableFuture<Optional<NodeRecord>> foundNode = node1.findNode(node2Id);
+          waitFor(foundNode, 10);
+          assertThat(foundNode.join()).contains(node2.getLocalNodeRecord());
+
+          final CompletableFuture<List<NodeRecord>> closest = node1.findClosest(node2Id, 2);
+          waitFor(closest, 10);
+          assertThat(closest.join()).contains(node2.getLocalNodeRecord());
+        });
+  }
+
   private DiscoverySystem createDiscoveryClient(final NodeRecord... bootnodes) throws Exception {
     return createDiscoveryClient(true, bootnodes);
   }
@@ -21,21 +21,25 @@ import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import org.ethereum.beacon.discovery.SimpleIdentitySchemaInterpreter;
 import org.ethereum.beacon.discovery.liveness.LivenessChecker.Pinger;
+import org.ethereum.beacon.discovery.liveness.LivenessChecker.ResponseHistory;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 class LivenessCheckerTest {
+  private static final int MAX_CONCURRENT_PINGS = 3;
   private int lastNodeId = 0;
 
   private final Pinger pinger = mock(Pinger.class);
+  private final ResponseHistory responseHistory = mock(ResponseHistory.class);
   private final Map<NodeRecord, CompletableFuture<Void>> pingResults = new HashMap<>();
   private final Clock clock = Clock.systemUTC();
-  private final LivenessChecker livenessChecker = new LivenessChecker(clock);
+  private final LivenessChecker livenessChecker = new LivenessChecker(clock, MAX_CONCURRENT_PINGS);
 
   @BeforeEach
   void setUp() {
     livenessChecker.setPinger(pinger);
+    livenessChecker.setResponseHistory(responseHistory);
     when(pinger.ping(any()))
         .thenAnswer(
             invocation -> {
@@ -183,6 +187,58 @@ class LivenessCheckerTest {
     verify(pinger, times(2)).ping(node3);
   }
 
+  @Test
+  void shouldPingStalestQueuedNodeFirst() {
+    final List<NodeRecord> pingedNodes = sendMaxConcurrentPings();
+    final NodeRecord respondedLater = createNewNodeRecord();
+    final NodeRecord neverResponded = createNewNodeRecord();
+    final NodeRecord respondedEarlier = createNewNodeRecord();
+    when(responseHistory.getLastResponseTime(respondedLater.getNodeId())).thenReturn(2000L);
+    when(responseHistory.getLastResponseTime(respondedEarlier.getNodeId())).thenReturn(1000L);
+    livenessChecker.checkLiveness(respondedLater);
+    livenessChecker.checkLiveness(neverResponded);
+    livenessChecker.checkLiveness(respondedEarlier);
+
+    pingCompleted(pingedNodes.get(0));
+    assertThat(pingResults).containsKey(neverResponded);
+    assertThat(pingResults).doesNotContainKeys(respondedLater, respondedEarlier);
+
+    pingCompleted(pingedNodes.get(1));
+    assertThat(pingResults).containsKey(respondedEarlier);
+    assertThat(pingResults).doesNotContainKeys(respondedLater);
+
+    pingCompleted(pingedNodes.get(2));
+    assertThat(pingResults).containsKey(respondedLater);
+  }
+
+  @Test
+  void shouldNotPingNodeWhichRespondedRecently() {
+    final NodeRecord node = createNewNodeRecord();
+    when(responseHistory.getLastResponseTime(node.getNodeId())).thenReturn(clock.millis());
+
+    livenessChecker.checkLiveness(node);
+
+    verify(pinger, never()).ping(any());
+    verify(responseHistory).confirmLiveness(node);
+  }
+
+  @Test
+  void shouldNotPingQueuedNodeWhichRespondedWhileWaiting() {
+    final List<NodeRecord> pingedNodes = sendMaxConcurrentPings();
+    final NodeRecord node1 = createNewNodeRecord();
+    final NodeRecord node2 = createNewNodeRecord();
+    livenessChecker.checkLiveness(node1);
+    livenessChecker.checkLiveness(node2);
+
+    when(responseHistory.getLastResponseTime(node1.getNodeId())).thenReturn(clock.millis());
+    pingCompleted(pingedNodes.get(0));
+
+    verify(pinger, never()).ping(node1);
+    verify(responseHistory).confirmLiveness(node1);
+    // The freed slot goes to the next node instead
+    verify(pinger).ping(node2);
+  }
+
   private void pingCompleted(final NodeRecord node) {
     pingResults.get(node).complete(null);
     pingResults.remove(node);
@@ -195,7 +251,7 @@ class LivenessCheckerTest {
 
   private List<NodeRecord> sendMaxConcurrentPings() {
     final List<NodeRecord> initialPings = new ArrayList<>();
-    for (int i = 0; i < LivenessChecker.MAX_CONCURRENT_PINGS; i++) {
+    for (int i = 0; i < MAX_CONCURRENT_PINGS; i++) {
       final NodeRecord node = createNewNodeRecord();
       initialPings.add(node);
       livenessChecker.checkLiveness(node);
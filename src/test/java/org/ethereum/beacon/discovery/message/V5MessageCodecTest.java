@@ -0,0 +1,203 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.rlp.RLP;
+import org.apache.tuweni.rlp.RLPWriter;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.schema.NodeRecordBuilder;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.ethereum.beacon.discovery.util.RlpDecodeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class V5MessageCodecTest {
+  private static final Bytes REQUEST_ID = Bytes.fromHexString("0x00000001");
+  private static final Random RANDOM = new Random(1);
+  private static final List<NodeRecord> NODE_RECORDS =
+      IntStream.range(0, 3)
+          .mapToObj(
+              i ->
+                  new NodeRecordBuilder()
+                      .secretKey(Functions.randomKeyPair(RANDOM).secretKey())
+                      .seq(i + 1)
+                      .address("10.0.0." + i, 9000)
+                      .build())
+          .toList();
+
+  static Stream<Arguments> testMessages() {
+    return Stream.of(
+        ping(Bytes.EMPTY, UInt64.ZERO, "Ping with empty request ID"),
+        ping(Bytes.of(0x7f), UInt64.valueOf(127), "Ping with single byte values"),
+        ping(Bytes.of(0x80), UInt64.valueOf(128), "Ping with prefixed single byte values"),
+        ping(Bytes.fromHexString("0xFF00000000000001"), UInt64.MAX_VALUE, "Ping with max seq"),
+        pong(Bytes.fromHexString("0x01020304"), 0, "Pong with IPv4"),
+        pong(Bytes.fromHexString("0x12121212121212121212121212121212"), 65535, "Pong with IPv6"),
+        findNode(List.of(), "FindNode without distances"),
+        findNode(List.of(0, 1, 128, 256), "FindNode with distances"),
+        nodes(0, List.of(), "Nodes without records"),
+        nodes(NODE_RECORDS.size(), NODE_RECORDS, "Nodes with records"),
+        talkReq(Bytes.EMPTY, Bytes.EMPTY, "TalkReq with empty values"),
+        talkReq(Bytes.random(55, RANDOM), Bytes.random(56, RANDOM), "TalkReq with long value"),
+        talkReq(Bytes.random(3, RANDOM), Bytes.random(300, RANDOM), "TalkReq with 2 byte length"),
+        talkResp(Bytes.random(1200, RANDOM), "TalkResp"));
+  }
+
+  @ParameterizedTest(name = "{index} {2}")
+  @MethodSource("testMessages")
+  void shouldEncodeSameAsRlpWriter(
+      final V5Message message, final Bytes expected, final String name) {
+    assertThat(V5MessageCodec.encode(message)).isEqualTo(expected);
+    assertThat(V5MessageCodec.getEncodedSize(message)).isEqualTo(expected.size());
+  }
+
+  @ParameterizedTest(name = "{index} {2}")
+  @MethodSource("testMessages")
+  void shouldDecodeAtBufferPosition(
+      final V5Message message, final Bytes expected, final String name) {
+    final ByteBuffer buffer = ByteBuffer.allocate(expected.size() + 20);
+    buffer.position(10);
+    V5MessageCodec.encode(message, buffer);
+    assertThat(buffer.position()).isEqualTo(10 + expected.size());
+
+    buffer.flip().position(10);
+    assertThat(V5MessageCodec.decode(buffer, NodeRecordFactory.DEFAULT)).isEqualTo(message);
+    assertThat(buffer.position()).isEqualTo(10 + expected.size());
+  }
+
+  @Test
+  void shouldRejectBufferWithoutRoomForMessage() {
+    final PingMessage message = new PingMessage(REQUEST_ID, UInt64.MAX_VALUE);
+    final ByteBuffer buffer = ByteBuffer.allocate(V5MessageCodec.getEncodedSize(message) - 1);
+    assertThatThrownBy(() -> V5MessageCodec.encode(message, buffer))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(buffer.position()).isZero();
+  }
+
+  @Test
+  void shouldRejectIntegerWithLeadingZeros() {
+    // PING with ENR seq 1 encoded as 0x820001
+    assertRejected("0x01c88400000001820001", "Integer has leading zero bytes");
+  }
+
+  @Test
+  void shouldRejectPrefixedSingleByteBelow0x80() {
+    // PING with ENR seq 1 encoded as 0x8101
+    assertRejected("0x01c784000000018101", "Single byte value below 0x80 must not have a prefix");
+  }
+
+  @Test
+  void shouldRejectLongLengthForShortValue() {
+    // TALKRESP with a 1 byte response of which the length uses the long form
+    assertRejected("0x06c88400000001b80180", "Invalid length encoding");
+  }
+
+  @Test
+  void shouldRejectTruncatedList() {
+    assertRejected("0x01c98400000001", "Unexpected end of input");
+  }
+
+  private static void assertRejected(final String hex, final String error) {
+    final ByteBuffer buffer = ByteBuffer.wrap(Bytes.fromHexString(hex).toArrayUnsafe());
+    assertThatThrownBy(() -> V5MessageCodec.decode(buffer, NodeRecordFactory.DEFAULT))
+        .isInstanceOf(RlpDecodeException.class)
+        .hasMessageContaining(error);
+  }
+
+  private static Arguments ping(final Bytes requestId, final UInt64 enrSeq, final String name) {
+    return Arguments.of(
+        new PingMessage(requestId, enrSeq),
+        encode(
+            MessageCode.PING,
+            writer -> {
+              writer.writeValue(requestId);
+              writer.writeBigInteger(enrSeq.toBigInteger());
+            }),
+        name);
+  }
+
+  private static Arguments pong(final Bytes recipientIp, final int port, final String name) {
+    return Arguments.of(
+        new PongMessage(REQUEST_ID, UInt64.MAX_VALUE, recipientIp, port),
+        encode(
+            MessageCode.PONG,
+            writer -> {
+              writer.writeValue(REQUEST_ID);
+              writer.writeBigInteger(UInt64.MAX_VALUE.toBigInteger());
+              writer.writeValue(recipientIp);
+              writer.writeInt(port);
+            }),
+        name);
+  }
+
+  private static Arguments findNode(final List<Integer> distances, final String name) {
+    return Arguments.of(
+        new FindNodeMessage(REQUEST_ID, distances),
+        encode(
+            MessageCode.FINDNODE,
+            writer -> {
+              writer.writeValue(REQUEST_ID);
+              writer.writeList(distances, RLPWriter::writeInt);
+            }),
+        name);
+  }
+
+  private static Arguments nodes(
+      final int total, final List<NodeRecord> nodeRecords, final String name) {
+    return Arguments.of(
+        new NodesMessage(REQUEST_ID, total, nodeRecords),
+        encode(
+            MessageCode.NODES,
+            writer -> {
+              writer.writeValue(REQUEST_ID);
+              writer.writeInt(total);
+              writer.writeList(nodeRecords, (itemWriter, record) -> record.writeRlp(itemWriter));
+            }),
+        name);
+  }
+
+  private static Arguments talkReq(final Bytes protocol, final Bytes request, final String name) {
+    return Arguments.of(
+        new TalkReqMessage(REQUEST_ID, protocol, request),
+        encode(
+            MessageCode.TALKREQ,
+            writer -> {
+              writer.writeValue(REQUEST_ID);
+              writer.writeValue(protocol);
+              writer.writeValue(request);
+            }),
+        name);
+  }
+
+  private static Arguments talkResp(final Bytes response, final String name) {
+    return Arguments.of(
+        new TalkRespMessage(REQUEST_ID, response),
+        encode(
+            MessageCode.TALKRESP,
+            writer -> {
+              writer.writeValue(REQUEST_ID);
+              writer.writeValue(response);
+            }),
+        name);
+  }
+
+  private static Bytes encode(final MessageCode code, final Consumer<RLPWriter> fields) {
+    return Bytes.concatenate(Bytes.of(code.byteCode()), RLP.encodeList(fields));
+  }
+}
@@ -20,22 +20,33 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.crypto.SECP256K1.SecretKey;
 import org.ethereum.beacon.discovery.TestUtil;
 import org.ethereum.beacon.discovery.TestUtil.NodeInfo;
 import org.ethereum.beacon.discovery.liveness.LivenessChecker;
 import org.ethereum.beacon.discovery.message.FindNodeMessage;
 import org.ethereum.beacon.discovery.message.NodesMessage;
 import org.ethereum.beacon.discovery.message.V5Message;
+import org.ethereum.beacon.discovery.packet.Header;
+import org.ethereum.beacon.discovery.packet.OrdinaryMessagePacket;
+import org.ethereum.beacon.discovery.packet.OrdinaryMessagePacket.OrdinaryAuthData;
+import org.ethereum.beacon.discovery.packet.RawPacket;
+import org.ethereum.beacon.discovery.pipeline.handler.IncomingDataPacker;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.schema.NodeRecordBuilder;
 import org.ethereum.beacon.discovery.schema.NodeSession;
 import org.ethereum.beacon.discovery.storage.KBuckets;
 import org.ethereum.beacon.discovery.storage.LocalNodeRecordStore;
 import org.ethereum.beacon.discovery.storage.NewAddressHandler;
 import org.ethereum.beacon.discovery.storage.NodeRecordListener;
+import org.ethereum.beacon.discovery.type.Bytes12;
+import org.ethereum.beacon.discovery.type.Bytes16;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -66,6 +77,10 @@ public class FindNodeHandlerTest {
         .thenAnswer(
             invocation ->
                 nodeBucketStorage.getLiveNodeRecords(invocation.getArgument(0, Integer.class)));
+    when(session.getBucketVersion(anyInt()))
+        .thenAnswer(
+            invocation ->
+                nodeBucketStorage.getBucketVersion(invocation.getArgument(0, Integer.class)));
     for (int i = 0; i < 256; i++) {
       for (int j = 0; j < i % 3; j++) {
         NodeRecord record = generateNodeAtDistance(i);
@@ -156,6 +171,120 @@ public class FindNodeHandlerTest {
     assertThat(msg.getNodeRecords()).isEmpty();
   }
 
+  @Test
+  void shouldReuseResponseUntilBucketChanges() {
+    final FindNodeMessage request =
+        new FindNodeMessage(Bytes.fromHexString("0xaa00"), List.of(254, 253));
+    nodeHandler.handle(request, session);
+    nodeHandler.handle(request, session);
+    assertThat(nodeHandler.getStats().getCacheHitCount()).isEqualTo(1);
+    assertThat(nodeHandler.getStats().getCacheMissCount()).isEqualTo(1);
+
+    final NodeRecord added = generateNodeAtDistance(254);
+    nodeBucketStorage.onNodeContacted(added);
+    nodeHandler.handle(request, session);
+
+    ArgumentCaptor<V5Message> captor = ArgumentCaptor.forClass(V5Message.class);
+    Mockito.verify(session, times(3)).sendOutgoingOrdinary(captor.capture());
+    assertThat(((NodesMessage) captor.getValue()).getNodeRecords()).contains(added);
+    assertThat(nodeHandler.getStats().getCacheHitCount()).isEqualTo(1);
+    assertThat(nodeHandler.getStats().getCacheMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldReuseResponseWhenLiveNodesAreUnchanged() {
+    final FindNodeMessage request =
+        new FindNodeMessage(Bytes.fromHexString("0xaa00"), List.of(254, 253));
+    nodeHandler.handle(request, session);
+
+    // Offering a known record again and confirming liveness only reorders the nodes
+    final NodeRecord known = tableRecords.get(254).get(0);
+    nodeBucketStorage.offer(known);
+    nodeBucketStorage.onNodeContacted(known);
+    nodeBucketStorage.onLivenessConfirmed(tableRecords.get(254).get(1));
+    nodeBucketStorage.performMaintenance();
+    nodeHandler.handle(request, session);
+
+    assertThat(nodeHandler.getStats().getCacheHitCount()).isEqualTo(1);
+    assertThat(nodeHandler.getStats().getCacheMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldPackMaximumSizeRecordsWithinPacketLimit() {
+    final List<NodeRecord> records =
+        IntStream.range(0, 16).mapToObj(__ -> generateMaximumSizeNode()).toList();
+    final NodeSession session = mock(NodeSession.class);
+    when(session.getNodeRecordsInBucket(256)).thenAnswer(invocation -> records.stream());
+
+    nodeHandler.handle(
+        new FindNodeMessage(Bytes.fromHexString("0xffffffffffffffff"), List.of(256)), session);
+
+    ArgumentCaptor<V5Message> captor = ArgumentCaptor.forClass(V5Message.class);
+    Mockito.verify(session, times(4)).sendOutgoingOrdinary(captor.capture());
+    final Random random = new Random(1);
+    for (V5Message message : captor.getAllValues()) {
+      // Only 3 records of 300 bytes fit in a message
+      assertThat(((NodesMessage) message).getNodeRecords()).hasSize(3);
+      assertThat(((NodesMessage) message).getTotal()).isEqualTo(4);
+      final Bytes16 maskingIV = Bytes16.random(random);
+      final Header<OrdinaryAuthData> header =
+          Header.createOrdinaryHeader(Bytes32.random(random), Bytes12.random(random));
+      final RawPacket packet =
+          RawPacket.createAndMask(
+              maskingIV,
+              OrdinaryMessagePacket.create(maskingIV, header, message, Bytes.random(16, random)),
+              Bytes16.random(random));
+      assertThat(packet.getBytes().size())
+          .isEqualTo(
+              IncomingDataPacker.MAX_PACKET_SIZE
+                  - OrdinaryMessagePacket.MAX_MESSAGE_SIZE
+                  + message.getBytes().size())
+          .isLessThanOrEqualTo(IncomingDataPacker.MAX_PACKET_SIZE);
+    }
+  }
+
+  @Test
+  void shouldPackTypicalRecordsInFewerMessages() {
+    nodeHandler.handle(
+        new FindNodeMessage(
+            Bytes.fromHexString("0xaa00"),
+            IntStream.range(0, 255).boxed().collect(Collectors.toList())),
+        session);
+
+    ArgumentCaptor<V5Message> captor = ArgumentCaptor.forClass(V5Message.class);
+    Mockito.verify(session, times(2)).sendOutgoingOrdinary(captor.capture());
+    assertThat(captor.getAllValues())
+        .allSatisfy(
+            message ->
+                assertThat(message.getBytes().size())
+                    .isLessThanOrEqualTo(OrdinaryMessagePacket.MAX_MESSAGE_SIZE));
+    assertThat(
+            captor.getAllValues().stream()
+                .mapToInt(message -> ((NodesMessage) message).getNodeRecords().size())
+                .sum())
+        .isEqualTo(16);
+  }
+
+  /** Generates a node with a custom field to reach the maximum ENR size of 300 bytes. */
+  private NodeRecord generateMaximumSizeNode() {
+    final SecretKey secretKey = Functions.randomKeyPair().secretKey();
+    int paddingSize = 300 - createPaddedNode(secretKey, 0).serialize().size();
+    NodeRecord record = createPaddedNode(secretKey, paddingSize);
+    // Correct for the longer length prefixes of the padding and the padded record
+    paddingSize += 300 - record.serialize().size();
+    record = createPaddedNode(secretKey, paddingSize);
+    assertThat(record.serialize().size()).isEqualTo(300);
+    return record;
+  }
+
+  private NodeRecord createPaddedNode(final SecretKey secretKey, final int paddingSize) {
+    return new NodeRecordBuilder()
+        .secretKey(secretKey)
+        .address("127.0.0.1", counter++)
+        .customField("pad", Bytes.wrap(new byte[paddingSize]))
+        .build();
+  }
+
   private NodeRecord generateNodeAtDistance(int distance) {
     if (distance == 0) {
       return homeNodeRecord;
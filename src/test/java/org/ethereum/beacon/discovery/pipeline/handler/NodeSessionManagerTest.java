@@ -6,8 +6,11 @@ package org.ethereum.beacon.discovery.pipeline.handler;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.crypto.SECP256K1.SecretKey;
@@ -18,16 +21,19 @@ import org.ethereum.beacon.discovery.TestUtil.NodeInfo;
 import org.ethereum.beacon.discovery.pipeline.Envelope;
 import org.ethereum.beacon.discovery.pipeline.Field;
 import org.ethereum.beacon.discovery.pipeline.Pipeline;
+import org.ethereum.beacon.discovery.pipeline.info.Request;
 import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
 import org.ethereum.beacon.discovery.schema.EnrField;
 import org.ethereum.beacon.discovery.schema.IdentitySchema;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
 import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
 import org.ethereum.beacon.discovery.schema.NodeSession;
+import org.ethereum.beacon.discovery.schema.NodeSession.SessionState;
 import org.ethereum.beacon.discovery.storage.KBuckets;
 import org.ethereum.beacon.discovery.storage.LocalNodeRecordStore;
 import org.ethereum.beacon.discovery.storage.NewAddressHandler;
 import org.ethereum.beacon.discovery.storage.NodeRecordListener;
+import org.ethereum.beacon.discovery.storage.SessionSnapshot;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -43,17 +49,10 @@ class NodeSessionManagerTest {
       new ExpirationSchedulerFactory(Executors.newSingleThreadScheduledExecutor());
   private final Pipeline outgoingPipeline = mock(Pipeline.class);
 
-  private final NodeSessionManager handler =
-      new NodeSessionManager(
-          new LocalNodeRecordStore(
-              homeNodeRecord,
-              homeNodeInfo.getSecretKey(),
-              NodeRecordListener.NOOP,
-              NewAddressHandler.NOOP),
-          STATIC_NODE_SECRET,
-          nodeBucketStorage,
-          outgoingPipeline,
-          expirationSchedulerFactory);
+  private NodeSessionManager handler =
+      createManager(
+          NodeSessionManager.DEFAULT_MAX_SESSIONS,
+          NodeSessionManager.DEFAULT_MAX_UNAUTHENTICATED_SESSIONS);
 
   @AfterEach
   public void tearDown() {
@@ -130,6 +129,158 @@ class NodeSessionManagerTest {
     assertThat(envelope.contains(Field.SESSION)).isFalse();
   }
 
+  @Test
+  void shouldEvictLeastRecentlyUsedUnauthenticatedSessionWhenLimitReached() {
+    handler = createManager(10, 2);
+    final NodeSession session1 = lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+    final NodeSession session2 = lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2));
+    // Touch session1 so session2 becomes the least recently used
+    lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+
+    final NodeSession session3 = lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(3));
+
+    assertThat(session3).isNotNull();
+    assertThat(lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1)))
+        .isSameAs(session1);
+    assertThat(handler.getSessionStats().getEvictedUnauthenticatedSessionCount()).isEqualTo(1);
+    assertThat(handler.getSessionStats().getSessionCount()).isEqualTo(2);
+    assertThat(lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2)))
+        .isNotSameAs(session2);
+  }
+
+  @Test
+  void shouldNotCountAuthenticatedSessionsTowardsUnauthenticatedLimit() {
+    handler = createManager(10, 1);
+    final NodeSession session1 = lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+    session1.setState(SessionState.AUTHENTICATED);
+
+    lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2));
+
+    assertThat(handler.getSessionStats().getSessionCount()).isEqualTo(2);
+    assertThat(handler.getSessionStats().getUnauthenticatedSessionCount()).isEqualTo(1);
+    assertThat(handler.getSessionStats().getEvictedUnauthenticatedSessionCount()).isZero();
+  }
+
+  @Test
+  void shouldKeepUnauthenticatedCountWhenSessionRemovedBeforeStateChangeCallback() {
+    handler = createManager(10, 1);
+    final NodeSession session = lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+    // Write the new state without the callback, then remove the session before it arrives
+    session.markInactive();
+    session.setState(SessionState.AUTHENTICATED);
+    handler.dropSession(session);
+    handler.onSessionStateChange(session, SessionState.INITIAL, SessionState.AUTHENTICATED);
+
+    assertThat(handler.getSessionStats().getSessionCount()).isZero();
+    assertThat(handler.getSessionStats().getUnauthenticatedSessionCount()).isZero();
+    assertThat(lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2))).isNotNull();
+    assertThat(handler.getSessionStats().getUnauthenticatedSessionCount()).isEqualTo(1);
+    assertThat(handler.getSessionStats().getRejectedSessionCount()).isZero();
+  }
+
+  @Test
+  void shouldEvictUnauthenticatedSessionsBeforeAuthenticatedOnes() {
+    handler = createManager(2, 2);
+    final NodeSession authenticated =
+        lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+    authenticated.setState(SessionState.AUTHENTICATED);
+    final NodeSession unauthenticated =
+        lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2));
+
+    lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(3));
+
+    assertThat(handler.getSessionStats().getEvictedUnauthenticatedSessionCount()).isEqualTo(1);
+    assertThat(handler.getSessionStats().getEvictedAuthenticatedSessionCount()).isZero();
+    assertThat(lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1)))
+        .isSameAs(authenticated);
+    assertThat(lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2)))
+        .isNotSameAs(unauthenticated);
+  }
+
+  @Test
+  void shouldEvictAuthenticatedSessionWhenNoUnauthenticatedSessionIsAvailable() {
+    handler = createManager(1, 1);
+    final NodeSession authenticated =
+        lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+    authenticated.setState(SessionState.AUTHENTICATED);
+
+    final NodeSession newSession =
+        lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2));
+
+    assertThat(newSession).isNotNull();
+    assertThat(handler.getSessionStats().getEvictedAuthenticatedSessionCount()).isEqualTo(1);
+    assertThat(handler.getNodeSession(NODE_ID)).containsSame(newSession);
+  }
+
+  @Test
+  void shouldNotEvictSessionsWithInFlightRequests() {
+    handler = createManager(1, 1);
+    final NodeSession busySession =
+        lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+    busySession.createNextRequest(createRequestMock());
+
+    assertThat(lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2))).isNull();
+    assertThat(handler.getSessionStats().getRejectedSessionCount()).isEqualTo(1);
+    assertThat(lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1)))
+        .isSameAs(busySession);
+  }
+
+  @Test
+  void shouldCreateSessionForOutgoingRequestEvenWhenLimitCannotBeMet() {
+    handler = createManager(1, 1);
+    final NodeSession busySession =
+        lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+    busySession.createNextRequest(createRequestMock());
+
+    assertThat(lookupSessionForOutgoingMessage(new InetSocketAddress(2))).isNotNull();
+    assertThat(handler.getSessionStats().getSessionCount()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldRestoreAuthenticatedSessionsFromSnapshots() {
+    final NodeSession session = lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(1));
+    lookupSessionForIncomingMessage(NODE_ID, new InetSocketAddress(2));
+    final NodeRecord nodeRecord = TestUtil.generateNode(9001).getNodeRecord();
+    final SessionSnapshot snapshot =
+        new SessionSnapshot(
+            nodeRecord, new InetSocketAddress(9001), Bytes.random(16), Bytes.random(16), 12345L);
+
+    handler.restoreSessions(List.of(snapshot));
+
+    final NodeSession restoredSession =
+        handler.getNodeSession(nodeRecord.getNodeId()).orElseThrow();
+    assertThat(restoredSession.isAuthenticated()).isTrue();
+    assertThat(restoredSession.getInitiatorKey()).isEqualTo(snapshot.getInitiatorKey());
+    assertThat(restoredSession.getRecipientKey()).isEqualTo(snapshot.getRecipientKey());
+    assertThat(handler.getSessionStats().getUnauthenticatedSessionCount()).isEqualTo(2);
+    // Sessions which are not authenticated or have no node record are not snapshot
+    session.setState(SessionState.AUTHENTICATED);
+    assertThat(handler.createSessionSnapshots()).containsExactly(snapshot);
+  }
+
+  private NodeSessionManager createManager(
+      final int maxSessions, final int maxUnauthenticatedSessions) {
+    return new NodeSessionManager(
+        new LocalNodeRecordStore(
+            homeNodeRecord,
+            homeNodeInfo.getSecretKey(),
+            NodeRecordListener.NOOP,
+            NewAddressHandler.NOOP),
+        STATIC_NODE_SECRET,
+        nodeBucketStorage,
+        outgoingPipeline,
+        expirationSchedulerFactory,
+        maxSessions,
+        maxUnauthenticatedSessions,
+        NodeSessionManager.DEFAULT_MAX_IN_FLIGHT_REQUESTS_PER_SESSION);
+  }
+
+  private Request<?> createRequestMock() {
+    final Request<?> request = mock(Request.class);
+    when(request.getResultPromise()).thenReturn(new CompletableFuture<>());
+    return request;
+  }
+
   private NodeSession lookupSessionForIncomingMessage(
       final Bytes nodeId, final InetSocketAddress remoteSender) {
     final Envelope envelope = new Envelope();
@@ -0,0 +1,146 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.pipeline.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.util.Optional;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.network.NetworkParcelV5;
+import org.ethereum.beacon.discovery.packet.HandshakeMessagePacket;
+import org.ethereum.beacon.discovery.packet.Header;
+import org.ethereum.beacon.discovery.packet.OrdinaryMessagePacket;
+import org.ethereum.beacon.discovery.packet.Packet;
+import org.ethereum.beacon.discovery.packet.RawPacket;
+import org.ethereum.beacon.discovery.packet.WhoAreYouPacket;
+import org.ethereum.beacon.discovery.pipeline.Envelope;
+import org.ethereum.beacon.discovery.pipeline.Field;
+import org.ethereum.beacon.discovery.pipeline.Pipeline;
+import org.ethereum.beacon.discovery.schema.NodeSession;
+import org.ethereum.beacon.discovery.type.Bytes12;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class StatelessWhoAreYouHandlerTest {
+  private static final Bytes32 NODE_ID = Bytes32.fromHexString("0x1234");
+  private static final InetSocketAddress SENDER = new InetSocketAddress("127.0.0.1", 9000);
+  private static final Bytes12 NONCE = Bytes12.fromHexString("0x0102030405060708090a0b0c");
+
+  private final NodeSessionManager nodeSessionManager = mock(NodeSessionManager.class);
+  private final Pipeline outgoingPipeline = mock(Pipeline.class);
+  private final Clock clock = mock(Clock.class);
+
+  private final StatelessWhoAreYouHandler handler =
+      new StatelessWhoAreYouHandler(nodeSessionManager, outgoingPipeline, clock, new Random(1));
+
+  @BeforeEach
+  void setUp() {
+    when(nodeSessionManager.getExistingSession(any(), any())).thenReturn(Optional.empty());
+    when(clock.millis()).thenReturn(1_000_000L);
+  }
+
+  @Test
+  void shouldSendWhoAreYouWithoutCreatingSession() {
+    final Envelope envelope = createEnvelope(createOrdinaryPacket());
+
+    handler.handle(envelope);
+
+    assertThat(envelope.contains(Field.SESSION_LOOKUP)).isFalse();
+    final WhoAreYouPacket whoAreYou = (WhoAreYouPacket) captureSentPacket().demaskPacket(NODE_ID);
+    assertThat(whoAreYou.getHeader().getStaticHeader().getNonce()).isEqualTo(NONCE);
+  }
+
+  @Test
+  void shouldHandOverChallengeWhenHandshakeArrives() {
+    handler.handle(createEnvelope(createOrdinaryPacket()));
+    final RawPacket sentPacket = captureSentPacket();
+    final WhoAreYouPacket whoAreYou = (WhoAreYouPacket) sentPacket.demaskPacket(NODE_ID);
+
+    final Envelope envelope = createEnvelope(mock(HandshakeMessagePacket.class));
+    handler.handle(envelope);
+
+    assertThat(envelope.contains(Field.SESSION_LOOKUP)).isTrue();
+    assertThat(envelope.get(Field.WHOAREYOU_CHALLENGE))
+        .isEqualTo(Bytes.wrap(sentPacket.getMaskingIV(), whoAreYou.getHeader().getBytes()));
+  }
+
+  @Test
+  void shouldAcceptChallengeFromPreviousSecret() {
+    handler.handle(createEnvelope(createOrdinaryPacket()));
+    when(clock.millis())
+        .thenReturn(1_000_000L + StatelessWhoAreYouHandler.SECRET_ROTATION_PERIOD.toMillis() - 1);
+
+    final Envelope envelope = createEnvelope(mock(HandshakeMessagePacket.class));
+    handler.handle(envelope);
+
+    assertThat(envelope.contains(Field.WHOAREYOU_CHALLENGE)).isTrue();
+  }
+
+  @Test
+  void shouldRejectHandshakeWithoutChallenge() {
+    final HandshakeMessagePacket packet = mock(HandshakeMessagePacket.class);
+    final Envelope envelope = createEnvelope(packet);
+
+    handler.handle(envelope);
+
+    assertThat(envelope.contains(Field.SESSION_LOOKUP)).isFalse();
+    assertThat(envelope.contains(Field.WHOAREYOU_CHALLENGE)).isFalse();
+    assertThat(envelope.get(Field.BAD_PACKET)).isSameAs(packet);
+  }
+
+  @Test
+  void shouldOnlyAcceptChallengeOnce() {
+    handler.handle(createEnvelope(createOrdinaryPacket()));
+    handler.handle(createEnvelope(mock(HandshakeMessagePacket.class)));
+
+    final Envelope envelope = createEnvelope(mock(HandshakeMessagePacket.class));
+    handler.handle(envelope);
+
+    assertThat(envelope.contains(Field.BAD_PACKET)).isTrue();
+  }
+
+  @Test
+  void shouldNotHandlePacketsForExistingSessions() {
+    when(nodeSessionManager.getExistingSession(NODE_ID, SENDER))
+        .thenReturn(Optional.of(mock(NodeSession.class)));
+    final Envelope envelope = createEnvelope(createOrdinaryPacket());
+
+    handler.handle(envelope);
+
+    assertThat(envelope.contains(Field.SESSION_LOOKUP)).isTrue();
+    verify(outgoingPipeline, never()).push(any());
+  }
+
+  private RawPacket captureSentPacket() {
+    final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+    verify(outgoingPipeline).push(captor.capture());
+    final NetworkParcelV5 parcel = (NetworkParcelV5) captor.getValue();
+    assertThat(parcel.getDestination()).isEqualTo(SENDER);
+    return RawPacket.decode(parcel.getPacket().getBytes());
+  }
+
+  private OrdinaryMessagePacket createOrdinaryPacket() {
+    return OrdinaryMessagePacket.createRandom(
+        Header.createOrdinaryHeader(NODE_ID, NONCE), Bytes.random(44));
+  }
+
+  private Envelope createEnvelope(final Packet<?> packet) {
+    final Envelope envelope = new Envelope();
+    envelope.put(Field.PACKET, packet);
+    envelope.put(Field.SESSION_LOOKUP, new SessionLookup(NODE_ID));
+    envelope.put(Field.REMOTE_SENDER, SENDER);
+    return envelope;
+  }
+}
@@ -14,14 +14,22 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.units.bigints.UInt64;
 import org.ethereum.beacon.discovery.AddressAccessPolicy;
 import org.ethereum.beacon.discovery.TestUtil;
 import org.ethereum.beacon.discovery.TestUtil.NodeInfo;
 import org.ethereum.beacon.discovery.message.NodesMessage;
+import org.ethereum.beacon.discovery.schema.EnrField;
+import org.ethereum.beacon.discovery.schema.IdentitySchema;
+import org.ethereum.beacon.discovery.schema.IdentitySchemaInterpreter;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.schema.NodeRecordFactory;
 import org.ethereum.beacon.discovery.schema.NodeSession;
+import org.ethereum.beacon.discovery.storage.NodeSource;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -51,7 +59,7 @@ class FindNodeResponseHandlerTest {
     final NodesMessage message = new NodesMessage(REQUEST_ID, records.size(), records);
     assertThat(handler.handleResponseMessage(message, session)).isTrue();
 
-    verify(session).onNodeRecordReceived(nodeInfo.getNodeRecord());
+    verify(session).onNodeRecordReceived(nodeInfo.getNodeRecord(), NodeSource.NODES_RESPONSE);
   }
 
   @Test
@@ -65,7 +73,8 @@ class FindNodeResponseHandlerTest {
     final NodesMessage message = new NodesMessage(REQUEST_ID, records.size(), records);
     assertThat(handler.handleResponseMessage(message, session)).isTrue();
 
-    verify(session, never()).onNodeRecordReceived(nodeInfo.getNodeRecord());
+    verify(session, never())
+        .onNodeRecordReceived(nodeInfo.getNodeRecord(), NodeSource.NODES_RESPONSE);
   }
 
   @Test
@@ -78,7 +87,7 @@ class FindNodeResponseHandlerTest {
     final NodesMessage message = new NodesMessage(REQUEST_ID, records.size(), records);
     handler.handleResponseMessage(message, session);
 
-    verify(session, never()).onNodeRecordReceived(any());
+    verify(session, never()).onNodeRecordReceived(any(), any());
   }
 
   @Test
@@ -91,7 +100,68 @@ class FindNodeResponseHandlerTest {
     final NodesMessage message = new NodesMessage(REQUEST_ID, records.size(), records);
     handler.handleResponseMessage(message, session);
 
-    verify(session, never()).onNodeRecordReceived(any());
+    verify(session, never()).onNodeRecordReceived(any(), any());
+  }
+
+  @Test
+  public void shouldPassOnRecordsFromEachPacket() {
+    final NodeRecord node1 = TestUtil.generateNode(9000).getNodeRecord();
+    final NodeRecord node2 = TestUtil.generateNode(9001).getNodeRecord();
+    final List<Collection<NodeRecord>> packets = new ArrayList<>();
+    final FindNodeResponseHandler handler =
+        new FindNodeResponseHandler(distancesTo(node1, node2), ALLOW_ALL, packets::add);
+
+    assertThat(handler.handleResponseMessage(nodesMessage(2, node1), session)).isFalse();
+    assertThat(packets).containsExactly(List.of(node1));
+
+    assertThat(handler.handleResponseMessage(nodesMessage(2, node2), session)).isTrue();
+    assertThat(packets).containsExactly(List.of(node1), List.of(node2));
+    assertThat(handler.getFoundNodes()).containsExactly(node1, node2);
+    assertThat(FoundNodes.isPartial(handler.getFoundNodes())).isFalse();
+  }
+
+  @Test
+  public void shouldProvidePartialResultOnceAPacketIsReceived() {
+    final NodeRecord node1 = TestUtil.generateNode(9000).getNodeRecord();
+    final NodeRecord node2 = TestUtil.generateNode(9001).getNodeRecord();
+    final FindNodeResponseHandler handler =
+        new FindNodeResponseHandler(distancesTo(node1, node2), ALLOW_ALL);
+    assertThat(handler.getPartialResult()).isEmpty();
+
+    handler.handleResponseMessage(nodesMessage(3, node1), session);
+    handler.handleResponseMessage(nodesMessage(3, node2), session);
+
+    assertThat(handler.getPartialResult())
+        .hasValueSatisfying(
+            result -> {
+              assertThat(result).isEqualTo(List.of(node1, node2));
+              assertThat(((FoundNodes) result).isPartial()).isTrue();
+            });
+  }
+
+  @Test
+  public void shouldRejectRecordWithoutPublicKeyAndKeepOthersInPacket() {
+    final NodeRecord node1 = TestUtil.generateNode(9000).getNodeRecord();
+    final NodeRecord node2 = TestUtil.generateNode(9001).getNodeRecord();
+    final NodeRecord noPublicKey =
+        NodeRecord.fromValues(
+            IdentitySchemaInterpreter.V4,
+            UInt64.ONE,
+            List.of(
+                new EnrField(EnrField.ID, IdentitySchema.V4),
+                new EnrField(EnrField.IP_V4, Bytes.fromHexString("0x7f000001")),
+                new EnrField(EnrField.UDP, 9002)));
+    final FindNodeResponseHandler handler =
+        new FindNodeResponseHandler(distancesTo(node1, node2), ALLOW_ALL);
+    // Encoded and decoded again so the records are read lazily as when received
+    final NodesMessage message =
+        NodesMessage.fromBytes(
+            nodesMessage(1, node1, noPublicKey, node2).getBytes().slice(1),
+            NodeRecordFactory.DEFAULT);
+
+    assertThat(handler.handleResponseMessage(message, session)).isTrue();
+
+    assertThat(handler.getFoundNodes()).containsExactly(node1, node2);
   }
 
   @ParameterizedTest
@@ -103,6 +173,17 @@ class FindNodeResponseHandlerTest {
         .hasMessageContaining("Invalid number of total packets")
         .isInstanceOf(RuntimeException.class);
 
-    verify(session, never()).onNodeRecordReceived(any());
+    verify(session, never()).onNodeRecordReceived(any(), any());
+  }
+
+  private static List<Integer> distancesTo(final NodeRecord... nodes) {
+    return List.of(nodes).stream()
+        .map(node -> Functions.logDistance(PEER_ID, node.getNodeId()))
+        .distinct()
+        .toList();
+  }
+
+  private static NodesMessage nodesMessage(final int totalPackets, final NodeRecord... nodes) {
+    return new NodesMessage(REQUEST_ID, totalPackets, List.of(nodes));
   }
 }
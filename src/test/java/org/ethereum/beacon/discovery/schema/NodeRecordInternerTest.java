@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.schema;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.crypto.SECP256K1.SecretKey;
+import org.apache.tuweni.rlp.RLP;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.junit.jupiter.api.Test;
+
+class NodeRecordInternerTest {
+  private static final SecretKey SECRET_KEY = Functions.randomKeyPair(new Random(1)).secretKey();
+
+  private final NodeRecordFactory factory =
+      new NodeRecordFactory(new IdentitySchemaV4Interpreter());
+
+  @Test
+  public void shouldDecodeSameRecordToOneInstance() {
+    final NodeRecord record = createRecord(1, "10.0.0.1");
+
+    final NodeRecord decoded = decode(record);
+
+    assertThat(decoded).isEqualTo(record);
+    assertThat(decode(record)).isSameAs(decoded);
+    assertThat(factory.getInterner().size()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldKeepRecordWithLatestSequenceNumber() {
+    final NodeRecord record1 = createRecord(1, "10.0.0.1");
+    final NodeRecord record2 = createRecord(2, "10.0.0.2");
+
+    final NodeRecord decoded1 = decode(record1);
+    final NodeRecord decoded2 = decode(record2);
+
+    assertThat(decode(record2)).isSameAs(decoded2);
+    assertThat(decode(record1)).isEqualTo(decoded1).isNotSameAs(decoded1);
+  }
+
+  @Test
+  public void shouldNotUseForgedRecordInPlaceOfRealOne() {
+    final NodeRecord record = createRecord(1, "10.0.0.1");
+    final NodeRecord forged = createRecord(1, "10.0.0.2");
+    forged.setSignature(record.getSignature());
+
+    final NodeRecord decodedForged = decode(forged);
+    final NodeRecord decoded = decode(record);
+
+    assertThat(decodedForged.isValid()).isFalse();
+    assertThat(decoded).isEqualTo(record);
+    assertThat(decoded.isValid()).isTrue();
+    assertThat(decode(record)).isSameAs(decoded);
+  }
+
+  @Test
+  public void shouldNotReplaceRealRecordWithForgedHigherSequenceNumber() {
+    final NodeRecord record = createRecord(1, "10.0.0.1");
+    final NodeRecord forged = createRecord(5, "10.0.0.2");
+    forged.setSignature(record.getSignature());
+    final NodeRecord decoded = decode(record);
+
+    final NodeRecord decodedForged = decode(forged);
+
+    assertThat(decodedForged.isValid()).isFalse();
+    assertThat(decode(record)).isSameAs(decoded);
+
+    // A real update is still accepted
+    final NodeRecord updated = createRecord(2, "10.0.0.3");
+    final NodeRecord decodedUpdated = decode(updated);
+    assertThat(decode(updated)).isSameAs(decodedUpdated);
+  }
+
+  @Test
+  public void shouldNotResolveReplayedSignatureWithOtherAddressToRealRecord() {
+    final NodeRecord record = createRecord(1, "10.0.0.1");
+    final NodeRecord forged = createRecord(1, "10.0.0.2");
+    forged.setSignature(record.getSignature());
+    final NodeRecord decoded = decode(record);
+
+    final LazyNodeRecord lazyForged = RLP.decode(forged.serialize(), factory::fromRlpLazily);
+
+    assertThat(lazyForged.getTcpAddress()).isEqualTo(forged.getTcpAddress());
+    assertThat(lazyForged.decode()).isNotSameAs(decoded).isEqualTo(forged);
+    assertThat(lazyForged.decode().isValid()).isFalse();
+  }
+
+  private NodeRecord createRecord(final int seq, final String ip) {
+    return new NodeRecordBuilder().secretKey(SECRET_KEY).seq(seq).address(ip, 9000).build();
+  }
+
+  private NodeRecord decode(final NodeRecord record) {
+    // Copy the bytes so nothing is shared with the original record
+    return factory.fromBytes(Bytes.wrap(record.serialize().toArray()));
+  }
+}
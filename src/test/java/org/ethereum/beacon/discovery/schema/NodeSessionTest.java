@@ -5,28 +5,40 @@
 package org.ethereum.beacon.discovery.schema;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.crypto.SECP256K1.SecretKey;
+import org.apache.tuweni.units.bigints.UInt64;
 import org.ethereum.beacon.discovery.SimpleIdentitySchemaInterpreter;
+import org.ethereum.beacon.discovery.StubClock;
+import org.ethereum.beacon.discovery.message.PingMessage;
+import org.ethereum.beacon.discovery.message.TalkReqMessage;
 import org.ethereum.beacon.discovery.message.V5Message;
 import org.ethereum.beacon.discovery.network.NetworkParcel;
 import org.ethereum.beacon.discovery.pipeline.handler.NodeSessionManager;
+import org.ethereum.beacon.discovery.pipeline.info.MultiPacketResponseHandler;
 import org.ethereum.beacon.discovery.pipeline.info.Request;
 import org.ethereum.beacon.discovery.pipeline.info.RequestInfo;
 import org.ethereum.beacon.discovery.scheduler.ExpirationScheduler;
@@ -35,6 +47,8 @@ import org.ethereum.beacon.discovery.storage.KBuckets;
 import org.ethereum.beacon.discovery.storage.LocalNodeRecordStore;
 import org.ethereum.beacon.discovery.storage.NewAddressHandler;
 import org.ethereum.beacon.discovery.storage.NodeRecordListener;
+import org.ethereum.beacon.discovery.storage.NodeSource;
+import org.ethereum.beacon.discovery.task.TaskStatus;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -43,6 +57,7 @@ import org.junit.jupiter.params.provider.EnumSource.Mode;
 import org.mockito.ArgumentCaptor;
 
 public class NodeSessionTest {
+  private static final int MAX_IN_FLIGHT_REQUESTS = 2;
   private static final SecretKey SECRET_KEY = Functions.randomKeyPair().secretKey();
   private final NodeSessionManager nodeSessionManager = mock(NodeSessionManager.class);
   private final Bytes32 nodeId = Bytes32.ZERO;
@@ -72,14 +87,15 @@ public class NodeSessionTest {
           kBuckets,
           outgoingPipeline,
           new Random(1342),
-          expirationScheduler);
+          expirationScheduler,
+          MAX_IN_FLIGHT_REQUESTS);
 
   @Test
   void onNodeRecordReceived_shouldUpdateRecordWhenNoPreviousValue() {
     final NodeRecord nodeRecord =
         SimpleIdentitySchemaInterpreter.createNodeRecord(
             nodeId, new InetSocketAddress("127.0.0.1", 2));
-    session.onNodeRecordReceived(nodeRecord);
+    session.onNodeRecordReceived(nodeRecord, NodeSource.HANDSHAKE);
     assertThat(session.getNodeRecord()).contains(nodeRecord);
   }
 
@@ -88,12 +104,12 @@ public class NodeSessionTest {
     final NodeRecord nodeRecord =
         SimpleIdentitySchemaInterpreter.createNodeRecord(
             nodeId, new InetSocketAddress("127.0.0.1", 2));
-    session.onNodeRecordReceived(nodeRecord);
+    session.onNodeRecordReceived(nodeRecord, NodeSource.HANDSHAKE);
     assertThat(session.getNodeRecord()).contains(nodeRecord);
 
     final NodeRecord updatedRecord =
         nodeRecord.withUpdatedCustomField("eth2", Bytes.fromHexString("0x12"), SECRET_KEY);
-    session.onNodeRecordReceived(updatedRecord);
+    session.onNodeRecordReceived(updatedRecord, NodeSource.HANDSHAKE);
     assertThat(session.getNodeRecord()).contains(updatedRecord);
   }
 
@@ -105,10 +121,10 @@ public class NodeSessionTest {
 
     final NodeRecord updatedRecord =
         nodeRecord.withUpdatedCustomField("eth2", Bytes.fromHexString("0x12"), SECRET_KEY);
-    session.onNodeRecordReceived(updatedRecord);
+    session.onNodeRecordReceived(updatedRecord, NodeSource.HANDSHAKE);
     assertThat(session.getNodeRecord()).contains(updatedRecord);
 
-    session.onNodeRecordReceived(nodeRecord);
+    session.onNodeRecordReceived(nodeRecord, NodeSource.HANDSHAKE);
     assertThat(session.getNodeRecord()).contains(updatedRecord);
   }
 
@@ -120,12 +136,12 @@ public class NodeSessionTest {
 
     final NodeRecord updatedRecord1a =
         nodeRecord.withUpdatedCustomField("eth2", Bytes.fromHexString("0x12"), SECRET_KEY);
-    session.onNodeRecordReceived(updatedRecord1a);
+    session.onNodeRecordReceived(updatedRecord1a, NodeSource.HANDSHAKE);
     assertThat(session.getNodeRecord()).contains(updatedRecord1a);
 
     final NodeRecord updatedRecord1b =
         nodeRecord.withUpdatedCustomField("eth2", Bytes.fromHexString("0x9999"), SECRET_KEY);
-    session.onNodeRecordReceived(updatedRecord1b);
+    session.onNodeRecordReceived(updatedRecord1b, NodeSource.HANDSHAKE);
     assertThat(session.getNodeRecord()).contains(updatedRecord1a);
   }
 
@@ -167,7 +183,9 @@ public class NodeSessionTest {
             outgoingPipeline,
             new Random(1342),
             expirationScheduler,
-            requestIdStatuses);
+            MAX_IN_FLIGHT_REQUESTS,
+            requestIdStatuses,
+            Clock.systemUTC());
     mySession.cancelAllRequests("BAD PANDA");
   }
 
@@ -186,6 +204,260 @@ public class NodeSessionTest {
     assertThat(session.getState()).isEqualTo(SessionState.AUTHENTICATED);
   }
 
+  @Test
+  void getFirstAwaitRequestInfo_shouldReturnRequestsInCreationOrder() {
+    final RequestInfo first = session.createNextRequest(createRequestMock());
+    final RequestInfo second = session.createNextRequest(createRequestMock());
+
+    assertThat(session.getFirstAwaitRequestInfo()).containsSame(first);
+    session.markRequestSent(first);
+    assertThat(session.getFirstAwaitRequestInfo()).containsSame(second);
+    session.markRequestSent(second);
+    assertThat(session.getFirstAwaitRequestInfo()).isEmpty();
+  }
+
+  @Test
+  void markRequestSent_shouldMoveRequestToSentRequests() {
+    final RequestInfo requestInfo = session.createNextRequest(createRequestMock());
+    assertThat(session.getFirstSentRequestInfo()).isEmpty();
+
+    session.markRequestSent(requestInfo);
+
+    assertThat(requestInfo.getTaskStatus()).isEqualTo(TaskStatus.SENT);
+    assertThat(session.getFirstSentRequestInfo()).containsSame(requestInfo);
+    assertThat(session.getRequestInfo(requestInfo.getRequestId())).containsSame(requestInfo);
+  }
+
+  @Test
+  void getFirstSentRequestInfo_shouldSkipRequestsInProgress() {
+    final RequestInfo first = session.createNextRequest(createRequestMock());
+    final RequestInfo second = session.createNextRequest(createRequestMock());
+    session.markRequestSent(first);
+    session.markRequestSent(second);
+
+    first.setTaskStatus(TaskStatus.IN_PROGRESS);
+
+    assertThat(session.getFirstSentRequestInfo()).containsSame(second);
+  }
+
+  @Test
+  void clearRequestInfo_shouldRemoveRequestFromAllIndexes() {
+    final RequestInfo awaiting = session.createNextRequest(createRequestMock());
+    final RequestInfo sent = session.createNextRequest(createRequestMock());
+    session.markRequestSent(sent);
+
+    session.clearRequestInfo(awaiting.getRequestId(), null);
+    session.clearRequestInfo(sent.getRequestId(), null);
+
+    assertThat(session.getFirstAwaitRequestInfo()).isEmpty();
+    assertThat(session.getFirstSentRequestInfo()).isEmpty();
+    assertThat(session.getRequestInfo(sent.getRequestId())).isEmpty();
+    assertThat(session.hasInFlightRequests()).isFalse();
+  }
+
+  @Test
+  void createNextRequest_shouldRemoveExpiredRequestFromQueue() {
+    final RequestInfo requestInfo = session.createNextRequest(createRequestMock());
+    final ArgumentCaptor<Runnable> timeoutHandlerCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(expirationScheduler).put(eq(requestInfo.getRequestId()), timeoutHandlerCaptor.capture());
+
+    timeoutHandlerCaptor.getValue().run();
+
+    assertThat(session.getFirstAwaitRequestInfo()).isEmpty();
+    assertThat(session.getRequestInfo(requestInfo.getRequestId())).isEmpty();
+  }
+
+  @Test
+  void sendAwaitingRequests_shouldNotSendBeforeHandshake() {
+    session.createNextRequest(createPingRequest());
+
+    session.sendAwaitingRequests();
+
+    verify(outgoingPipeline, never()).accept(any());
+  }
+
+  @Test
+  void sendAwaitingRequests_shouldSendInOrderUpToInFlightLimit() {
+    final RequestInfo first = session.createNextRequest(createPingRequest());
+    final RequestInfo second = session.createNextRequest(createPingRequest());
+    final RequestInfo third = session.createNextRequest(createPingRequest());
+    authenticate();
+
+    session.sendAwaitingRequests();
+
+    verify(outgoingPipeline, times(MAX_IN_FLIGHT_REQUESTS)).accept(any());
+    assertThat(first.getTaskStatus()).isEqualTo(TaskStatus.SENT);
+    assertThat(second.getTaskStatus()).isEqualTo(TaskStatus.SENT);
+    assertThat(session.getFirstAwaitRequestInfo()).containsSame(third);
+  }
+
+  @Test
+  void clearRequestInfo_shouldSendNextAwaitingRequest() {
+    final RequestInfo first = session.createNextRequest(createPingRequest());
+    session.createNextRequest(createPingRequest());
+    final RequestInfo third = session.createNextRequest(createPingRequest());
+    authenticate();
+    session.sendAwaitingRequests();
+
+    session.clearRequestInfo(first.getRequestId(), null);
+
+    verify(outgoingPipeline, times(MAX_IN_FLIGHT_REQUESTS + 1)).accept(any());
+    assertThat(third.getTaskStatus()).isEqualTo(TaskStatus.SENT);
+    assertThat(session.getFirstAwaitRequestInfo()).isEmpty();
+  }
+
+  @Test
+  void createNextRequest_shouldSendNextAwaitingRequestWhenRequestExpires() {
+    final RequestInfo first = session.createNextRequest(createPingRequest());
+    final ArgumentCaptor<Runnable> timeoutHandlerCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(expirationScheduler).put(eq(first.getRequestId()), timeoutHandlerCaptor.capture());
+    session.createNextRequest(createPingRequest());
+    final RequestInfo third = session.createNextRequest(createPingRequest());
+    authenticate();
+    session.sendAwaitingRequests();
+
+    timeoutHandlerCaptor.getValue().run();
+
+    assertThat(third.getTaskStatus()).isEqualTo(TaskStatus.SENT);
+  }
+
+  @Test
+  void markRequestSent_shouldScheduleTimeoutFromRoundTripTime() {
+    final RequestInfo requestInfo = session.createNextRequest(createPingRequest());
+    authenticate();
+
+    session.sendAwaitingRequests();
+
+    verify(expirationScheduler)
+        .put(
+            eq(requestInfo.getRequestId()),
+            any(),
+            eq(Duration.ofMillis(RttEstimator.INITIAL_TIMEOUT_MILLIS)));
+  }
+
+  @Test
+  void createNextRequest_shouldFailRequestWhenItExpires() {
+    final Request<Void> request = createPingRequest();
+    final RequestInfo requestInfo = session.createNextRequest(request);
+    authenticate();
+    session.sendAwaitingRequests();
+    final ArgumentCaptor<Runnable> timeoutHandlerCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(expirationScheduler)
+        .put(eq(requestInfo.getRequestId()), timeoutHandlerCaptor.capture(), any());
+
+    timeoutHandlerCaptor.getValue().run();
+
+    assertThat(request.getResultPromise())
+        .isCompletedExceptionally()
+        .failsWithin(Duration.ZERO)
+        .withThrowableOfType(ExecutionException.class)
+        .withCauseInstanceOf(TimeoutException.class);
+    assertThat(session.hasInFlightRequests()).isFalse();
+  }
+
+  @Test
+  void createNextRequest_shouldCompleteWithPartialResultWhenItExpires() {
+    final MultiPacketResponseHandler<?> responseHandler = mock(MultiPacketResponseHandler.class);
+    doReturn(Optional.of("partial")).when(responseHandler).getPartialResult();
+    final Request<String> request =
+        new Request<>(
+            new CompletableFuture<>(),
+            requestId -> new PingMessage(requestId, UInt64.ONE),
+            responseHandler);
+    final RequestInfo requestInfo = session.createNextRequest(request);
+    authenticate();
+    session.sendAwaitingRequests();
+    final ArgumentCaptor<Runnable> timeoutHandlerCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(expirationScheduler)
+        .put(eq(requestInfo.getRequestId()), timeoutHandlerCaptor.capture(), any());
+
+    timeoutHandlerCaptor.getValue().run();
+
+    assertThat(request.getResultPromise()).isCompletedWithValue("partial");
+    assertThat(session.hasInFlightRequests()).isFalse();
+  }
+
+  @Test
+  void clearRequestInfo_shouldUpdateExpectedRoundTripTime() {
+    final StubClock clock = new StubClock();
+    final NodeSession session = createSession(clock);
+    final RequestInfo requestInfo = session.createNextRequest(createPingRequest());
+    session.setInitiatorKey(Bytes.random(16));
+    session.setState(SessionState.AUTHENTICATED);
+    session.sendAwaitingRequests();
+    assertThat(session.getExpectedRtt()).isEqualTo(RttEstimator.DEFAULT_EXPECTED_RTT);
+
+    clock.advanceTimeMillis(100);
+    session.clearRequestInfo(requestInfo.getRequestId(), null);
+
+    // First sample: smoothed RTT 100ms with variance 50ms
+    assertThat(session.getExpectedRtt()).isEqualTo(Duration.ofMillis(200));
+  }
+
+  @Test
+  void markRequestSent_shouldKeepRequestExpiryForTalkRequest() {
+    final RequestInfo requestInfo = session.createNextRequest(createTalkRequest());
+    authenticate();
+
+    session.sendAwaitingRequests();
+
+    assertThat(requestInfo.getTaskStatus()).isEqualTo(TaskStatus.SENT);
+    verify(expirationScheduler).put(eq(requestInfo.getRequestId()), any());
+    verify(expirationScheduler, never()).put(eq(requestInfo.getRequestId()), any(), any());
+  }
+
+  @Test
+  void clearRequestInfo_shouldNotSampleRoundTripTimeFromTalkRequest() {
+    final StubClock clock = new StubClock();
+    final NodeSession session = createSession(clock);
+    final RequestInfo requestInfo = session.createNextRequest(createTalkRequest());
+    session.setInitiatorKey(Bytes.random(16));
+    session.setState(SessionState.AUTHENTICATED);
+    session.sendAwaitingRequests();
+
+    clock.advanceTimeMillis(5000);
+    session.clearRequestInfo(requestInfo.getRequestId(), Bytes.EMPTY);
+
+    assertThat(session.getExpectedRtt()).isEqualTo(RttEstimator.DEFAULT_EXPECTED_RTT);
+  }
+
+  private NodeSession createSession(final Clock clock) {
+    return new NodeSession(
+        nodeId,
+        Optional.empty(),
+        InetSocketAddress.createUnresolved("127.0.0.1", 2999),
+        nodeSessionManager,
+        localNodeRecordStore,
+        SECRET_KEY,
+        kBuckets,
+        outgoingPipeline,
+        new Random(1342),
+        expirationScheduler,
+        MAX_IN_FLIGHT_REQUESTS,
+        new HashMap<>(),
+        clock);
+  }
+
+  private void authenticate() {
+    session.setInitiatorKey(Bytes.random(16));
+    session.setState(SessionState.AUTHENTICATED);
+  }
+
+  private Request<Void> createPingRequest() {
+    return new Request<>(
+        new CompletableFuture<>(),
+        requestId -> new PingMessage(requestId, UInt64.ONE),
+        MultiPacketResponseHandler.SINGLE_PACKET_RESPONSE_HANDLER);
+  }
+
+  private Request<Bytes> createTalkRequest() {
+    return new Request<>(
+        new CompletableFuture<>(),
+        requestId -> new TalkReqMessage(requestId, Bytes.fromHexString("0x1234"), Bytes.EMPTY),
+        MultiPacketResponseHandler.SINGLE_PACKET_RESPONSE_HANDLER,
+        false);
+  }
+
   private Request<?> createRequestMock() {
     final Request<?> request = mock(Request.class);
     when(request.getResultPromise()).thenReturn(new CompletableFuture<>());
@@ -0,0 +1,60 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.schema;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class RttEstimatorTest {
+
+  private final RttEstimator estimator = new RttEstimator();
+
+  @Test
+  void shouldUseDefaultsBeforeFirstResponse() {
+    assertThat(estimator.getTimeout())
+        .isEqualTo(Duration.ofMillis(RttEstimator.INITIAL_TIMEOUT_MILLIS));
+    assertThat(estimator.getExpectedRtt()).isEqualTo(RttEstimator.DEFAULT_EXPECTED_RTT);
+  }
+
+  @Test
+  void shouldSmoothRoundTripTimes() {
+    estimator.onResponse(200);
+    // Smoothed RTT 200, variance 100
+    assertThat(estimator.getExpectedRtt()).isEqualTo(Duration.ofMillis(400));
+    assertThat(estimator.getTimeout()).isEqualTo(Duration.ofMillis(600));
+
+    estimator.onResponse(120);
+    // Variance (3 * 100 + 80) / 4 = 95, smoothed RTT (7 * 200 + 120) / 8 = 190
+    assertThat(estimator.getExpectedRtt()).isEqualTo(Duration.ofMillis(380));
+    assertThat(estimator.getTimeout()).isEqualTo(Duration.ofMillis(570));
+  }
+
+  @Test
+  void shouldNotGoBelowMinimumTimeout() {
+    estimator.onResponse(10);
+
+    assertThat(estimator.getTimeout())
+        .isEqualTo(Duration.ofMillis(RttEstimator.MIN_TIMEOUT_MILLIS));
+    assertThat(estimator.getExpectedRtt()).isEqualTo(Duration.ofMillis(20));
+  }
+
+  @Test
+  void shouldBackOffAfterTimeoutsUntilNextResponse() {
+    estimator.onResponse(200);
+
+    estimator.onTimeout();
+    assertThat(estimator.getTimeout()).isEqualTo(Duration.ofMillis(1200));
+    estimator.onTimeout();
+    assertThat(estimator.getTimeout()).isEqualTo(Duration.ofMillis(2400));
+    estimator.onTimeout();
+    estimator.onTimeout();
+    assertThat(estimator.getTimeout())
+        .isEqualTo(Duration.ofMillis(RttEstimator.MAX_TIMEOUT_MILLIS));
+
+    estimator.onResponse(200);
+    assertThat(estimator.getTimeout()).isLessThan(Duration.ofMillis(1200));
+  }
+}
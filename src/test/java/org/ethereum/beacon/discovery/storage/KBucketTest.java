@@ -17,6 +17,7 @@ import org.ethereum.beacon.discovery.SimpleIdentitySchemaInterpreter;
 import org.ethereum.beacon.discovery.StubClock;
 import org.ethereum.beacon.discovery.liveness.LivenessChecker;
 import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
 import org.ethereum.beacon.discovery.util.Functions;
 import org.junit.jupiter.api.Test;
 
@@ -26,7 +27,8 @@ class KBucketTest {
   private final LivenessChecker livenessChecker = mock(LivenessChecker.class);
 
   private final StubClock clock = new StubClock();
-  private final KBucket bucket = new KBucket(livenessChecker, clock);
+  private final KBucket bucket =
+      new KBucket(livenessChecker, clock, KBucket.K, KBuckets.DEFAULT_REPLACEMENT_CACHE_SIZE);
 
   private int lastNodeId = 0;
 
@@ -441,12 +443,110 @@ class KBucketTest {
 
     bucket.offer(pendingNode);
     bucket.onLivenessConfirmed(pendingNode);
-    bucket.deleteNode(nodeToBeDeleted.getNodeId());
+    bucket.deleteNode(NodeId.wrap(nodeToBeDeleted.getNodeId()));
 
     assertThat(bucket.getAllNodes()).doesNotContain(nodeToBeDeleted);
     assertThat(bucket.getAllNodes()).contains(pendingNode);
   }
 
+  @Test
+  void onNodeContacted_shouldKeepReplacementNodesUpToCacheSize() {
+    final KBucket smallBucket = new KBucket(livenessChecker, clock, 2, 3);
+    smallBucket.onLivenessConfirmed(createNewNodeRecord());
+    smallBucket.onLivenessConfirmed(createNewNodeRecord());
+
+    final NodeRecord replacement1 = createNewNodeRecord();
+    final NodeRecord replacement2 = createNewNodeRecord();
+    final NodeRecord replacement3 = createNewNodeRecord();
+    final NodeRecord replacement4 = createNewNodeRecord();
+    smallBucket.onLivenessConfirmed(replacement1);
+    smallBucket.onLivenessConfirmed(replacement2);
+    smallBucket.onLivenessConfirmed(replacement3);
+    smallBucket.onLivenessConfirmed(replacement4);
+
+    assertThat(smallBucket.getAllNodes()).hasSize(2);
+    assertThat(smallBucket.getReplacementNodes())
+        .containsExactly(replacement3, replacement2, replacement1);
+    assertThat(smallBucket.getPendingNode()).contains(replacement3);
+  }
+
+  @Test
+  void performMaintenance_shouldInsertReplacementsInOrderAsNodesAreRemoved() {
+    final KBucket smallBucket = new KBucket(livenessChecker, clock, 2, 3);
+    final NodeRecord node1 = createNewNodeRecord();
+    final NodeRecord node2 = createNewNodeRecord();
+    smallBucket.offer(node1);
+    smallBucket.offer(node2);
+    final NodeRecord replacement1 = createNewNodeRecord();
+    final NodeRecord replacement2 = createNewNodeRecord();
+    smallBucket.onLivenessConfirmed(replacement1);
+    smallBucket.onLivenessConfirmed(replacement2);
+
+    // Neither node in the bucket responds to its ping
+    clock.advanceTimeMillis(PING_TIMEOUT_MILLIS);
+    smallBucket.performMaintenance();
+    assertThat(smallBucket.getAllNodes()).containsExactly(replacement2, node1);
+
+    clock.advanceTimeMillis(PING_TIMEOUT_MILLIS);
+    smallBucket.performMaintenance();
+    assertThat(smallBucket.getAllNodes()).containsExactly(replacement1, replacement2);
+    assertThat(smallBucket.getReplacementNodes()).isEmpty();
+  }
+
+  @Test
+  void performMaintenance_shouldRevalidateStaleReplacementWhenInserted() {
+    final KBucket smallBucket = new KBucket(livenessChecker, clock, 2, 2);
+    final NodeRecord node1 = createNewNodeRecord();
+    final NodeRecord node2 = createNewNodeRecord();
+    smallBucket.onLivenessConfirmed(node1);
+    smallBucket.offer(node2);
+    final NodeRecord replacement = createNewNodeRecord();
+    smallBucket.restore(
+        new RoutingTableEntry(replacement, clock.millis() - 10 * MIN_MILLIS_BETWEEN_PINGS), false);
+    assertThat(smallBucket.getReplacementNodes()).containsExactly(replacement);
+
+    // node2 doesn't respond to its ping
+    clock.advanceTimeMillis(PING_TIMEOUT_MILLIS);
+    smallBucket.performMaintenance();
+
+    // Inserted after the more recently confirmed node and pinged before it is relied on
+    assertThat(smallBucket.getAllNodes()).containsExactly(node1, replacement);
+    assertThat(smallBucket.getNextTimeoutCheckTime())
+        .isEqualTo(clock.millis() + PING_TIMEOUT_MILLIS);
+  }
+
+  @Test
+  void getLiveEntries_shouldLimitReplacementNodes() {
+    final KBucket smallBucket = new KBucket(livenessChecker, clock, 1, 3);
+    final NodeRecord node = createNewNodeRecord();
+    smallBucket.onLivenessConfirmed(node);
+    final NodeRecord replacement1 = createNewNodeRecord();
+    final NodeRecord replacement2 = createNewNodeRecord();
+    smallBucket.onLivenessConfirmed(replacement1);
+    smallBucket.onLivenessConfirmed(replacement2);
+
+    assertThat(smallBucket.getLiveEntries(1))
+        .extracting(RoutingTableEntry::getNode)
+        .containsExactly(node, replacement2);
+    assertThat(smallBucket.getLiveEntries(3))
+        .extracting(RoutingTableEntry::getNode)
+        .containsExactly(node, replacement2, replacement1);
+  }
+
+  @Test
+  void deleteNode_shouldRemoveReplacementNode() {
+    final KBucket smallBucket = new KBucket(livenessChecker, clock, 1, 3);
+    smallBucket.onLivenessConfirmed(createNewNodeRecord());
+    final NodeRecord replacement1 = createNewNodeRecord();
+    final NodeRecord replacement2 = createNewNodeRecord();
+    smallBucket.onLivenessConfirmed(replacement1);
+    smallBucket.onLivenessConfirmed(replacement2);
+
+    smallBucket.deleteNode(NodeId.wrap(replacement1.getNodeId()));
+
+    assertThat(smallBucket.getReplacementNodes()).containsExactly(replacement2);
+  }
+
   private void confirmNodesInBucketAsLive() {
     bucket.getAllNodes().forEach(bucket::onLivenessConfirmed);
   }
@@ -5,11 +5,13 @@ package org.ethereum.beacon.discovery.storage;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.net.InetSocketAddress;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.tuweni.bytes.Bytes32;
@@ -102,6 +104,38 @@ class KBucketsTest {
     verifyNoMoreInteractions(livenessChecker);
   }
 
+  @Test
+  void performMaintenance_shouldRemoveAllNodesWithTimedOutPings() {
+    final NodeRecord node1 = createNodeAtDistance(1);
+    final NodeRecord node2 = createNodeAtDistance(2);
+    final NodeRecord liveNode = createNodeAtDistance(3);
+    buckets.offer(node1);
+    buckets.offer(node2);
+    buckets.onNodeContacted(liveNode);
+
+    clock.advanceTimeMillis(BucketEntry.PING_TIMEOUT_MILLIS);
+    buckets.performMaintenance();
+
+    assertThat(buckets.getAllNodeRecords(1)).isEmpty();
+    assertThat(buckets.getAllNodeRecords(2)).isEmpty();
+    assertThat(buckets.getAllNodeRecords(3)).containsExactly(liveNode);
+    verify(livenessChecker, never()).checkLiveness(liveNode);
+  }
+
+  @Test
+  void performMaintenance_shouldNotRevalidateNodesBeforeDue() {
+    final NodeRecord node = createNodeAtDistance(1);
+    buckets.onNodeContacted(node);
+
+    clock.advanceTimeMillis(BucketEntry.MIN_MILLIS_BETWEEN_PINGS - 1);
+    buckets.performMaintenance();
+    verifyNoMoreInteractions(livenessChecker);
+
+    clock.advanceTimeMillis(1);
+    buckets.performMaintenance();
+    verify(livenessChecker).checkLiveness(node);
+  }
+
   @Test
   void streamClosestNodes_shouldIncludeAllNodesInBucket() {
     final List<NodeRecord> nodes = new ArrayList<>();
@@ -138,6 +172,55 @@ class KBucketsTest {
     assertThat(buckets.streamClosestNodes(localNode.getNodeId())).isEmpty();
   }
 
+  @Test
+  void closest_shouldReturnNodesInNearerBucketsBeforeFurtherBuckets() {
+    final NodeRecord target = createNodeAtDistance(10);
+    // In the target's bucket and only 1 bit away from it
+    final NodeRecord sameBucketNode = TestUtil.createNodeAtDistance(target.getNodeId(), 1);
+    final NodeRecord bucket1Node = createNodeAtDistance(1);
+    final NodeRecord bucket5Node = createNodeAtDistance(5);
+    final NodeRecord bucket12Node = createNodeAtDistance(12);
+    final NodeRecord bucket256Node = createNodeAtDistance(256);
+    List.of(bucket256Node, bucket12Node, bucket5Node, bucket1Node, sameBucketNode)
+        .forEach(buckets::onNodeContacted);
+
+    assertThat(buckets.closest(target.getNodeId(), 10))
+        .containsExactly(sameBucketNode, bucket1Node, bucket5Node, bucket12Node, bucket256Node);
+    assertThat(buckets.streamClosestNodes(target.getNodeId()))
+        .containsExactly(sameBucketNode, bucket1Node, bucket5Node, bucket12Node, bucket256Node);
+  }
+
+  @Test
+  void closest_shouldLimitNumberOfNodes() {
+    final NodeRecord bucket1Node = createNodeAtDistance(1);
+    final NodeRecord bucket2Node = createNodeAtDistance(2);
+    final NodeRecord bucket3Node = createNodeAtDistance(3);
+    List.of(bucket1Node, bucket2Node, bucket3Node).forEach(buckets::onNodeContacted);
+
+    assertThat(buckets.closest(localNode.getNodeId(), 2)).containsExactly(bucket1Node, bucket2Node);
+  }
+
+  @Test
+  void closest_shouldSkipBucketsWithoutLiveNodes() {
+    final NodeRecord liveNode = createNodeAtDistance(200);
+    buckets.offer(createNodeAtDistance(100));
+    buckets.onNodeContacted(liveNode);
+
+    assertThat(buckets.closest(localNode.getNodeId(), 10)).containsExactly(liveNode);
+  }
+
+  @Test
+  void getLiveNode_shouldOnlyReturnLiveNodes() {
+    final NodeRecord liveNode = createNodeAtDistance(7);
+    final NodeRecord offeredNode = createNodeAtDistance(8);
+    buckets.onNodeContacted(liveNode);
+    buckets.offer(offeredNode);
+
+    assertThat(buckets.getLiveNode(liveNode.getNodeId())).contains(liveNode);
+    assertThat(buckets.getLiveNode(offeredNode.getNodeId())).isEmpty();
+    assertThat(buckets.getNode(offeredNode.getNodeId())).contains(offeredNode);
+  }
+
   @Test
   void testGetNodeRecordBuckets() {
     final NodeRecord node = createNodeAtDistance(1);
@@ -185,6 +268,97 @@ class KBucketsTest {
     assertThat(internalBuckets.getFirst().size()).isEqualTo(0);
   }
 
+  @Test
+  void getNodeRecordBuckets_shouldReturnSnapshotUnaffectedByLaterChanges() {
+    final NodeRecord node = createNodeAtDistance(1);
+    buckets.offer(node);
+    final List<List<NodeRecord>> snapshot = buckets.getNodeRecordBuckets();
+
+    buckets.deleteNode(node.getNodeId());
+
+    assertThat(snapshot.getFirst()).containsExactly(node);
+    assertThat(buckets.getNode(node.getNodeId())).isEmpty();
+    assertThat(buckets.getNodeRecordBuckets().getFirst()).isEmpty();
+  }
+
+  @Test
+  void restore_shouldRestoreRecentlyConfirmedNodesAsLive() {
+    final NodeRecord node = createNodeAtDistance(3);
+    buckets.restore(
+        List.of(new RoutingTableEntry(node, clock.millis() - 1000)), Duration.ofMinutes(1));
+
+    assertThat(buckets.getLiveNodeRecords(3)).containsExactly(node);
+    verifyNoMoreInteractions(livenessChecker);
+  }
+
+  @Test
+  void restore_shouldPingStaleNodesBeforeTreatingThemAsLive() {
+    final NodeRecord node = createNodeAtDistance(3);
+    buckets.restore(
+        List.of(new RoutingTableEntry(node, clock.millis() - 120_000)), Duration.ofMinutes(1));
+
+    assertThat(buckets.getLiveNodeRecords(3)).isEmpty();
+    assertThat(buckets.getAllNodeRecords(3)).containsExactly(node);
+    verify(livenessChecker).checkLiveness(node);
+
+    buckets.onNodeContacted(node);
+    assertThat(buckets.getLiveNodeRecords(3)).containsExactly(node);
+  }
+
+  @Test
+  void getRoutingTableEntries_shouldReturnLiveNodesWithConfirmationTime() {
+    final NodeRecord liveNode = createNodeAtDistance(3);
+    final NodeRecord pendingNode = createNodeAtDistance(4);
+    buckets.onNodeContacted(liveNode);
+    buckets.offer(pendingNode);
+
+    assertThat(buckets.getRoutingTableEntries(Integer.MAX_VALUE))
+        .containsExactly(new RoutingTableEntry(liveNode, clock.millis()));
+  }
+
+  @Test
+  void restore_shouldRestoreSavedRoutingTable() {
+    final NodeRecord node1 = createNodeAtDistance(3);
+    final NodeRecord node2 = createNodeAtDistance(200);
+    buckets.onNodeContacted(node1);
+    buckets.onNodeContacted(node2);
+
+    final KBuckets restored = new KBuckets(clock, localNodeRecordStore, livenessChecker);
+    restored.restore(buckets.getRoutingTableEntries(Integer.MAX_VALUE), Duration.ofMinutes(1));
+
+    assertThat(restored.getRoutingTableEntries(Integer.MAX_VALUE))
+        .containsExactlyElementsOf(buckets.getRoutingTableEntries(Integer.MAX_VALUE));
+  }
+
+  @Test
+  void offer_shouldRecordNodeInNodeDatabase() {
+    final NodeRecord node = createNodeAtDistance(5);
+    buckets.offer(node, NodeSource.NODES_RESPONSE);
+
+    assertThat(buckets.getNodeDatabase().get(node.getNodeId()))
+        .hasValueSatisfying(
+            entry -> {
+              assertThat(entry.getNode()).isEqualTo(node);
+              assertThat(entry.getSource()).isEqualTo(NodeSource.NODES_RESPONSE);
+              assertThat(entry.getResponseCount()).isZero();
+            });
+  }
+
+  @Test
+  void deleteNode_shouldRefillBucketFromNodeDatabase() {
+    final NodeRecord node = createNodeAtDistance(5);
+    final NodeRecord knownNode = TestUtil.createNodeAtDistance(node.getNodeId(), 1);
+    buckets.onNodeContacted(node);
+    buckets.getNodeDatabase().onNodeSeen(knownNode, NodeSource.NODES_RESPONSE);
+
+    buckets.deleteNode(node.getNodeId());
+
+    assertThat(buckets.getNodeDatabase().get(node.getNodeId())).isEmpty();
+    assertThat(buckets.getAllNodeRecords(5)).containsExactly(knownNode);
+    assertThat(buckets.getLiveNodeRecords(5)).isEmpty();
+    verify(livenessChecker).checkLiveness(knownNode);
+  }
+
   private NodeRecord createNodeAtDistance(final int distance) {
     return TestUtil.createNodeAtDistance(localNode.getNodeId(), distance);
   }
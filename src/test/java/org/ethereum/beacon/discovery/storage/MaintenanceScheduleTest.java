@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ethereum.beacon.discovery.storage.MaintenanceSchedule.NONE_DUE;
+import static org.ethereum.beacon.discovery.storage.MaintenanceSchedule.NOT_DUE;
+
+import org.junit.jupiter.api.Test;
+
+class MaintenanceScheduleTest {
+  private final MaintenanceSchedule schedule = new MaintenanceSchedule();
+
+  @Test
+  void shouldReturnDueBucketsInOrderOfDueTime() {
+    schedule.schedule(3, NOT_DUE, 300);
+    schedule.schedule(1, NOT_DUE, 100);
+    schedule.schedule(2, NOT_DUE, 200);
+
+    assertThat(schedule.pollRevalidation(250)).isEqualTo(1);
+    assertThat(schedule.pollRevalidation(250)).isEqualTo(2);
+    assertThat(schedule.pollRevalidation(250)).isEqualTo(NONE_DUE);
+    assertThat(schedule.pollRevalidation(300)).isEqualTo(3);
+  }
+
+  @Test
+  void shouldKeepLanesSeparate() {
+    schedule.schedule(1, 100, 200);
+
+    assertThat(schedule.pollTimeoutCheck(200)).isEqualTo(1);
+    assertThat(schedule.pollTimeoutCheck(200)).isEqualTo(NONE_DUE);
+    assertThat(schedule.pollRevalidation(200)).isEqualTo(1);
+  }
+
+  @Test
+  void shouldUseLatestDueTimeWhenRescheduled() {
+    schedule.schedule(1, NOT_DUE, 100);
+    schedule.schedule(1, NOT_DUE, 500);
+
+    assertThat(schedule.pollRevalidation(100)).isEqualTo(NONE_DUE);
+    assertThat(schedule.pollRevalidation(500)).isEqualTo(1);
+    assertThat(schedule.pollRevalidation(500)).isEqualTo(NONE_DUE);
+  }
+
+  @Test
+  void shouldNotReturnUnscheduledBucket() {
+    schedule.schedule(1, 100, 100);
+    schedule.schedule(1, NOT_DUE, NOT_DUE);
+
+    assertThat(schedule.pollTimeoutCheck(1000)).isEqualTo(NONE_DUE);
+    assertThat(schedule.pollRevalidation(1000)).isEqualTo(NONE_DUE);
+  }
+
+  @Test
+  void shouldHandleManyReschedules() {
+    for (int i = 0; i < 10_000; i++) {
+      schedule.schedule(i % 10 + 1, NOT_DUE, 10_000 - i);
+    }
+
+    int polled = 0;
+    while (schedule.pollRevalidation(10_000) != NONE_DUE) {
+      polled++;
+    }
+    assertThat(polled).isEqualTo(10);
+  }
+}
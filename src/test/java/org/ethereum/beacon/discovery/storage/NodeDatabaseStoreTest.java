@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ethereum.beacon.discovery.TestUtil.NODE_RECORD_FACTORY;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.StubClock;
+import org.ethereum.beacon.discovery.TestUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NodeDatabaseStoreTest {
+  @TempDir Path tempDir;
+  private NodeDatabaseStore store;
+
+  @BeforeEach
+  void setUp() {
+    store = new NodeDatabaseStore(tempDir.resolve("nodes"), NODE_RECORD_FACTORY);
+  }
+
+  @Test
+  void shouldLoadSavedEntries() {
+    final List<NodeDatabaseEntry> entries =
+        List.of(
+            new NodeDatabaseEntry(
+                TestUtil.generateNode(9001).getNodeRecord(),
+                NodeSource.HANDSHAKE,
+                1000,
+                2000,
+                1500,
+                3,
+                1),
+            new NodeDatabaseEntry(
+                TestUtil.generateNode(9002).getNodeRecord(),
+                NodeSource.NODES_RESPONSE,
+                1000,
+                1000,
+                0,
+                0,
+                0));
+    store.save(entries);
+
+    assertThat(store.load()).containsExactlyElementsOf(entries);
+  }
+
+  @Test
+  void shouldRestoreSavedDatabase() {
+    final StubClock clock = new StubClock();
+    final NodeDatabase database = new NodeDatabase(clock, 10, Bytes32.ZERO);
+    database.onNodeSeen(TestUtil.generateNode(9001).getNodeRecord(), NodeSource.HANDSHAKE);
+    database.onNodeResponded(TestUtil.generateNode(9002).getNodeRecord());
+    store.save(database);
+
+    final NodeDatabase restored = new NodeDatabase(clock, 10, Bytes32.ZERO);
+    store.restore(restored);
+
+    assertThat(restored.getEntries()).containsExactlyElementsOf(database.getEntries());
+  }
+
+  @Test
+  void shouldLoadNothingWhenFileDoesNotExist() {
+    assertThat(store.load()).isEmpty();
+  }
+
+  @Test
+  void shouldIgnoreCorruptedFile() throws IOException {
+    Files.write(tempDir.resolve("nodes"), Bytes.random(64).toArrayUnsafe());
+
+    assertThat(store.load()).isEmpty();
+  }
+}
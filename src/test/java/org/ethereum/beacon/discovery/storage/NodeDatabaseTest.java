@@ -0,0 +1,169 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.SimpleIdentitySchemaInterpreter;
+import org.ethereum.beacon.discovery.StubClock;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
+import org.junit.jupiter.api.Test;
+
+class NodeDatabaseTest {
+  private static final NodeRecord NODE1 = createNode("0x01");
+  private static final NodeRecord NODE2 = createNode("0x02");
+  private static final NodeRecord NODE3 = createNode("0x03");
+
+  private final StubClock clock = new StubClock();
+  private final NodeDatabase database = new NodeDatabase(clock, 2, Bytes32.ZERO);
+
+  @Test
+  void onNodeSeen_shouldRecordFirstAndLastSeenTime() {
+    final long firstSeen = clock.millis();
+    database.onNodeSeen(NODE1, NodeSource.NODES_RESPONSE);
+    clock.advanceTimeMillis(1000);
+    database.onNodeSeen(NODE1, NodeSource.HANDSHAKE);
+
+    assertThat(database.get(NODE1.getNodeId()))
+        .contains(
+            new NodeDatabaseEntry(
+                NODE1, NodeSource.NODES_RESPONSE, firstSeen, clock.millis(), 0, 0, 0));
+  }
+
+  @Test
+  void onNodeSeen_shouldKeepRecordWithHighestSequenceNumber() {
+    final NodeRecord updated = NODE1.withUpdatedCustomField("test", Bytes.of(1), null);
+    database.onNodeSeen(updated, NodeSource.HANDSHAKE);
+    database.onNodeSeen(NODE1, NodeSource.NODES_RESPONSE);
+
+    assertThat(database.get(NODE1.getNodeId()).orElseThrow().getNode()).isEqualTo(updated);
+  }
+
+  @Test
+  void shouldCountResponsesAndConsecutiveFailures() {
+    database.onNodeSeen(NODE1, NodeSource.NODES_RESPONSE);
+    for (int i = 0; i < NodeDatabaseEntry.MAX_CONSECUTIVE_FAILURES; i++) {
+      database.onNodeUnresponsive(NODE1.getNodeId());
+    }
+    assertThat(database.get(NODE1.getNodeId()).orElseThrow().isReachable()).isFalse();
+    assertThat(database.closest(NODE1.getNodeId(), 1)).isEmpty();
+
+    database.onNodeResponded(NODE1);
+
+    final NodeDatabaseEntry entry = database.get(NODE1.getNodeId()).orElseThrow();
+    assertThat(entry.getResponseCount()).isEqualTo(1);
+    assertThat(entry.getFailureCount()).isZero();
+    assertThat(entry.getLastResponseTime()).isEqualTo(clock.millis());
+    assertThat(database.closest(NODE1.getNodeId(), 1)).containsExactly(NODE1);
+  }
+
+  @Test
+  void shouldDropLeastRecentlySeenNodeWhenFull() {
+    database.onNodeSeen(NODE1, NodeSource.NODES_RESPONSE);
+    database.onNodeSeen(NODE2, NodeSource.NODES_RESPONSE);
+    database.onNodeSeen(NODE1, NodeSource.NODES_RESPONSE);
+    database.onNodeSeen(NODE3, NodeSource.NODES_RESPONSE);
+
+    assertThat(database.get(NODE2.getNodeId())).isEmpty();
+    assertThat(database.find(entry -> true, 10))
+        .extracting(NodeDatabaseEntry::getNode)
+        .containsExactly(NODE3, NODE1);
+  }
+
+  @Test
+  void closest_shouldReturnNodesClosestToTargetFirst() {
+    final NodeDatabase database = new NodeDatabase(clock, 10, Bytes32.ZERO);
+    database.onNodeSeen(NODE1, NodeSource.NODES_RESPONSE);
+    database.onNodeSeen(NODE2, NodeSource.NODES_RESPONSE);
+    database.onNodeSeen(NODE3, NodeSource.NODES_RESPONSE);
+
+    // Distances to 0x02: NODE2 0, NODE3 1, NODE1 3
+    assertThat(database.closest(NODE2.getNodeId(), 2)).containsExactly(NODE2, NODE3);
+  }
+
+  @Test
+  void closest_shouldMatchAllNodesSortedByDistance() {
+    final Random random = new Random(1);
+    final NodeDatabase database = new NodeDatabase(clock, 500, Bytes32.ZERO);
+    final List<NodeRecord> nodes = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      final NodeRecord node = createNode(Bytes32.random(random).toHexString());
+      nodes.add(node);
+      database.onNodeSeen(node, NodeSource.NODES_RESPONSE);
+      if (i % 5 == 0) {
+        for (int j = 0; j < NodeDatabaseEntry.MAX_CONSECUTIVE_FAILURES; j++) {
+          database.onNodeUnresponsive(node.getNodeId());
+        }
+      }
+    }
+
+    for (int i = 0; i < 20; i++) {
+      final Bytes32 target = Bytes32.random(random);
+      final NodeId targetId = NodeId.wrap(target);
+      final List<NodeRecord> expected =
+          database.getEntries().stream()
+              .filter(NodeDatabaseEntry::isReachable)
+              .map(NodeDatabaseEntry::getNode)
+              .sorted(
+                  Comparator.comparing(
+                      node -> NodeId.wrap(node.getNodeId()), targetId::compareDistance))
+              .limit(16)
+              .toList();
+      assertThat(database.closest(target, 16)).containsExactlyElementsOf(expected);
+    }
+  }
+
+  @Test
+  void findAtDistance_shouldOnlyReturnNodesAtDistanceMostRecentlySeenFirst() {
+    final NodeDatabase database = new NodeDatabase(clock, 3, Bytes32.ZERO);
+    // Distances from the home node 0x00: NODE1 1, NODE2 2, NODE3 2
+    database.onNodeSeen(NODE2, NodeSource.NODES_RESPONSE);
+    database.onNodeSeen(NODE3, NodeSource.NODES_RESPONSE);
+    database.onNodeSeen(NODE1, NodeSource.NODES_RESPONSE);
+    database.onNodeSeen(NODE2, NodeSource.NODES_RESPONSE);
+
+    assertThat(database.findAtDistance(2, entry -> true, 10))
+        .extracting(NodeDatabaseEntry::getNode)
+        .containsExactly(NODE2, NODE3);
+    assertThat(database.findAtDistance(1, entry -> true, 10))
+        .extracting(NodeDatabaseEntry::getNode)
+        .containsExactly(NODE1);
+
+    // Dropped from the index along with the entry when the database is full
+    database.onNodeSeen(createNode("0x04"), NodeSource.NODES_RESPONSE);
+    assertThat(database.findAtDistance(2, entry -> true, 10))
+        .extracting(NodeDatabaseEntry::getNode)
+        .containsExactly(NODE2);
+    database.remove(NODE2.getNodeId());
+    assertThat(database.findAtDistance(2, entry -> true, 10)).isEmpty();
+    assertThat(database.closest(NODE2.getNodeId(), 10)).doesNotContain(NODE2, NODE3);
+  }
+
+  @Test
+  void restore_shouldKeepNodesSeenSinceAsMostRecent() {
+    database.onNodeSeen(NODE1, NodeSource.HANDSHAKE);
+    final NodeDatabaseEntry saved = database.get(NODE1.getNodeId()).orElseThrow();
+    database.onNodeSeen(NODE2, NodeSource.NODES_RESPONSE);
+
+    final NodeDatabase restored = new NodeDatabase(clock, 2, Bytes32.ZERO);
+    restored.onNodeSeen(NODE3, NodeSource.NODES_RESPONSE);
+    restored.restore(List.of(saved));
+
+    assertThat(restored.getEntries())
+        .extracting(NodeDatabaseEntry::getNode)
+        .containsExactly(NODE1, NODE3);
+  }
+
+  private static NodeRecord createNode(final String nodeId) {
+    return SimpleIdentitySchemaInterpreter.createNodeRecord(
+        Bytes32.leftPad(Bytes.fromHexString(nodeId)));
+  }
+}
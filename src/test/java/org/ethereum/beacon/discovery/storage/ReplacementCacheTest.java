@@ -0,0 +1,218 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.SimpleIdentitySchemaInterpreter;
+import org.ethereum.beacon.discovery.liveness.LivenessChecker;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.type.NodeId;
+import org.junit.jupiter.api.Test;
+
+class ReplacementCacheTest {
+  private static final long START_TIME = 1_000_000;
+
+  private final LivenessChecker livenessChecker = mock(LivenessChecker.class);
+  private final Random rnd = new Random(1);
+
+  @Test
+  void shouldIgnoreNewNodesWhenFullOfRecentlyConfirmedNodes() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 2);
+    final NodeRecord node1 = createNode();
+    final NodeRecord node2 = createNode();
+    final NodeRecord node3 = createNode();
+    add(cache, node1);
+    add(cache, node2);
+    add(cache, node3);
+
+    assertThat(cache.isFull()).isTrue();
+    assertThat(cache.getNodes()).containsExactly(node2, node1);
+    assertThat(cache.contains(nodeId(node3))).isFalse();
+  }
+
+  @Test
+  void shouldEvictLeastRecentlyConfirmedNodeWhenFull() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 2);
+    final NodeRecord node1 = createNode();
+    final NodeRecord node2 = createNode();
+    final NodeRecord node3 = createNode();
+    add(cache, node1);
+    cache.onLivenessConfirmed(nodeId(node2), node2, START_TIME + 1);
+
+    final long currentTime = START_TIME + BucketEntry.MIN_MILLIS_BETWEEN_PINGS;
+    assertThat(cache.hasRoomFor(currentTime)).isTrue();
+    cache.onLivenessConfirmed(nodeId(node3), node3, currentTime);
+
+    assertThat(cache.getNodes()).containsExactly(node3, node2);
+    assertThat(cache.contains(nodeId(node1))).isFalse();
+  }
+
+  @Test
+  void shouldMoveReconfirmedNodeToNext() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 4);
+    final NodeRecord node1 = createNode();
+    final NodeRecord node2 = createNode();
+    add(cache, node1);
+    add(cache, node2);
+
+    cache.onLivenessConfirmed(nodeId(node1), node1, START_TIME + 1);
+
+    assertThat(cache.getNodes()).containsExactly(node1, node2);
+    assertThat(cache.getNext()).contains(node1);
+  }
+
+  @Test
+  void shouldOrderRestoredNodesByConfirmationTime() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 4);
+    final NodeRecord node1 = createNode();
+    final NodeRecord node2 = createNode();
+    final NodeRecord node3 = createNode();
+    cache.onLivenessConfirmed(nodeId(node1), node1, START_TIME);
+    cache.onLivenessConfirmed(nodeId(node2), node2, START_TIME - 2);
+    cache.onLivenessConfirmed(nodeId(node3), node3, START_TIME - 1);
+
+    assertThat(cache.getNodes()).containsExactly(node1, node3, node2);
+  }
+
+  @Test
+  void shouldNotHoldAnyNodesWithZeroCapacity() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 0);
+    add(cache, createNode());
+
+    assertThat(cache.isEmpty()).isTrue();
+    assertThat(cache.getNext()).isEmpty();
+  }
+
+  @Test
+  void removeNext_shouldReturnMostRecentlyAddedNode() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 4);
+    final NodeRecord node1 = createNode();
+    final NodeRecord node2 = createNode();
+    add(cache, node1);
+    add(cache, node2);
+
+    assertThat(cache.removeNext()).map(BucketEntry::getNode).contains(node2);
+    assertThat(cache.removeNext()).map(BucketEntry::getNode).contains(node1);
+    assertThat(cache.removeNext()).isEmpty();
+  }
+
+  @Test
+  void performMaintenance_shouldOnlyPingNextNode() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 4);
+    final NodeRecord node1 = createNode();
+    final NodeRecord node2 = createNode();
+    add(cache, node1);
+    add(cache, node2);
+
+    final long pingTime = START_TIME + BucketEntry.MIN_MILLIS_BETWEEN_PINGS;
+    cache.performMaintenance(pingTime);
+    verify(livenessChecker).checkLiveness(node2);
+    verify(livenessChecker, never()).checkLiveness(node1);
+
+    // Removed when it doesn't respond in time
+    cache.performMaintenance(pingTime + BucketEntry.PING_TIMEOUT_MILLIS);
+    assertThat(cache.getNodes()).containsExactly(node1);
+  }
+
+  @Test
+  void performMaintenance_shouldRevalidateLeastRecentlyConfirmedNode() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 4);
+    final NodeRecord node1 = createNode();
+    final NodeRecord node2 = createNode();
+    final long currentTime = START_TIME + BucketEntry.MIN_MILLIS_BETWEEN_PINGS;
+    add(cache, node1);
+    cache.onLivenessConfirmed(nodeId(node2), node2, currentTime);
+    assertThat(cache.getNextRevalidationTime()).isEqualTo(currentTime);
+
+    cache.performMaintenance(currentTime);
+    verify(livenessChecker).checkLiveness(node1);
+    verify(livenessChecker, never()).checkLiveness(node2);
+    assertThat(cache.getNextRevalidationTime()).isEqualTo(MaintenanceSchedule.NOT_DUE);
+    assertThat(cache.getNextTimeoutCheckTime())
+        .isEqualTo(currentTime + BucketEntry.PING_TIMEOUT_MILLIS);
+
+    // Removed when it doesn't respond in time
+    assertThat(cache.performMaintenance(currentTime + BucketEntry.PING_TIMEOUT_MILLIS))
+        .contains(node1);
+    assertThat(cache.getNodes()).containsExactly(node2);
+  }
+
+  @Test
+  void performMaintenance_shouldKeepRevalidatedNodeWhichResponds() {
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, 4);
+    final NodeRecord node1 = createNode();
+    final NodeRecord node2 = createNode();
+    final long currentTime = START_TIME + BucketEntry.MIN_MILLIS_BETWEEN_PINGS;
+    add(cache, node1);
+    cache.onLivenessConfirmed(nodeId(node2), node2, currentTime);
+
+    cache.performMaintenance(currentTime);
+    cache.onLivenessConfirmed(nodeId(node1), node1, currentTime + 1);
+
+    assertThat(cache.getNextTimeoutCheckTime()).isEqualTo(MaintenanceSchedule.NOT_DUE);
+    assertThat(cache.performMaintenance(currentTime + BucketEntry.PING_TIMEOUT_MILLIS)).isEmpty();
+    assertThat(cache.getNodes()).containsExactly(node1, node2);
+  }
+
+  @Test
+  void shouldStayConsistentWithReferenceListAcrossAddsAndRemovals() {
+    // Larger than the initial allocation so the arrays and index have to grow
+    final int capacity = 40;
+    final ReplacementCache cache = new ReplacementCache(livenessChecker, capacity);
+    final List<NodeRecord> pool = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      pool.add(createNode());
+    }
+    // Oldest first, like the cache itself
+    final List<NodeRecord> expected = new ArrayList<>();
+
+    for (int i = 0; i < 2000; i++) {
+      final NodeRecord node = pool.get(rnd.nextInt(pool.size()));
+      switch (rnd.nextInt(3)) {
+        case 0 -> {
+          add(cache, node);
+          // Reconfirmed nodes become the next, new nodes are ignored when full
+          if (expected.remove(node) || expected.size() < capacity) {
+            expected.add(node);
+          }
+        }
+        case 1 -> {
+          cache.remove(nodeId(node));
+          expected.remove(node);
+        }
+        default -> {
+          cache.removeNext();
+          if (!expected.isEmpty()) {
+            expected.removeLast();
+          }
+        }
+      }
+
+      assertThat(cache.getNodes()).containsExactlyElementsOf(expected.reversed());
+      for (NodeRecord poolNode : pool) {
+        assertThat(cache.contains(nodeId(poolNode))).isEqualTo(expected.contains(poolNode));
+      }
+    }
+  }
+
+  private void add(final ReplacementCache cache, final NodeRecord node) {
+    cache.onLivenessConfirmed(nodeId(node), node, START_TIME);
+  }
+
+  private NodeRecord createNode() {
+    return SimpleIdentitySchemaInterpreter.createNodeRecord(Bytes32.random(rnd));
+  }
+
+  private static NodeId nodeId(final NodeRecord node) {
+    return NodeId.wrap(node.getNodeId());
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ethereum.beacon.discovery.TestUtil.NODE_RECORD_FACTORY;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.ethereum.beacon.discovery.TestUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RoutingTableStoreTest {
+  @TempDir Path tempDir;
+  private Path file;
+  private RoutingTableStore store;
+
+  @BeforeEach
+  void setUp() {
+    file = tempDir.resolve("routing-table");
+    store = new RoutingTableStore(file, NODE_RECORD_FACTORY, Duration.ofHours(1));
+  }
+
+  @Test
+  void shouldLoadSavedEntries() {
+    final List<RoutingTableEntry> entries = List.of(createEntry(9001, 1000), createEntry(9002, 0));
+    store.save(entries);
+
+    assertThat(store.load()).containsExactlyElementsOf(entries);
+  }
+
+  @Test
+  void shouldReplacePreviouslySavedEntries() {
+    store.save(List.of(createEntry(9001, 1000)));
+    final List<RoutingTableEntry> entries = List.of(createEntry(9002, 2000));
+    store.save(entries);
+
+    assertThat(store.load()).containsExactlyElementsOf(entries);
+    assertThat(tempDir).isDirectoryNotContaining(path -> path.toString().endsWith(".tmp"));
+  }
+
+  @Test
+  void shouldLoadNothingWhenFileDoesNotExist() {
+    assertThat(store.load()).isEmpty();
+  }
+
+  @Test
+  void shouldIgnoreCorruptedFile() throws IOException {
+    Files.write(file, Bytes.random(64).toArrayUnsafe());
+
+    assertThat(store.load()).isEmpty();
+  }
+
+  private RoutingTableEntry createEntry(final int port, final long lastLivenessConfirmationTime) {
+    return new RoutingTableEntry(
+        TestUtil.generateNode(port).getNodeRecord(), lastLivenessConfirmationTime);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ethereum.beacon.discovery.TestUtil.NODE_RECORD_FACTORY;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.crypto.SECP256K1.SecretKey;
+import org.ethereum.beacon.discovery.TestUtil;
+import org.ethereum.beacon.discovery.TestUtil.NodeInfo;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SessionSnapshotStoreTest {
+  private static final long NOW = 1_000_000L;
+  private static final Duration MAX_AGE = Duration.ofMinutes(10);
+  private static final SecretKey STATIC_NODE_KEY = Functions.randomKeyPair().secretKey();
+
+  private final Clock clock = mock(Clock.class);
+  @TempDir Path tempDir;
+  private Path file;
+
+  @BeforeEach
+  void setUp() {
+    file = tempDir.resolve("sessions");
+    when(clock.millis()).thenReturn(NOW);
+  }
+
+  @Test
+  void shouldRestoreSavedSessions() {
+    final List<SessionSnapshot> sessions = List.of(createSnapshot(9001), createSnapshot(9002));
+    createStore(STATIC_NODE_KEY).save(sessions);
+
+    assertThat(createStore(STATIC_NODE_KEY).load()).containsExactlyElementsOf(sessions);
+  }
+
+  @Test
+  void shouldRestoreSnapshotOnlyOnce() {
+    final SessionSnapshotStore store = createStore(STATIC_NODE_KEY);
+    store.save(List.of(createSnapshot(9001)));
+
+    assertThat(store.load()).hasSize(1);
+    assertThat(file).doesNotExist();
+    assertThat(store.load()).isEmpty();
+  }
+
+  @Test
+  void shouldIgnoreSnapshotOlderThanMaxAge() {
+    final SessionSnapshotStore store = createStore(STATIC_NODE_KEY);
+    store.save(List.of(createSnapshot(9001)));
+
+    when(clock.millis()).thenReturn(NOW + MAX_AGE.toMillis() + 1);
+
+    assertThat(store.load()).isEmpty();
+  }
+
+  @Test
+  void shouldOnlyRestoreSessionsEstablishedWithinMaxAge() {
+    final SessionSnapshot oldSession = createSnapshot(9001, NOW - MAX_AGE.toMillis() - 1);
+    final SessionSnapshot recentSession = createSnapshot(9002, NOW - MAX_AGE.toMillis());
+    final SessionSnapshotStore store = createStore(STATIC_NODE_KEY);
+    store.save(List.of(oldSession, recentSession));
+
+    assertThat(store.load()).containsExactly(recentSession);
+  }
+
+  @Test
+  void shouldIgnoreSnapshotOfDifferentNodeKey() {
+    createStore(STATIC_NODE_KEY).save(List.of(createSnapshot(9001)));
+
+    assertThat(createStore(Functions.randomKeyPair().secretKey()).load()).isEmpty();
+  }
+
+  @Test
+  void shouldIgnoreCorruptedSnapshot() throws IOException {
+    Files.write(file, Bytes.random(64).toArrayUnsafe());
+
+    assertThat(createStore(STATIC_NODE_KEY).load()).isEmpty();
+  }
+
+  private SessionSnapshotStore createStore(final SecretKey staticNodeKey) {
+    return new SessionSnapshotStore(
+        file, staticNodeKey, NODE_RECORD_FACTORY, clock, MAX_AGE, new Random(1));
+  }
+
+  private SessionSnapshot createSnapshot(final int port) {
+    return createSnapshot(port, NOW);
+  }
+
+  private SessionSnapshot createSnapshot(final int port, final long establishedTime) {
+    final NodeInfo nodeInfo = TestUtil.generateNode(port);
+    return new SessionSnapshot(
+        nodeInfo.getNodeRecord(),
+        new InetSocketAddress("127.0.0.1", port),
+        Bytes.random(16),
+        Bytes.random(16),
+        establishedTime);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.task;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.SimpleIdentitySchemaInterpreter;
+import org.ethereum.beacon.discovery.StubClock;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.ethereum.beacon.discovery.storage.KBuckets;
+import org.ethereum.beacon.discovery.storage.NodeDatabase;
+import org.ethereum.beacon.discovery.storage.NodeSource;
+import org.ethereum.beacon.discovery.task.RecursiveLookupTask.FindNodesAction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+class NodeSearchTaskTest {
+  private static final Bytes HOME_NODE_ID = Bytes.fromHexString("0x00");
+  private static final Bytes TARGET = Bytes.fromHexString("0xFF");
+  private static final NodeRecord PEER1 = SimpleIdentitySchemaInterpreter.createNodeRecord(1);
+  private static final NodeRecord PEER2 = SimpleIdentitySchemaInterpreter.createNodeRecord(2);
+  private static final NodeRecord MATCH1 = SimpleIdentitySchemaInterpreter.createNodeRecord(11);
+  private static final NodeRecord MATCH2 = SimpleIdentitySchemaInterpreter.createNodeRecord(12);
+  private static final NodeRecord MATCH3 = SimpleIdentitySchemaInterpreter.createNodeRecord(13);
+  private static final Predicate<NodeRecord> IS_MATCH =
+      node -> List.of(MATCH1, MATCH2, MATCH3).contains(node);
+
+  private final KBuckets buckets = mock(KBuckets.class);
+  private final NodeDatabase nodeDatabase = new NodeDatabase(new StubClock(), 100, Bytes32.ZERO);
+  private final FindNodesAction findNodesAction = mock(FindNodesAction.class);
+  private final List<CompletableFuture<Collection<NodeRecord>>> requests = new ArrayList<>();
+  private final List<NodeRecord> found = new ArrayList<>();
+  private final AtomicBoolean completed = new AtomicBoolean();
+
+  @BeforeEach
+  void setUp() {
+    when(buckets.getNodeDatabase()).thenReturn(nodeDatabase);
+    when(buckets.streamClosestNodes(TARGET)).thenAnswer(invocation -> Stream.of(PEER1));
+    when(findNodesAction.findNodes(any(), anyInt(), any()))
+        .thenAnswer(
+            invocation -> {
+              final CompletableFuture<Collection<NodeRecord>> request = new CompletableFuture<>();
+              requests.add(request);
+              return request;
+            });
+  }
+
+  @Test
+  void shouldEmitMatchingNodesFromNodeDatabaseAndLookups() {
+    nodeDatabase.onNodeSeen(MATCH1, NodeSource.HANDSHAKE);
+    nodeDatabase.onNodeSeen(PEER2, NodeSource.HANDSHAKE);
+    search(3, 100);
+
+    assertThat(found).containsExactly(MATCH1);
+
+    // Matching nodes in responses are emitted even if they never enter the buckets
+    requests.get(0).complete(List.of(PEER2, MATCH2, MATCH1));
+    assertThat(found).containsExactly(MATCH1, MATCH2);
+    assertThat(completed).isFalse();
+  }
+
+  @Test
+  void shouldCompleteWhenCountIsReached() {
+    search(2, 100);
+
+    requests.get(0).complete(List.of(MATCH1, MATCH2, MATCH3));
+
+    assertThat(found).containsExactly(MATCH1, MATCH2);
+    assertThat(completed).isTrue();
+  }
+
+  @Test
+  void shouldRunFurtherLookupsUntilQueryBudgetIsUsed() {
+    search(2, 2);
+
+    // First lookup ends without finding anything so a second one starts
+    requests.get(0).complete(List.of());
+    assertThat(requests).hasSize(2);
+    assertThat(completed).isFalse();
+
+    // Budget is used up so MATCH1 isn't queried
+    requests.get(1).complete(List.of(MATCH1));
+    verify(findNodesAction, times(2)).findNodes(any(), anyInt(), any());
+    assertThat(found).containsExactly(MATCH1);
+    assertThat(completed).isTrue();
+  }
+
+  @Test
+  void shouldCompleteWhenThereAreNoPeersToQuery() {
+    when(buckets.streamClosestNodes(TARGET)).thenAnswer(invocation -> Stream.empty());
+
+    search(2, 100);
+
+    verify(findNodesAction, never()).findNodes(any(), anyInt(), any());
+    assertThat(completed).isTrue();
+  }
+
+  @Test
+  void shouldStopRunningLookupWhenSubscriptionIsCancelled() {
+    final Disposable subscription = search(3, 100);
+    verify(findNodesAction, times(1)).findNodes(any(), anyInt(), any());
+
+    subscription.dispose();
+
+    // PEER2 would be the next node to query if the lookup were still running
+    requests.get(0).complete(List.of(PEER2));
+    verify(findNodesAction, times(1)).findNodes(any(), anyInt(), any());
+    assertThat(found).isEmpty();
+  }
+
+  private Disposable search(final int count, final int queryBudget) {
+    return new NodeSearchTask(
+            buckets,
+            findNodesAction,
+            RecursiveLookupTask.NO_HEDGING,
+            () -> TARGET,
+            HOME_NODE_ID,
+            IS_MATCH,
+            count,
+            queryBudget)
+        .execute()
+        .subscribe(found::add, error -> {}, () -> completed.set(true));
+  }
+}
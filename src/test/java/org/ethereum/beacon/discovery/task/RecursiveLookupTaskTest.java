@@ -5,19 +5,25 @@
 package org.ethereum.beacon.discovery.task;
 
 import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.units.bigints.UInt64;
@@ -54,23 +60,27 @@ class RecursiveLookupTaskTest {
 
   private static final Bytes TARGET =
       Bytes.fromHexString("0xDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDDD");
+  private static final NodeRecord TARGET_NODE = createPeer(TARGET);
   private final KBuckets buckets = mock(KBuckets.class);
   private final FindNodesAction findNodesAction = mock(FindNodesAction.class);
 
   private final Map<NodeRecord, CompletableFuture<Collection<NodeRecord>>> findNodeRequests =
       new HashMap<>();
+  private final Map<NodeRecord, Consumer<Collection<NodeRecord>>> packetListeners =
+      new HashMap<>();
 
   private final RecursiveLookupTask task =
       new RecursiveLookupTask(buckets, findNodesAction, 4, TARGET, TARGET);
 
   @BeforeEach
   public void setUp() {
-    when(findNodesAction.findNodes(any(), anyInt()))
+    when(findNodesAction.findNodes(any(), anyInt(), any()))
         .then(
             invocation -> {
               final NodeRecord queriedPeer = invocation.getArgument(0);
               final CompletableFuture<Collection<NodeRecord>> result = new CompletableFuture<>();
               findNodeRequests.put(queriedPeer, result);
+              packetListeners.put(queriedPeer, invocation.getArgument(2));
               return result;
             });
   }
@@ -81,9 +91,9 @@ class RecursiveLookupTaskTest {
 
     task.execute();
 
-    verify(findNodesAction).findNodes(PEER1, Functions.logDistance(TARGET, PEER1_ID));
-    verify(findNodesAction).findNodes(PEER2, Functions.logDistance(TARGET, PEER2_ID));
-    verify(findNodesAction).findNodes(PEER3, Functions.logDistance(TARGET, PEER3_ID));
+    verifyQueried(PEER1);
+    verifyQueried(PEER2);
+    verifyQueried(PEER3);
     verifyNoMoreInteractions(findNodesAction);
   }
 
@@ -95,9 +105,9 @@ class RecursiveLookupTaskTest {
 
     final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
 
-    verify(findNodesAction).findNodes(PEER1, Functions.logDistance(TARGET, PEER1_ID));
-    verify(findNodesAction).findNodes(PEER2, Functions.logDistance(TARGET, PEER2_ID));
-    verify(findNodesAction).findNodes(PEER3, Functions.logDistance(TARGET, PEER3_ID));
+    verifyQueried(PEER1);
+    verifyQueried(PEER2);
+    verifyQueried(PEER3);
     verifyNoMoreInteractions(findNodesAction);
     assertFalse(complete.isDone());
 
@@ -105,7 +115,7 @@ class RecursiveLookupTaskTest {
     findNodeRequests.get(PEER1).complete(emptyList());
 
     // We should now query the next closest peer we haven't already queried (peer4).
-    verify(findNodesAction).findNodes(PEER4, Functions.logDistance(TARGET, PEER4_ID));
+    verifyQueried(PEER4);
     verifyNoMoreInteractions(findNodesAction);
     assertFalse(complete.isDone());
 
@@ -119,21 +129,38 @@ class RecursiveLookupTaskTest {
     assertTrue(complete.isDone());
   }
 
+  @Test
+  public void shouldNotQueryMorePeersWhenCancelled() {
+    when(buckets.streamClosestNodes(TARGET))
+        .thenAnswer(invocation -> Stream.of(PEER1, PEER2, PEER3, PEER4));
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    verifyQueried(PEER1);
+    verifyQueried(PEER2);
+    verifyQueried(PEER3);
+
+    task.cancel();
+    assertTrue(complete.isDone());
+
+    // PEER4 would be queried next if the lookup were still running
+    findNodeRequests.get(PEER1).complete(emptyList());
+    verifyNoMoreInteractions(findNodesAction);
+  }
+
   @Test
   public void shouldStopWhenTargetNodeIsFound() {
     when(buckets.streamClosestNodes(TARGET)).thenReturn(Stream.of(PEER1, PEER2, PEER3, PEER4));
 
     final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
 
-    verify(findNodesAction).findNodes(PEER1, Functions.logDistance(TARGET, PEER1_ID));
-    verify(findNodesAction).findNodes(PEER2, Functions.logDistance(TARGET, PEER2_ID));
-    verify(findNodesAction).findNodes(PEER3, Functions.logDistance(TARGET, PEER3_ID));
+    verifyQueried(PEER1);
+    verifyQueried(PEER2);
+    verifyQueried(PEER3);
     verifyNoMoreInteractions(findNodesAction);
     assertFalse(complete.isDone());
 
-    // Request to first peer completes. Target peer has now been found.
-    when(buckets.containsNode(TARGET)).thenReturn(true);
-    findNodeRequests.get(PEER1).complete(emptyList());
+    // Request to first peer completes and returns the target node.
+    findNodeRequests.get(PEER1).complete(List.of(TARGET_NODE));
 
     // No more requests are made
     verifyNoMoreInteractions(findNodesAction);
@@ -146,6 +173,32 @@ class RecursiveLookupTaskTest {
     verifyNoMoreInteractions(findNodesAction);
   }
 
+  @Test
+  public void shouldQueryTargetNodeWhenNotStoppingAtTarget() {
+    when(buckets.streamClosestNodes(TARGET)).thenAnswer(invocation -> Stream.of(PEER1));
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(
+            buckets,
+            findNodesAction,
+            RecursiveLookupTask.NO_HEDGING,
+            1,
+            2,
+            10,
+            Integer.MAX_VALUE,
+            false,
+            TARGET,
+            PEER5_ID);
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    findNodeRequests.get(PEER1).complete(List.of(TARGET_NODE));
+
+    assertFalse(complete.isDone());
+    verifyQueried(TARGET_NODE);
+    findNodeRequests.get(TARGET_NODE).complete(emptyList());
+    assertTrue(complete.isDone());
+    assertThat(task.getRespondedNodes()).containsExactly(TARGET_NODE, PEER1);
+  }
+
   @Test
   public void shouldStopWhenTotalQueryLimitIsReached() {
     when(buckets.streamClosestNodes(TARGET))
@@ -153,9 +206,9 @@ class RecursiveLookupTaskTest {
 
     final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
 
-    verify(findNodesAction).findNodes(PEER1, Functions.logDistance(TARGET, PEER1_ID));
-    verify(findNodesAction).findNodes(PEER2, Functions.logDistance(TARGET, PEER2_ID));
-    verify(findNodesAction).findNodes(PEER3, Functions.logDistance(TARGET, PEER3_ID));
+    verifyQueried(PEER1);
+    verifyQueried(PEER2);
+    verifyQueried(PEER3);
     verifyNoMoreInteractions(findNodesAction);
     assertFalse(complete.isDone());
 
@@ -165,7 +218,7 @@ class RecursiveLookupTaskTest {
     findNodeRequests.get(PEER3).complete(emptyList());
 
     // There are two peers remaining but only 1 request before we hit the total request limit
-    verify(findNodesAction).findNodes(PEER4, Functions.logDistance(TARGET, PEER4_ID));
+    verifyQueried(PEER4);
     verifyNoMoreInteractions(findNodesAction);
     assertFalse(complete.isDone());
 
@@ -175,6 +228,237 @@ class RecursiveLookupTaskTest {
     assertTrue(complete.isDone());
   }
 
+  @Test
+  public void shouldReturnFoundNodesClosestFirst() {
+    when(buckets.streamClosestNodes(TARGET)).thenAnswer(invocation -> Stream.of(PEER1));
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    findNodeRequests.get(PEER1).complete(List.of(PEER4, PEER5, PEER2));
+
+    findNodeRequests.get(PEER2).complete(emptyList());
+    findNodeRequests.get(PEER4).complete(emptyList());
+    findNodeRequests.get(PEER5).complete(emptyList());
+
+    // Distances to target: PEER2 0x1111, PEER5 0x4444, PEER4 0x7777
+    assertThat(complete)
+        .isCompletedWithValueMatching(
+            nodes -> List.copyOf(nodes).equals(List.of(PEER2, PEER5, PEER4)));
+  }
+
+  @Test
+  public void shouldQueryKnownNodesCloserThanNodesInBuckets() {
+    when(buckets.closestKnownNodes(TARGET, RecursiveLookupTask.DEFAULT_K))
+        .thenReturn(List.of(PEER2));
+    when(buckets.streamClosestNodes(TARGET))
+        .thenAnswer(invocation -> Stream.of(PEER1, PEER4, PEER5));
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(buckets, findNodesAction, 4, TARGET, TARGET);
+
+    task.execute();
+
+    // PEER2 is closest to the target, followed by PEER1 and PEER5
+    verifyQueried(PEER2);
+    verifyQueried(PEER1);
+    verifyQueried(PEER5);
+    verifyNoMoreInteractions(findNodesAction);
+  }
+
+  @Test
+  public void shouldCompleteWhenClosestKNodesHaveBeenQueried() {
+    when(buckets.streamClosestNodes(TARGET))
+        .thenAnswer(invocation -> Stream.of(PEER1, PEER2, PEER3, PEER4, PEER5));
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(buckets, findNodesAction, 1, 2, 10, 10, TARGET, TARGET);
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+
+    // Closest are PEER2 (0x1111) and PEER3 (0x2222), queried one at a time
+    verifyQueried(PEER2);
+    verifyNoMoreInteractions(findNodesAction);
+    findNodeRequests.get(PEER2).complete(emptyList());
+    verifyQueried(PEER3);
+    findNodeRequests.get(PEER3).complete(emptyList());
+
+    // The two closest nodes have been queried so the further ones aren't
+    verifyNoMoreInteractions(findNodesAction);
+    assertTrue(complete.isDone());
+  }
+
+  @Test
+  public void shouldQueryNextClosestNodeWhenQueryFails() {
+    when(buckets.streamClosestNodes(TARGET))
+        .thenAnswer(invocation -> Stream.of(PEER1, PEER2, PEER3));
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(buckets, findNodesAction, 1, 2, 10, 10, TARGET, TARGET);
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    findNodeRequests.get(PEER2).completeExceptionally(new RuntimeException("Timeout"));
+    findNodeRequests.get(PEER3).complete(emptyList());
+
+    // PEER2 failed so PEER1 is now one of the two closest nodes
+    verifyQueried(PEER1);
+    assertFalse(complete.isDone());
+    findNodeRequests.get(PEER1).complete(emptyList());
+    assertTrue(complete.isDone());
+  }
+
+  @Test
+  public void shouldReportRespondedNodesClosestFirst() {
+    when(buckets.streamClosestNodes(TARGET))
+        .thenAnswer(invocation -> Stream.of(PEER1, PEER2, PEER3));
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(buckets, findNodesAction, 1, 2, 10, 10, TARGET, TARGET);
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    findNodeRequests.get(PEER2).completeExceptionally(new RuntimeException("Timeout"));
+    findNodeRequests.get(PEER3).complete(List.of(PEER4));
+    findNodeRequests.get(PEER1).complete(emptyList());
+
+    // PEER4 was only mentioned and PEER2 failed to respond
+    assertTrue(complete.isDone());
+    assertThat(complete.join()).contains(PEER4);
+    assertThat(task.getRespondedNodes()).containsExactly(PEER3, PEER1);
+  }
+
+  @Test
+  public void shouldCompleteEarlyWhenResultLimitIsReached() {
+    when(buckets.streamClosestNodes(TARGET)).thenAnswer(invocation -> Stream.of(PEER1, PEER3));
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(buckets, findNodesAction, 3, 16, 10, 2, TARGET, TARGET);
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    findNodeRequests.get(PEER1).complete(List.of(PEER4, PEER5));
+
+    assertThat(complete)
+        .isCompletedWithValueMatching(nodes -> List.copyOf(nodes).equals(List.of(PEER5, PEER4)));
+    verifyQueried(PEER1);
+    verifyQueried(PEER3);
+    verifyNoMoreInteractions(findNodesAction);
+  }
+
+  @Test
+  public void shouldStreamFoundNodesAsTheyArrive() {
+    when(buckets.streamClosestNodes(TARGET)).thenAnswer(invocation -> Stream.of(PEER1, PEER3));
+    final List<NodeRecord> streamed = new ArrayList<>();
+    final AtomicBoolean streamCompleted = new AtomicBoolean();
+    task.streamFoundNodes()
+        .subscribe(streamed::add, error -> {}, () -> streamCompleted.set(true));
+
+    task.execute();
+    findNodeRequests.get(PEER1).complete(List.of(PEER4, PEER3));
+    assertThat(streamed).containsExactly(PEER4, PEER3);
+
+    findNodeRequests.get(PEER3).complete(List.of(PEER4, PEER2));
+    assertThat(streamed).containsExactly(PEER4, PEER3, PEER2);
+    assertFalse(streamCompleted.get());
+
+    findNodeRequests.get(PEER2).complete(emptyList());
+    findNodeRequests.get(PEER4).complete(emptyList());
+    assertTrue(streamCompleted.get());
+  }
+
+  @Test
+  public void shouldQueryNextClosestNodeWhenQueryIsSlow() {
+    when(buckets.streamClosestNodes(TARGET))
+        .thenAnswer(invocation -> Stream.of(PEER1, PEER2, PEER3));
+    final Map<NodeRecord, CompletableFuture<Void>> slowQueryTimers = new HashMap<>();
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(
+            buckets,
+            findNodesAction,
+            peer -> slowQueryTimers.computeIfAbsent(peer, __ -> new CompletableFuture<>()),
+            1,
+            16,
+            10,
+            10,
+            TARGET,
+            TARGET);
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    verifyQueried(PEER2);
+    verifyNoMoreInteractions(findNodesAction);
+
+    // PEER2 is taking longer than usual so the next closest is queried without waiting for it
+    slowQueryTimers.get(PEER2).complete(null);
+    verifyQueried(PEER3);
+    verifyNoMoreInteractions(findNodesAction);
+
+    // The late response is still used
+    findNodeRequests.get(PEER2).complete(List.of(PEER5));
+    verifyNoMoreInteractions(findNodesAction);
+    findNodeRequests.get(PEER3).complete(emptyList());
+    verifyQueried(PEER1);
+    findNodeRequests.get(PEER1).complete(emptyList());
+    verifyQueried(PEER5);
+    findNodeRequests.get(PEER5).complete(emptyList());
+
+    assertThat(complete).isCompletedWithValueMatching(nodes -> nodes.contains(PEER5));
+  }
+
+  @Test
+  public void shouldWaitForLastQueryWhenItIsSlow() {
+    when(buckets.streamClosestNodes(TARGET)).thenAnswer(invocation -> Stream.of(PEER1));
+    final Map<NodeRecord, CompletableFuture<Void>> slowQueryTimers = new HashMap<>();
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(
+            buckets,
+            findNodesAction,
+            peer -> slowQueryTimers.computeIfAbsent(peer, __ -> new CompletableFuture<>()),
+            3,
+            16,
+            10,
+            10,
+            TARGET,
+            TARGET);
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    verifyQueried(PEER1);
+
+    // The only node to query is slow, e.g. a boot node answering after a handshake
+    slowQueryTimers.get(PEER1).complete(null);
+    verifyNoMoreInteractions(findNodesAction);
+    assertFalse(complete.isDone());
+
+    findNodeRequests.get(PEER1).complete(List.of(PEER2, PEER3));
+    verifyQueried(PEER2);
+    verifyQueried(PEER3);
+    findNodeRequests.get(PEER2).complete(emptyList());
+    findNodeRequests.get(PEER3).complete(emptyList());
+
+    assertThat(complete)
+        .isCompletedWithValueMatching(nodes -> nodes.containsAll(List.of(PEER2, PEER3)));
+  }
+
+  @Test
+  public void shouldQueryNodesFromFirstPacketsBeforeResponseCompletes() {
+    when(buckets.streamClosestNodes(TARGET)).thenReturn(Stream.of(PEER1));
+    final RecursiveLookupTask task =
+        new RecursiveLookupTask(buckets, findNodesAction, 2, 16, 10, 10, TARGET, TARGET);
+
+    final CompletableFuture<Collection<NodeRecord>> complete = task.execute();
+    verifyQueried(PEER1);
+
+    // First packet of PEER1's response arrives, its nodes are queried straight away
+    packetListeners.get(PEER1).accept(List.of(PEER2));
+    verifyQueried(PEER2);
+    verifyNoMoreInteractions(findNodesAction);
+
+    findNodeRequests.get(PEER2).complete(emptyList());
+    assertFalse(complete.isDone());
+    findNodeRequests.get(PEER1).complete(List.of(PEER2, PEER3));
+    verifyQueried(PEER3);
+    findNodeRequests.get(PEER3).complete(emptyList());
+
+    // Distances to target: PEER2 0x1111, PEER3 0x2222
+    assertThat(complete)
+        .isCompletedWithValueMatching(nodes -> List.copyOf(nodes).equals(List.of(PEER2, PEER3)));
+  }
+
+  private void verifyQueried(final NodeRecord peer) {
+    verify(findNodesAction)
+        .findNodes(eq(peer), eq(Functions.logDistance(TARGET, peer.getNodeId())), any());
+  }
+
   private static NodeRecord createPeer(final Bytes nodeId) {
     return NODE_RECORD_FACTORY.createFromValues(
         UInt64.ONE,
@@ -0,0 +1,139 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.ethereum.beacon.discovery.task;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ethereum.beacon.discovery.TestUtil.createNodeAtDistance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.DiscoveryManager;
+import org.ethereum.beacon.discovery.SimpleIdentitySchemaInterpreter;
+import org.ethereum.beacon.discovery.scheduler.ExpirationSchedulerFactory;
+import org.ethereum.beacon.discovery.scheduler.Schedulers;
+import org.ethereum.beacon.discovery.schema.NodeRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RecursiveLookupTasksTest {
+  private static final Bytes32 PEER_ID = Bytes32.ZERO;
+  private static final NodeRecord PEER = SimpleIdentitySchemaInterpreter.createNodeRecord(PEER_ID);
+  private static final NodeRecord NODE_AT_254 = createNodeAtDistance(PEER_ID, 254);
+  private static final NodeRecord NODE_AT_255 = createNodeAtDistance(PEER_ID, 255);
+  private static final NodeRecord NODE_AT_256 = createNodeAtDistance(PEER_ID, 256);
+
+  private final DiscoveryManager discoveryManager = mock(DiscoveryManager.class);
+  private final ExpirationSchedulerFactory expirationSchedulerFactory =
+      new ExpirationSchedulerFactory(Executors.newSingleThreadScheduledExecutor());
+  private final List<CompletableFuture<Collection<NodeRecord>>> requests = new ArrayList<>();
+  private final List<Consumer<Collection<NodeRecord>>> packetListeners = new ArrayList<>();
+
+  private final RecursiveLookupTasks tasks =
+      new RecursiveLookupTasks(
+          discoveryManager,
+          Schedulers.createControlled().events(),
+          expirationSchedulerFactory,
+          Duration.ofSeconds(10));
+
+  @BeforeEach
+  void setUp() {
+    when(discoveryManager.findNodes(any(), anyList(), any()))
+        .thenAnswer(
+            invocation -> {
+              final CompletableFuture<Collection<NodeRecord>> request = new CompletableFuture<>();
+              requests.add(request);
+              packetListeners.add(invocation.getArgument(2));
+              return request;
+            });
+  }
+
+  @AfterEach
+  void tearDown() {
+    expirationSchedulerFactory.stop();
+  }
+
+  @Test
+  void shouldShareRequestCoveringAllDistances() {
+    final CompletableFuture<Collection<NodeRecord>> first = tasks.add(PEER, List.of(255, 256));
+    final CompletableFuture<Collection<NodeRecord>> second = tasks.add(PEER, List.of(256));
+
+    verify(discoveryManager).findNodes(eq(PEER), eq(List.of(255, 256)), any());
+    assertThat(requests).hasSize(1);
+
+    requests.get(0).complete(List.of(NODE_AT_255, NODE_AT_256));
+    assertThat(first).isCompletedWithValue(List.of(NODE_AT_255, NODE_AT_256));
+    // Only gets the nodes at the distances it asked for
+    assertThat(second).isCompletedWithValue(List.of(NODE_AT_256));
+  }
+
+  @Test
+  void shouldSendFollowUpForDistancesNotCoveredByCurrentRequest() {
+    final CompletableFuture<Collection<NodeRecord>> first = tasks.add(PEER, List.of(255, 256));
+    final CompletableFuture<Collection<NodeRecord>> second = tasks.add(PEER, List.of(256, 254));
+    assertThat(requests).hasSize(1);
+
+    requests.get(0).complete(List.of(NODE_AT_255, NODE_AT_256));
+    assertThat(first).isCompletedWithValue(List.of(NODE_AT_255, NODE_AT_256));
+    assertThat(second).isNotDone();
+    verify(discoveryManager).findNodes(eq(PEER), eq(List.of(254)), any());
+    assertThat(requests).hasSize(2);
+
+    requests.get(1).complete(List.of(NODE_AT_254));
+    assertThat(second).isCompletedWithValue(List.of(NODE_AT_256, NODE_AT_254));
+  }
+
+  @Test
+  void shouldSendRequestWithOtherDistancesAfterCurrentRequestCompletes() {
+    final CompletableFuture<Collection<NodeRecord>> first = tasks.add(PEER, List.of(256));
+    final CompletableFuture<Collection<NodeRecord>> second = tasks.add(PEER, List.of(254));
+    assertThat(requests).hasSize(1);
+
+    requests.get(0).completeExceptionally(new RuntimeException("Timeout"));
+    assertThat(first).isCompletedExceptionally();
+    verify(discoveryManager).findNodes(eq(PEER), eq(List.of(254)), any());
+    assertThat(requests).hasSize(2);
+
+    requests.get(1).complete(List.of(NODE_AT_254));
+    assertThat(second).isCompletedWithValue(List.of(NODE_AT_254));
+  }
+
+  @Test
+  void shouldFailSharedRequestsWhenRequestFails() {
+    final CompletableFuture<Collection<NodeRecord>> first = tasks.add(PEER, List.of(256));
+    final CompletableFuture<Collection<NodeRecord>> second = tasks.add(PEER, List.of(256));
+
+    requests.get(0).completeExceptionally(new RuntimeException("Timeout"));
+
+    assertThat(first).isCompletedExceptionally();
+    assertThat(second).isCompletedExceptionally();
+    verify(discoveryManager, times(1)).findNodes(any(), anyList(), any());
+  }
+
+  @Test
+  void shouldPassOnNodesFromEachPacketToSharingTasks() {
+    final List<Collection<NodeRecord>> firstPackets = new ArrayList<>();
+    final List<Collection<NodeRecord>> secondPackets = new ArrayList<>();
+    tasks.add(PEER, List.of(255, 256), firstPackets::add);
+    tasks.add(PEER, List.of(256), secondPackets::add);
+
+    packetListeners.get(0).accept(List.of(NODE_AT_255, NODE_AT_256));
+
+    assertThat(firstPackets).containsExactly(List.of(NODE_AT_255, NODE_AT_256));
+    assertThat(secondPackets).containsExactly(List.of(NODE_AT_256));
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.ethereum.beacon.discovery.type;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.ethereum.beacon.discovery.util.Functions;
+import org.junit.jupiter.api.Test;
+
+class NodeIdTest {
+  private final Random rnd = new Random(1);
+
+  @Test
+  void shouldRoundTripThroughBytes() {
+    final Bytes32 bytes = Bytes32.random(rnd);
+    assertThat(NodeId.wrap(bytes).toBytes()).isEqualTo(bytes);
+  }
+
+  @Test
+  void shouldLeftPadShortInput() {
+    assertThat(NodeId.fromHexString("0x888888").toBytes())
+        .isEqualTo(Bytes32.leftPad(Bytes.fromHexString("0x888888")));
+    assertThat(NodeId.fromHexString("0x888888"))
+        .isEqualTo(NodeId.wrap(Bytes32.leftPad(Bytes.fromHexString("0x888888"))));
+  }
+
+  @Test
+  void logDistance_shouldMatchFunctions() {
+    for (int i = 0; i < 100; i++) {
+      final Bytes32 a = Bytes32.random(rnd);
+      // Share a random number of leading bits to cover all words
+      final Bytes32 b = a.xor(Bytes32.random(rnd).shiftRight(rnd.nextInt(256)));
+      assertThat(NodeId.wrap(a).logDistance(NodeId.wrap(b)))
+          .isEqualTo(Functions.logDistance(a, b));
+    }
+  }
+
+  @Test
+  void logDistance_shouldBeZeroForSameId() {
+    final NodeId nodeId = NodeId.wrap(Bytes32.random(rnd));
+    assertThat(nodeId.logDistance(nodeId)).isZero();
+  }
+
+  @Test
+  void logDistance_shouldBeMaximumWhenTopBitDiffers() {
+    final NodeId topBitSet = NodeId.fromHexString("0x80" + "00".repeat(31));
+    assertThat(NodeId.wrap(Bytes32.ZERO).logDistance(topBitSet)).isEqualTo(256);
+  }
+
+  @Test
+  void withLowBits_shouldBoundIdsWithinLogDistance() {
+    final NodeId nodeId = NodeId.fromHexString("0x" + "5a".repeat(32));
+    for (int bits = 0; bits <= 256; bits++) {
+      final NodeId lowest = nodeId.withLowBits(bits, false);
+      final NodeId highest = nodeId.withLowBits(bits, true);
+      assertThat(nodeId.logDistance(lowest)).isLessThanOrEqualTo(bits);
+      assertThat(nodeId.logDistance(highest)).isLessThanOrEqualTo(bits);
+      assertThat(lowest).isLessThanOrEqualTo(nodeId);
+      assertThat(highest).isGreaterThanOrEqualTo(nodeId);
+      if (bits > 0) {
+        // The bounds differ in exactly the lowest bits
+        assertThat(highest.xor(lowest).logDistance(NodeId.wrap(Bytes32.ZERO))).isEqualTo(bits);
+      }
+    }
+    assertThat(nodeId.withLowBits(256, false)).isEqualTo(NodeId.wrap(Bytes32.ZERO));
+    assertThat(nodeId.withLowBits(256, true))
+        .isEqualTo(NodeId.fromHexString("0x" + "ff".repeat(32)));
+  }
+
+  @Test
+  void compareDistance_shouldCompareXorDistanceToTarget() {
+    final NodeId target = NodeId.fromHexString("0xDDDD");
+    final NodeId close = NodeId.fromHexString("0xCCCC"); // 0x1111 away
+    final NodeId far = NodeId.fromHexString("0xAAAA"); // 0x7777 away
+
+    assertThat(target.compareDistance(close, far)).isNegative();
+    assertThat(target.compareDistance(far, close)).isPositive();
+    assertThat(target.compareDistance(close, close)).isZero();
+  }
+
+  @Test
+  void compareTo_shouldCompareUnsigned() {
+    final NodeId high = NodeId.fromHexString("0xFF" + "00".repeat(31));
+    final NodeId low = NodeId.fromHexString("0x01");
+    assertThat(high).isGreaterThan(low);
+  }
+}